@@ -7,7 +7,9 @@ import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -21,12 +23,28 @@ import trader.common.util.StringUtil;
 
 public class Exchange {
 
+    /**
+     * 每个交易所缓存的交易时间数量上限
+     */
+    private static final int TRADING_TIMES_CACHE_SIZE = 8192;
+
     private String name;
     private ZoneId zoneId;
     private ZoneOffset zoneOffset;
     private boolean future;
     private Map<String, ExchangeContract> contracts;
     private LocalTime[] marketTimes;
+    /**
+     * 交易时间缓存, KEY: 合约-交易日, 按LRU淘汰
+     */
+    private Map<String, ExchangeableTradingTimes> tradingTimesCache = Collections.synchronizedMap(new LinkedHashMap<String, ExchangeableTradingTimes>(256, 0.75f, true) {
+        private static final long serialVersionUID = 6381536012851473046L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ExchangeableTradingTimes> eldest) {
+            return size()>TRADING_TIMES_CACHE_SIZE;
+        }
+    });
 
     public String name() {
         return name;
@@ -107,10 +125,25 @@ public class Exchange {
         return result;
     }
 
+    /**
+     * 返回合约在交易日的交易时间, 非交易日返回null. 结果只读, 按合约和交易日缓存
+     */
     public ExchangeableTradingTimes getTradingTimes(String instrumentId, LocalDate tradingDay) {
         if ( !MarketDayUtil.isMarketDay(this, tradingDay)) {
             return null;
         }
+        String cacheKey = instrumentId+"-"+tradingDay.toEpochDay();
+        ExchangeableTradingTimes result = tradingTimesCache.get(cacheKey);
+        if ( result==null ) {
+            result = createTradingTimes(instrumentId, tradingDay);
+            if ( result!=null ) {
+                tradingTimesCache.put(cacheKey, result);
+            }
+        }
+        return result;
+    }
+
+    private ExchangeableTradingTimes createTradingTimes(String instrumentId, LocalDate tradingDay) {
         ExchangeContract contract = matchContract(instrumentId);
         if( contract==null ) {
             return null;
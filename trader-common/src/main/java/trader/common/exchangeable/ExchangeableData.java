@@ -1,9 +1,22 @@
 package trader.common.exchangeable;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FilterReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
@@ -16,12 +29,14 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.zip.ZipEntry;
 
 import trader.common.tick.PriceLevel;
 import trader.common.util.CSVDataSet;
+import trader.common.util.CSVMarshallHelper;
 import trader.common.util.CSVUtil;
 import trader.common.util.CSVWriter;
 import trader.common.util.DateUtil;
@@ -31,6 +46,11 @@ import trader.common.util.IOUtil;
 import trader.common.util.StringUtil;
 import trader.common.util.ZipFileUtil;
 import trader.common.util.concurrent.LockWrapper;
+import trader.service.md.CSVMarketDataCursor;
+import trader.service.md.MarketData;
+import trader.service.md.MarketDataColumnarCodec;
+import trader.service.md.MarketDataCursor;
+import trader.service.md.MarketDataProducer;
 
 /**
  * 历史数据访问
@@ -230,6 +250,10 @@ public class ExchangeableData {
      * 期货CTP的TICK数据
      */
     public static final DataInfo TICK_CTP = new DataInfo("TICK_CTP", true, PriceLevel.TICKET, null, "ctp");
+    /**
+     * 列式二进制格式的TICK数据, 由TICK_CTP转换得到
+     */
+    public static final DataInfo TICK_BIN = new DataInfo("TICK_BIN", true, PriceLevel.TICKET, null, null);
 
     public static final DataInfo MIN1 = new DataInfo("MIN1", true, PriceLevel.MIN1, FUTURE_MIN_COLUMNS, null);
 
@@ -258,6 +282,11 @@ public class ExchangeableData {
 
         public String read(File instrumentDir, String file) throws IOException;
 
+        /**
+         * 以流的方式读取文本数据, 调用者负责关闭
+         */
+        public Reader open(File instrumentDir, String file) throws IOException;
+
         public void save(File instrumentDir, String file, String content) throws IOException;
 
         public boolean delete(File instrumentDir, String file) throws IOException;
@@ -296,6 +325,10 @@ public class ExchangeableData {
             return FileUtil.load(new File(instrumentDir, file));
         }
         @Override
+        public Reader open(File instrumentDir, String file) throws IOException {
+            return Files.newBufferedReader(new File(instrumentDir, file).toPath(), StringUtil.UTF8);
+        }
+        @Override
         public void save(File instrumentDir, String file, String content) throws IOException{
             instrumentDir.mkdirs();
             FileUtil.save(new File(instrumentDir, file), content);
@@ -388,6 +421,17 @@ public class ExchangeableData {
             return ZipFileUtil.archiveRead(zip, file);
         }
 
+        @Override
+        public Reader open(File instrumentDir, String file) throws IOException
+        {
+            File zip = new File(instrumentDir, getZipFileName(file));
+            InputStream is = ZipFileUtil.archiveOpen(zip, file);
+            if ( is==null ) {
+                throw new IOException("Data not exists: "+zip+"/"+file);
+            }
+            return new BufferedReader(new InputStreamReader(is, StringUtil.UTF8), 64*1024);
+        }
+
         @Override
         public void save(File instrumentDir, String file, String content) throws IOException
         {
@@ -428,6 +472,85 @@ public class ExchangeableData {
         }
     }
 
+    /**
+     * 二进制数据文件, 读取时使用内存映射
+     */
+    private static class BinaryFileDataProvider implements DataProvider{
+        private File dataDir;
+
+        BinaryFileDataProvider(File dataDir){
+            this.dataDir = dataDir;
+        }
+
+        @Override
+        public List<String> list(File instrumentDir, String filter) throws IOException {
+            List<String> result = new ArrayList<>();
+            if ( instrumentDir.exists() && instrumentDir.isDirectory() ) {
+                for(File f:instrumentDir.listFiles()) {
+                    String fname = f.getName();
+                    if ( fname.indexOf(filter)>=0 && fname.endsWith(BIN_EXT_NAME)) {
+                        result.add(fname);
+                    }
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public boolean exists(File instrumentDir, String file) throws IOException {
+            return (new File(instrumentDir,file)).exists();
+        }
+
+        @Override
+        public String read(File instrumentDir, String file) throws IOException {
+            throw new IOException("Binary data "+instrumentDir+"/"+file+" can not be read as text");
+        }
+
+        @Override
+        public Reader open(File instrumentDir, String file) throws IOException {
+            throw new IOException("Binary data "+instrumentDir+"/"+file+" can not be read as text");
+        }
+
+        @Override
+        public void save(File instrumentDir, String file, String content) throws IOException {
+            throw new IOException("Binary data "+instrumentDir+"/"+file+" can not be saved as text");
+        }
+
+        @Override
+        public boolean delete(File instrumentDir, String file) throws IOException {
+            return (new File(instrumentDir, file)).delete();
+        }
+
+        /**
+         * 二进制文件需要内存映射读取, 不参与存档压缩, 存档时只处理csv文件
+         */
+        @Override
+        public void saveAll(File instrumentDir, String files[], DataProvider source) throws IOException{
+            throw new IOException("Binary data "+instrumentDir+" can not be archived");
+        }
+
+        /**
+         * 写入临时文件后改名, 避免读到不完整的数据
+         */
+        public void write(File instrumentDir, String file, ByteBuffer content) throws IOException {
+            instrumentDir.mkdirs();
+            File tmpFile = new File(instrumentDir, file+".tmp");
+            try(FileChannel channel = FileChannel.open(tmpFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);){
+                while(content.hasRemaining()) {
+                    channel.write(content);
+                }
+                channel.force(false);
+            }
+            Files.move(tmpFile.toPath(), (new File(instrumentDir, file)).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        public MappedByteBuffer map(File instrumentDir, String file) throws IOException {
+            try(FileChannel channel = FileChannel.open((new File(instrumentDir, file)).toPath(), StandardOpenOption.READ);){
+                return channel.map(MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+    }
+
     /**
      * 基于SQL保存和加载数据
      */
@@ -491,6 +614,15 @@ public class ExchangeableData {
             return null;
         }
 
+        @Override
+        public Reader open(File instrumentDir, String file) throws IOException {
+            String text = read(instrumentDir, file);
+            if ( text==null ) {
+                throw new IOException("Data not exists: "+instrumentDir+"/"+file);
+            }
+            return new StringReader(text);
+        }
+
         @Override
         public void save(File instrumentDir, String file, String content) throws IOException {
             String instrumentId = instrumentDir.getName();
@@ -518,6 +650,7 @@ public class ExchangeableData {
     }
 
     private static final String EXT_NAME = ".csv";
+    private static final String BIN_EXT_NAME = ".dat";
     private static final String CHARSET = "UTF-8";
 
     private boolean readOnly;
@@ -526,8 +659,9 @@ public class ExchangeableData {
     private Lock workingLock = new ReentrantLock();
     private DataProvider fsProvider;
     private DataProvider zipProvider;
+    private BinaryFileDataProvider binProvider;
     private SqlDataProvide sqlProvier = null;
-    private static Map<String, SoftReference<String>> cachedDatas = new HashMap<>();
+    private static Map<String, SoftReference<String>> cachedDatas = new ConcurrentHashMap<>();
 
     public ExchangeableData(File dataDir){
         this(dataDir, true);
@@ -538,6 +672,7 @@ public class ExchangeableData {
         this.readOnly = readOnly;
         fsProvider = new FileSystemDataProvider(dataDir);
         zipProvider = new ZipDataProvider(dataDir);
+        binProvider = new BinaryFileDataProvider(dataDir);
     }
 
     public void setRepositoryConnection(Connection conn) throws Exception {
@@ -723,6 +858,10 @@ public class ExchangeableData {
                 sqlProvier.save(edir, dataFiles[0], text);
             }
             cachedDatas.put(edir+"/"+dataFiles[0], new SoftReference<>(text));
+            //TICK_BIN由TICK_CTP转换得到, 原始数据更新后删除过期的二进制文件
+            if ( dataInfo==TICK_CTP ) {
+                binProvider.delete(edir, getDataFileName(TICK_BIN, tradingDay)[0]);
+            }
         }
     }
 
@@ -779,10 +918,185 @@ public class ExchangeableData {
         }
     }
 
+    /**
+     * 以流的方式打开数据文件逐行解析, 不会将整个文件读入内存.
+     * <BR>调用者必须在同一个线程中关闭返回的CSVDataSet: 关闭之前一直持有这个合约的锁, 数据文件不会被改写, 同一合约的其它读写会等待
+     */
+    public CSVDataSet openCSV(Exchangeable instrument, DataInfo dataInfo, LocalDate tradingDay)
+            throws IOException
+    {
+        FileLocker fileLocker = getFileLock(instrument);
+        LockWrapper lockWrapper = getInternalLock(instrument);
+        Reader reader = null;
+        boolean lockHandover = false;
+        try{
+            File edir = getInstrumentDir(instrument);
+            String dataFile = getDataFileName(dataInfo, tradingDay)[0];
+            SoftReference<String> dataRef = cachedDatas.get(edir+"/"+dataFile);
+            String cachedData = null;
+            if ( dataRef!=null ) {
+                cachedData = dataRef.get();
+            }
+            if ( cachedData!=null ) {
+                reader = new StringReader(cachedData);
+            } else if ( fsProvider.exists(edir, dataFile) ) {
+                reader = new LockedReader(fsProvider.open(edir, dataFile), fileLocker, lockWrapper);
+                lockHandover = true;
+            } else if ( zipProvider.exists(edir, dataFile) ) {
+                reader = new LockedReader(zipProvider.open(edir, dataFile), fileLocker, lockWrapper);
+                lockHandover = true;
+            } else {
+                throw new IOException("Data not exists: "+edir+"/"+dataFile);
+            }
+            return CSVUtil.parse(reader, ',', true);
+        }catch(IOException | RuntimeException e) {
+            //解析失败, 关闭reader的同时释放锁
+            if ( reader!=null ) {
+                try{
+                    reader.close();
+                }catch(IOException e2) {}
+            }
+            throw e;
+        }finally {
+            if ( !lockHandover ) {
+                releaseLocks(fileLocker, lockWrapper);
+            }
+        }
+    }
+
+    /**
+     * 以流的方式逐个读取一个交易日的TICK.
+     * <BR>列式二进制格式使用内存映射; CSV格式逐行解析, 使用行情数据源的mdProducer和csvMarshallHelper创建MarketData
+     * <BR>调用者必须在同一个线程中关闭返回的MarketDataCursor: 关闭之前一直持有这个合约的锁, 数据文件不会被改写, 同一合约的其它读写会等待
+     */
+    public MarketDataCursor openTicks(Exchangeable instrument, DataInfo tickDataInfo, LocalDate tradingDay, MarketDataProducer mdProducer, CSVMarshallHelper csvMarshallHelper)
+            throws IOException
+    {
+        if ( tickDataInfo!=TICK_BIN ) {
+            return new CSVMarketDataCursor(openCSV(instrument, tickDataInfo, tradingDay), mdProducer, csvMarshallHelper, tradingDay);
+        }
+        FileLocker fileLocker = getFileLock(instrument);
+        LockWrapper lockWrapper = getInternalLock(instrument);
+        boolean lockHandover = false;
+        try{
+            File edir = getInstrumentDir(instrument);
+            String[] dataFiles = getDataFileName(TICK_BIN, tradingDay);
+            if ( !binProvider.exists(edir, dataFiles[0]) ) {
+                throw new IOException("Data not exists: "+edir+"/"+dataFiles[0]);
+            }
+            MarketDataCursor result = new LockedMarketDataCursor(MarketDataColumnarCodec.openCursor(instrument, binProvider.map(edir, dataFiles[0])), fileLocker, lockWrapper);
+            lockHandover = true;
+            return result;
+        }finally {
+            if ( !lockHandover ) {
+                releaseLocks(fileLocker, lockWrapper);
+            }
+        }
+    }
+
+    /**
+     * 列式二进制格式的TICK是否存在并且没有过期.
+     * <BR>通过save保存的原始数据会直接删除二进制文件; 外部直接覆盖的csv文件比二进制文件新时, 视为过期.
+     * 存档只是把csv文件原样压缩到zip中, 所以只需要比较未存档的csv文件
+     */
+    public boolean existsTicks(Exchangeable instrument, DataInfo sourceDataInfo, LocalDate tradingDay)
+            throws IOException
+    {
+        try(FileLocker fileLocker = getFileLock(instrument);
+                LockWrapper lockWrapper = getInternalLock(instrument); )
+        {
+            File edir = getInstrumentDir(instrument);
+            File binFile = new File(edir, getDataFileName(TICK_BIN, tradingDay)[0]);
+            if ( !binFile.exists() ) {
+                return false;
+            }
+            File csvFile = new File(edir, getDataFileName(sourceDataInfo, tradingDay)[0]);
+            return !csvFile.exists() || csvFile.lastModified()<=binFile.lastModified();
+        }
+    }
+
+    /**
+     * 保存一个交易日的TICK为列式二进制格式
+     */
+    public void saveTicks(Exchangeable instrument, LocalDate tradingDay, String producerId, List<MarketData> ticks)
+            throws IOException
+    {
+        checkReadOnly();
+        try(FileLocker fileLocker = getFileLock(instrument);
+                LockWrapper lockWrapper = getInternalLock(instrument); )
+        {
+            File edir = getInstrumentDir(instrument);
+            String[] dataFiles = getDataFileName(TICK_BIN, tradingDay);
+            binProvider.write(edir, dataFiles[0], MarketDataColumnarCodec.encode(producerId, tradingDay, ticks));
+        }
+    }
+
+    /**
+     * 使用内存映射加载列式二进制格式的TICK
+     */
+    public List<MarketData> loadTicks(Exchangeable instrument, LocalDate tradingDay)
+            throws IOException
+    {
+        try(FileLocker fileLocker = getFileLock(instrument);
+                LockWrapper lockWrapper = getInternalLock(instrument); )
+        {
+            File edir = getInstrumentDir(instrument);
+            String[] dataFiles = getDataFileName(TICK_BIN, tradingDay);
+            if ( !binProvider.exists(edir, dataFiles[0]) ) {
+                throw new IOException("Data not exists: "+edir+"/"+dataFiles[0]);
+            }
+            return MarketDataColumnarCodec.decode(instrument, binProvider.map(edir, dataFiles[0]));
+        }
+    }
+
+    /**
+     * 计算多个交易日数据文件的指纹: 普通文件使用大小和修改时间, ZIP文件中的数据使用大小和CRC. 不存在的数据也计入指纹.
+     * <BR>用于判断基于这些数据创建的缓存是否已经过期
+     */
+    public long getDataFingerprint(Exchangeable instrument, DataInfo dataInfo, List<LocalDate> tradingDays) throws IOException
+    {
+        try(FileLocker fileLocker = getFileLock(instrument);
+                LockWrapper lockWrapper = getInternalLock(instrument); )
+        {
+            File edir = getInstrumentDir(instrument);
+            Map<String, ZipEntry> zipEntries = new HashMap<>();
+            if ( edir.isDirectory() && dataInfo!=TICK_BIN ) {
+                for(File f:edir.listFiles()) {
+                    if ( f.getName().endsWith(".zip") ) {
+                        for(ZipEntry entry:ZipFileUtil.listEntries(f, dataInfo.name())) {
+                            zipEntries.put(entry.getName(), entry);
+                        }
+                    }
+                }
+            }
+            long result = 17;
+            for(LocalDate tradingDay:tradingDays) {
+                String dataFile = getDataFileName(dataInfo, tradingDay)[0];
+                File f = new File(edir, dataFile);
+                ZipEntry entry = zipEntries.get(dataFile);
+                long fileFingerprint = 0;
+                if ( f.exists() ) {
+                    fileFingerprint = f.length()*31+f.lastModified();
+                } else if ( entry!=null ) {
+                    fileFingerprint = entry.getSize()*31+entry.getCrc();
+                }
+                result = result*31+fileFingerprint;
+            }
+            return result;
+        }
+    }
+
     public List<LocalDate> list(Exchangeable instrument, DataInfo dataInfo) throws IOException
     {
         File edir = getInstrumentDir(instrument);
         List<LocalDate> result = new ArrayList<>();
+        if ( dataInfo==TICK_BIN ) {
+            for(String fname:binProvider.list(edir, dataInfo.name())) {
+                String[] fnameParts = StringUtil.split(fname, "\\.");
+                result.add(DateUtil.str2localdate(fnameParts[0]));
+            }
+            return result;
+        }
 
         List<String> fnames = fsProvider.list(edir, dataInfo.name());
         for(String fname:fnames) {
@@ -942,7 +1256,8 @@ public class ExchangeableData {
         String[] files = edir.list();
         List<String> filesToArchive = new LinkedList<>();
         for(String f:files){
-            if (f.endsWith(".csv")){
+            //只压缩csv文件, 二进制TICK文件(.dat)保持原样供内存映射读取
+            if (f.endsWith(EXT_NAME)){
                 filesToArchive.add(f);
             }
         }
@@ -981,6 +1296,80 @@ public class ExchangeableData {
         return archivedFileCount;
     }
 
+    private static void releaseLocks(FileLocker fileLocker, LockWrapper lockWrapper) throws IOException
+    {
+        try{
+            lockWrapper.close();
+        }finally {
+            fileLocker.close();
+        }
+    }
+
+    /**
+     * 流式读取的Reader, 关闭时释放合约的锁
+     */
+    private static class LockedReader extends FilterReader {
+        private FileLocker fileLocker;
+        private LockWrapper lockWrapper;
+
+        LockedReader(Reader reader, FileLocker fileLocker, LockWrapper lockWrapper){
+            super(reader);
+            this.fileLocker = fileLocker;
+            this.lockWrapper = lockWrapper;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try{
+                super.close();
+            }finally {
+                if ( lockWrapper!=null ) {
+                    releaseLocks(fileLocker, lockWrapper);
+                    lockWrapper = null;
+                    fileLocker = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * 流式读取的TICK游标, 关闭时释放合约的锁
+     */
+    private static class LockedMarketDataCursor implements MarketDataCursor {
+        private MarketDataCursor cursor;
+        private FileLocker fileLocker;
+        private LockWrapper lockWrapper;
+
+        LockedMarketDataCursor(MarketDataCursor cursor, FileLocker fileLocker, LockWrapper lockWrapper){
+            this.cursor = cursor;
+            this.fileLocker = fileLocker;
+            this.lockWrapper = lockWrapper;
+        }
+
+        @Override
+        public MarketData next() throws IOException {
+            return cursor.next();
+        }
+
+        @Override
+        public int next(List<MarketData> batch, int maxCount) throws IOException {
+            return cursor.next(batch, maxCount);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try{
+                cursor.close();
+            }finally {
+                if ( lockWrapper!=null ) {
+                    releaseLocks(fileLocker, lockWrapper);
+                    lockWrapper = null;
+                    fileLocker = null;
+                }
+            }
+        }
+    }
+
     private FileLocker getFileLock(Exchangeable instrument) throws IOException
     {
         return new FileLocker((File)null);
@@ -1020,7 +1409,7 @@ public class ExchangeableData {
     	if ( level!=PriceLevel.DAY && tradingDay!=null ){
             pathPrefix = DateUtil.date2str(tradingDay)+".";
     	}
-        result[0] = pathPrefix+dataInfo.name()+EXT_NAME;
+        result[0] = pathPrefix+dataInfo.name()+(dataInfo==TICK_BIN?BIN_EXT_NAME:EXT_NAME);
         return result;
     }
 
@@ -3,6 +3,8 @@ package trader.common.exchangeable;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
 import java.util.List;
 
 import trader.common.exchangeable.ExchangeContract.MarketTimeSegment;
@@ -10,6 +12,7 @@ import trader.common.util.DateUtil;
 
 /**
  * 某个交易品种在某个具体交易日的交易时间信息
+ * <BR>创建后只读, 可以被缓存和多线程共享. 交易时间段同时保存为EpochMillis数组, 时间计算使用二分查找
  */
 public class ExchangeableTradingTimes {
     static class MarketTimeSegmentInfo{
@@ -42,6 +45,20 @@ public class ExchangeableTradingTimes {
      */
     private List<MarketTimeSegmentInfo> segmentInfos;
     private int[] marketTimeMillis;
+    private ZoneId zoneId;
+    /**
+     * 每个交易小节的开始/结束时间(EpochMillis)
+     */
+    private long[] frameBeginMillis;
+    private long[] frameEndMillis;
+    /**
+     * 每个交易小节开始前的累计交易时长(毫秒)
+     */
+    private int[] frameTradingMillis;
+    /**
+     * 交易小节是否为日市/夜市的开始
+     */
+    private boolean[] frameSegmentBegins;
 
     ExchangeableTradingTimes(Exchangeable instrument, LocalDate tradingDay, LocalDateTime[] marketTimes, List<MarketTimeSegmentInfo> segmentInfos){
         this.instrument = instrument;
@@ -57,6 +74,20 @@ public class ExchangeableTradingTimes {
             marketTimeMillis[i/2] = (int)d.getSeconds()*1000;
             totalTradingMillis += (int)d.getSeconds()*1000;
         }
+        zoneId = instrument.exchange().getZoneId();
+        int frameCount = marketTimes.length/2;
+        frameBeginMillis = new long[frameCount];
+        frameEndMillis = new long[frameCount];
+        frameTradingMillis = new int[frameCount];
+        frameSegmentBegins = new boolean[frameCount];
+        int tradingMillis = 0;
+        for(int i=0;i<frameCount;i++) {
+            frameBeginMillis[i] = DateUtil.localdatetime2long(zoneId, marketTimes[i*2]);
+            frameEndMillis[i] = DateUtil.localdatetime2long(zoneId, marketTimes[i*2+1]);
+            frameTradingMillis[i] = tradingMillis;
+            frameSegmentBegins[i] = isSegmentBeginTime(marketTimes[i*2]);
+            tradingMillis += marketTimeMillis[i];
+        }
     }
 
     public Exchangeable getInstrument() {
@@ -121,30 +152,35 @@ public class ExchangeableTradingTimes {
      * 返回开市以来的时间(毫秒)
      */
     public int getTradingTime(LocalDateTime marketTime) {
-        if ( marketTime.isBefore(marketTimes[0]) || compareTimeNoNanos(marketTime,marketTimes[marketTimes.length-1])>0) {
+        return getTradingTime(DateUtil.localdatetime2long(zoneId, marketTime));
+    }
+
+    /**
+     * 返回开市以来的时间(毫秒)
+     *
+     * @param epochMillis 市场时间(EpochMillis)
+     */
+    public int getTradingTime(long epochMillis) {
+        long[] frameBeginMillis = this.frameBeginMillis, frameEndMillis = this.frameEndMillis;
+        //交易小节边界按秒比较
+        long epochSeconds = epochMillis-Math.floorMod(epochMillis, 1000L);
+        if ( epochMillis<frameBeginMillis[0] || epochSeconds>frameEndMillis[frameEndMillis.length-1] ) {
             return -1;
         }
-        int result = 0;
-        for(int i=0;i<marketTimes.length;i+=2) {
-            LocalDateTime marketTimeStageBegin = marketTimes[i];
-            LocalDateTime marketTimeStageEnd = marketTimes[i+1];
-            if ( compareTimeNoNanos(marketTime, marketTimeStageBegin)<=0 ) {
-                break;
-            }
-            Duration d = null;
-            int compareResult = compareTimeNoNanos(marketTime, marketTimeStageEnd);
-            if ( compareResult<=0 ) {
-                d = DateUtil.between(marketTimeStageBegin, marketTime);
-            }else {
-                d = DateUtil.between(marketTimeStageBegin, marketTimeStageEnd);
-            }
-            long millis = d.getSeconds()*1000+d.getNano()/1000000;
-            result += millis;
-            if ( compareResult<=0 ) {
-                break;
-            }
+        //最后一个开始时间早于当前时间的交易小节
+        int frameIdx = Arrays.binarySearch(frameBeginMillis, epochSeconds);
+        if ( frameIdx<0 ) {
+            frameIdx = -frameIdx-2;
+        } else {
+            frameIdx--;
         }
-        return result;
+        if ( frameIdx<0 ) {
+            return 0;
+        }
+        if ( epochSeconds<=frameEndMillis[frameIdx] ) {
+            return frameTradingMillis[frameIdx]+(int)(epochMillis-frameBeginMillis[frameIdx]);
+        }
+        return frameTradingMillis[frameIdx]+marketTimeMillis[frameIdx];
     }
 
     /**
@@ -198,34 +234,40 @@ public class ExchangeableTradingTimes {
      * 市场时间段
      */
     public MarketTimeStage getTimeStage(LocalDateTime time) {
-        for(int i=0;i<marketTimes.length;i+=2 ) {
-            LocalDateTime frameBegin = marketTimes[i];
-            LocalDateTime frameEnd = marketTimes[i+1];
-            if ( isSegmentBeginTime(frameBegin) ) {
-                LocalDateTime auctionTime = frameBegin.minusMinutes(5);
-                LocalDateTime marketBeforeOpenTime = auctionTime.minusMinutes(55);
-
-                if ( time.isBefore(marketBeforeOpenTime) ){
-                    return MarketTimeStage.MarketClose;
-                } else {
-                    if ( time.isBefore(auctionTime) ) {
-                        return MarketTimeStage.BeforeMarketOpen;
-                    } else {
-                        if ( time.isBefore(frameBegin)){
-                            return MarketTimeStage.AggregateAuction;
-                        }
-                    }
-                }
-            } else {
-                if ( time.isBefore(frameBegin) ) {
-                    return MarketTimeStage.MarketBreak;
-                }
-            }
-            if ( compareTimeNoNanos(time, frameBegin)>=0 && compareTimeNoNanos(time,frameEnd)<=0 ) {
-                return MarketTimeStage.MarketOpen;
-            }
+        return getTimeStage(DateUtil.localdatetime2long(zoneId, time));
+    }
+
+    /**
+     * 市场时间段
+     *
+     * @param epochMillis 市场时间(EpochMillis)
+     */
+    public MarketTimeStage getTimeStage(long epochMillis) {
+        long[] frameEndMillis = this.frameEndMillis;
+        //第一个结束时间(按秒比较)不早于当前时间的交易小节
+        long epochSeconds = epochMillis-Math.floorMod(epochMillis, 1000L);
+        int frameIdx = Arrays.binarySearch(frameEndMillis, epochSeconds);
+        if ( frameIdx<0 ) {
+            frameIdx = -frameIdx-1;
+        }
+        if ( frameIdx>=frameEndMillis.length ) {
+            return MarketTimeStage.MarketClose;
+        }
+        long frameBegin = frameBeginMillis[frameIdx];
+        if ( epochMillis>=frameBegin ) {
+            return MarketTimeStage.MarketOpen;
         }
-        return MarketTimeStage.MarketClose;
+        if ( !frameSegmentBegins[frameIdx] ) {
+            return MarketTimeStage.MarketBreak;
+        }
+        long auctionTime = frameBegin-5*60*1000L;
+        long marketBeforeOpenTime = auctionTime-55*60*1000L;
+        if ( epochMillis<marketBeforeOpenTime ) {
+            return MarketTimeStage.MarketClose;
+        } else if ( epochMillis<auctionTime ) {
+            return MarketTimeStage.BeforeMarketOpen;
+        }
+        return MarketTimeStage.AggregateAuction;
     }
 
     private boolean isSegmentBeginTime(LocalDateTime time) {
@@ -237,8 +279,4 @@ public class ExchangeableTradingTimes {
         return false;
     }
 
-    private static int compareTimeNoNanos(LocalDateTime time1, LocalDateTime time2) {
-        return time1.withNano(0).compareTo(time2.withNano(0));
-    }
-
 }
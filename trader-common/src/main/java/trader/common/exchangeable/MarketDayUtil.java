@@ -5,7 +5,9 @@ import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -15,9 +17,126 @@ import trader.common.util.IOUtil;
 
 public class MarketDayUtil {
 
+    /**
+     * 一个交易所的交易日历索引, 启动时根据休市日数据一次生成, 之后只读, 可以在多线程之间共享.
+     * <BR>覆盖休市日数据的第一年到最后一年, 范围之外只排除周末
+     */
+    private static final class MarketCalendar {
+        /**
+         * 日历的第一天(EpochDay)
+         */
+        private final long firstDay;
+        private final long lastDay;
+        private final BitSet closeDays = new BitSet();
+        /**
+         * 每一天之前(不包含当天)的交易日数量
+         */
+        private final int[] marketDaysBefore;
+        /**
+         * 按顺序排列的全部交易日(EpochDay)
+         */
+        private final long[] marketDays;
+
+        MarketCalendar(List<LocalDate> closeDayList) {
+            LocalDate first = closeDayList.get(0), last = closeDayList.get(0);
+            for(LocalDate closeDay:closeDayList) {
+                if ( closeDay.isBefore(first) ) {
+                    first = closeDay;
+                }
+                if ( closeDay.isAfter(last) ) {
+                    last = closeDay;
+                }
+            }
+            firstDay = first.withDayOfYear(1).toEpochDay();
+            lastDay = last.withDayOfYear(last.lengthOfYear()).toEpochDay();
+            for(LocalDate closeDay:closeDayList) {
+                closeDays.set((int)(closeDay.toEpochDay()-firstDay));
+            }
+            int dayCount = (int)(lastDay-firstDay+1);
+            marketDaysBefore = new int[dayCount+1];
+            long[] days = new long[dayCount];
+            int count = 0;
+            for(int i=0;i<dayCount;i++) {
+                marketDaysBefore[i] = count;
+                if ( isMarketDay0(i) ) {
+                    days[count++] = firstDay+i;
+                }
+            }
+            marketDaysBefore[dayCount] = count;
+            marketDays = new long[count];
+            System.arraycopy(days, 0, marketDays, 0, count);
+        }
+
+        private boolean isMarketDay0(int dayIndex) {
+            if ( isWeekend(LocalDate.ofEpochDay(firstDay+dayIndex)) ) {
+                return false;
+            }
+            return !closeDays.get(dayIndex);
+        }
+
+        boolean inRange(LocalDate day) {
+            long epochDay = day.toEpochDay();
+            return epochDay>=firstDay && epochDay<=lastDay;
+        }
+
+        boolean isCloseDay(LocalDate day) {
+            if ( !inRange(day) ) {
+                return false;
+            }
+            return closeDays.get((int)(day.toEpochDay()-firstDay));
+        }
+
+        boolean isMarketDay(LocalDate day) {
+            if ( !inRange(day) ) {
+                return !isWeekend(day);
+            }
+            return isMarketDay0((int)(day.toEpochDay()-firstDay));
+        }
+
+        /**
+         * 交易日的序号, 非交易日返回它之后第一个交易日的序号. 范围之外返回-1
+         */
+        int ordinal(LocalDate day) {
+            if ( !inRange(day) ) {
+                return -1;
+            }
+            return marketDaysBefore[(int)(day.toEpochDay()-firstDay)];
+        }
+
+        /**
+         * 相对day的第N个交易日, 超出范围返回null
+         */
+        LocalDate computeMarketDay(LocalDate day, int count) {
+            int ordinal = ordinal(day);
+            if ( ordinal<0 ) {
+                return null;
+            }
+            int resultOrdinal = 0;
+            if ( count>0 ) {
+                //day不是交易日时, ordinal已经是下一个交易日
+                resultOrdinal = ordinal+count-(isMarketDay(day)?0:1);
+            } else {
+                resultOrdinal = ordinal+count;
+            }
+            if ( resultOrdinal<0 || resultOrdinal>=marketDays.length ) {
+                return null;
+            }
+            return LocalDate.ofEpochDay(marketDays[resultOrdinal]);
+        }
+
+        /**
+         * [begin, end)之间的交易日数量, begin和end需要在范围之内
+         */
+        int marketDaysBetween(LocalDate begin, LocalDate end) {
+            return ordinal(end)-ordinal(begin);
+        }
+    }
+
     private static final Map<String,List<LocalDate>> closeDayMap = new HashMap<>();
+    private static final Map<String,MarketCalendar> calendars = new HashMap<>();
     static{
         loadCloseDayMap();
+        buildCalendars();
     }
 
     private static void loadCloseDayMap(){
@@ -57,6 +176,31 @@ public class MarketDayUtil {
         }
     }
 
+    private static void buildCalendars() {
+        //多个交易所共享同一个休市日列表
+        Map<List<LocalDate>, MarketCalendar> calendarByCloseDays = new IdentityHashMap<>();
+        for(Map.Entry<String, List<LocalDate>> entry:closeDayMap.entrySet()) {
+            if ( entry.getValue().isEmpty() ) {
+                continue;
+            }
+            MarketCalendar calendar = calendarByCloseDays.get(entry.getValue());
+            if ( calendar==null ) {
+                calendar = new MarketCalendar(entry.getValue());
+                calendarByCloseDays.put(entry.getValue(), calendar);
+            }
+            calendars.put(entry.getKey(), calendar);
+        }
+    }
+
+    private static boolean isWeekend(LocalDate day) {
+        DayOfWeek dayOfWeek = day.getDayOfWeek();
+        return dayOfWeek == DayOfWeek.SUNDAY || dayOfWeek==DayOfWeek.SATURDAY;
+    }
+
+    private static boolean isCloseDay(MarketCalendar calendar, LocalDate day) {
+        return calendar!=null && calendar.isCloseDay(day);
+    }
+
     private static LocalDate nextWorkingDay(LocalDate tradingDay, boolean nextOrPrev) {
         while(true){
             tradingDay = tradingDay.plusDays(nextOrPrev?1:-1);
@@ -77,7 +221,7 @@ public class MarketDayUtil {
         if ( endDay==null ) {
             endDay = lastMarketDay(exchange, false);
         }
-        List<LocalDate> closeDays = closeDayMap.get(exchange.name());
+        MarketCalendar calendar = calendars.get(exchange.name());
         LocalDate currTradingDay = beginDay;
 
         while(true){
@@ -86,7 +230,7 @@ public class MarketDayUtil {
             }
             DayOfWeek dayOfWeek = currTradingDay.getDayOfWeek();
             if ( dayOfWeek.getValue() >= DayOfWeek.MONDAY.getValue() && dayOfWeek.getValue()<=DayOfWeek.FRIDAY.getValue() ){
-                if ( closeDays!=null && !closeDays.contains(currTradingDay) ) {
+                if ( calendar!=null && !calendar.isCloseDay(currTradingDay) ) {
                     result.add(currTradingDay);
                 }
             }
@@ -99,6 +243,13 @@ public class MarketDayUtil {
         if (toAdd==0) {
             return day;
         }
+        MarketCalendar calendar = calendars.get((exchange!=null?exchange:Exchange.SSE).name());
+        if ( calendar!=null ) {
+            LocalDate result = calendar.computeMarketDay(day, toAdd);
+            if ( result!=null ) {
+                return result;
+            }
+        }
         if (toAdd>0){
             for(int i=0;i<toAdd;i++){
                 day = nextMarketDay(exchange, day );
@@ -119,19 +270,28 @@ public class MarketDayUtil {
      * @param count >0 后面的交易日, <0 前交易日 ==0 不变
      */
     public static LocalDate nextMarketDays(Exchange exchange, LocalDate tradingDay, int count) {
-        LocalDate result = tradingDay;
-        if ( count==0 ) {
-            return tradingDay;
-        }else if ( count>0 ) {
-            for(int i=0;i<count;i++) {
-                result = nextMarketDay(exchange, tradingDay);
-            }
-        }else if ( count<0 ) {
-            count = Math.abs(count);
-            for(int i=0;i<count;i++) {
-                result = prevMarketDay(exchange, tradingDay, false);
-            }
+        return computeMarketDay(exchange, tradingDay, count);
+    }
 
+    /**
+     * [beginDay, endDay)之间的交易日数量, endDay在beginDay之前时返回负数
+     */
+    public static int marketDaysBetween(Exchange exchange, LocalDate beginDay, LocalDate endDay) {
+        if ( exchange==null ) {
+            exchange = Exchange.SSE;
+        }
+        MarketCalendar calendar = calendars.get(exchange.name());
+        if ( calendar!=null && calendar.inRange(beginDay) && calendar.inRange(endDay) ) {
+            return calendar.marketDaysBetween(beginDay, endDay);
+        }
+        if ( beginDay.isAfter(endDay) ) {
+            return -marketDaysBetween(exchange, endDay, beginDay);
+        }
+        int result = 0;
+        for(LocalDate day=beginDay; day.isBefore(endDay); day=day.plusDays(1)) {
+            if ( isMarketDay(exchange, day) ) {
+                result++;
+            }
         }
         return result;
     }
@@ -150,7 +310,13 @@ public class MarketDayUtil {
         if ( exchange==null ) {
             exchange = Exchange.SSE;
         }
-        List<LocalDate> closeDays = closeDayMap.get(exchange.name());
+        MarketCalendar calendar = calendars.get(exchange.name());
+        if ( !stopOnHolidy && calendar!=null ) {
+            LocalDate result = calendar.computeMarketDay(tradingDay, -1);
+            if ( result!=null ) {
+                return result;
+            }
+        }
 
         while(true){
             tradingDay = tradingDay.plusDays(-1);
@@ -158,7 +324,7 @@ public class MarketDayUtil {
             if ( dayOfWeek == DayOfWeek.SUNDAY || dayOfWeek==DayOfWeek.SATURDAY) {
                 continue;
             }
-            if ( closeDays!=null && closeDays.contains(tradingDay) ) {
+            if ( isCloseDay(calendar, tradingDay) ) {
                 if ( !stopOnHolidy ) {
                     continue;
                 }
@@ -182,7 +348,7 @@ public class MarketDayUtil {
         if ( exchange==null ) {
             exchange = Exchange.SSE;
         }
-        List<LocalDate> closeDays = closeDayMap.get(exchange.name());
+        MarketCalendar calendar = calendars.get(exchange.name());
         LocalDateTime tradingDateTime = DateUtil.getCurrentTime();
         DayOfWeek dayOfWeek = tradingDateTime.getDayOfWeek();
         if ( !exchange.isFuture() ) {
@@ -199,7 +365,7 @@ public class MarketDayUtil {
                     tradingDateTime = tradingDateTime.plusDays(-1);
                     continue;
                 }
-                if ( closeDays!=null && closeDays.contains(tradingDateTime.toLocalDate()) ){
+                if ( isCloseDay(calendar, tradingDateTime.toLocalDate()) ){
                     tradingDateTime = tradingDateTime.plusDays(-1);
                     continue;
                 }
@@ -221,7 +387,7 @@ public class MarketDayUtil {
                     tradingDateTime = tradingDateTime.plusDays(-1);
                     continue;
                 }
-                if ( closeDays!=null && closeDays.contains(tradingDateTime.toLocalDate()) ){
+                if ( isCloseDay(calendar, tradingDateTime.toLocalDate()) ){
                     tradingDateTime = tradingDateTime.plusDays(-1);
                     continue;
                 }
@@ -234,29 +400,31 @@ public class MarketDayUtil {
         if ( exchange==null ) {
             exchange = Exchange.SSE;
         }
-        List<LocalDate> closeDays = closeDayMap.get(exchange.name());
-        DayOfWeek dayOfWeek = tradingDay.getDayOfWeek();
-        if ( dayOfWeek == DayOfWeek.SUNDAY || dayOfWeek==DayOfWeek.SATURDAY){
-            return false;
+        MarketCalendar calendar = calendars.get(exchange.name());
+        if ( calendar!=null ) {
+            return calendar.isMarketDay(tradingDay);
         }
-        if ( closeDays!=null && closeDays.contains(tradingDay) ) {
-            return false;
-        }
-        return true;
+        return !isWeekend(tradingDay);
     }
 
     public static LocalDate nextMarketDay(Exchange exchange, LocalDate tradingDay){
         if ( exchange==null ) {
             exchange = Exchange.SSE;
         }
-        List<LocalDate> closeDays = closeDayMap.get(exchange.name());
+        MarketCalendar calendar = calendars.get(exchange.name());
+        if ( calendar!=null ) {
+            LocalDate result = calendar.computeMarketDay(tradingDay, 1);
+            if ( result!=null ) {
+                return result;
+            }
+        }
         while(true){
             tradingDay = tradingDay.plusDays(1);
             DayOfWeek dayOfWeek = tradingDay.getDayOfWeek();
             if ( dayOfWeek == DayOfWeek.SUNDAY || dayOfWeek==DayOfWeek.SATURDAY) {
                 continue;
             }
-            if ( closeDays!=null && closeDays.contains(tradingDay) ) {
+            if ( isCloseDay(calendar, tradingDay) ) {
                 continue;
             }
             return tradingDay;
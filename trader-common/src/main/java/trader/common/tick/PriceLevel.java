@@ -1,7 +1,7 @@
 package trader.common.tick;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -11,7 +11,10 @@ import trader.common.util.StringUtil;
 public class PriceLevel {
     private static final Pattern PATTERN = Pattern.compile("([a-z]+)(\\d*)");
 
-    private static final Map<String, PriceLevel> levelByNames = new HashMap<>();
+    /**
+     * 动态创建的级别会从多个线程并发访问, 例如并行预加载历史数据
+     */
+    private static final Map<String, PriceLevel> levelByNames = new ConcurrentHashMap<>();
 
     public static final String LEVEL_MIN  = "min";
     public static final String LEVEL_VOL  = "vol";
@@ -46,7 +49,7 @@ public class PriceLevel {
         this.prefix = prefix;
         this.value = levelValue;
         if (name!=null) {
-            levelByNames.put(name.toLowerCase(), this);
+            levelByNames.putIfAbsent(name.toLowerCase(), this);
         }
     }
 
@@ -106,6 +109,11 @@ public class PriceLevel {
     	    } else {
     	        result = new PriceLevel(level0, level0, -1);
     	    }
+    	    //并发创建时以第一个放入的对象为准
+    	    PriceLevel existing = levelByNames.get(level0.toLowerCase());
+    	    if ( existing!=null ) {
+    	        result = existing;
+    	    }
     	}
     	return result;
     }
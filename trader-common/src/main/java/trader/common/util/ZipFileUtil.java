@@ -4,6 +4,7 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
@@ -145,6 +146,22 @@ public class ZipFileUtil {
         return result;
     }
 
+    /**
+     * 以流的方式读取压缩文件中的一个文件, 调用者负责关闭
+     *
+     * @return null 如果文件不存在
+     */
+    public static InputStream archiveOpen(File zip, String pathInZip)
+            throws IOException
+    {
+        net.lingala.zip4j.ZipFile zipFile = new net.lingala.zip4j.ZipFile(zip);
+        FileHeader fileHeader = zipFile.getFileHeader(pathInZip);
+        if ( fileHeader==null ) {
+            return null;
+        }
+        return zipFile.getInputStream(fileHeader);
+    }
+
     /**
      * returns a list of file name and content(in UTF-8) format.
      */
@@ -21,4 +21,9 @@ public interface KVStore {
 
     public KVStoreIterator iterator();
 
+    /**
+     * 按KEY顺序遍历以prefix开头的KEY
+     */
+    public KVStoreIterator iterator(String prefix);
+
 }
@@ -0,0 +1,41 @@
+package trader.service.md;
+
+import java.time.LocalDate;
+
+import trader.common.util.CSVDataSet;
+import trader.common.util.CSVMarshallHelper;
+
+/**
+ * 从CSV格式的行情数据逐行创建MarketData
+ */
+public class CSVMarketDataCursor implements MarketDataCursor {
+
+    private CSVDataSet csvDataSet;
+    private MarketDataProducer mdProducer;
+    private CSVMarshallHelper csvMarshallHelper;
+    private LocalDate tradingDay;
+
+    public CSVMarketDataCursor(CSVDataSet csvDataSet, MarketDataProducer mdProducer, CSVMarshallHelper csvMarshallHelper, LocalDate tradingDay) {
+        this.csvDataSet = csvDataSet;
+        this.mdProducer = mdProducer;
+        this.csvMarshallHelper = csvMarshallHelper;
+        this.tradingDay = tradingDay;
+    }
+
+    @Override
+    public MarketData next() {
+        while(csvDataSet.next()) {
+            MarketData md = mdProducer.createMarketData(csvMarshallHelper.unmarshall(csvDataSet.getRow()), tradingDay);
+            if ( md!=null ) {
+                return md;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        csvDataSet.close();
+    }
+
+}
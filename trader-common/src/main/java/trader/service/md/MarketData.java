@@ -56,9 +56,9 @@ public abstract class MarketData implements Cloneable, JsonEnabled {
     public long lastPrice;
 
     /**
-     * 最后修改时间
+     * 最后修改时间, 第一次访问时从updateTimestamp转换, 使用getUpdateTime()/setUpdateTime()访问
      */
-    public LocalDateTime updateTime;
+    private LocalDateTime updateTime;
 
     /**
      * 最后修改时间(EpochMillis)
@@ -180,6 +180,7 @@ public abstract class MarketData implements Cloneable, JsonEnabled {
         marketDataToClone.openInterest = openInterest;
         marketDataToClone.lastPrice = lastPrice;
         marketDataToClone.updateTime = updateTime;
+        marketDataToClone.updateTimestamp = updateTimestamp;
         marketDataToClone.preClosePrice = preClosePrice;
         marketDataToClone.openPrice = openPrice;
         marketDataToClone.highestPrice = highestPrice;
@@ -207,7 +208,7 @@ public abstract class MarketData implements Cloneable, JsonEnabled {
         json.addProperty("tradingDay", tradingDay);
         json.addProperty("volume", volume);
         json.addProperty("openInterest", openInterest);
-        json.addProperty("updateTime", DateUtil.date2str(updateTime));
+        json.addProperty("updateTime", DateUtil.date2str(getUpdateTime()));
         json.addProperty("updateTimestamp", updateTimestamp);
         json.addProperty("turnover", PriceUtil.long2str(turnover));
         json.addProperty("lastPrice", PriceUtil.long2str(lastPrice));
@@ -326,13 +327,49 @@ public abstract class MarketData implements Cloneable, JsonEnabled {
 
     @Override
     public String toString() {
-        return "MD["+instrument+" "+updateTime+" "+PriceUtil.long2str(lastPrice)+" v "+volume+"]";
+        return "MD["+instrument+" "+getUpdateTime()+" "+PriceUtil.long2str(lastPrice)+" v "+volume+"]";
     }
 
+    /**
+     * 最后修改时间, 需要时从updateTimestamp转换
+     */
+    public LocalDateTime getUpdateTime() {
+        LocalDateTime result = updateTime;
+        if ( result==null && updateTimestamp!=0 ) {
+            result = DateUtil.long2datetime(instrument.exchange().getZoneId(), updateTimestamp);
+            updateTime = result;
+        }
+        return result;
+    }
+
+    /**
+     * 同时设置updateTime和updateTimestamp
+     */
+    public void setUpdateTime(LocalDateTime updateTime) {
+        this.updateTime = updateTime;
+        this.updateTimestamp = DateUtil.localdatetime2long(instrument.exchange().getZoneId(), updateTime);
+    }
+
+    /**
+     * 修改时间戳, updateTime在第一次访问时重新转换
+     */
+    public void setUpdateTimestamp(long updateTimestamp) {
+        this.updateTimestamp = updateTimestamp;
+        this.updateTime = null;
+    }
+
+    /**
+     * 计算市场时间段和开市以来的时间, 只使用updateTimestamp, 不创建对象
+     */
     public void postProcess(ExchangeableTradingTimes tradingTimes) {
         mktTimes = tradingTimes;
-        mktStage = tradingTimes.getTimeStage(updateTime);
-        mktTime = tradingTimes.getTradingTime(updateTime);
+        if ( updateTimestamp!=0 ) {
+            mktStage = tradingTimes.getTimeStage(updateTimestamp);
+            mktTime = tradingTimes.getTradingTime(updateTimestamp);
+        } else {
+            mktStage = tradingTimes.getTimeStage(updateTime);
+            mktTime = tradingTimes.getTradingTime(updateTime);
+        }
     }
 
 }
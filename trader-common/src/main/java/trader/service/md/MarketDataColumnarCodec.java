@@ -0,0 +1,276 @@
+package trader.service.md;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import trader.common.exchangeable.Exchangeable;
+import trader.common.util.DateUtil;
+
+/**
+ * 行情TICK的列式二进制编码.
+ * <BR>每一列的值(价格为PriceUtil定点long)与前一个TICK做差分, 再以ZigZag+VarInt写入, 所有列依次存放.
+ * <BR>文件格式:
+ * <pre>
+ * int magic, short version, short maxDepth, int tickCount, int tradingDay(yyyymmdd)
+ * short producerIdLength, byte[] producerId
+ * short columnCount, int[columnCount] columnLength
+ * column data...
+ * </pre>
+ * 解码直接基于ByteBuffer, 可以使用MappedByteBuffer读取文件.
+ */
+public class MarketDataColumnarCodec {
+
+    public static final int MAGIC = 0X544B4231; //TKB1
+    public static final short VERSION = 1;
+
+    private static final int COL_TIMESTAMP = 0;
+    private static final int COL_LAST_PRICE = 1;
+    private static final int COL_VOLUME = 2;
+    private static final int COL_TURNOVER = 3;
+    private static final int COL_OPEN_INTEREST = 4;
+    private static final int COL_AVERAGE_PRICE = 5;
+    private static final int COL_HIGHEST_PRICE = 6;
+    private static final int COL_LOWEST_PRICE = 7;
+    private static final int COL_OPEN_PRICE = 8;
+    private static final int COL_PRECLOSE_PRICE = 9;
+    private static final int COL_UPPERLIMIT_PRICE = 10;
+    private static final int COL_LOWERLIMIT_PRICE = 11;
+    private static final int COL_DEPTH = 12;
+    /**
+     * 固定列数量, 之后每档行情4列: bidPrice, bidVolume, askPrice, askVolume
+     */
+    private static final int FIXED_COLUMN_COUNT = 13;
+
+    /**
+     * 差分编码的列写入缓冲
+     */
+    private static class ColumnWriter {
+        private byte[] buf = new byte[1024];
+        private int len;
+        private long last;
+
+        void writeDelta(long value) {
+            long delta = value-last;
+            last = value;
+            //ZigZag
+            long v = (delta<<1)^(delta>>63);
+            if ( len+10>buf.length ) {
+                buf = Arrays.copyOf(buf, buf.length*2);
+            }
+            while( (v&~0X7FL)!=0 ) {
+                buf[len++] = (byte)((v&0X7F)|0X80);
+                v >>>= 7;
+            }
+            buf[len++] = (byte)v;
+        }
+    }
+
+    /**
+     * 差分编码的列读取
+     */
+    private static class ColumnReader {
+        private final ByteBuffer buf;
+        private int pos;
+        private long last;
+
+        ColumnReader(ByteBuffer buf, int pos){
+            this.buf = buf;
+            this.pos = pos;
+        }
+
+        long readDelta() {
+            long v = 0;
+            int shift = 0;
+            while(true) {
+                byte b = buf.get(pos++);
+                v |= ((long)(b&0X7F))<<shift;
+                if ( (b&0X80)==0 ) {
+                    break;
+                }
+                shift += 7;
+            }
+            long delta = (v>>>1)^-(v&1);
+            last += delta;
+            return last;
+        }
+    }
+
+    /**
+     * 编码一个交易日的TICK数据
+     */
+    public static ByteBuffer encode(String producerId, LocalDate tradingDay, List<MarketData> ticks) {
+        int maxDepth = 0;
+        for(MarketData tick:ticks) {
+            maxDepth = Math.max(maxDepth, tick.depth);
+        }
+        ColumnWriter[] columns = new ColumnWriter[FIXED_COLUMN_COUNT+maxDepth*4];
+        for(int i=0;i<columns.length;i++) {
+            columns[i] = new ColumnWriter();
+        }
+        for(MarketData tick:ticks) {
+            columns[COL_TIMESTAMP].writeDelta(tick.updateTimestamp);
+            columns[COL_LAST_PRICE].writeDelta(tick.lastPrice);
+            columns[COL_VOLUME].writeDelta(tick.volume);
+            columns[COL_TURNOVER].writeDelta(tick.turnover);
+            columns[COL_OPEN_INTEREST].writeDelta(tick.openInterest);
+            columns[COL_AVERAGE_PRICE].writeDelta(tick.averagePrice);
+            columns[COL_HIGHEST_PRICE].writeDelta(tick.highestPrice);
+            columns[COL_LOWEST_PRICE].writeDelta(tick.lowestPrice);
+            columns[COL_OPEN_PRICE].writeDelta(tick.openPrice);
+            columns[COL_PRECLOSE_PRICE].writeDelta(tick.preClosePrice);
+            columns[COL_UPPERLIMIT_PRICE].writeDelta(tick.upperLimitPrice);
+            columns[COL_LOWERLIMIT_PRICE].writeDelta(tick.lowerLimitPrice);
+            columns[COL_DEPTH].writeDelta(tick.depth);
+            for(int j=0;j<maxDepth;j++) {
+                int col = FIXED_COLUMN_COUNT+j*4;
+                boolean hasDepth = j<tick.depth;
+                columns[col].writeDelta(hasDepth?tick.bidPrices[j]:0);
+                columns[col+1].writeDelta(hasDepth?tick.bidVolumes[j]:0);
+                columns[col+2].writeDelta(hasDepth?tick.askPrices[j]:0);
+                columns[col+3].writeDelta(hasDepth?tick.askVolumes[j]:0);
+            }
+        }
+        byte[] producerIdBytes = (producerId!=null?producerId:"").getBytes(StandardCharsets.UTF_8);
+        int totalLen = 4+2+2+4+4+2+producerIdBytes.length+2+4*columns.length;
+        for(ColumnWriter column:columns) {
+            totalLen += column.len;
+        }
+        ByteBuffer result = ByteBuffer.allocate(totalLen);
+        result.putInt(MAGIC);
+        result.putShort(VERSION);
+        result.putShort((short)maxDepth);
+        result.putInt(ticks.size());
+        result.putInt(Integer.parseInt(DateUtil.date2str(tradingDay)));
+        result.putShort((short)producerIdBytes.length);
+        result.put(producerIdBytes);
+        result.putShort((short)columns.length);
+        for(ColumnWriter column:columns) {
+            result.putInt(column.len);
+        }
+        for(ColumnWriter column:columns) {
+            result.put(column.buf, 0, column.len);
+        }
+        result.flip();
+        return result;
+    }
+
+    /**
+     * 从ByteBuffer(可以是MappedByteBuffer)解码TICK数据, 不修改buf的position
+     */
+    public static List<MarketData> decode(Exchangeable instrument, ByteBuffer buf) throws IOException {
+        ColumnarCursor cursor = new ColumnarCursor(instrument, buf);
+        List<MarketData> result = new ArrayList<>(cursor.tickCount);
+        MarketData tick = null;
+        while( (tick=cursor.next())!=null ) {
+            result.add(tick);
+        }
+        return result;
+    }
+
+    /**
+     * 从ByteBuffer(可以是MappedByteBuffer)逐个解码TICK数据, 不修改buf的position
+     */
+    public static MarketDataCursor openCursor(Exchangeable instrument, ByteBuffer buf) throws IOException {
+        return new ColumnarCursor(instrument, buf);
+    }
+
+    /**
+     * 列式数据的逐个TICK解码
+     */
+    private static class ColumnarCursor implements MarketDataCursor {
+        private Exchangeable instrument;
+        private String tradingDay;
+        private String producerId;
+        private int maxDepth;
+        private int tickCount;
+        private int tickIndex;
+        private ColumnReader[] columns;
+
+        ColumnarCursor(Exchangeable instrument, ByteBuffer buf) throws IOException {
+            this.instrument = instrument;
+            int pos = buf.position();
+            if ( buf.getInt(pos)!=MAGIC ) {
+                throw new IOException("Invalid columnar tick data of "+instrument);
+            }
+            pos += 4;
+            short version = buf.getShort(pos); pos+=2;
+            if ( version!=VERSION ) {
+                throw new IOException("Unsupported columnar tick data version "+version+" of "+instrument);
+            }
+            maxDepth = buf.getShort(pos); pos+=2;
+            tickCount = buf.getInt(pos); pos+=4;
+            tradingDay = Integer.toString(buf.getInt(pos)); pos+=4;
+            byte[] producerIdBytes = new byte[buf.getShort(pos)]; pos+=2;
+            for(int i=0;i<producerIdBytes.length;i++) {
+                producerIdBytes[i] = buf.get(pos++);
+            }
+            producerId = new String(producerIdBytes, StandardCharsets.UTF_8);
+            int columnCount = buf.getShort(pos); pos+=2;
+            if ( columnCount!=FIXED_COLUMN_COUNT+maxDepth*4 ) {
+                throw new IOException("Invalid columnar tick data column count "+columnCount+" of "+instrument);
+            }
+            columns = new ColumnReader[columnCount];
+            int columnPos = pos+4*columnCount;
+            for(int i=0;i<columnCount;i++) {
+                columns[i] = new ColumnReader(buf, columnPos);
+                columnPos += buf.getInt(pos+i*4);
+            }
+        }
+
+        @Override
+        public MarketData next() {
+            if ( tickIndex>=tickCount ) {
+                return null;
+            }
+            tickIndex++;
+            SimpleMarketData tick = new SimpleMarketData();
+            tick.producerId = producerId;
+            tick.instrument = instrument;
+            tick.tradingDay = tradingDay;
+            tick.setUpdateTimestamp(columns[COL_TIMESTAMP].readDelta());
+            tick.lastPrice = columns[COL_LAST_PRICE].readDelta();
+            tick.volume = columns[COL_VOLUME].readDelta();
+            tick.turnover = columns[COL_TURNOVER].readDelta();
+            tick.openInterest = columns[COL_OPEN_INTEREST].readDelta();
+            tick.averagePrice = columns[COL_AVERAGE_PRICE].readDelta();
+            tick.highestPrice = columns[COL_HIGHEST_PRICE].readDelta();
+            tick.lowestPrice = columns[COL_LOWEST_PRICE].readDelta();
+            tick.openPrice = columns[COL_OPEN_PRICE].readDelta();
+            tick.preClosePrice = columns[COL_PRECLOSE_PRICE].readDelta();
+            tick.upperLimitPrice = columns[COL_UPPERLIMIT_PRICE].readDelta();
+            tick.lowerLimitPrice = columns[COL_LOWERLIMIT_PRICE].readDelta();
+            int depth = (int)columns[COL_DEPTH].readDelta();
+            tick.depth = depth;
+            tick.bidPrices = new long[depth];
+            tick.bidVolumes = new int[depth];
+            tick.askPrices = new long[depth];
+            tick.askVolumes = new int[depth];
+            for(int j=0;j<maxDepth;j++) {
+                int col = FIXED_COLUMN_COUNT+j*4;
+                long bidPrice = columns[col].readDelta();
+                long bidVolume = columns[col+1].readDelta();
+                long askPrice = columns[col+2].readDelta();
+                long askVolume = columns[col+3].readDelta();
+                if ( j<depth ) {
+                    tick.bidPrices[j] = bidPrice;
+                    tick.bidVolumes[j] = (int)bidVolume;
+                    tick.askPrices[j] = askPrice;
+                    tick.askVolumes[j] = (int)askVolume;
+                }
+            }
+            return tick;
+        }
+
+        @Override
+        public void close() {
+            columns = null;
+            tickIndex = tickCount;
+        }
+    }
+
+}
@@ -0,0 +1,36 @@
+package trader.service.md;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 以流的方式逐个读取行情TICK, 内存占用与数据文件大小无关.
+ * <BR>使用完毕需要关闭
+ */
+public interface MarketDataCursor extends AutoCloseable {
+
+    /**
+     * 读取下一个TICK
+     *
+     * @return null 如果没有更多数据
+     */
+    public MarketData next() throws IOException;
+
+    /**
+     * 批量读取TICK, batch会先被清空, 可以重复使用
+     *
+     * @return 实际读取的数量, 0表示没有更多数据
+     */
+    public default int next(List<MarketData> batch, int maxCount) throws IOException {
+        batch.clear();
+        MarketData tick = null;
+        while( batch.size()<maxCount && (tick=next())!=null ) {
+            batch.add(tick);
+        }
+        return batch.size();
+    }
+
+    @Override
+    public void close() throws IOException;
+
+}
@@ -5,6 +5,11 @@ package trader.service.md;
  */
 public interface MarketDataListener {
 
+    /**
+     * 行情回调.
+     * <BR>AsyncEventService启用行情分区(marketDataPartitions&gt;0)时, 本方法会被多个分区线程并发调用:
+     * 同一品种的行情固定在同一个线程内按顺序回调, 不同品种之间并发. 实现类跨品种共享的状态需要自行保证线程安全
+     */
     public void onMarketData(MarketData marketData);
 
 }
@@ -1,7 +1,6 @@
 package trader.service.ta;
 
 import java.io.IOException;
-import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
@@ -13,6 +12,7 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 import org.ta4j.core.Bar;
 
@@ -31,6 +31,7 @@ import trader.common.util.CSVUtil;
 import trader.common.util.DateUtil;
 import trader.common.util.PriceUtil;
 import trader.service.md.MarketData;
+import trader.service.md.MarketDataCursor;
 import trader.service.md.MarketDataProducer;
 import trader.service.md.MarketDataProducerFactory;
 import trader.service.md.MarketDataService;
@@ -64,9 +65,21 @@ public class BarSeriesLoader {
      * 实际时间
      */
     private LocalDateTime endTime;
+    /**
+     * 使用ColumnLeveledBarSeries按列保存, 只适用于不修改KBAR的只读历史数据
+     */
+    private boolean columnar;
 
+    /**
+     * 已解析的MIN1数据, 同一个Loader加载多个级别时共享
+     */
     private Map<LocalDate, List<FutureBar>> min1BarsByDay = new HashMap<>();
 
+    /**
+     * 已解析的TICK数据, 没有MIN1数据时多个级别共享, 需要调用clearCache()释放
+     */
+    private Map<LocalDate, List<MarketData>> ticksByDay = new HashMap<>();
+
     private List<LocalDate> loadedDates = new ArrayList<>();
 
     private Map<LocalDate, ExchangeableTradingTimes> tradingDays = new HashMap<>();
@@ -85,6 +98,9 @@ public class BarSeriesLoader {
     }
 
     public BarSeriesLoader setInstrument(Exchangeable e) {
+        if ( !Objects.equals(this.instrument, e) ) {
+            clearCache();
+        }
         this.instrument = e;
         return this;
     }
@@ -113,14 +129,34 @@ public class BarSeriesLoader {
         return this;
     }
 
+    /**
+     * 加载为按列保存的ColumnLeveledBarSeries, 缺省为BaseLeveledBarSeries.
+     * <BR>KBAR不再是FutureBar, 实时更新KBAR的场景不能使用
+     */
+    public BarSeriesLoader setColumnar(boolean columnar) {
+        this.columnar = columnar;
+        return this;
+    }
+
     /**
      * 设置最后一个交易日的最后的市场时间, 缺省为不限制
      */
     public BarSeriesLoader setEndTime(LocalDateTime endTime){
+        if ( !Objects.equals(this.endTime, endTime) ) {
+            clearCache();
+        }
         this.endTime = endTime;
         return this;
     }
 
+    public LocalDate getStartTradingDay() {
+        return startTradingDay;
+    }
+
+    public LocalDate getEndTradingDay() {
+        return endTradingDay;
+    }
+
     public List<LocalDate> getLoadedDates(){
         return Collections.unmodifiableList(loadedDates);
     }
@@ -129,6 +165,14 @@ public class BarSeriesLoader {
         this.volDaliyMultiplier = multiplier;
     }
 
+    /**
+     * 释放已解析的MIN1/TICK数据
+     */
+    public void clearCache() {
+        min1BarsByDay.clear();
+        ticksByDay.clear();
+    }
+
     /**
      * 直接加载行情切片原始数据
      */
@@ -138,24 +182,22 @@ public class BarSeriesLoader {
             return Collections.emptyList();
         }
         List<MarketData> result = new ArrayList<>();
-        MarketDataService mdService = this.beansContainer.getBean(MarketDataService.class);
-        MarketDataProducerFactory ctpFactory = mdService.getProducerFactories().get(tickDataInfo.provider());
-        MarketDataProducer mdProducer = ctpFactory.create(beansContainer, null);
-        CSVMarshallHelper csvMarshallHelper = ctpFactory.createCSVMarshallHelper();
-        String csv = data.load(instrument, tickDataInfo, tradingDay);
-        CSVDataSet csvDataSet = CSVUtil.parse(csv);
+        List<MarketData> ticks = null;
+        if ( tickDataInfo==ExchangeableData.TICK_BIN ) {
+            ticks = data.loadTicks(instrument, tradingDay);
+        } else {
+            ticks = loadMarketDataCSV(tradingDay, tickDataInfo);
+        }
         ExchangeableTradingTimes tradingTimes = instrument.exchange().getTradingTimes(instrument, tradingDay);
 
         //修在updateTime/updateTimstamp数据, 对于匪所, 同一秒的TICK序言耗时增加200MS
         long lastTimestamp = 0;
-        while(csvDataSet.next()) {
-            MarketData tick = mdProducer.createMarketData(csvMarshallHelper.unmarshall(csvDataSet.getRow()), tradingDay);
-            if ( this.endTime!=null && this.endTime.isBefore(tick.updateTime)) {
+        for(MarketData tick:ticks) {
+            if ( this.endTime!=null && this.endTime.isBefore(tick.getUpdateTime())) {
                 continue;
             }
             if ( lastTimestamp>=tick.updateTimestamp ) {
-                tick.updateTimestamp = lastTimestamp+200;
-                tick.updateTime = Instant.ofEpochMilli(tick.updateTimestamp).atZone(tick.instrument.exchange().getZoneId()).toLocalDateTime();
+                tick.setUpdateTimestamp(lastTimestamp+200);
             }
             tick.postProcess(tradingTimes);
             lastTimestamp = tick.updateTimestamp;
@@ -164,6 +206,25 @@ public class BarSeriesLoader {
         return result;
     }
 
+    /**
+     * 解析CSV格式的原始TICK数据
+     */
+    private List<MarketData> loadMarketDataCSV(LocalDate tradingDay, DataInfo tickDataInfo) throws IOException
+    {
+        List<MarketData> result = new ArrayList<>();
+        MarketDataService mdService = this.beansContainer.getBean(MarketDataService.class);
+        MarketDataProducerFactory ctpFactory = mdService.getProducerFactories().get(tickDataInfo.provider());
+        MarketDataProducer mdProducer = ctpFactory.create(beansContainer, null);
+        CSVMarshallHelper csvMarshallHelper = ctpFactory.createCSVMarshallHelper();
+        try(MarketDataCursor cursor = data.openTicks(instrument, tickDataInfo, tradingDay, mdProducer, csvMarshallHelper);){
+            MarketData md = null;
+            while( (md=cursor.next())!=null ) {
+                result.add(md);
+            }
+        }
+        return result;
+    }
+
     /**
      * 加载数据
      */
@@ -172,17 +233,17 @@ public class BarSeriesLoader {
             endTradingDay = LocalDate.now();
         }
         loadedDates.clear();
+        resolvedLevel = level;
         if ( level==PriceLevel.DAY ) {
             return loadDaySeries();
         }
         LinkedList<FutureBar> bars = new LinkedList<>();
-        resolvedLevel = level;
 
         if ( level.name().startsWith(PriceLevel.LEVEL_MIN)) { //基于时间切分BAR
             LocalDate tradingDay = endTradingDay;
             //从后向前
             while(tradingDay.compareTo(startTradingDay)>=0) {
-                if (data.exists(instrument, ExchangeableData.MIN1, tradingDay)) {
+                if ( !min1BarsByDay.containsKey(tradingDay) && data.exists(instrument, ExchangeableData.MIN1, tradingDay)) {
                     List<FutureBar> dayMin1Bars = loadMin1Bars(tradingDay);
                     min1BarsByDay.put(tradingDay, dayMin1Bars);
                 }
@@ -212,7 +273,7 @@ public class BarSeriesLoader {
             }
         }
         //转换Bar为TimeSeries
-        BaseLeveledBarSeries result = new BaseLeveledBarSeries(instrument, instrument.name()+"-"+resolvedLevel, resolvedLevel, LongNum::valueOf);
+        LeveledBarSeries result = createSeries();
         for(int i=0;i<bars.size();i++) {
             Bar bar = bars.get(i);
             result.addBar(bar);
@@ -307,7 +368,7 @@ public class BarSeriesLoader {
         ExchangeableTradingTimes tradingTimes = instrument.exchange().getTradingTimes(instrument, tradingDay);
         for(int i=0;i<marketDatas.size();i++) {
             MarketData md = marketDatas.get(i);
-            if ( tradingTimes.getTimeStage(md.updateTime)!=MarketTimeStage.MarketOpen ) {
+            if ( tradingTimes.getTimeStage(md.getUpdateTime())!=MarketTimeStage.MarketOpen ) {
                 continue;
             }
             if ( resolveVolDaily ) { //如果有必要, 每天动态修正volDaily为实际的值
@@ -317,24 +378,34 @@ public class BarSeriesLoader {
                 resolvedLevel = level;
             }
             if ( currBar!=null && currBar.getVolume().doubleValue()<level.value() ) {
-                currBar.update(md, md.updateTime);
+                currBar.update(md, md.getUpdateTime());
                 continue;
             }
             MarketData mdBegin = md;
             if (i>0) {
                 mdBegin = marketDatas.get(i-1);
             }
-            currBar = FutureBar.fromTicks(currIndex++, tradingTimes, DateUtil.round(mdBegin.updateTime), mdBegin, md, md.lastPrice, md.lastPrice);
+            currBar = FutureBar.fromTicks(currIndex++, tradingTimes, DateUtil.round(mdBegin.getUpdateTime()), mdBegin, md, md.lastPrice, md.lastPrice);
             result.add(currBar);
         }
         return result;
     }
 
     private List<MarketData> loadMarketData(LocalDate tradingDay) throws IOException {
-        List<MarketData> marketDatas = new ArrayList<>();
+        List<MarketData> marketDatas = ticksByDay.get(tradingDay);
+        if ( marketDatas!=null ) {
+            return marketDatas;
+        }
+        marketDatas = new ArrayList<>();
         if ( instrument.getType()==ExchangeableType.FUTURE ) {
-            marketDatas = loadMarketDataTicks(tradingDay, ExchangeableData.TICK_CTP);
+            //优先使用列式二进制格式, 原始数据更新后二进制文件过期
+            if ( data.existsTicks(instrument, ExchangeableData.TICK_CTP, tradingDay) ) {
+                marketDatas = loadMarketDataTicks(tradingDay, ExchangeableData.TICK_BIN);
+            } else {
+                marketDatas = loadMarketDataTicks(tradingDay, ExchangeableData.TICK_CTP);
+            }
         }
+        ticksByDay.put(tradingDay, marketDatas);
         return marketDatas;
     }
 
@@ -343,7 +414,7 @@ public class BarSeriesLoader {
      */
     private LeveledBarSeries loadDaySeries() throws IOException
     {
-        BaseLeveledBarSeries result = new BaseLeveledBarSeries(instrument, instrument.name()+"-"+resolvedLevel, resolvedLevel, LongNum::valueOf);
+        LeveledBarSeries result = createSeries();
         if ( !data.exists(instrument, ExchangeableData.DAY, null)) {
             return result;
         }
@@ -365,6 +436,13 @@ public class BarSeriesLoader {
         return result;
     }
 
+    private LeveledBarSeries createSeries() {
+        if ( columnar ) {
+            return new ColumnLeveledBarSeries(instrument, instrument.name()+"-"+resolvedLevel, resolvedLevel, LongNum::valueOf);
+        }
+        return new BaseLeveledBarSeries(instrument, instrument.name()+"-"+resolvedLevel, resolvedLevel, LongNum::valueOf);
+    }
+
     /**
      * 将原始CTP TICK转为MIN1 Bar
      */
@@ -378,17 +456,17 @@ public class BarSeriesLoader {
         List<MarketData> barTicks = new ArrayList<>();
         for(int i=0;i<ticks.size();i++) {
             MarketData currTick = ticks.get(i);
-            if ( tradingTimes.getTimeStage(currTick.updateTime)!=MarketTimeStage.MarketOpen ) {
+            if ( tradingTimes.getTimeStage(currTick.getUpdateTime())!=MarketTimeStage.MarketOpen ) {
                 continue;
             }
-            int currTickIndex = getBarIndex(tradingTimes, level, currTick.updateTime);
+            int currTickIndex = getBarIndex(tradingTimes, level, currTick.getUpdateTime());
             if ( currTickIndex<0 ) {
                 continue;
             }
             if ( currTickIndex!=barIndex ) {
                 if ( barTicks.size()>0 ) {
-                    LocalDateTime[] barTimes = getBarTimes(tradingTimes, level, barIndex, barTicks.get(0).updateTime);
-                    if ( currTick.updateTime.equals(barTimes[1])) {
+                    LocalDateTime[] barTimes = getBarTimes(tradingTimes, level, barIndex, barTicks.get(0).getUpdateTime());
+                    if ( currTick.getUpdateTime().equals(barTimes[1])) {
                         barTicks.add(currTick);
                     }
                     //创建新的Bar
@@ -400,7 +478,7 @@ public class BarSeriesLoader {
             barTicks.add(currTick);
         }
         if ( barTicks.size()>0 ) {
-            LocalDateTime[] barTimes = getBarTimes(tradingTimes, level, barIndex, barTicks.get(0).updateTime);
+            LocalDateTime[] barTimes = getBarTimes(tradingTimes, level, barIndex, barTicks.get(0).getUpdateTime());
             result.add( createBarFromTicks(tradingTimes, barTimes, barTicks, barIndex) );
         }
         return result;
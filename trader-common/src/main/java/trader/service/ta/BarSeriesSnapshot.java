@@ -0,0 +1,173 @@
+package trader.service.ta;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import trader.common.exchangeable.Exchangeable;
+import trader.common.tick.PriceLevel;
+import trader.common.util.DateUtil;
+
+/**
+ * 某个品种某个级别的KBar历史数据快照, 只包含已经完成的交易日.
+ * <BR>文件格式:
+ * <pre>
+ * int magic, short version, short levelLength, byte[] level
+ * long configHash, long dataFingerprint
+ * short dayCount, int[dayCount] tradingDays(yyyymmdd, 升序)
+ * int barCount, barCount*FutureBar.SNAPSHOT_BYTES
+ * </pre>
+ * 解码时只读取文件头, KBar在getBars()时才从ByteBuffer(可以是MappedByteBuffer)中解码.
+ */
+public class BarSeriesSnapshot {
+
+    public static final int MAGIC = 0X42535331; //BSS1
+    public static final short VERSION = 1;
+
+    private Exchangeable instrument;
+    private PriceLevel level;
+    private long configHash;
+    private long dataFingerprint;
+    private List<LocalDate> tradingDays;
+    private List<FutureBar> bars;
+    private ByteBuffer buf;
+    private int barCount;
+    private int barsPos;
+
+    public BarSeriesSnapshot(Exchangeable instrument, PriceLevel level, long configHash, long dataFingerprint, List<LocalDate> tradingDays, List<FutureBar> bars) {
+        this.instrument = instrument;
+        this.level = level;
+        this.configHash = configHash;
+        this.dataFingerprint = dataFingerprint;
+        this.tradingDays = tradingDays;
+        this.bars = bars;
+        this.barCount = bars.size();
+    }
+
+    private BarSeriesSnapshot(Exchangeable instrument, PriceLevel level, long configHash, long dataFingerprint, List<LocalDate> tradingDays, ByteBuffer buf, int barsPos, int barCount) {
+        this.instrument = instrument;
+        this.level = level;
+        this.configHash = configHash;
+        this.dataFingerprint = dataFingerprint;
+        this.tradingDays = tradingDays;
+        this.buf = buf;
+        this.barsPos = barsPos;
+        this.barCount = barCount;
+    }
+
+    public Exchangeable getInstrument() {
+        return instrument;
+    }
+
+    public PriceLevel getLevel() {
+        return level;
+    }
+
+    /**
+     * 创建快照时的品种配置
+     */
+    public long getConfigHash() {
+        return configHash;
+    }
+
+    /**
+     * 创建快照时的原始数据指纹
+     */
+    public long getDataFingerprint() {
+        return dataFingerprint;
+    }
+
+    /**
+     * 快照包含的交易日, 升序
+     */
+    public List<LocalDate> getTradingDays(){
+        return Collections.unmodifiableList(tradingDays);
+    }
+
+    public LocalDate getFirstTradingDay() {
+        return tradingDays.get(0);
+    }
+
+    public LocalDate getLastTradingDay() {
+        return tradingDays.get(tradingDays.size()-1);
+    }
+
+    public int getBarCount() {
+        return barCount;
+    }
+
+    public List<FutureBar> getBars(){
+        if ( bars==null ) {
+            List<FutureBar> result = new ArrayList<>(barCount);
+            for(int i=0;i<barCount;i++) {
+                result.add(FutureBar.fromSnapshot(instrument, buf, barsPos+i*FutureBar.SNAPSHOT_BYTES));
+            }
+            bars = result;
+            buf = null;
+        }
+        return bars;
+    }
+
+    public ByteBuffer encode() {
+        byte[] levelBytes = level.name().getBytes(StandardCharsets.UTF_8);
+        List<FutureBar> bars = getBars();
+        int totalLen = 4+2+2+levelBytes.length+8+8+2+4*tradingDays.size()+4+bars.size()*FutureBar.SNAPSHOT_BYTES;
+        ByteBuffer result = ByteBuffer.allocate(totalLen);
+        result.putInt(MAGIC);
+        result.putShort(VERSION);
+        result.putShort((short)levelBytes.length);
+        result.put(levelBytes);
+        result.putLong(configHash);
+        result.putLong(dataFingerprint);
+        result.putShort((short)tradingDays.size());
+        for(LocalDate tradingDay:tradingDays) {
+            result.putInt(Integer.parseInt(DateUtil.date2str(tradingDay)));
+        }
+        result.putInt(bars.size());
+        for(FutureBar bar:bars) {
+            bar.writeSnapshot(result);
+        }
+        result.flip();
+        return result;
+    }
+
+    /**
+     * 解码快照文件头, 不修改buf的position
+     */
+    public static BarSeriesSnapshot decode(Exchangeable instrument, ByteBuffer buf) throws IOException {
+        int pos = buf.position();
+        if ( buf.getInt(pos)!=MAGIC ) {
+            throw new IOException("Invalid bar series snapshot of "+instrument);
+        }
+        pos += 4;
+        short version = buf.getShort(pos); pos+=2;
+        if ( version!=VERSION ) {
+            throw new IOException("Unsupported bar series snapshot version "+version+" of "+instrument);
+        }
+        byte[] levelBytes = new byte[buf.getShort(pos)]; pos+=2;
+        for(int i=0;i<levelBytes.length;i++) {
+            levelBytes[i] = buf.get(pos++);
+        }
+        PriceLevel level = PriceLevel.valueOf(new String(levelBytes, StandardCharsets.UTF_8));
+        long configHash = buf.getLong(pos); pos+=8;
+        long dataFingerprint = buf.getLong(pos); pos+=8;
+        int dayCount = buf.getShort(pos); pos+=2;
+        if ( dayCount<=0 ) {
+            throw new IOException("Invalid bar series snapshot trading days of "+instrument);
+        }
+        List<LocalDate> tradingDays = new ArrayList<>(dayCount);
+        for(int i=0;i<dayCount;i++) {
+            tradingDays.add(DateUtil.str2localdate(Integer.toString(buf.getInt(pos)))); pos+=4;
+        }
+        int barCount = buf.getInt(pos); pos+=4;
+        if ( buf.limit()-pos<barCount*FutureBar.SNAPSHOT_BYTES ) {
+            throw new IOException("Truncated bar series snapshot of "+instrument);
+        }
+        return new BarSeriesSnapshot(instrument, level, configHash, dataFingerprint, tradingDays, buf, pos, barCount);
+    }
+
+}
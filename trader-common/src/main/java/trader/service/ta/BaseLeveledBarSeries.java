@@ -22,6 +22,19 @@ public class BaseLeveledBarSeries extends BaseBarSeries implements LeveledBarSer
 
     private static final long serialVersionUID = 2904300939512922674L;
 
+    private static Field fldBars;
+    private static Field fldSeriesEndIndex;
+    static {
+        try {
+            fldBars = BaseBarSeries.class.getDeclaredField("bars");
+            fldBars.setAccessible(true);
+            fldSeriesEndIndex = BaseBarSeries.class.getDeclaredField("seriesEndIndex");
+            fldSeriesEndIndex.setAccessible(true);
+        }catch(Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
     private Exchangeable instrument;
 
     private PriceLevel level;
@@ -53,11 +66,6 @@ public class BaseLeveledBarSeries extends BaseBarSeries implements LeveledBarSer
         }
         Bar result = getLastBar();
         try {
-            Field fldBars = getClass().getSuperclass().getDeclaredField("bars");
-            fldBars.setAccessible(true);
-            Field fldSeriesEndIndex = getClass().getSuperclass().getDeclaredField("seriesEndIndex");
-            fldSeriesEndIndex.setAccessible(true);
-
             List<Bar> bars = (List<Bar>) fldBars.get(this);
             bars.remove(bars.size()-1);
             int val = fldSeriesEndIndex.getInt(this);
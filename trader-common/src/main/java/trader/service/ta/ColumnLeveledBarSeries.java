@@ -0,0 +1,760 @@
+package trader.service.ta;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.ref.Cleaner;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.ta4j.core.Bar;
+import org.ta4j.core.BarSeries;
+import org.ta4j.core.num.Num;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import trader.common.exchangeable.Exchangeable;
+import trader.common.exchangeable.ExchangeableTradingTimes;
+import trader.common.tick.PriceLevel;
+import trader.common.util.DateUtil;
+import trader.common.util.JsonEnabled;
+import trader.common.util.PriceUtil;
+import trader.service.md.MarketData;
+
+/**
+ * 使用原始类型数组按列保存的KBAR序列.
+ * <BR>开高低收/成交量/金额/持仓/时间等保存在并行的long[]中, 按需创建轻量的Bar2视图, 不保存Bar对象.
+ * <BR>getSubSeries返回共享数据的只读视图, 不复制数据. 原始序列删除或替换KBAR后, 已有的视图会看到变化.
+ * <BR>适用于历史数据等只追加的场景; 加入后被修改的KBAR(例如FutureBarBuilder的最后一个KBAR)需要重新addBar(bar, true)
+ * <BR>序列化时只保存列数据, 反序列化后numFunction为LongNum::valueOf
+ */
+public class ColumnLeveledBarSeries implements LeveledBarSeries, JsonEnabled {
+
+    private static final long serialVersionUID = -3516470135402954102L;
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * 通过addBar(timePeriod, endTime)加入的空KBAR, 价格未设置
+     */
+    private static final long NO_PRICE = Long.MIN_VALUE;
+
+    /**
+     * 每个KBAR占用的字节数: 11个long列, 2个int列
+     */
+    public static final int BYTES_PER_BAR = 11*8+2*4;
+
+    private static final Cleaner cleaner = Cleaner.create();
+
+    /**
+     * 内存占用统计, Key: 合约-级别
+     */
+    private static final Map<String, AtomicLong> memoryUsages = new ConcurrentHashMap<>();
+
+    /**
+     * 按列保存的数据, 在序列和它的视图之间共享
+     */
+    private static class Columns {
+        long[] opens;
+        long[] highs;
+        long[] lows;
+        long[] closes;
+        long[] volumes;
+        long[] amounts;
+        long[] openInts;
+        long[] avgPrices;
+        long[] mktAvgPrices;
+        long[] beginTimes;
+        long[] endTimes;
+        int[] indices;
+        int[] tradingDays;
+        int size;
+        final MemoryCounter memoryCounter;
+
+        Columns(String memoryKey) {
+            memoryCounter = new MemoryCounter(memoryKey);
+            cleaner.register(this, memoryCounter);
+            allocate(INITIAL_CAPACITY);
+        }
+
+        void ensureCapacity(int capacity) {
+            if ( capacity>opens.length ) {
+                allocate(Math.max(capacity, opens.length*2));
+            }
+        }
+
+        private void allocate(int capacity) {
+            if ( opens==null ) {
+                opens = new long[capacity]; highs = new long[capacity]; lows = new long[capacity]; closes = new long[capacity];
+                volumes = new long[capacity]; amounts = new long[capacity]; openInts = new long[capacity];
+                avgPrices = new long[capacity]; mktAvgPrices = new long[capacity];
+                beginTimes = new long[capacity]; endTimes = new long[capacity];
+                indices = new int[capacity]; tradingDays = new int[capacity];
+            } else {
+                opens = Arrays.copyOf(opens, capacity); highs = Arrays.copyOf(highs, capacity); lows = Arrays.copyOf(lows, capacity); closes = Arrays.copyOf(closes, capacity);
+                volumes = Arrays.copyOf(volumes, capacity); amounts = Arrays.copyOf(amounts, capacity); openInts = Arrays.copyOf(openInts, capacity);
+                avgPrices = Arrays.copyOf(avgPrices, capacity); mktAvgPrices = Arrays.copyOf(mktAvgPrices, capacity);
+                beginTimes = Arrays.copyOf(beginTimes, capacity); endTimes = Arrays.copyOf(endTimes, capacity);
+                indices = Arrays.copyOf(indices, capacity); tradingDays = Arrays.copyOf(tradingDays, capacity);
+            }
+            memoryCounter.setBytes(((long)capacity)*BYTES_PER_BAR);
+        }
+
+        /**
+         * 删除最前面的count个KBAR
+         */
+        void removeFirst(int count) {
+            int remain = size-count;
+            System.arraycopy(opens, count, opens, 0, remain);
+            System.arraycopy(highs, count, highs, 0, remain);
+            System.arraycopy(lows, count, lows, 0, remain);
+            System.arraycopy(closes, count, closes, 0, remain);
+            System.arraycopy(volumes, count, volumes, 0, remain);
+            System.arraycopy(amounts, count, amounts, 0, remain);
+            System.arraycopy(openInts, count, openInts, 0, remain);
+            System.arraycopy(avgPrices, count, avgPrices, 0, remain);
+            System.arraycopy(mktAvgPrices, count, mktAvgPrices, 0, remain);
+            System.arraycopy(beginTimes, count, beginTimes, 0, remain);
+            System.arraycopy(endTimes, count, endTimes, 0, remain);
+            System.arraycopy(indices, count, indices, 0, remain);
+            System.arraycopy(tradingDays, count, tradingDays, 0, remain);
+            size = remain;
+        }
+
+        void write(ObjectOutputStream out, int from, int count) throws IOException {
+            out.writeInt(count);
+            out.writeObject(Arrays.copyOfRange(opens, from, from+count));
+            out.writeObject(Arrays.copyOfRange(highs, from, from+count));
+            out.writeObject(Arrays.copyOfRange(lows, from, from+count));
+            out.writeObject(Arrays.copyOfRange(closes, from, from+count));
+            out.writeObject(Arrays.copyOfRange(volumes, from, from+count));
+            out.writeObject(Arrays.copyOfRange(amounts, from, from+count));
+            out.writeObject(Arrays.copyOfRange(openInts, from, from+count));
+            out.writeObject(Arrays.copyOfRange(avgPrices, from, from+count));
+            out.writeObject(Arrays.copyOfRange(mktAvgPrices, from, from+count));
+            out.writeObject(Arrays.copyOfRange(beginTimes, from, from+count));
+            out.writeObject(Arrays.copyOfRange(endTimes, from, from+count));
+            out.writeObject(Arrays.copyOfRange(indices, from, from+count));
+            out.writeObject(Arrays.copyOfRange(tradingDays, from, from+count));
+        }
+
+        void read(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            int count = in.readInt();
+            opens = (long[])in.readObject();
+            highs = (long[])in.readObject();
+            lows = (long[])in.readObject();
+            closes = (long[])in.readObject();
+            volumes = (long[])in.readObject();
+            amounts = (long[])in.readObject();
+            openInts = (long[])in.readObject();
+            avgPrices = (long[])in.readObject();
+            mktAvgPrices = (long[])in.readObject();
+            beginTimes = (long[])in.readObject();
+            endTimes = (long[])in.readObject();
+            indices = (int[])in.readObject();
+            tradingDays = (int[])in.readObject();
+            size = count;
+            allocate(Math.max(count, INITIAL_CAPACITY));
+        }
+    }
+
+    /**
+     * 记录一个Columns占用的内存, Columns被回收后从统计中扣除
+     */
+    private static class MemoryCounter implements Runnable {
+        private final AtomicLong usage;
+        private long bytes;
+
+        MemoryCounter(String memoryKey) {
+            usage = memoryUsages.computeIfAbsent(memoryKey, (String key)->{
+                return new AtomicLong();
+            });
+        }
+
+        synchronized void setBytes(long bytes) {
+            usage.addAndGet(bytes-this.bytes);
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void run() {
+            setBytes(0);
+        }
+    }
+
+    /**
+     * 一个KBAR的轻量视图, 所有数值从列中实时读取
+     */
+    private class ColumnBar implements Bar2 {
+        private static final long serialVersionUID = 4785193634302851625L;
+
+        private final int pos;
+
+        ColumnBar(int pos) {
+            this.pos = pos;
+        }
+
+        @Override
+        public ExchangeableTradingTimes getTradingTimes() {
+            return instrument.exchange().getTradingTimes(instrument, LocalDate.ofEpochDay(columns.tradingDays[pos]));
+        }
+
+        @Override
+        public int getIndex() {
+            return columns.indices[pos];
+        }
+
+        @Override
+        public Num getOpenPrice() {
+            return price2num(columns.opens[pos]);
+        }
+
+        @Override
+        public Num getLowPrice() {
+            return price2num(columns.lows[pos]);
+        }
+
+        @Override
+        public Num getHighPrice() {
+            return price2num(columns.highs[pos]);
+        }
+
+        @Override
+        public Num getClosePrice() {
+            return price2num(columns.closes[pos]);
+        }
+
+        @Override
+        public Num getVolume() {
+            return LongNum.fromRawValue(columns.volumes[pos]);
+        }
+
+        @Override
+        public int getTrades() {
+            return -1;
+        }
+
+        @Override
+        public Num getAmount() {
+            return LongNum.fromRawValue(columns.amounts[pos]);
+        }
+
+        @Override
+        public Duration getTimePeriod() {
+            return Duration.ofMillis(columns.endTimes[pos]-columns.beginTimes[pos]);
+        }
+
+        @Override
+        public ZonedDateTime getBeginTime() {
+            return Instant.ofEpochMilli(columns.beginTimes[pos]).atZone(zoneId);
+        }
+
+        @Override
+        public ZonedDateTime getEndTime() {
+            return Instant.ofEpochMilli(columns.endTimes[pos]).atZone(zoneId);
+        }
+
+        @Override
+        public void addTrade(Num tradeVolume, Num tradePrice) {
+            ColumnLeveledBarSeries.this.addTrade(pos, tradeVolume, tradePrice);
+        }
+
+        @Override
+        public void addPrice(Num price) {
+            ColumnLeveledBarSeries.this.addPrice(pos, price);
+        }
+
+        @Override
+        public Num getAvgPrice() {
+            return LongNum.fromRawValue(columns.avgPrices[pos]);
+        }
+
+        @Override
+        public Num getMktAvgPrice() {
+            return LongNum.fromRawValue(columns.mktAvgPrices[pos]);
+        }
+
+        @Override
+        public long getOpenInterest() {
+            return columns.openInts[pos];
+        }
+
+        @Override
+        public MarketData getOpenTick() {
+            return null;
+        }
+
+        @Override
+        public MarketData getCloseTick() {
+            return null;
+        }
+
+        @Override
+        public MarketData getMaxTick() {
+            return null;
+        }
+
+        @Override
+        public MarketData getMinTick() {
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("{END: %1s, O: %3$6.2f, C: %2$6.2f, L: %4$6.2f, H: %5$6.2f, V: %6$d, OI: %7$d}",
+                    DateUtil.date2str(getEndTime().toLocalDateTime()), getOpenPrice().doubleValue(), getClosePrice().doubleValue(), getLowPrice().doubleValue(), getHighPrice().doubleValue(), getVolume().longValue(), getOpenInterest());
+        }
+    }
+
+    private transient Exchangeable instrument;
+    private transient String name;
+    private transient PriceLevel level;
+    private transient Function<Number, Num> numFunction;
+    private transient ZoneId zoneId;
+    private transient Columns columns;
+    /**
+     * 在columns中的开始位置, 视图不为0
+     */
+    private transient int offset;
+    /**
+     * 视图的KBAR数量, -1代表不是视图, 数量为columns.size
+     */
+    private transient int viewSize = -1;
+    private transient int maximumBarCount = Integer.MAX_VALUE;
+    /**
+     * 超过maximumBarCount被删除的KBAR数量, 与BaseBarSeries相同, KBAR序号从这个值开始
+     */
+    private transient int removedBarsCount;
+
+    public ColumnLeveledBarSeries(Exchangeable instrument, String name, PriceLevel level, Function<Number, Num> numFunction) {
+        this.instrument = instrument;
+        this.name = name;
+        this.level = level;
+        this.numFunction = numFunction;
+        this.zoneId = instrument.exchange().getZoneId();
+        this.columns = new Columns(instrument.uniqueId()+"-"+level);
+    }
+
+    private ColumnLeveledBarSeries(ColumnLeveledBarSeries series, int offset, int viewSize) {
+        this.instrument = series.instrument;
+        this.name = series.name;
+        this.level = series.level;
+        this.numFunction = series.numFunction;
+        this.zoneId = series.zoneId;
+        this.columns = series.columns;
+        this.offset = offset;
+        this.viewSize = viewSize;
+    }
+
+    /**
+     * 从已有的序列复制数据
+     */
+    public static ColumnLeveledBarSeries fromSeries(LeveledBarSeries series) {
+        ColumnLeveledBarSeries result = new ColumnLeveledBarSeries(series.getExchangeable(), series.getName(), series.getLevel(), series.function());
+        result.columns.ensureCapacity(series.getBarCount());
+        for(int i=series.getBeginIndex(); i<=series.getEndIndex(); i++) {
+            result.addBar(series.getBar(i));
+        }
+        return result;
+    }
+
+    /**
+     * 返回全部KBAR序列的内存占用(字节), Key: 合约-级别
+     */
+    public static Map<String, Long> getMemoryUsages(){
+        Map<String, Long> result = new TreeMap<>();
+        for(Map.Entry<String, AtomicLong> entry:memoryUsages.entrySet()) {
+            long bytes = entry.getValue().get();
+            if ( bytes>0 ) {
+                result.put(entry.getKey(), bytes);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Exchangeable getExchangeable() {
+        return instrument;
+    }
+
+    @Override
+    public PriceLevel getLevel() {
+        return level;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Bar2 getBar2(int i) {
+        return (Bar2)getBar(i);
+    }
+
+    /**
+     * 与BaseBarSeries相同, 已删除的KBAR序号返回第一个KBAR
+     */
+    @Override
+    public Bar getBar(int i) {
+        int innerIndex = i-removedBarsCount;
+        if ( i>=0 && innerIndex<0 ) {
+            innerIndex = 0;
+        }
+        if ( innerIndex<0 || innerIndex>=getBarCount() ) {
+            throw new IndexOutOfBoundsException("Bar index "+i+" out of range ["+removedBarsCount+", "+(removedBarsCount+getBarCount())+")");
+        }
+        return new ColumnBar(offset+innerIndex);
+    }
+
+    @Override
+    public int getBarCount() {
+        if ( viewSize>=0 ) {
+            return viewSize;
+        }
+        return columns.size;
+    }
+
+    @Override
+    public List<Bar> getBarData() {
+        return new AbstractList<Bar>() {
+            @Override
+            public Bar get(int index) {
+                return getBar(index);
+            }
+
+            @Override
+            public int size() {
+                return getBarCount();
+            }
+        };
+    }
+
+    @Override
+    public int getBeginIndex() {
+        return getBarCount()>0?removedBarsCount:-1;
+    }
+
+    @Override
+    public int getEndIndex() {
+        return getBarCount()>0?removedBarsCount+getBarCount()-1:-1;
+    }
+
+    @Override
+    public int getMaximumBarCount() {
+        return maximumBarCount;
+    }
+
+    /**
+     * 超过最大数量时删除最前面的KBAR, 已有的视图会看到变化
+     */
+    @Override
+    public void setMaximumBarCount(int maximumBarCount) {
+        checkWritable();
+        if ( maximumBarCount<=0 ) {
+            throw new IllegalArgumentException("Maximum bar count must be strictly positive");
+        }
+        this.maximumBarCount = maximumBarCount;
+        removeExceedingBars();
+    }
+
+    @Override
+    public int getRemovedBarsCount() {
+        return removedBarsCount;
+    }
+
+    /**
+     * 追加KBAR, replace=true时替换最后一个KBAR
+     */
+    @Override
+    public void addBar(Bar bar, boolean replace) {
+        checkWritable();
+        Columns columns = this.columns;
+        if ( replace && columns.size>0 ) {
+            columns.size--;
+        }
+        int pos = columns.size;
+        columns.ensureCapacity(pos+1);
+        columns.opens[pos] = raw(bar.getOpenPrice());
+        columns.highs[pos] = raw(bar.getHighPrice());
+        columns.lows[pos] = raw(bar.getLowPrice());
+        columns.closes[pos] = raw(bar.getClosePrice());
+        columns.volumes[pos] = raw(bar.getVolume());
+        columns.amounts[pos] = raw(bar.getAmount());
+        columns.beginTimes[pos] = bar.getBeginTime().toInstant().toEpochMilli();
+        columns.endTimes[pos] = bar.getEndTime().toInstant().toEpochMilli();
+        LocalDate tradingDay = bar.getEndTime().toLocalDate();
+        if ( bar instanceof Bar2 ) {
+            Bar2 bar2 = (Bar2)bar;
+            columns.openInts[pos] = bar2.getOpenInterest();
+            columns.avgPrices[pos] = raw(bar2.getAvgPrice());
+            columns.mktAvgPrices[pos] = raw(bar2.getMktAvgPrice());
+            columns.indices[pos] = bar2.getIndex();
+            ExchangeableTradingTimes tradingTimes = bar2.getTradingTimes();
+            if ( tradingTimes!=null ) {
+                tradingDay = tradingTimes.getTradingDay();
+            }
+        } else {
+            columns.openInts[pos] = 0;
+            columns.avgPrices[pos] = columns.closes[pos];
+            columns.mktAvgPrices[pos] = columns.closes[pos];
+            columns.indices[pos] = removedBarsCount+pos;
+        }
+        columns.tradingDays[pos] = (int)tradingDay.toEpochDay();
+        columns.size = pos+1;
+        removeExceedingBars();
+    }
+
+    /**
+     * 追加价格未设置的KBAR, 之后通过addPrice/addTrade更新
+     */
+    public void addBar(Duration timePeriod, ZonedDateTime endTime) {
+        addBar(endTime.minus(timePeriod), endTime, NO_PRICE, NO_PRICE, NO_PRICE, NO_PRICE, 0, 0);
+    }
+
+    /**
+     * 与BaseBarSeries相同, 时间长度为1天
+     */
+    public void addBar(ZonedDateTime endTime, Num openPrice, Num highPrice, Num lowPrice, Num closePrice, Num volume, Num amount) {
+        addBar(Duration.ofDays(1), endTime, openPrice, highPrice, lowPrice, closePrice, volume, amount);
+    }
+
+    public void addBar(Duration timePeriod, ZonedDateTime endTime, Num openPrice, Num highPrice, Num lowPrice, Num closePrice, Num volume) {
+        addBar(timePeriod, endTime, openPrice, highPrice, lowPrice, closePrice, volume, null);
+    }
+
+    public void addBar(Duration timePeriod, ZonedDateTime endTime, Num openPrice, Num highPrice, Num lowPrice, Num closePrice, Num volume, Num amount) {
+        addBar(endTime.minus(timePeriod), endTime, raw(openPrice), raw(highPrice), raw(lowPrice), raw(closePrice), raw(volume), raw(amount));
+    }
+
+    private void addBar(ZonedDateTime beginTime, ZonedDateTime endTime, long open, long high, long low, long close, long volume, long amount) {
+        checkWritable();
+        Columns columns = this.columns;
+        int pos = columns.size;
+        columns.ensureCapacity(pos+1);
+        columns.opens[pos] = open;
+        columns.highs[pos] = high;
+        columns.lows[pos] = low;
+        columns.closes[pos] = close;
+        columns.volumes[pos] = volume;
+        columns.amounts[pos] = amount;
+        columns.beginTimes[pos] = beginTime.toInstant().toEpochMilli();
+        columns.endTimes[pos] = endTime.toInstant().toEpochMilli();
+        columns.openInts[pos] = 0;
+        columns.avgPrices[pos] = close;
+        columns.mktAvgPrices[pos] = close;
+        columns.indices[pos] = removedBarsCount+pos;
+        columns.tradingDays[pos] = (int)endTime.toLocalDate().toEpochDay();
+        columns.size = pos+1;
+        removeExceedingBars();
+    }
+
+    /**
+     * 更新最后一个KBAR的成交量, 金额和价格
+     */
+    @Override
+    public void addTrade(Num tradeVolume, Num tradePrice) {
+        addTrade(offset+lastPos(), tradeVolume, tradePrice);
+    }
+
+    /**
+     * 更新最后一个KBAR的价格
+     */
+    @Override
+    public void addPrice(Num price) {
+        addPrice(offset+lastPos(), price);
+    }
+
+    private void addTrade(int pos, Num tradeVolume, Num tradePrice) {
+        checkWritable();
+        Columns columns = this.columns;
+        columns.volumes[pos] += raw(tradeVolume);
+        columns.amounts[pos] += raw(tradeVolume.multipliedBy(tradePrice));
+        addPrice(pos, tradePrice);
+    }
+
+    /**
+     * 与BaseBar.addPrice相同: 未设置开盘价时设置开盘价, 更新收盘价和最高最低价
+     */
+    private void addPrice(int pos, Num price) {
+        checkWritable();
+        Columns columns = this.columns;
+        long p = raw(price);
+        if ( columns.opens[pos]==NO_PRICE ) {
+            columns.opens[pos] = p;
+        }
+        columns.closes[pos] = p;
+        if ( columns.highs[pos]==NO_PRICE || columns.highs[pos]<p ) {
+            columns.highs[pos] = p;
+        }
+        if ( columns.lows[pos]==NO_PRICE || columns.lows[pos]>p ) {
+            columns.lows[pos] = p;
+        }
+        columns.avgPrices[pos] = p;
+        columns.mktAvgPrices[pos] = p;
+    }
+
+    private int lastPos() {
+        int barCount = getBarCount();
+        if ( barCount<=0 ) {
+            throw new IndexOutOfBoundsException("Bar series is empty");
+        }
+        return barCount-1;
+    }
+
+    public Bar removeLastBar() {
+        checkWritable();
+        if ( columns.size<=0 ) {
+            return null;
+        }
+        Bar result = getLastBar();
+        columns.size--;
+        return result;
+    }
+
+    private void removeExceedingBars() {
+        int exceeding = columns.size-maximumBarCount;
+        if ( exceeding>0 ) {
+            columns.removeFirst(exceeding);
+            removedBarsCount += exceeding;
+        }
+    }
+
+    /**
+     * 返回共享数据的只读视图
+     */
+    @Override
+    public BarSeries getSubSeries(int startIndex, int endIndex) {
+        if(startIndex > endIndex){
+            throw new IllegalArgumentException
+                    (String.format("the endIndex: %s must be bigger than startIndex: %s", endIndex, startIndex));
+        }
+        int start = Math.max(startIndex-removedBarsCount, 0);
+        int end = Math.min(endIndex-removedBarsCount, getBarCount());
+        return new ColumnLeveledBarSeries(this, offset+start, Math.max(0, end-start));
+    }
+
+    @Override
+    public Num numOf(Number number) {
+        return numFunction.apply(number);
+    }
+
+    @Override
+    public Function<Number, Num> function() {
+        return numFunction;
+    }
+
+    /**
+     * 当前序列占用的内存(字节), 视图与原始序列共享
+     */
+    public long getMemoryUsage() {
+        return ((long)columns.opens.length)*BYTES_PER_BAR;
+    }
+
+    /**
+     * 直接从列数据生成JSON, 格式与BaseLeveledBarSeries相同
+     */
+    @Override
+    public JsonElement toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("instrument", instrument.uniqueId());
+        json.addProperty("level", level.toString());
+        json.addProperty("name", getName());
+        JsonArray array = new JsonArray();
+        Columns columns = this.columns;
+        int barCount = getBarCount();
+        for(int i=0;i<barCount; i++) {
+            int pos = offset+i;
+            JsonObject barJson = new JsonObject();
+            barJson.addProperty("index", columns.indices[pos]);
+            barJson.addProperty("tradingDay", DateUtil.date2str(LocalDate.ofEpochDay(columns.tradingDays[pos])));
+            barJson.addProperty("open", price2str(columns.opens[pos]));
+            barJson.addProperty("close", price2str(columns.closes[pos]));
+            barJson.addProperty("max", price2str(columns.highs[pos]));
+            barJson.addProperty("min", price2str(columns.lows[pos]));
+            barJson.addProperty("volume", PriceUtil.long2str(columns.volumes[pos]));
+            barJson.addProperty("turnover", PriceUtil.long2str(columns.amounts[pos]));
+            barJson.addProperty("avgPrice", PriceUtil.long2str(columns.avgPrices[pos]));
+            barJson.addProperty("beginTime", DateUtil.date2str(DateUtil.long2datetime(zoneId, columns.beginTimes[pos])));
+            barJson.addProperty("endTime", DateUtil.date2str(DateUtil.long2datetime(zoneId, columns.endTimes[pos])));
+            barJson.addProperty("duration", (columns.endTimes[pos]-columns.beginTimes[pos])/1000);
+            barJson.addProperty("mktAvgPrice", PriceUtil.long2str(columns.mktAvgPrices[pos]));
+            barJson.addProperty("openInt", columns.openInts[pos]);
+            array.add(barJson);
+        }
+        json.add("bars", array);
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnLeveledBarSeries["+name+", "+getBarCount()+" bars]";
+    }
+
+    /**
+     * 只保存列数据, 视图序列化后是独立的序列
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.writeUTF(instrument.toString());
+        out.writeUTF(name);
+        out.writeUTF(level.toString());
+        out.writeInt(maximumBarCount);
+        out.writeInt(removedBarsCount);
+        columns.write(out, offset, getBarCount());
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        instrument = Exchangeable.fromString(in.readUTF());
+        name = in.readUTF();
+        level = PriceLevel.valueOf(in.readUTF());
+        maximumBarCount = in.readInt();
+        removedBarsCount = in.readInt();
+        numFunction = LongNum::valueOf;
+        zoneId = instrument.exchange().getZoneId();
+        offset = 0;
+        viewSize = -1;
+        columns = new Columns(instrument.uniqueId()+"-"+level);
+        columns.read(in);
+    }
+
+    private void checkWritable() {
+        if ( viewSize>=0 ) {
+            throw new UnsupportedOperationException("Sub series is read only");
+        }
+    }
+
+    private static Num price2num(long price) {
+        if ( price==NO_PRICE ) {
+            return null;
+        }
+        return LongNum.fromRawValue(price);
+    }
+
+    private static String price2str(long price) {
+        if ( price==NO_PRICE ) {
+            return "";
+        }
+        return PriceUtil.long2str(price);
+    }
+
+    private static long raw(Num num) {
+        if ( num==null ) {
+            return 0;
+        }
+        return LongNum.fromNum(num).rawValue();
+    }
+
+}
@@ -1,6 +1,8 @@
 package trader.service.ta;
 
+import java.nio.ByteBuffer;
 import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
@@ -8,6 +10,8 @@ import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
 
+import org.ta4j.core.num.Num;
+
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
@@ -29,6 +33,11 @@ import trader.service.md.MarketData;
 public class FutureBar extends AbsBar2 {
     private static final long serialVersionUID = -5989316287411952601L;
 
+    /**
+     * 二进制快照中每个KBar的固定长度: int tradingDay, int index, long[16]
+     */
+    public static final int SNAPSHOT_BYTES = 4+4+8*16;
+
     private FutureBar(int index, ExchangeableTradingTimes tradingTimes, LocalDateTime beginTime, MarketData openTick, MarketData closeTick, long high, long low) {
         this(index, tradingTimes);
         this.lowPrice = LongNum.fromRawValue(low);
@@ -58,7 +67,7 @@ public class FutureBar extends AbsBar2 {
         }else {
             this.beginOpenInt = closeTick.openInterest;
         }
-        update(closeTick, closeTick.updateTime);
+        update(closeTick, closeTick.getUpdateTime());
     }
 
     private FutureBar(int index, ExchangeableTradingTimes tradingTimes, List<FutureBar> bars) {
@@ -312,6 +321,74 @@ public class FutureBar extends AbsBar2 {
         csvWriter.set(ExchangeableData.COLUMN_INDEX, ""+index);
     }
 
+    /**
+     * 写入定长的二进制快照, 价格为LongNum原始值
+     */
+    public void writeSnapshot(ByteBuffer buf) {
+        buf.putInt(Integer.parseInt(DateUtil.date2str(mktTimes.getTradingDay())));
+        buf.putInt(index);
+        buf.putLong(beginTime.toInstant().toEpochMilli());
+        buf.putLong(endTime.toInstant().toEpochMilli());
+        buf.putLong(num2raw(openPrice));
+        buf.putLong(num2raw(highPrice));
+        buf.putLong(num2raw(lowPrice));
+        buf.putLong(num2raw(closePrice));
+        buf.putLong(num2raw(volume));
+        buf.putLong(num2raw(amount));
+        buf.putLong(num2raw(beginVolume));
+        buf.putLong(num2raw(beginAmount));
+        buf.putLong(num2raw(endVolume));
+        buf.putLong(num2raw(endAmount));
+        buf.putLong(num2raw(avgPrice));
+        buf.putLong(num2raw(mktAvgPrice));
+        buf.putLong(beginOpenInt);
+        buf.putLong(openInt);
+    }
+
+    /**
+     * 从二进制快照的指定位置恢复, 不修改buf的position
+     */
+    public static FutureBar fromSnapshot(Exchangeable instrument, ByteBuffer buf, int pos) {
+        ZoneId zoneId = instrument.exchange().getZoneId();
+        LocalDate tradingDay = DateUtil.str2localdate(Integer.toString(buf.getInt(pos)));
+        ExchangeableTradingTimes tradingTimes = instrument.exchange().getTradingTimes(instrument, tradingDay);
+        FutureBar bar = new FutureBar(buf.getInt(pos+4), tradingTimes);
+        long beginMillis = buf.getLong(pos+8), endMillis = buf.getLong(pos+16);
+        bar.beginTime = Instant.ofEpochMilli(beginMillis).atZone(zoneId);
+        bar.beginMktTime = tradingTimes.getTradingTime(beginMillis);
+        pos += 24;
+        bar.openPrice = raw2num(buf.getLong(pos)); pos+=8;
+        bar.highPrice = raw2num(buf.getLong(pos)); pos+=8;
+        bar.lowPrice = raw2num(buf.getLong(pos)); pos+=8;
+        bar.closePrice = raw2num(buf.getLong(pos)); pos+=8;
+        bar.volume = raw2num(buf.getLong(pos)); pos+=8;
+        bar.amount = raw2num(buf.getLong(pos)); pos+=8;
+        bar.beginVolume = raw2num(buf.getLong(pos)); pos+=8;
+        bar.beginAmount = raw2num(buf.getLong(pos)); pos+=8;
+        bar.endVolume = raw2num(buf.getLong(pos)); pos+=8;
+        bar.endAmount = raw2num(buf.getLong(pos)); pos+=8;
+        bar.avgPrice = raw2num(buf.getLong(pos)); pos+=8;
+        bar.mktAvgPrice = raw2num(buf.getLong(pos)); pos+=8;
+        bar.beginOpenInt = buf.getLong(pos); pos+=8;
+        bar.openInt = buf.getLong(pos);
+        bar.updateEndTime(Instant.ofEpochMilli(endMillis).atZone(zoneId));
+        return bar;
+    }
+
+    private static long num2raw(Num num) {
+        if ( num==null ) {
+            return Long.MIN_VALUE;
+        }
+        return LongNum.fromNum(num).rawValue();
+    }
+
+    private static Num raw2num(long raw) {
+        if ( raw==Long.MIN_VALUE ) {
+            return null;
+        }
+        return LongNum.fromRawValue(raw);
+    }
+
     public void saveDay(CSVWriter csvWriter) {
         csvWriter.set(ExchangeableData.COLUMN_DATE, DateUtil.date2str(mktTimes.getTradingDay()));
         csvWriter.set(ExchangeableData.COLUMN_OPEN, getOpenPrice().toString());
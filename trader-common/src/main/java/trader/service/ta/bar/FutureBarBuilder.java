@@ -3,6 +3,7 @@ package trader.service.ta.bar;
 import java.io.IOException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -14,12 +15,14 @@ import com.google.gson.JsonObject;
 
 import trader.common.exchangeable.Exchangeable;
 import trader.common.exchangeable.ExchangeableTradingTimes;
+import trader.common.exchangeable.MarketDayUtil;
 import trader.common.exchangeable.MarketTimeStage;
 import trader.common.tick.PriceLevel;
 import trader.common.util.DateUtil;
 import trader.common.util.JsonEnabled;
 import trader.common.util.JsonUtil;
 import trader.service.md.MarketData;
+import trader.service.ta.BarSeriesSnapshot;
 import trader.service.ta.BaseLeveledBarSeries;
 import trader.service.ta.FutureBar;
 import trader.service.ta.LeveledBarSeries;
@@ -106,6 +109,43 @@ public class FutureBarBuilder implements BarBuilder, JsonEnabled {
         historicalDates = seriesLoader.getLoadedDates();
     }
 
+    /**
+     * 使用快照中起始交易日之后的KBar, 快照之后的交易日从BarSeriesLoader加载
+     */
+    public void loadHistoryData(BarSeriesLoader seriesLoader, BarSeriesSnapshot snapshot) throws IOException
+    {
+        Exchangeable instrument = tradingTimes.getInstrument();
+        LocalDate startTradingDay = seriesLoader.getStartTradingDay();
+        LeveledBarSeries deltaSeries = seriesLoader
+                .setInstrument(instrument)
+                .setLevel(level)
+                .setStartTradingDay(MarketDayUtil.nextMarketDay(instrument.exchange(), snapshot.getLastTradingDay()))
+                .setEndTradingDay(tradingTimes.getTradingDay())
+                .load();
+        seriesLoader.setStartTradingDay(startTradingDay);
+        //与BarSeriesLoader一致, 交易日降序
+        List<LocalDate> dates = new ArrayList<>(seriesLoader.getLoadedDates());
+        List<LocalDate> snapshotDates = snapshot.getTradingDays();
+        for(int i=snapshotDates.size()-1;i>=0;i--) {
+            LocalDate date = snapshotDates.get(i);
+            if ( startTradingDay==null || date.compareTo(startTradingDay)>=0 ) {
+                dates.add(date);
+            }
+        }
+
+        BaseLeveledBarSeries result = new BaseLeveledBarSeries(instrument, instrument+"-"+level.toString(), level, LongNum::valueOf);
+        for(FutureBar bar:snapshot.getBars()) {
+            if ( startTradingDay==null || bar.getTradingTimes().getTradingDay().compareTo(startTradingDay)>=0 ) {
+                result.addBar(bar);
+            }
+        }
+        for(int i=0;i<deltaSeries.getBarCount();i++) {
+            result.addBar(deltaSeries.getBar(i));
+        }
+        this.series = result;
+        historicalDates = dates;
+    }
+
     @Override
     public boolean update(MarketData tick) {
         boolean result =false;
@@ -123,9 +163,9 @@ public class FutureBarBuilder implements BarBuilder, JsonEnabled {
                     lastBar = getLastBar();
                 }
                 if ( lastBar!=null && lastBar.getVolume().doubleValue()<level.value()) {
-                    lastBar.update(tick, tick.updateTime);
+                    lastBar.update(tick, tick.getUpdateTime());
                 } else {
-                    FutureBar bar = FutureBar.fromTicks(++barIndex, tradingTimes, DateUtil.round(tick.updateTime), tick, tick, tick.lastPrice, tick.lastPrice);
+                    FutureBar bar = FutureBar.fromTicks(++barIndex, tradingTimes, DateUtil.round(tick.getUpdateTime()), tick, tick, tick.lastPrice, tick.lastPrice);
                     series.addBar(bar);
                     result = true;
                 }
@@ -155,7 +195,7 @@ public class FutureBarBuilder implements BarBuilder, JsonEnabled {
                 }
                 result = i;
             }
-            //TimeSeriesLoader.getBarIndex(exchangeable, levelSeries.level, tick.updateTime);
+            //TimeSeriesLoader.getBarIndex(exchangeable, levelSeries.level, tick.getUpdateTime());
         }else {
             if ( logger.isDebugEnabled() ) {
                 logger.debug(tradingTimes.getInstrument()+" 忽略非市场时间数据 "+tick);
@@ -179,8 +219,8 @@ public class FutureBarBuilder implements BarBuilder, JsonEnabled {
                 lastBarEndTime = barEndTimes[lastBar.getIndex()];
             }
         }
-        if ( tickBarIndex==this.barIndex || tick.updateTime.equals(lastBarEndTime) ) {
-            lastBar.update(tick, tick.updateTime);
+        if ( tickBarIndex==this.barIndex || tick.getUpdateTime().equals(lastBarEndTime) ) {
+            lastBar.update(tick, tick.getUpdateTime());
         } else { //创建新的BAR
             MarketData edgeTick = lastTick;
             if ( lastBar!=null ){
@@ -3,7 +3,6 @@ package trader.service.ta.bar;
 import java.time.Duration;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
-import java.util.LinkedList;
 
 import org.ta4j.core.num.Num;
 
@@ -15,8 +14,11 @@ import trader.service.ta.LongNum;
 
 /**
  * 固定滑动窗口的BAR, 滑动窗口可以是时间或成交量或金额
+ * <BR>窗口内的TICK保存在环形缓冲区中, 价格/成交量/时间使用原始类型数组; 最高/最低价使用单调队列维护, 每个TICK均摊O(1)
+ * <BR>每个TICK的最高价: 与前一个TICK相比最高价有变化时为最高价, 否则为最新价. 最低价同理
  */
 public abstract class SlidingWindowTicksBar implements Bar2 {
+    private static final int INITIAL_CAPACITY = 64;
 
     protected int index;
     protected LongNum open;
@@ -39,11 +41,35 @@ public abstract class SlidingWindowTicksBar implements Bar2 {
     protected MarketData maxTick;
     protected MarketData minTick;
     protected long openInt;
-    protected LinkedList<MarketData> ticks = new LinkedList<>();
+
+    /**
+     * 环形缓冲区, 容量为2的幂. 窗口内TICK的序号范围为[beginSeq, endSeq), 位置为 序号&mask
+     */
+    private MarketData[] ringTicks;
+    private long[] ringHighs;
+    private long[] ringLows;
+    private long[] ringVolumes;
+    private long[] ringTurnovers;
+    private int[] ringTimes;
+    private int mask;
+    private long beginSeq;
+    private long endSeq;
     /**
-     * 是否需要重新计算MinMax
+     * 最高价单调递减队列, 保存TICK序号, 队首为窗口最高价
      */
-    protected boolean edgeDirty;
+    private long[] maxQueue;
+    private long maxQueueHead;
+    private long maxQueueTail;
+    /**
+     * 最低价单调递增队列, 保存TICK序号, 队首为窗口最低价
+     */
+    private long[] minQueue;
+    private long minQueueHead;
+    private long minQueueTail;
+
+    protected SlidingWindowTicksBar() {
+        allocate(INITIAL_CAPACITY);
+    }
 
     @Override
     public ExchangeableTradingTimes getTradingTimes() {
@@ -62,17 +88,11 @@ public abstract class SlidingWindowTicksBar implements Bar2 {
 
     @Override
     public Num getLowPrice() {
-        if( edgeDirty ) {
-             computeMinMax();
-        }
         return min;
     }
 
     @Override
     public Num getHighPrice() {
-        if( edgeDirty ) {
-            computeMinMax();
-       }
         return max;
     }
 
@@ -151,17 +171,11 @@ public abstract class SlidingWindowTicksBar implements Bar2 {
 
     @Override
     public MarketData getMaxTick() {
-        if( edgeDirty ) {
-            computeMinMax();
-        }
         return maxTick;
     }
 
     @Override
     public MarketData getMinTick() {
-        if( edgeDirty ) {
-            computeMinMax();
-        }
         return minTick;
     }
 
@@ -170,107 +184,144 @@ public abstract class SlidingWindowTicksBar implements Bar2 {
      */
     public void update(MarketData newTick) {
         ZoneId zoneId = newTick.instrument.exchange().getZoneId();
-        int ticksBeforeUpdate = ticks.size();
-        if ( updateTicks(newTick) || ticksBeforeUpdate==0 ) {
-            edgeDirty = true;
-            LinkedList<MarketData> ticks = this.ticks;
-            //全部重新计算Begin/Close/Max/Min
-            MarketData tick0 = ticks.getFirst();
-            openTick = tick0;
-            long open = openTick.lastPrice;
-            long max = open, min = open;
-            MarketData maxTick=tick0, minTick=tick0;
-            for(MarketData tick:ticks) {
-                if ( tick0.highestPrice!=tick.highestPrice && PriceUtil.isValidPrice(tick.highestPrice)) {
-                    max = tick.highestPrice;
-                    maxTick = tick;
-                }else if ( tick.lastPrice>max) {
-                    max = tick.lastPrice;
-                    maxTick = tick;
-                }
-
-                if ( tick0.lowestPrice!=tick.lowestPrice && PriceUtil.isValidPrice(tick.lowestPrice) ) {
-                    min = tick.lowestPrice;
-                    minTick = tick;
-                }else if ( tick.lastPrice<min ) {
-                    min = tick.lastPrice;
-                    minTick = tick;
-                }
-                tick0 = tick;
-            }
-            this.open = LongNum.fromRawValue(open);
-            this.openTick = ticks.getFirst();
-            this.beginTime = this.openTick.updateTime.atZone(zoneId);
+        boolean empty = endSeq==beginSeq;
+        if ( updateTicks(newTick) || empty ) {
+            openTick = ringTicks[(int)(beginSeq&mask)];
+            open = LongNum.fromRawValue(openTick.lastPrice);
+            beginTime = openTick.getUpdateTime().atZone(zoneId);
         }
-        //增量更新, 检查一下Close/Max/Min就算了
-        long lastPrice = newTick.lastPrice, highestPrice=newTick.highestPrice, lowestPrice=newTick.lowestPrice;
-
-        MarketData lastTick = closeTick;
+        int maxPos = (int)(maxQueue[(int)(maxQueueHead&mask)]&mask);
+        if ( maxTick!=ringTicks[maxPos] ) {
+            maxTick = ringTicks[maxPos];
+            max = LongNum.fromRawValue(ringHighs[maxPos]);
+        }
+        int minPos = (int)(minQueue[(int)(minQueueHead&mask)]&mask);
+        if ( minTick!=ringTicks[minPos] ) {
+            minTick = ringTicks[minPos];
+            min = LongNum.fromRawValue(ringLows[minPos]);
+        }
+        int beginPos = (int)(beginSeq&mask);
         openInt = newTick.openInterest;
         mktAvgPrice = LongNum.fromRawValue(newTick.averagePrice);
         closeTick = newTick;
-        endTime = newTick.updateTime.atZone(zoneId);
-        close = LongNum.fromRawValue(lastPrice);
-        volume = LongNum.valueOf(newTick.volume-openTick.volume);
-        amount = LongNum.fromRawValue(newTick.turnover-openTick.turnover);
+        endTime = newTick.getUpdateTime().atZone(zoneId);
+        close = LongNum.fromRawValue(newTick.lastPrice);
+        volume = LongNum.valueOf(newTick.volume-ringVolumes[beginPos]);
+        amount = LongNum.fromRawValue(newTick.turnover-ringTurnovers[beginPos]);
         duration = null;
-        //如果窗口没有滑动,且MinMax有效 那么只需检查 lastClose-newClose之间的差值, 就可以更新MinMax
-        if ( !edgeDirty ) {
-            if ( lastTick.highestPrice!=highestPrice && PriceUtil.isValidPrice(highestPrice)) {
-                this.max = LongNum.fromRawValue(highestPrice);
-                this.maxTick = newTick;
-            }else if ( lastPrice>this.max.rawValue() ) {
-                this.max = LongNum.fromRawValue(lastPrice);
-                this.maxTick = newTick;
+    }
+
+    /**
+     * 实际更新滑动窗口: 调用addTick加入新TICK, 调用pollTick删除窗口外的TICK. 如果有滑动窗口调整返回true
+     */
+    protected abstract boolean updateTicks(MarketData tick);
+
+    /**
+     * 加入TICK到窗口末尾, 并更新最高/最低价单调队列
+     */
+    protected void addTick(MarketData tick) {
+        if ( endSeq-beginSeq>mask ) {
+            allocate((mask+1)*2);
+        }
+        long high = tick.lastPrice, low = tick.lastPrice;
+        MarketData lastTick = closeTick;
+        if ( lastTick!=null ) {
+            if ( lastTick.highestPrice!=tick.highestPrice && PriceUtil.isValidPrice(tick.highestPrice)) {
+                high = tick.highestPrice;
             }
-            if ( lastTick.lowestPrice!=lowestPrice && PriceUtil.isValidPrice(lowestPrice)) {
-                this.min = LongNum.fromRawValue(lowestPrice);
-                this.minTick = newTick;
-            }else if ( lastPrice<this.min.rawValue() ) {
-                this.min = LongNum.fromRawValue(lastPrice);
-                this.minTick = newTick;
+            if ( lastTick.lowestPrice!=tick.lowestPrice && PriceUtil.isValidPrice(tick.lowestPrice)) {
+                low = tick.lowestPrice;
             }
         }
+        long seq = endSeq++;
+        int pos = (int)(seq&mask);
+        ringTicks[pos] = tick;
+        ringHighs[pos] = high;
+        ringLows[pos] = low;
+        ringVolumes[pos] = tick.volume;
+        ringTurnovers[pos] = tick.turnover;
+        ringTimes[pos] = tick.mktTime;
+        //价格相同时保留较早的TICK
+        while( maxQueueTail>maxQueueHead && ringHighs[(int)(maxQueue[(int)((maxQueueTail-1)&mask)]&mask)]<high ) {
+            maxQueueTail--;
+        }
+        maxQueue[(int)((maxQueueTail++)&mask)] = seq;
+        while( minQueueTail>minQueueHead && ringLows[(int)(minQueue[(int)((minQueueTail-1)&mask)]&mask)]>low ) {
+            minQueueTail--;
+        }
+        minQueue[(int)((minQueueTail++)&mask)] = seq;
     }
 
     /**
-     * 按需重新计算Min/Max
+     * 删除窗口开始的TICK
      */
-    private void computeMinMax() {
-        LinkedList<MarketData> ticks = this.ticks;
-        MarketData tick0 = ticks.getFirst();
-        long open = openTick.lastPrice;
-        long max = open, min = open;
-        MarketData maxTick=tick0, minTick=tick0;
-        for(MarketData tick:ticks) {
-            if ( tick0.highestPrice!=tick.highestPrice && PriceUtil.isValidPrice(tick.highestPrice)) {
-                max = tick.highestPrice;
-                maxTick = tick;
-            }else if ( tick.lastPrice>max) {
-                max = tick.lastPrice;
-                maxTick = tick;
-            }
-
-            if ( tick0.lowestPrice!=tick.lowestPrice && PriceUtil.isValidPrice(tick.lowestPrice) ) {
-                min = tick.lowestPrice;
-                minTick = tick;
-            }else if ( tick.lastPrice<min ) {
-                min = tick.lastPrice;
-                minTick = tick;
-            }
-            tick0 = tick;
+    protected void pollTick() {
+        long seq = beginSeq++;
+        ringTicks[(int)(seq&mask)] = null;
+        if ( maxQueue[(int)(maxQueueHead&mask)]==seq ) {
+            maxQueueHead++;
+        }
+        if ( minQueue[(int)(minQueueHead&mask)]==seq ) {
+            minQueueHead++;
         }
+    }
 
-        this.max = LongNum.fromRawValue(max);
-        this.min = LongNum.fromRawValue(min);
-        this.maxTick = maxTick;
-        this.minTick = minTick;
-        edgeDirty = false;
+    /**
+     * 窗口内的TICK数量
+     */
+    protected int getTickCount() {
+        return (int)(endSeq-beginSeq);
+    }
+
+    protected MarketData getFirstTick() {
+        return ringTicks[(int)(beginSeq&mask)];
+    }
+
+    protected int getFirstTickTime() {
+        return ringTimes[(int)(beginSeq&mask)];
+    }
+
+    protected long getFirstTickVolume() {
+        return ringVolumes[(int)(beginSeq&mask)];
     }
 
     /**
-     * 实际更新ticks列表, 如果有滑动窗口调整返回true
+     * 分配或扩大环形缓冲区, 保留窗口内的TICK和单调队列
      */
-    protected abstract boolean updateTicks(MarketData tick);
+    private void allocate(int capacity) {
+        MarketData[] ringTicks0 = ringTicks;
+        long[] ringHighs0 = ringHighs, ringLows0 = ringLows, ringVolumes0 = ringVolumes, ringTurnovers0 = ringTurnovers;
+        int[] ringTimes0 = ringTimes;
+        long[] maxQueue0 = maxQueue, minQueue0 = minQueue;
+        int mask0 = mask;
+
+        ringTicks = new MarketData[capacity];
+        ringHighs = new long[capacity];
+        ringLows = new long[capacity];
+        ringVolumes = new long[capacity];
+        ringTurnovers = new long[capacity];
+        ringTimes = new int[capacity];
+        maxQueue = new long[capacity];
+        minQueue = new long[capacity];
+        mask = capacity-1;
+        if ( ringTicks0==null ) {
+            return;
+        }
+        for(long seq=beginSeq; seq<endSeq; seq++) {
+            int pos0 = (int)(seq&mask0), pos = (int)(seq&mask);
+            ringTicks[pos] = ringTicks0[pos0];
+            ringHighs[pos] = ringHighs0[pos0];
+            ringLows[pos] = ringLows0[pos0];
+            ringVolumes[pos] = ringVolumes0[pos0];
+            ringTurnovers[pos] = ringTurnovers0[pos0];
+            ringTimes[pos] = ringTimes0[pos0];
+        }
+        for(long i=maxQueueHead; i<maxQueueTail; i++) {
+            maxQueue[(int)(i&mask)] = maxQueue0[(int)(i&mask0)];
+        }
+        for(long i=minQueueHead; i<minQueueTail; i++) {
+            minQueue[(int)(i&mask)] = minQueue0[(int)(i&mask0)];
+        }
+    }
 
 }
@@ -1,7 +1,5 @@
 package trader.service.ta.bar;
 
-import java.util.LinkedList;
-
 import trader.service.md.MarketData;
 
 /**
@@ -23,18 +21,17 @@ public class TimedWindowTicksBar extends SlidingWindowTicksBar {
 
     @Override
     protected boolean updateTicks(MarketData tick) {
-        LinkedList<MarketData> ticks = this.ticks;
         boolean result = false;
         int lastTickTime = tick.mktTime;
-        ticks.add(tick);
+        addTick(tick);
 
         //删除超时TICK
-        while(!ticks.isEmpty()) {
-            int currTickTime = ticks.peek().mktTime;
+        while(getTickCount()>0) {
+            int currTickTime = getFirstTickTime();
             if ( currTickTime+maxLifeTime>=lastTickTime) {
                 break;
             }
-            ticks.poll();
+            pollTick();
             result = true;
         }
         return result;
@@ -1,7 +1,5 @@
 package trader.service.ta.bar;
 
-import java.util.LinkedList;
-
 import trader.service.md.MarketData;
 
 /**
@@ -17,15 +15,13 @@ public class VolumeWindowTicksBar extends SlidingWindowTicksBar {
 
     @Override
     protected boolean updateTicks(MarketData tick) {
-        LinkedList<MarketData> ticks = this.ticks;
-        ticks.add(tick);
+        addTick(tick);
         long lastVol = tick.volume;
         boolean result=false;
         while(true) {
-            MarketData tick0 = ticks.peek();
-            long currVol = lastVol - tick0.volume;
-            if ( currVol>maxVolume && tick!=tick0 ) {
-                ticks.poll();
+            long currVol = lastVol - getFirstTickVolume();
+            if ( currVol>maxVolume && tick!=getFirstTick() ) {
+                pollTick();
                 result = true;
                 continue;
             }
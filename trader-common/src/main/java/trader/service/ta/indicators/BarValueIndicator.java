@@ -0,0 +1,49 @@
+package trader.service.ta.indicators;
+
+import org.ta4j.core.BarSeries;
+import org.ta4j.core.Indicator;
+import org.ta4j.core.num.Num;
+
+import trader.service.ta.Bar2;
+import trader.service.ta.indicators.SimpleIndicator.BarValueGetter;
+
+/**
+ * 直接访问BarSeries的多周期序列变量, 如OHLC.
+ * <BR>不复制数据, BarSeries增加新的Bar后无需重建
+ */
+public class BarValueIndicator implements Indicator<Num> {
+
+    private BarSeries barSeries;
+
+    private BarValueGetter valueGetter;
+
+    public BarValueIndicator(BarSeries barSeries, BarValueGetter valueGetter) {
+        this.barSeries = barSeries;
+        this.valueGetter = valueGetter;
+    }
+
+    public Num getValue() {
+        return getValue(barSeries.getEndIndex());
+    }
+
+    @Override
+    public Num getValue(int index) {
+        return valueGetter.getValue((Bar2)barSeries.getBar(index));
+    }
+
+    @Override
+    public BarSeries getBarSeries() {
+        return barSeries;
+    }
+
+    @Override
+    public Num numOf(Number number) {
+        return barSeries.numOf(number);
+    }
+
+    @Override
+    public String toString() {
+        return getValue().toString();
+    }
+
+}
@@ -39,7 +39,7 @@ public class MarketDataStrokeBar extends WaveBar<MarketData> {
         super(index, tradingTimes);
         this.option = option;
         mdOpen = mdMax = mdMin = mdClose = md;
-        begin = ZonedDateTime.of(md.updateTime, md.instrument.exchange().getZoneId());
+        begin = ZonedDateTime.of(md.getUpdateTime(), md.instrument.exchange().getZoneId());
         end = begin;
         open = high = low = close = LongNum.fromRawValue(md.lastPrice);
         volume = LongNum.ZERO;
@@ -61,8 +61,8 @@ public class MarketDataStrokeBar extends WaveBar<MarketData> {
         this.option = option;
         mdOpen = md;
         mdClose = md2;
-        begin = ZonedDateTime.of(md.updateTime, md.instrument.exchange().getZoneId());
-        end = ZonedDateTime.of(md2.updateTime, md2.instrument.exchange().getZoneId());
+        begin = ZonedDateTime.of(md.getUpdateTime(), md.instrument.exchange().getZoneId());
+        end = ZonedDateTime.of(md2.getUpdateTime(), md2.instrument.exchange().getZoneId());
         open = LongNum.fromRawValue(md.lastPrice);
         close = LongNum.fromRawValue(md2.lastPrice);
         if ( md.lastPrice<md2.lastPrice ) {
@@ -142,7 +142,7 @@ public class MarketDataStrokeBar extends WaveBar<MarketData> {
         duration = null;
         MarketData prevClose = this.mdClose;
         mdClose = tick;
-        end = ZonedDateTime.of(tick.updateTime, tick.instrument.exchange().getZoneId());
+        end = ZonedDateTime.of(tick.getUpdateTime(), tick.instrument.exchange().getZoneId());
         close = LongNum.fromRawValue(tick.lastPrice);
         if ( tick.lastPrice>=mdMax.lastPrice) { //如果tick值相同, 采用最后一个tick, 拉长相同方向的时间
             mdMax = tick;
@@ -235,7 +235,7 @@ public class MarketDataStrokeBar extends WaveBar<MarketData> {
             md0=mdMax; md1=mdClose;
             this.mdClose = mdMax;
             this.close = high;
-            this.end = ZonedDateTime.of(mdMax.updateTime, mdMax.instrument.exchange().getZoneId());
+            this.end = ZonedDateTime.of(mdMax.getUpdateTime(), mdMax.instrument.exchange().getZoneId());
             if ( mdMin.updateTimestamp>mdClose.updateTimestamp ) {
                 mdMin = min(mdOpen, mdClose);
             }
@@ -246,7 +246,7 @@ public class MarketDataStrokeBar extends WaveBar<MarketData> {
             md0=mdMin; md1=mdClose;
             this.mdClose = mdMin;
             this.close = low;
-            this.end = ZonedDateTime.of(mdMin.updateTime, mdMin.instrument.exchange().getZoneId());
+            this.end = ZonedDateTime.of(mdMin.getUpdateTime(), mdMin.instrument.exchange().getZoneId());
             if ( mdMax.updateTimestamp>mdClose.updateTimestamp ) {
                 mdMax = max(mdOpen, mdClose);
             }
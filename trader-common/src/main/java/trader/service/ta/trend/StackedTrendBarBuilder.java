@@ -79,7 +79,7 @@ public class StackedTrendBarBuilder implements BarBuilder, JsonEnabled {
 
     @Override
     public boolean update(MarketData tick) {
-        if ( lastTick!=null && lastTick.updateTime.compareTo(tick.updateTime)>=0 && lastTick.volume>=tick.volume ) {
+        if ( lastTick!=null && lastTick.getUpdateTime().compareTo(tick.getUpdateTime())>=0 && lastTick.volume>=tick.volume ) {
             return false;
         }
         strokeNewBar = false;
@@ -4,6 +4,7 @@ import java.util.Collection;
 import java.util.List;
 
 import trader.common.exception.AppException;
+import trader.common.exchangeable.Exchangeable;
 import trader.service.trade.Order;
 
 /**
@@ -50,6 +51,12 @@ public interface PlaybookKeeper {
      */
     public List<Playbook> getActivePlaybooks(String queryExpr);
 
+    /**
+     * 返回某个品种的活动交易剧本列表, 按品种索引, 不需要遍历全部活动交易剧本
+     * <BR>返回只读视图, 关闭交易剧本会改变它的内容, 遍历时需要关闭交易剧本的应先复制
+     */
+    public List<Playbook> getInstrumentActivePlaybooks(Exchangeable instrument);
+
     /**
      * 返回指定Playbook
      */
@@ -85,6 +85,24 @@ public interface TradletConstants {
 
     };
 
+    /**
+     * 策略组事件队列满时, 行情切片的处理策略. 报单/成交等事件不受影响, 总是阻塞等待
+     */
+    public static enum TickOverflowPolicy{
+    /**
+     * 阻塞行情线程直到队列有空闲
+     */
+    Block
+    /**
+     * 丢弃最旧的行情: 队列积压超过一半时消费端跳过排队的旧行情; 队列满时新行情仍然阻塞排队, 保证最新的行情会被处理
+     */
+    ,DropOldest
+    /**
+     * 每个合约只保留最新的待处理行情
+     */
+    ,Conflate
+    };
+
     public static enum PBVol{
     /**
      * 开仓报单数
@@ -214,11 +232,6 @@ public interface TradletConstants {
         ,PriceTrendLoss
     }
 
-    /**
-     * 价格止损的运行时, object[]
-     */
-    public static final String PBATTR_STOP_RUNTIME = "stop.runtime";
-
     public static final String PBACTION_TIMEOUT = "pbTimeout";
     public static final String PBACTION_ENDTIME = "pbEndTime";
     public static final String PBACTION_MAXLIFETIME = "pbMaxLifeTime";
@@ -303,8 +316,10 @@ public interface TradletConstants {
 
     public static final String ITEM_SUFFIX_DISRUPTOR_WAIT_STRATEGY = "/disruptor/waitStrategy";
     public static final String ITEM_SUFFIX_DISRUPTOR_RINGBUFFER_SIZE = "/disruptor/ringBufferSize";
+    public static final String ITEM_SUFFIX_DISRUPTOR_OVERFLOW_POLICY = "/disruptor/overflowPolicy";
     public static final String ITEM_GLOBAL_DISRUPTOR_WAIT_STRATEGY = "/TradletService"+ITEM_SUFFIX_DISRUPTOR_WAIT_STRATEGY;
     public static final String ITEM_GLOBAL_DISRUPTOR_RINGBUFFER_SIZE = "/TradletService"+ITEM_SUFFIX_DISRUPTOR_RINGBUFFER_SIZE;
+    public static final String ITEM_GLOBAL_DISRUPTOR_OVERFLOW_POLICY = "/TradletService"+ITEM_SUFFIX_DISRUPTOR_OVERFLOW_POLICY;
     public static final String ITEM_SCRIPT_FUNCTIONS = "/TradletService/scriptFunctions";
     public static final String ITEM_TRADLETS = "/TradletService/tradlets";
     public static final String ITEM_TRADLETGROUP = "/TradletService/tradletGroup";
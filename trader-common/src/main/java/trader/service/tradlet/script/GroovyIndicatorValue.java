@@ -1,10 +1,13 @@
 package trader.service.tradlet.script;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.ta4j.core.BarSeries;
 import org.ta4j.core.Indicator;
+import org.ta4j.core.indicators.CachedIndicator;
 import org.ta4j.core.num.Num;
 
 import groovy.lang.Closure;
@@ -17,8 +20,42 @@ import trader.service.tradlet.script.func.FuncHelper;
  */
 public class GroovyIndicatorValue extends GroovyObjectSupport implements Comparable {
 
+    /**
+     * 缓存的四则运算结果数量上限, 超过后清空重建
+     */
+    private static final int MAX_CACHED_RESULTS = 64;
+
+    /**
+     * 同一序列的四则运算结果, 随序列增长按需计算新的值
+     */
+    private static class ArithmeticIndicator extends CachedIndicator<Num> {
+        private final Indicator<Num> indicator;
+        private final Indicator<Num> indicator2;
+        private final Num num2;
+        private final int method;
+
+        ArithmeticIndicator(Indicator<Num> indicator, Indicator<Num> indicator2, Num num2, int method){
+            super(indicator);
+            this.indicator = indicator;
+            this.indicator2 = indicator2;
+            this.num2 = num2;
+            this.method = method;
+        }
+
+        @Override
+        protected Num calculate(int index) {
+            Num n2 = num2;
+            if ( indicator2!=null ) {
+                n2 = indicator2.getValue(index);
+            }
+            return arithmeti(indicator.getValue(index), n2, method);
+        }
+    }
+
     private Indicator<Num> indicator;
 
+    private Map<ScriptArgsKey, GroovyIndicatorValue> arithmeticResults;
+
     public GroovyIndicatorValue(Indicator<Num> indicator) {
         this.indicator = indicator;
     }
@@ -94,24 +131,37 @@ public class GroovyIndicatorValue extends GroovyObjectSupport implements Compara
 
     /**
      * 四则运算
+     * <BR>同一序列之间或序列与数值的运算结果会被缓存, 相同的运算返回同一个对象, 从而脚本函数可以按参数缓存结果
      */
     private GroovyIndicatorValue arithmetic(Object o, int method) {
         BarSeries series = indicator.getBarSeries();
-        List<Num> values = new ArrayList<>(series.getBarCount());
+        Indicator<Num> indicator2 = null;
         if ( o instanceof GroovyIndicatorValue ) {
-            //序列+序列
-            Indicator<Num> indicator2 = ((GroovyIndicatorValue)o).getIndicator();
-            values = FuncHelper.forEach(indicator, indicator2, (Num num, Num num2)->{
-                return arithmeti(num, num2, method);
-            });
-        } else {
-            //序列+数值
-            Num num2 = series.numOf( FuncHelper.obj2number(o) );
-            for(int i=series.getBeginIndex(); i<=series.getEndIndex();i++) {
-                Num num = indicator.getValue(i);
-                values.add(arithmeti(num, num2, method));
+            indicator2 = ((GroovyIndicatorValue)o).getIndicator();
+        }
+        if ( indicator2==null || indicator2.getBarSeries()==series ) {
+            ScriptArgsKey key = new ScriptArgsKey(method, o);
+            if ( arithmeticResults==null ) {
+                arithmeticResults = new HashMap<>();
+            }
+            GroovyIndicatorValue result = arithmeticResults.get(key);
+            if ( result==null ) {
+                Num num2 = null;
+                if ( indicator2==null ) {
+                    num2 = series.numOf( FuncHelper.obj2number(o) );
+                }
+                if ( arithmeticResults.size()>=MAX_CACHED_RESULTS ) {
+                    arithmeticResults.clear();
+                }
+                result = new GroovyIndicatorValue(new ArithmeticIndicator(indicator, indicator2, num2, method));
+                arithmeticResults.put(key, result);
             }
+            return result;
         }
+        //不同序列之间按末尾对齐计算
+        List<Num> values = FuncHelper.forEach(indicator, indicator2, (Num num, Num num2)->{
+            return arithmeti(num, num2, method);
+        });
         return new GroovyIndicatorValue(new SimpleIndicator(series, values));
     }
 
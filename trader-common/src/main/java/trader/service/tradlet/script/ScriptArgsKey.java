@@ -0,0 +1,72 @@
+package trader.service.tradlet.script;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import org.ta4j.core.Indicator;
+
+/**
+ * 脚本函数/运算的参数组合, 用于缓存结果.
+ * <BR>序列参数(GroovyIndicatorValue/Indicator)按对象实例比较, 其它参数按值比较
+ */
+public final class ScriptArgsKey {
+
+    private final Object[] parts;
+    private final int hash;
+
+    public ScriptArgsKey(Object... parts) {
+        this.parts = parts;
+        int h = 1;
+        for(Object part:parts) {
+            h = 31*h + partHash(part);
+        }
+        this.hash = h;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if ( this==obj ) {
+            return true;
+        }
+        if ( !(obj instanceof ScriptArgsKey) ) {
+            return false;
+        }
+        ScriptArgsKey key = (ScriptArgsKey)obj;
+        if ( hash!=key.hash || parts.length!=key.parts.length ) {
+            return false;
+        }
+        for(int i=0;i<parts.length;i++) {
+            Object p = parts[i], p2 = key.parts[i];
+            if ( isSeries(p) || isSeries(p2) ) {
+                if ( p!=p2 ) {
+                    return false;
+                }
+            } else if ( !Objects.equals(p, p2) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(parts);
+    }
+
+    private static int partHash(Object part) {
+        if ( isSeries(part) ) {
+            return System.identityHashCode(part);
+        }
+        return Objects.hashCode(part);
+    }
+
+    private static boolean isSeries(Object part) {
+        return part instanceof GroovyIndicatorValue || part instanceof Indicator;
+    }
+
+}
@@ -8,4 +8,12 @@ public interface TradletScriptFunction {
 
     public Object invoke(Object[] args) throws Exception;
 
+    /**
+     * 相同参数的调用结果是否可以缓存复用.
+     * <BR>只有返回随KBAR序列增长自动计算新值的指标(例如ta4j的CachedIndicator)时才可以缓存
+     */
+    public default boolean isCacheable(Object[] args) {
+        return false;
+    }
+
 }
@@ -23,4 +23,9 @@ public class ABSFunc implements TradletScriptFunction {
         return new AbsoluteIndicator(indicator);
     }
 
+    @Override
+    public boolean isCacheable(Object[] args) {
+        return args[0] instanceof GroovyIndicatorValue;
+    }
+
 }
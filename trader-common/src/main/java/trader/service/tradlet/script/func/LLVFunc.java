@@ -43,4 +43,12 @@ public class LLVFunc implements TradletScriptFunction {
         }
     }
 
+    /**
+     * 全局值每次重新计算, 周期内的值可以缓存
+     */
+    @Override
+    public boolean isCacheable(Object[] args) {
+        return args[0] instanceof GroovyIndicatorValue && FuncHelper.obj2number(args[1]).intValue()>0;
+    }
+
 }
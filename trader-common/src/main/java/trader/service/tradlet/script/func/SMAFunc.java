@@ -20,4 +20,9 @@ public class SMAFunc implements TradletScriptFunction {
         return new GroovyIndicatorValue(new SMAIndicator(indicator, barCount));
     }
 
+    @Override
+    public boolean isCacheable(Object[] args) {
+        return args[0] instanceof GroovyIndicatorValue;
+    }
+
 }
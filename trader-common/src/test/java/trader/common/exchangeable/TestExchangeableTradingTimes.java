@@ -1,7 +1,9 @@
 package trader.common.exchangeable;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 
@@ -104,4 +106,56 @@ public class TestExchangeableTradingTimes {
         assertTrue(instrument.exchange()==Exchange.INE);
     }
 
+    /**
+     * 交易时间按合约和交易日缓存, EpochMillis二分查找与逐段比较LocalDateTime的结果一致
+     */
+    @Test
+    public void testTradingTimesTable() {
+        Exchangeable ru1901 = Exchangeable.fromString("ru1901");
+        LocalDate tradingDay = DateUtil.str2localdate("20181203");
+        ExchangeableTradingTimes tradingTimes = ru1901.exchange().getTradingTimes(ru1901, tradingDay);
+        assertTrue(tradingTimes==ru1901.exchange().getTradingTimes(ru1901, tradingDay));
+
+        LocalDateTime[] marketTimes = tradingTimes.getMarketTimes();
+        LocalDateTime time = marketTimes[0].minusHours(2);
+        LocalDateTime endTime = marketTimes[marketTimes.length-1].plusMinutes(10);
+        while(time.isBefore(endTime)) {
+            assertEquals(scanTradingTime(marketTimes, time), tradingTimes.getTradingTime(time));
+            assertEquals(scanTradingTime(marketTimes, time.plusNanos(500*1000000)), tradingTimes.getTradingTime(time.plusNanos(500*1000000)));
+            time = time.plusSeconds(7);
+        }
+        assertTrue(tradingTimes.getTimeStage(marketTimes[0].minusMinutes(61))==MarketTimeStage.MarketClose);
+        assertTrue(tradingTimes.getTimeStage(marketTimes[0].minusMinutes(30))==MarketTimeStage.BeforeMarketOpen);
+        assertTrue(tradingTimes.getTimeStage(marketTimes[0].minusMinutes(1))==MarketTimeStage.AggregateAuction);
+        assertTrue(tradingTimes.getTimeStage(marketTimes[0])==MarketTimeStage.MarketOpen);
+        assertTrue(tradingTimes.getTimeStage(marketTimes[1].plusNanos(999*1000000))==MarketTimeStage.MarketOpen);
+        assertTrue(tradingTimes.getTimeStage(marketTimes[1].plusSeconds(1))==MarketTimeStage.MarketClose);
+        for(int i=3;i<marketTimes.length;i+=2) {
+            assertTrue(tradingTimes.getTimeStage(marketTimes[i-1].minusSeconds(1))!=MarketTimeStage.MarketOpen);
+            assertTrue(tradingTimes.getTimeStage(marketTimes[i].minusSeconds(1))==MarketTimeStage.MarketOpen);
+        }
+        assertTrue(tradingTimes.getTimeStage(marketTimes[marketTimes.length-1].plusSeconds(1))==MarketTimeStage.MarketClose);
+    }
+
+    /**
+     * 逐段累计开市以来的时间
+     */
+    private static int scanTradingTime(LocalDateTime[] marketTimes, LocalDateTime marketTime) {
+        if ( marketTime.isBefore(marketTimes[0]) || marketTime.withNano(0).isAfter(marketTimes[marketTimes.length-1]) ) {
+            return -1;
+        }
+        int result = 0;
+        for(int i=0;i<marketTimes.length;i+=2) {
+            if ( !marketTime.withNano(0).isAfter(marketTimes[i]) ) {
+                break;
+            }
+            if ( !marketTime.withNano(0).isAfter(marketTimes[i+1]) ) {
+                result += Duration.between(marketTimes[i], marketTime).toMillis();
+                break;
+            }
+            result += Duration.between(marketTimes[i], marketTimes[i+1]).toMillis();
+        }
+        return result;
+    }
+
 }
@@ -0,0 +1,119 @@
+package trader.common.exchangeable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TestMarketDayUtil {
+
+    @Test
+    public void testHolidays() {
+        assertTrue(!MarketDayUtil.isMarketDay(Exchange.SHFE, LocalDate.of(2019, 1, 1)));
+        assertTrue(MarketDayUtil.isMarketDay(Exchange.SHFE, LocalDate.of(2019, 1, 2)));
+        assertEquals(LocalDate.of(2019, 1, 2), MarketDayUtil.nextMarketDay(Exchange.SHFE, LocalDate.of(2018, 12, 28)));
+        assertEquals(LocalDate.of(2018, 12, 28), MarketDayUtil.prevMarketDay(Exchange.SHFE, LocalDate.of(2019, 1, 2)));
+        assertEquals(LocalDate.of(2018, 10, 8), MarketDayUtil.nextMarketDay(Exchange.SHFE, LocalDate.of(2018, 9, 28)));
+        assertTrue(MarketDayUtil.prevMarketDay(Exchange.SHFE, LocalDate.of(2018, 10, 8), true)==null);
+        assertEquals(LocalDate.of(2018, 10, 9), MarketDayUtil.nextMarketDays(Exchange.SHFE, LocalDate.of(2018, 9, 27), 3));
+        assertEquals(LocalDate.of(2018, 9, 27), MarketDayUtil.nextMarketDays(Exchange.SHFE, LocalDate.of(2018, 10, 9), -3));
+        assertEquals(3, MarketDayUtil.marketDaysBetween(Exchange.SHFE, LocalDate.of(2018, 9, 27), LocalDate.of(2018, 10, 9)));
+        assertEquals(-3, MarketDayUtil.marketDaysBetween(Exchange.SHFE, LocalDate.of(2018, 10, 9), LocalDate.of(2018, 9, 27)));
+    }
+
+    /**
+     * 已知的长假: 春节和国庆前后的交易日
+     */
+    @Test
+    public void testLongHolidays() {
+        //2019春节 02-04 ~ 02-08
+        assertEquals(LocalDate.of(2019, 2, 11), MarketDayUtil.nextMarketDay(Exchange.DCE, LocalDate.of(2019, 2, 1)));
+        assertEquals(LocalDate.of(2019, 2, 1), MarketDayUtil.prevMarketDay(Exchange.DCE, LocalDate.of(2019, 2, 11)));
+        assertEquals(1, MarketDayUtil.marketDaysBetween(Exchange.DCE, LocalDate.of(2019, 2, 1), LocalDate.of(2019, 2, 11)));
+        //2020春节, 延长到 01-31
+        assertEquals(LocalDate.of(2020, 2, 3), MarketDayUtil.nextMarketDay(Exchange.SHFE, LocalDate.of(2020, 1, 23)));
+        assertEquals(LocalDate.of(2020, 2, 4), MarketDayUtil.computeMarketDay(Exchange.SHFE, LocalDate.of(2020, 1, 23), 2));
+        assertEquals(LocalDate.of(2020, 1, 22), MarketDayUtil.computeMarketDay(Exchange.SHFE, LocalDate.of(2020, 2, 3), -2));
+        //2019国庆 10-01 ~ 10-07
+        assertTrue(!MarketDayUtil.isMarketDay(Exchange.DCE, LocalDate.of(2019, 10, 7)));
+        assertEquals(LocalDate.of(2019, 10, 8), MarketDayUtil.nextMarketDay(Exchange.DCE, LocalDate.of(2019, 9, 30)));
+        assertEquals(LocalDate.of(2019, 9, 30), MarketDayUtil.prevMarketDay(Exchange.DCE, LocalDate.of(2019, 10, 8)));
+        //2020国庆 10-01 ~ 10-07, 两周的交易日数量
+        assertEquals(LocalDate.of(2020, 10, 8), MarketDayUtil.nextMarketDay(Exchange.CZCE, LocalDate.of(2020, 9, 30)));
+        assertEquals(5, MarketDayUtil.marketDaysBetween(Exchange.CZCE, LocalDate.of(2020, 9, 28), LocalDate.of(2020, 10, 12)));
+    }
+
+    /**
+     * 交易日历索引与原始休市日数据+周末规则逐日计算的结果一致
+     */
+    @Test
+    public void testCalendarIndex() throws Exception {
+        Set<LocalDate> closeDays = loadRawCloseDays();
+        LocalDate beginDay = LocalDate.of(2012, 1, 1), endDay = LocalDate.of(2022, 12, 31);
+        for(LocalDate day=beginDay; day.isBefore(endDay); day=day.plusDays(1)) {
+            assertEquals(day.toString(), isMarketDay(closeDays, day), MarketDayUtil.isMarketDay(Exchange.DCE, day));
+
+            LocalDate next = day.plusDays(1);
+            while(!isMarketDay(closeDays, next)) {
+                next = next.plusDays(1);
+            }
+            LocalDate prev = day.minusDays(1);
+            while(!isMarketDay(closeDays, prev)) {
+                prev = prev.minusDays(1);
+            }
+            assertEquals(next, MarketDayUtil.nextMarketDay(Exchange.DCE, day));
+            assertEquals(prev, MarketDayUtil.prevMarketDay(Exchange.DCE, day));
+
+            LocalDate next5 = day;
+            for(int i=0;i<5;i++) {
+                next5 = next5.plusDays(1);
+                while(!isMarketDay(closeDays, next5)) {
+                    next5 = next5.plusDays(1);
+                }
+            }
+            assertEquals(next5, MarketDayUtil.computeMarketDay(Exchange.DCE, day, 5));
+            int count = 0;
+            for(LocalDate d=day; d.isBefore(next5); d=d.plusDays(1)) {
+                if ( isMarketDay(closeDays, d) ) {
+                    count++;
+                }
+            }
+            assertEquals(count, MarketDayUtil.marketDaysBetween(Exchange.DCE, day, next5));
+        }
+    }
+
+    /**
+     * 直接读取休市日文件, 不经过MarketDayUtil
+     */
+    private static Set<LocalDate> loadRawCloseDays() throws Exception {
+        Set<LocalDate> result = new HashSet<>();
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(MarketDayUtil.class.getResourceAsStream("marketCloseDays.txt"), StandardCharsets.UTF_8));){
+            String line = null;
+            while( (line=reader.readLine())!=null ) {
+                line = line.trim();
+                if ( line.length()==8 && line.indexOf(",")<0 ) {
+                    result.add(LocalDate.parse(line, DateTimeFormatter.BASIC_ISO_DATE));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean isMarketDay(Set<LocalDate> closeDays, LocalDate day) {
+        DayOfWeek dayOfWeek = day.getDayOfWeek();
+        if ( dayOfWeek==DayOfWeek.SATURDAY || dayOfWeek==DayOfWeek.SUNDAY ) {
+            return false;
+        }
+        return !closeDays.contains(day);
+    }
+
+}
@@ -36,12 +36,15 @@ import trader.tool.MainHelper;
 import trader.tool.MarketDataExportBarAction;
 import trader.tool.MarketDataExportTickAction;
 import trader.tool.MarketDataImportAction;
+import trader.tool.MarketDataReplayJournalAction;
 import trader.tool.RepositoryBuildBarAction;
+import trader.tool.RepositoryConvertTickAction;
 import trader.tool.RepositoryExportAction;
 import trader.tool.RepositoryInstrumentStatsAction;
 import trader.tool.RepositoryPrimaryInstrumentAction;
 import trader.tool.ServiceStartAction;
 import trader.tool.TraderEvalAction;
+import trader.tool.TraderSweepAction;
 
 @SpringBootApplication
 public class TraderMain {
@@ -76,13 +79,16 @@ public class TraderMain {
 
         CmdActionFactory actionFactory = new CmdActionFactory(beansContainer, new CmdAction[] {
                 new TraderEvalAction()
+                ,new TraderSweepAction()
                 ,new MarketDataImportAction()
+                ,new MarketDataReplayJournalAction()
                 ,new RepositoryInstrumentStatsAction()
                 ,new RepositoryPrimaryInstrumentAction()
                 ,new RepositoryBuildBarAction()
                 ,new ServiceStartAction(TraderMain.class)
                 ,new H2DBStartAction()
                 ,new RepositoryExportAction()
+                ,new RepositoryConvertTickAction()
                 ,new InstrumentIndicatorStatsAction()
                 ,new MarketDataExportBarAction()
                 ,new MarketDataExportTickAction()
@@ -1,5 +1,8 @@
 package trader.api.ta;
 
+import java.io.IOException;
+import java.time.LocalDate;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -16,7 +19,10 @@ import com.google.gson.JsonElement;
 import trader.api.ControllerConstants;
 import trader.common.exchangeable.Exchangeable;
 import trader.common.tick.PriceLevel;
+import trader.common.util.DateUtil;
 import trader.common.util.JsonUtil;
+import trader.service.ta.BarSeriesLoader;
+import trader.service.ta.LeveledBarSeries;
 import trader.service.ta.TechnicalAnalysisAccess;
 import trader.service.ta.TechnicalAnalysisService;
 
@@ -40,10 +46,13 @@ public class TAController {
         return (JsonUtil.json2str(access.toJson(), pretty));
     }
 
+    /**
+     * 返回实时KBAR, 指定beginTradingDay时返回从历史数据加载的KBAR
+     */
     @RequestMapping(path=URL_PREFIX+"/{instrument}/{level:.+}",
     method=RequestMethod.GET,
     produces = MediaType.APPLICATION_JSON_VALUE)
-    public String getLevelBars(@PathVariable(value="instrument") String instrumentStr, @PathVariable(value="level") String level, @RequestParam(name="pretty", required=false) boolean pretty){
+    public String getLevelBars(@PathVariable(value="instrument") String instrumentStr, @PathVariable(value="level") String level, @RequestParam(name="beginTradingDay", required=false) String beginTradingDay, @RequestParam(name="endTradingDay", required=false) String endTradingDay, @RequestParam(name="pretty", required=false) boolean pretty){
         Exchangeable instrument = Exchangeable.fromString(instrumentStr);
         TechnicalAnalysisAccess access = technicalAnalysisService.forInstrument(instrument);
         if ( access==null ) {
@@ -51,7 +60,12 @@ public class TAController {
         }
         JsonElement json = null;
         PriceLevel l = PriceLevel.valueOf(level);
-        BarSeries series = access.getSeries(l);
+        BarSeries series = null;
+        if ( beginTradingDay!=null ) {
+            series = loadHistoryBars(access, l, DateUtil.str2localdate(beginTradingDay), DateUtil.str2localdate(endTradingDay));
+        } else {
+            series = access.getSeries(l);
+        }
         if ( series==null ) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND);
         }
@@ -59,4 +73,28 @@ public class TAController {
         return (JsonUtil.json2str(json, pretty));
     }
 
+    /**
+     * 历史KBAR只读, 按列加载, JSON直接从列数据生成
+     */
+    private LeveledBarSeries loadHistoryBars(TechnicalAnalysisAccess access, PriceLevel level, LocalDate beginTradingDay, LocalDate endTradingDay) {
+        if ( beginTradingDay==null ) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST);
+        }
+        if ( endTradingDay==null ) {
+            endTradingDay = access.getTradingTimes().getTradingDay();
+        }
+        BarSeriesLoader accessLoader = access.getSeriesLoader();
+        BarSeriesLoader loader = new BarSeriesLoader(accessLoader.getBeansContainer(), accessLoader.getData());
+        loader.setInstrument(access.getInstrument())
+            .setLevel(level)
+            .setStartTradingDay(beginTradingDay)
+            .setEndTradingDay(endTradingDay)
+            .setColumnar(true);
+        try{
+            return loader.load();
+        }catch(IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Load "+access.getInstrument()+" "+level+" bars failed", e);
+        }
+    }
+
 }
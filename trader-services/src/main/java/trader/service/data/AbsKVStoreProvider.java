@@ -27,6 +27,15 @@ public abstract class AbsKVStoreProvider implements KVStore, Lifecycle {
         orderedExecutor = beansContainer.getBean(OrderedExecutor.class);
     }
 
+    /**
+     * 返回命名空间的KVStore, 缺省为自动添加KEY前缀
+     *
+     * @param prefix 以.结尾的前缀
+     */
+    public KVStore getNamespace(String prefix) {
+        return new KVStoreWrapper(prefix, this);
+    }
+
     @Override
     public byte[] get(String key) {
         return get(key.getBytes(StringUtil.UTF8));
@@ -1,7 +1,8 @@
 package trader.service.data;
 
-import trader.common.util.StringUtil;
-
+/**
+ * 遍历带前缀的KVStore, 返回去掉前缀的KEY
+ */
 public class KVStoreIteratorWrapper implements KVStoreIterator {
 
     private String prefix;
@@ -19,13 +20,11 @@ public class KVStoreIteratorWrapper implements KVStoreIterator {
 
     @Override
     public String next() {
-        while(true) {
-            String key = next();
-            if ( !StringUtil.isEmpty(key) && !key.startsWith(prefix)) {
-                continue;
-            }
-            return key;
+        String key = iterator.next();
+        if ( key!=null && key.startsWith(prefix) ) {
+            key = key.substring(prefix.length());
         }
+        return key;
     }
 
     @Override
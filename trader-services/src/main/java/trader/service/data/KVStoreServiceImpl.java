@@ -60,7 +60,7 @@ public class KVStoreServiceImpl implements KVStoreService {
         }
         KVStore storeView = storeViews.get(prefix);
         if ( storeView==null ) {
-            storeView = new KVStoreWrapper(prefix, kvStore);
+            storeView = kvStore.getNamespace(prefix);
             storeViews.put(prefix, storeView);
         }
         return storeView;
@@ -33,7 +33,7 @@ public class KVStoreWrapper implements KVStore {
     }
 
     public void aput(String key, byte[] data) {
-        delegate.aput(key, data);
+        delegate.aput(prefix+key, data);
     }
 
     public void aput(String key, String value) {
@@ -46,7 +46,12 @@ public class KVStoreWrapper implements KVStore {
 
     @Override
     public KVStoreIterator iterator() {
-        return new KVStoreIteratorWrapper(prefix, delegate.iterator());
+        return iterator("");
+    }
+
+    @Override
+    public KVStoreIterator iterator(String prefix) {
+        return new KVStoreIteratorWrapper(this.prefix, delegate.iterator(this.prefix+prefix));
     }
 
 }
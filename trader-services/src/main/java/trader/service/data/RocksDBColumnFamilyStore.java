@@ -0,0 +1,75 @@
+package trader.service.data;
+
+import org.rocksdb.ColumnFamilyHandle;
+
+import trader.common.util.StringUtil;
+
+/**
+ * RocksDB一个Column Family的KVStore, 对应KVStoreService.getStore(prefix)的一个命名空间
+ */
+public class RocksDBColumnFamilyStore implements KVStore {
+
+    private RocksDBStore store;
+    private String name;
+    private ColumnFamilyHandle cf;
+
+    RocksDBColumnFamilyStore(RocksDBStore store, String name, ColumnFamilyHandle cf) {
+        this.store = store;
+        this.name = name;
+        this.cf = cf;
+    }
+
+    @Override
+    public byte[] get(String key) {
+        return store.get(cf, key.getBytes(StringUtil.UTF8));
+    }
+
+    @Override
+    public String getAsString(String key) {
+        byte[] data = get(key);
+        if (data == null) {
+            return null;
+        }
+        return new String(data, StringUtil.UTF8);
+    }
+
+    @Override
+    public void put(String key, byte[] data) {
+        store.put(cf, key.getBytes(StringUtil.UTF8), data);
+    }
+
+    @Override
+    public void put(String key, String value) {
+        store.put(cf, key.getBytes(StringUtil.UTF8), value.getBytes(StringUtil.UTF8));
+    }
+
+    @Override
+    public void aput(String key, byte[] data) {
+        store.aput(cf, key, data);
+    }
+
+    @Override
+    public void aput(String key, String value) {
+        store.aput(cf, key, value.getBytes(StringUtil.UTF8));
+    }
+
+    @Override
+    public void delete(String key) {
+        store.delete(cf, key.getBytes(StringUtil.UTF8));
+    }
+
+    @Override
+    public KVStoreIterator iterator() {
+        return store.iterator(cf, null);
+    }
+
+    @Override
+    public KVStoreIterator iterator(String prefix) {
+        return store.iterator(cf, prefix);
+    }
+
+    public String toString() {
+        return store.toString()+"["+name+"]";
+    }
+
+}
@@ -1,22 +1,96 @@
 package trader.service.data;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.ColumnFamilyDescriptor;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ColumnFamilyOptions;
+import org.rocksdb.DBOptions;
+import org.rocksdb.LRUCache;
+import org.rocksdb.Options;
 import org.rocksdb.RocksDB;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import trader.common.beans.BeansContainer;
+import trader.common.config.ConfigUtil;
+import trader.common.util.StringUtil;
+import trader.service.stats.StatsCollector;
+import trader.service.stats.StatsItem;
+import trader.service.stats.StatsItemType;
 
 /**
  * 基于RocksDB实现KVStore
+ * <BR>batchWindow>0时, aput在时间窗口内合并为一个WriteBatch提交, 同一个KEY只保留最后的值.
+ * 提交前get可以读到尚未提交的值, 同步put/delete会丢弃同一个KEY尚未提交的值, iterator会先提交当前批次.
+ * <BR>columnFamilies=true时, KVStoreService.getStore(prefix)的每个命名空间使用独立的Column Family
  */
 public class RocksDBStore extends AbsKVStoreProvider {
     private final static Logger logger = LoggerFactory.getLogger(RocksDBStore.class);
 
+    /**
+     * 异步写合并的时间窗口(毫秒), 0代表不合并
+     */
+    public static final String ITEM_BATCH_WINDOW = "/KVStore/rocksdb/batchWindow";
+    /**
+     * 是否为每个命名空间使用独立的Column Family.
+     * <BR>已有数据的库打开这个选项后, 缺省Column Family中以命名空间前缀保存的KEY会在命名空间首次打开时迁移到对应的Column Family
+     */
+    public static final String ITEM_COLUMN_FAMILIES = "/KVStore/rocksdb/columnFamilies";
+    /**
+     * Block Cache大小(MB), 0代表RocksDB缺省值
+     */
+    public static final String ITEM_BLOCK_CACHE_SIZE = "/KVStore/rocksdb/blockCacheSize";
+    public static final String ITEM_DISABLE_WAL = "/KVStore/rocksdb/disableWAL";
+    public static final String ITEM_SYNC_WAL = "/KVStore/rocksdb/syncWAL";
+    /**
+     * WAL文件总大小上限(MB), 0代表RocksDB缺省值
+     */
+    public static final String ITEM_MAX_TOTAL_WAL_SIZE = "/KVStore/rocksdb/maxTotalWalSize";
+
     private String id;
     private String path;
     private RocksDB db;
+    private DBOptions dbOptions;
+    private ColumnFamilyOptions cfOptions;
+    private WriteOptions writeOptions;
+    private ColumnFamilyHandle defaultHandle;
+    private Map<String, ColumnFamilyHandle> cfHandles = new HashMap<>();
+    private boolean columnFamilies;
+
+    private ScheduledExecutorService scheduledExecutorService;
+    private int batchWindow;
+    /**
+     * 等待合并提交的异步写, 同一个KEY只保留最后的值. 提交成功后才删除, 提交期间get仍然可以读到
+     */
+    private final Map<ColumnFamilyHandle, Map<String, byte[]>> pendingWrites = new HashMap<>();
+    private boolean batchScheduled;
+    /**
+     * 批次提交与同步put/delete互斥, 避免旧的异步写覆盖之后的同步写
+     */
+    private final Object commitLock = new Object();
+
+    private long batchCount;
+    /**
+     * 上次统计以来的批次数量
+     */
+    private long statsBatchCount;
+    private long batchKeyTotal;
+    private long batchKeyMax;
+    private long commitTotalNanos;
+    private long commitMaxNanos;
 
     public RocksDBStore(String path) {
         this.id = "rocksDb";
@@ -29,14 +103,65 @@ public class RocksDBStore extends AbsKVStoreProvider {
         super.init(beansContainer);
         File rocksdbDir = new File(path).getAbsoluteFile();
         rocksdbDir.mkdirs();
-        db = RocksDB.open(rocksdbDir.getAbsolutePath());
-        logger.info("RocksDB kvstore is open on "+rocksdbDir);
+        if ( !columnFamilies ) {
+            columnFamilies = ConfigUtil.getBoolean(ITEM_COLUMN_FAMILIES, false);
+        }
+        if ( batchWindow<=0 ) {
+            batchWindow = ConfigUtil.getInt(ITEM_BATCH_WINDOW, 0);
+        }
+        scheduledExecutorService = beansContainer.getBean(ScheduledExecutorService.class);
+        if ( batchWindow>0 && scheduledExecutorService==null ) {
+            logger.warn("RocksDB kvstore batch write is disabled for no ScheduledExecutorService");
+            batchWindow = 0;
+        }
+
+        dbOptions = new DBOptions().setCreateIfMissing(true).setCreateMissingColumnFamilies(true);
+        long maxTotalWalSize = ConfigUtil.getLong(ITEM_MAX_TOTAL_WAL_SIZE, 0);
+        if ( maxTotalWalSize>0 ) {
+            dbOptions.setMaxTotalWalSize(maxTotalWalSize*1024*1024);
+        }
+        cfOptions = new ColumnFamilyOptions();
+        long blockCacheSize = ConfigUtil.getLong(ITEM_BLOCK_CACHE_SIZE, 0);
+        if ( blockCacheSize>0 ) {
+            BlockBasedTableConfig tableConfig = new BlockBasedTableConfig();
+            tableConfig.setBlockCache(new LRUCache(blockCacheSize*1024*1024));
+            cfOptions.setTableFormatConfig(tableConfig);
+        }
+        writeOptions = new WriteOptions()
+                .setDisableWAL(ConfigUtil.getBoolean(ITEM_DISABLE_WAL, false))
+                .setSync(ConfigUtil.getBoolean(ITEM_SYNC_WAL, false));
+
+        //已存在的Column Family必须全部打开
+        List<ColumnFamilyDescriptor> cfDescriptors = new ArrayList<>();
+        cfDescriptors.add(new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY, cfOptions));
+        for(byte[] cfName:listColumnFamilies(rocksdbDir)) {
+            if ( !new String(cfName, StringUtil.UTF8).equals(new String(RocksDB.DEFAULT_COLUMN_FAMILY, StringUtil.UTF8)) ) {
+                cfDescriptors.add(new ColumnFamilyDescriptor(cfName, cfOptions));
+            }
+        }
+        List<ColumnFamilyHandle> handles = new ArrayList<>();
+        db = RocksDB.open(dbOptions, rocksdbDir.getAbsolutePath(), cfDescriptors, handles);
+        defaultHandle = handles.get(0);
+        for(int i=1;i<handles.size();i++) {
+            cfHandles.put(new String(cfDescriptors.get(i).getName(), StringUtil.UTF8), handles.get(i));
+        }
+        registerStats(beansContainer.getBean(StatsCollector.class));
+        logger.info("RocksDB kvstore is open on "+rocksdbDir+", batch window "+batchWindow+" ms, column families "+columnFamilies+" "+cfHandles.keySet());
     }
 
     @Override
     public void destroy() {
         if ( null!=db ) {
+            commitBatch();
+            for(ColumnFamilyHandle handle:cfHandles.values()) {
+                handle.close();
+            }
+            defaultHandle.close();
             db.close();
+            db = null;
+            writeOptions.close();
+            dbOptions.close();
+            cfOptions.close();
         }
     }
 
@@ -44,38 +169,390 @@ public class RocksDBStore extends AbsKVStoreProvider {
         return id;
     }
 
+    /**
+     * 在init之前调用, 优先于配置
+     */
+    public void setBatchWindow(int batchWindow) {
+        this.batchWindow = batchWindow;
+    }
+
+    /**
+     * 在init之前调用, 优先于配置
+     */
+    public void setColumnFamilies(boolean columnFamilies) {
+        this.columnFamilies = columnFamilies;
+    }
+
+    /**
+     * 返回命名空间的KVStore: columnFamilies=true时为独立的Column Family, 否则为KEY前缀
+     */
+    @Override
+    public KVStore getNamespace(String prefix) {
+        if ( !columnFamilies ) {
+            return super.getNamespace(prefix);
+        }
+        String cfName = prefix.substring(0, prefix.length()-1);
+        ColumnFamilyHandle cf = getColumnFamily(cfName);
+        migrateNamespace(prefix, cf);
+        return new RocksDBColumnFamilyStore(this, cfName, cf);
+    }
+
+    /**
+     * 将缺省Column Family中以prefix开始的KEY去掉前缀后迁移到cf, 迁移在一个WriteBatch中原子完成
+     */
+    private void migrateNamespace(String prefix, ColumnFamilyHandle cf) {
+        synchronized(commitLock) {
+            //先提交尚未提交的异步写, 保证迁移到的是最新值
+            commitBatch0();
+            byte[] prefixBytes = prefix.getBytes(StringUtil.UTF8);
+            int keyCount = 0;
+            try(WriteBatch batch = new WriteBatch();
+                RocksIterator rocksIterator = db.newIterator(defaultHandle);)
+            {
+                for(rocksIterator.seek(prefixBytes); rocksIterator.isValid(); rocksIterator.next()) {
+                    byte[] key = rocksIterator.key();
+                    if ( !startsWith(key, prefixBytes) ) {
+                        break;
+                    }
+                    batch.put(cf, Arrays.copyOfRange(key, prefixBytes.length, key.length), rocksIterator.value());
+                    batch.delete(defaultHandle, key);
+                    keyCount++;
+                }
+                if ( keyCount>0 ) {
+                    db.write(writeOptions, batch);
+                    logger.info(this.toString()+" migrated "+keyCount+" keys with prefix "+prefix+" to column family");
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static boolean startsWith(byte[] key, byte[] prefix) {
+        if ( key.length<prefix.length ) {
+            return false;
+        }
+        for(int i=0;i<prefix.length;i++) {
+            if ( key[i]!=prefix[i] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public byte[] get(byte[] key) {
+        return get(defaultHandle, key);
+    }
+
+    @Override
+    public void put(byte[] key, byte[] data) {
+        put(defaultHandle, key, data);
+    }
+
+    public void delete(byte[] key) {
+        delete(defaultHandle, key);
+    }
+
+    @Override
+    public void aput(String key, byte[] data) {
+        if ( batchWindow>0 ) {
+            aput(defaultHandle, key, data);
+        } else {
+            super.aput(key, data);
+        }
+    }
+
+    @Override
+    public void aput(String key, String value) {
+        if ( batchWindow>0 ) {
+            aput(defaultHandle, key, value.getBytes(StringUtil.UTF8));
+        } else {
+            super.aput(key, value);
+        }
+    }
+
+    @Override
+    public KVStoreIterator iterator() {
+        return iterator(defaultHandle, null);
+    }
+
+    @Override
+    public KVStoreIterator iterator(String prefix) {
+        return iterator(defaultHandle, prefix);
+    }
+
+    public String toString() {
+        return "RocksDBStore["+path+"]";
+    }
+
+    byte[] get(ColumnFamilyHandle cf, byte[] key) {
+        if ( batchWindow>0 ) {
+            //尚未提交的异步写优先
+            synchronized(pendingWrites) {
+                Map<String, byte[]> writes = pendingWrites.get(cf);
+                if ( writes!=null ) {
+                    byte[] data = writes.get(new String(key, StringUtil.UTF8));
+                    if ( data!=null ) {
+                        return data;
+                    }
+                }
+            }
+        }
         try{
-            return db.get(key);
+            return db.get(cf, key);
         }catch(Exception e) {
             throw new RuntimeException(e);
         }
     }
 
-    @Override
-    public void put(byte[] key, byte[] data) {
+    void put(ColumnFamilyHandle cf, byte[] key, byte[] data) {
+        if ( batchWindow<=0 ) {
+            put0(cf, key, data);
+            return;
+        }
+        synchronized(commitLock) {
+            removePendingWrite(cf, key);
+            put0(cf, key, data);
+        }
+    }
+
+    private void put0(ColumnFamilyHandle cf, byte[] key, byte[] data) {
         try{
-            db.put(key, data);
+            db.put(cf, writeOptions, key, data);
         }catch(Exception e) {
             throw new RuntimeException(e);
         }
     }
 
-    public void delete(byte[] key) {
+    void delete(ColumnFamilyHandle cf, byte[] key) {
+        if ( batchWindow<=0 ) {
+            delete0(cf, key);
+            return;
+        }
+        synchronized(commitLock) {
+            removePendingWrite(cf, key);
+            delete0(cf, key);
+        }
+    }
+
+    private void delete0(ColumnFamilyHandle cf, byte[] key) {
         try{
-            db.delete(key);
+            db.delete(cf, writeOptions, key);
         }catch(Exception e) {
             throw new RuntimeException(e);
         }
     }
 
-    @Override
-    public KVStoreIterator iterator() {
-        return new RocksDBStoreIterator(db.newIterator());
+    /**
+     * 异步写: 合并到当前批次, 批次的第一个写操作负责在时间窗口后提交
+     */
+    void aput(ColumnFamilyHandle cf, String key, byte[] data) {
+        if ( batchWindow<=0 ) {
+            orderedExecutor.execute(getId(), ()->{
+                try{
+                    put(cf, key.getBytes(StringUtil.UTF8), data);
+                }catch(Throwable t) {
+                    logger.error(this.toString()+" Put key "+key+" data "+data+" failed", t);
+                }
+            });
+            return;
+        }
+        boolean schedule = false;
+        synchronized(pendingWrites) {
+            Map<String, byte[]> writes = pendingWrites.get(cf);
+            if ( writes==null ) {
+                writes = new LinkedHashMap<>();
+                pendingWrites.put(cf, writes);
+            }
+            writes.put(key, data);
+            if ( !batchScheduled ) {
+                batchScheduled = true;
+                schedule = true;
+            }
+        }
+        if ( schedule ) {
+            scheduledExecutorService.schedule(()->{
+                commitBatch();
+            }, batchWindow, TimeUnit.MILLISECONDS);
+        }
     }
 
-    public String toString() {
-        return "RocksDBStore["+path+"]";
+    /**
+     * 迭代之前先提交当前批次, 保证能读到之前的异步写
+     */
+    KVStoreIterator iterator(ColumnFamilyHandle cf, String prefix) {
+        if ( batchWindow>0 ) {
+            commitBatch();
+        }
+        return new RocksDBStoreIterator(db.newIterator(cf), prefix!=null?prefix.getBytes(StringUtil.UTF8):null);
+    }
+
+    /**
+     * 将当前批次的异步写作为一个WriteBatch提交.
+     * <BR>提交期间持有commitLock, 同步put/delete要么在提交之前丢弃同一个KEY的异步写, 要么在提交之后覆盖
+     */
+    void commitBatch() {
+        synchronized(commitLock) {
+            commitBatch0();
+        }
+    }
+
+    private void commitBatch0() {
+        Map<ColumnFamilyHandle, Map<String, byte[]>> writes = new HashMap<>();
+        synchronized(pendingWrites) {
+            batchScheduled = false;
+            for(Map.Entry<ColumnFamilyHandle, Map<String, byte[]>> entry:pendingWrites.entrySet()) {
+                writes.put(entry.getKey(), new LinkedHashMap<>(entry.getValue()));
+            }
+        }
+        if ( writes.isEmpty() ) {
+            return;
+        }
+        int keyCount = 0;
+        long t0 = System.nanoTime();
+        try(WriteBatch batch = new WriteBatch();){
+            for(Map.Entry<ColumnFamilyHandle, Map<String, byte[]>> entry:writes.entrySet()) {
+                ColumnFamilyHandle cf = entry.getKey();
+                for(Map.Entry<String, byte[]> write:entry.getValue().entrySet()) {
+                    batch.put(cf, write.getKey().getBytes(StringUtil.UTF8), write.getValue());
+                    keyCount++;
+                }
+            }
+            db.write(writeOptions, batch);
+        }catch(Throwable t) {
+            //保留未提交的异步写, 下一个批次重试
+            logger.error(this.toString()+" Commit batch of "+keyCount+" keys failed", t);
+            return;
+        }
+        //只删除已提交的值, 提交期间新的aput留在下一个批次
+        synchronized(pendingWrites) {
+            for(Map.Entry<ColumnFamilyHandle, Map<String, byte[]>> entry:writes.entrySet()) {
+                Map<String, byte[]> pending = pendingWrites.get(entry.getKey());
+                if ( pending==null ) {
+                    continue;
+                }
+                for(Map.Entry<String, byte[]> write:entry.getValue().entrySet()) {
+                    pending.remove(write.getKey(), write.getValue());
+                }
+                if ( pending.isEmpty() ) {
+                    pendingWrites.remove(entry.getKey());
+                }
+            }
+        }
+        long commitNanos = System.nanoTime()-t0;
+        synchronized(this) {
+            batchCount++;
+            statsBatchCount++;
+            batchKeyTotal += keyCount;
+            batchKeyMax = Math.max(batchKeyMax, keyCount);
+            commitTotalNanos += commitNanos;
+            commitMaxNanos = Math.max(commitMaxNanos, commitNanos);
+        }
+    }
+
+    private void removePendingWrite(ColumnFamilyHandle cf, byte[] key) {
+        if ( batchWindow<=0 ) {
+            return;
+        }
+        synchronized(pendingWrites) {
+            Map<String, byte[]> writes = pendingWrites.get(cf);
+            if ( writes!=null ) {
+                writes.remove(new String(key, StringUtil.UTF8));
+            }
+        }
+    }
+
+    private synchronized ColumnFamilyHandle getColumnFamily(String cfName) {
+        ColumnFamilyHandle result = cfHandles.get(cfName);
+        if ( result==null ) {
+            try {
+                result = db.createColumnFamily(new ColumnFamilyDescriptor(cfName.getBytes(StringUtil.UTF8), cfOptions));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            cfHandles.put(cfName, result);
+            logger.info(this.toString()+" column family "+cfName+" is created");
+        }
+        return result;
+    }
+
+    private static List<byte[]> listColumnFamilies(File rocksdbDir) {
+        List<byte[]> result = new ArrayList<>();
+        if ( !(new File(rocksdbDir, "CURRENT")).exists() ) {
+            return result;
+        }
+        try(Options options = new Options();){
+            result.addAll(RocksDB.listColumnFamilies(options, rocksdbDir.getAbsolutePath()));
+        } catch (Exception e) {
+            logger.error("List RocksDB column families on "+rocksdbDir+" failed", e);
+        }
+        return result;
+    }
+
+    private void registerStats(StatsCollector statsCollector) {
+        if ( statsCollector==null || batchWindow<=0 ) {
+            return;
+        }
+        StatsItem batchCountItem = new StatsItem(KVStoreService.class.getSimpleName(), getId(), "batchCount");
+        statsCollector.registerStatsItem(batchCountItem, (StatsItem itemInfo) -> {
+            return batchCount;
+        });
+        StatsItem avgBatchSizeItem = new StatsItem(KVStoreService.class.getSimpleName(), getId(), "avgBatchSize");
+        avgBatchSizeItem.setType(StatsItemType.Instant);
+        statsCollector.registerStatsItem(avgBatchSizeItem, (StatsItem itemInfo) -> {
+            return getAvgBatchSize();
+        });
+        StatsItem maxBatchSizeItem = new StatsItem(KVStoreService.class.getSimpleName(), getId(), "maxBatchSize");
+        maxBatchSizeItem.setType(StatsItemType.Instant);
+        statsCollector.registerStatsItem(maxBatchSizeItem, (StatsItem itemInfo) -> {
+            return getAndResetMaxBatchSize();
+        });
+        StatsItem avgCommitItem = new StatsItem(KVStoreService.class.getSimpleName(), getId(), "avgCommitMicros");
+        avgCommitItem.setType(StatsItemType.Instant);
+        statsCollector.registerStatsItem(avgCommitItem, (StatsItem itemInfo) -> {
+            return getAndResetAvgCommitLatency();
+        });
+        StatsItem maxCommitItem = new StatsItem(KVStoreService.class.getSimpleName(), getId(), "maxCommitMicros");
+        maxCommitItem.setType(StatsItemType.Instant);
+        statsCollector.registerStatsItem(maxCommitItem, (StatsItem itemInfo) -> {
+            return getAndResetMaxCommitLatency();
+        });
+    }
+
+    /**
+     * 返回上次统计以来的平均批次KEY数量
+     */
+    private synchronized double getAvgBatchSize() {
+        if ( statsBatchCount==0 ) {
+            return 0;
+        }
+        return ((double)batchKeyTotal)/statsBatchCount;
+    }
+
+    private synchronized double getAndResetMaxBatchSize() {
+        long max = batchKeyMax;
+        batchKeyMax = 0;
+        return max;
+    }
+
+    /**
+     * 返回上次统计以来的平均提交延时(微秒), 并重新开始统计
+     */
+    private synchronized double getAndResetAvgCommitLatency() {
+        long count = statsBatchCount, total = commitTotalNanos;
+        statsBatchCount = 0;
+        batchKeyTotal = 0;
+        commitTotalNanos = 0;
+        if ( count==0 ) {
+            return 0;
+        }
+        return (total/count)/1000.0;
+    }
+
+    private synchronized double getAndResetMaxCommitLatency() {
+        long max = commitMaxNanos;
+        commitMaxNanos = 0;
+        return max/1000.0;
     }
 }
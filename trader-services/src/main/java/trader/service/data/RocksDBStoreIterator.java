@@ -1,5 +1,7 @@
 package trader.service.data;
 
+import java.util.NoSuchElementException;
+
 import org.rocksdb.RocksIterator;
 
 import trader.common.util.StringUtil;
@@ -7,28 +9,72 @@ import trader.common.util.StringUtil;
 public class RocksDBStoreIterator implements KVStoreIterator{
 
     private RocksIterator rocksIterator;
+    private byte[] prefix;
+    private byte[] value;
 
     public RocksDBStoreIterator(RocksIterator rocksIterator) {
+        this(rocksIterator, null);
+    }
+
+    /**
+     * 从prefix开始遍历, 遇到第一个不匹配prefix的KEY结束
+     */
+    public RocksDBStoreIterator(RocksIterator rocksIterator, byte[] prefix) {
         this.rocksIterator = rocksIterator;
+        this.prefix = prefix;
+        if ( prefix!=null && prefix.length>0 ) {
+            rocksIterator.seek(prefix);
+        } else {
+            rocksIterator.seekToFirst();
+        }
     }
 
     @Override
     public boolean hasNext() {
-        return rocksIterator.isValid();
+        if ( rocksIterator==null ) {
+            return false;
+        }
+        boolean result = rocksIterator.isValid() && matchPrefix(rocksIterator.key());
+        if ( !result ) {
+            //遍历结束, 释放底层资源
+            rocksIterator.close();
+            rocksIterator = null;
+        }
+        return result;
     }
 
     @Override
     public String next() {
-        rocksIterator.next();
-        if ( rocksIterator.isValid() ) {
-            return new String(rocksIterator.key(), StringUtil.UTF8);
+        if ( !hasNext() ) {
+            throw new NoSuchElementException();
         }
-        return null;
+        String key = new String(rocksIterator.key(), StringUtil.UTF8);
+        value = rocksIterator.value();
+        rocksIterator.next();
+        return key;
     }
 
+    /**
+     * 返回最后一次next()返回的KEY对应的值
+     */
     @Override
     public byte[] getValue() {
-        return rocksIterator.value();
+        return value;
+    }
+
+    private boolean matchPrefix(byte[] key) {
+        if ( prefix==null ) {
+            return true;
+        }
+        if ( key.length<prefix.length ) {
+            return false;
+        }
+        for(int i=0;i<prefix.length;i++) {
+            if ( key[i]!=prefix[i] ) {
+                return false;
+            }
+        }
+        return true;
     }
 
-}
\ No newline at end of file
+}
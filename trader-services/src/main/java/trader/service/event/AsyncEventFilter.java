@@ -7,6 +7,8 @@ public interface AsyncEventFilter {
 
     /**
      * 处理事件
+     * <BR>行情事件在启用分区(marketDataPartitions&gt;0)时会从多个分区线程并发调用, 同一品种固定在同一线程内顺序处理;
+     * 其它事件仍然只在主事件线程中调用
      * @return true表示event已经被处理, false表示未处理
      */
     boolean onEvent(AsyncEvent event);
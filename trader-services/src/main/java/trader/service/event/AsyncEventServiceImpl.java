@@ -5,6 +5,8 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -19,6 +21,9 @@ import trader.common.beans.Lifecycle;
 import trader.common.config.ConfigUtil;
 import trader.common.util.ConversionUtil;
 import trader.service.md.MarketData;
+import trader.service.stats.StatsCollector;
+import trader.service.stats.StatsItem;
+import trader.service.stats.StatsItemType;
 import trader.service.util.ConcurrentUtil;
 
 @Service
@@ -26,6 +31,11 @@ public class AsyncEventServiceImpl implements AsyncEventService, Lifecycle {
 
     public static final String ITEM_DISRUPTOR_WAIT_STRATEGY = "/AsyncEventService/disruptor/waitStrategy";
     public static final String ITEM_DISRUPTOR_RINGBUFFER_SIZE = "/AsyncEventService/disruptor/ringBufferSize";
+    /**
+     * 行情事件分区数量, 缺省0不分区, 所有事件由同一个RingBuffer处理
+     */
+    public static final String ITEM_DISRUPTOR_MD_PARTITIONS = "/AsyncEventService/disruptor/marketDataPartitions";
+    public static final String ITEM_DISRUPTOR_MD_PARTITION_RINGBUFFER_SIZE = "/AsyncEventService/disruptor/marketDataPartitionRingBufferSize";
 
     private static class AsyncEventHandler implements EventHandler<AsyncEvent>{
 
@@ -57,12 +67,76 @@ public class AsyncEventServiceImpl implements AsyncEventService, Lifecycle {
 
     }
 
+    /**
+     * 行情分区: 按合约Hash分配的独立RingBuffer和处理线程, 保证同一合约的行情顺序处理
+     */
+    private static class MarketDataPartition implements EventHandler<AsyncEvent>{
+        private Disruptor<AsyncEvent> disruptor;
+        private RingBuffer<AsyncEvent> ringBuffer;
+        private AsyncEventHandler[] handlers;
+        /**
+         * 分区线程更新, 统计线程读取并重置
+         */
+        private final LongAdder latencyTotalNanos = new LongAdder();
+        private final LongAdder latencyCount = new LongAdder();
+        private final AtomicLong latencyMaxNanos = new AtomicLong();
+
+        MarketDataPartition(Disruptor<AsyncEvent> disruptor, AsyncEventHandler[] handlers){
+            this.disruptor = disruptor;
+            this.handlers = handlers;
+        }
+
+        @Override
+        public void onEvent(AsyncEvent event, long sequence, boolean endOfBatch) throws Exception {
+            //每个分区只有一个处理线程, 依次执行各个FilterChain
+            for(int i=0;i<handlers.length;i++) {
+                handlers[i].onEvent(event, sequence, endOfBatch);
+            }
+            long latency = System.nanoTime()-event.publishNanos;
+            latencyTotalNanos.add(latency);
+            latencyCount.increment();
+            long max = latencyMaxNanos.get();
+            while( latency>max && !latencyMaxNanos.compareAndSet(max, latency) ) {
+                max = latencyMaxNanos.get();
+            }
+            event.clear();
+        }
+
+        long getQueueDepth() {
+            return ringBuffer.getBufferSize()-ringBuffer.remainingCapacity();
+        }
+
+        /**
+         * 返回上次统计以来的平均延时(微秒), 并重新开始统计
+         */
+        double getAndResetAvgLatency() {
+            long count = latencyCount.sumThenReset(), total = latencyTotalNanos.sumThenReset();
+            if ( count==0 ) {
+                return 0;
+            }
+            return (total/count)/1000.0;
+        }
+
+        /**
+         * 返回上次统计以来的最大延时(微秒), 并重新开始统计
+         */
+        double getAndResetMaxLatency() {
+            long max = latencyMaxNanos.getAndSet(0);
+            return max/1000.0;
+        }
+    }
+
     @Autowired
     private ExecutorService executorService;
 
+    @Autowired
+    private StatsCollector statsCollector;
+
     private Disruptor<AsyncEvent> disruptor;
     private RingBuffer<AsyncEvent> ringBuffer;
 
+    private MarketDataPartition[] mdPartitions;
+
     private List<Object[]> registeredFilters = new ArrayList<>();
 
     @Override
@@ -83,6 +157,13 @@ public class AsyncEventServiceImpl implements AsyncEventService, Lifecycle {
             disruptor.shutdown();
             ringBuffer = null;
         }
+        if ( mdPartitions!=null ) {
+            for(MarketDataPartition partition:mdPartitions) {
+                partition.disruptor.halt();
+                partition.disruptor.shutdown();
+            }
+            mdPartitions = null;
+        }
     }
 
     public void start() {
@@ -104,6 +185,67 @@ public class AsyncEventServiceImpl implements AsyncEventService, Lifecycle {
         disruptor.handleEventsWith(handlers);
         ringBuffer= disruptor.start();
         //为每个FilterChain启动独立的线程
+        startMarketDataPartitions(allFilters);
+    }
+
+    /**
+     * 启动行情分区, 每个分区只包含处理行情事件的Filter
+     */
+    private void startMarketDataPartitions(List<List<Object[]>> allFilters) {
+        int partitionCount = ConfigUtil.getInt(ITEM_DISRUPTOR_MD_PARTITIONS, 0);
+        if ( partitionCount<=0 ) {
+            return;
+        }
+        List<List<Object[]>> mdFilters = new ArrayList<>();
+        for(List<Object[]> filters:allFilters) {
+            List<Object[]> chainMdFilters = new ArrayList<>();
+            for(Object[] filter:filters) {
+                int filterMask = ConversionUtil.toInt(filter[2]);
+                if ( (AsyncEvent.EVENT_TYPE_MARKETDATA&filterMask)==AsyncEvent.EVENT_TYPE_MARKETDATA ) {
+                    chainMdFilters.add(filter);
+                }
+            }
+            if ( !chainMdFilters.isEmpty() ) {
+                mdFilters.add(chainMdFilters);
+            }
+        }
+        int ringBufferSize = ConfigUtil.getInt(ITEM_DISRUPTOR_MD_PARTITION_RINGBUFFER_SIZE, 16384);
+        String waitStrategy = ConfigUtil.getString(ITEM_DISRUPTOR_WAIT_STRATEGY);
+        MarketDataPartition[] partitions = new MarketDataPartition[partitionCount];
+        for(int i=0;i<partitionCount;i++) {
+            AsyncEventHandler[] handlers = new AsyncEventHandler[mdFilters.size()];
+            for(int j=0;j<mdFilters.size();j++) {
+                handlers[j] = new AsyncEventHandler(mdFilters.get(j));
+            }
+            Disruptor<AsyncEvent> partitionDisruptor = new Disruptor<AsyncEvent>( new AsyncEventFactory()
+                    , ringBufferSize
+                    , executorService
+                    , ProducerType.MULTI
+                    , ConcurrentUtil.createDisruptorWaitStrategy(waitStrategy)
+                    );
+            MarketDataPartition partition = new MarketDataPartition(partitionDisruptor, handlers);
+            partitionDisruptor.handleEventsWith(partition);
+            partition.ringBuffer = partitionDisruptor.start();
+            partitions[i] = partition;
+
+            String component = "mdPartition"+i;
+            StatsItem queueDepthItem = new StatsItem(AsyncEventService.class.getSimpleName(), component, "queueDepth");
+            queueDepthItem.setType(StatsItemType.Instant);
+            statsCollector.registerStatsItem(queueDepthItem, (StatsItem itemInfo) -> {
+                return partition.getQueueDepth();
+            });
+            StatsItem avgLatencyItem = new StatsItem(AsyncEventService.class.getSimpleName(), component, "avgLatencyMicros");
+            avgLatencyItem.setType(StatsItemType.Instant);
+            statsCollector.registerStatsItem(avgLatencyItem, (StatsItem itemInfo) -> {
+                return partition.getAndResetAvgLatency();
+            });
+            StatsItem maxLatencyItem = new StatsItem(AsyncEventService.class.getSimpleName(), component, "maxLatencyMicros");
+            maxLatencyItem.setType(StatsItemType.Instant);
+            statsCollector.registerStatsItem(maxLatencyItem, (StatsItem itemInfo) -> {
+                return partition.getAndResetMaxLatency();
+            });
+        }
+        mdPartitions = partitions;
     }
 
     @Override
@@ -113,6 +255,21 @@ public class AsyncEventServiceImpl implements AsyncEventService, Lifecycle {
 
     @Override
     public void publishMarketData(MarketData md) {
+        MarketDataPartition[] partitions = mdPartitions;
+        if ( partitions!=null ) {
+            //按合约分区, 同一合约总是在同一个分区处理
+            MarketDataPartition partition = partitions[ (md.instrument.hashCode()&0X7FFFFFFF)%partitions.length ];
+            RingBuffer<AsyncEvent> partitionRingBuffer = partition.ringBuffer;
+            long seq = partitionRingBuffer.next();
+            try {
+                AsyncEvent event = partitionRingBuffer.get(seq);
+                event.setData(AsyncEvent.EVENT_TYPE_MARKETDATA, null, md,  null);
+                event.publishNanos = System.nanoTime();
+            }finally {
+                partitionRingBuffer.publish(seq);
+            }
+            return;
+        }
         long seq = ringBuffer.next();
         try {
             AsyncEvent event = ringBuffer.get(seq);
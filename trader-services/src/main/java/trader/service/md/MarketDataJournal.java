@@ -0,0 +1,375 @@
+package trader.service.md;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.InsufficientCapacityException;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.SleepingWaitStrategy;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+
+import trader.common.beans.BeansContainer;
+import trader.common.util.TraderHomeUtil;
+
+/**
+ * 以日志方式保存行情数据.
+ * <BR>行情通过有界的RingBuffer交给写线程, 写入每个交易日预分配大小的内存映射段文件:
+ * marketData/TRADING_DAY/_journal/segment-NNNNN.jnl
+ * <BR>每个段文件由固定大小的记录槽组成, 行情按固定的二进制字段布局逐字段写入, 不做CSV格式化.
+ * 记录的提交标记在内容之后写入, 进程崩溃后只会丢失未提交的记录.
+ * 日志文件可以使用 MarketDataJournalReader 离线恢复为CSV文件.
+ */
+public class MarketDataJournal implements EventHandler<MarketDataJournal.JournalEvent> {
+    private static Logger logger = LoggerFactory.getLogger(MarketDataJournal.class);
+
+    public static final String JOURNAL_DIR = "_journal";
+    public static final String SEGMENT_PREFIX = "segment-";
+    public static final String SEGMENT_SUFFIX = ".jnl";
+
+    /**
+     * 记录槽大小
+     */
+    public static final int SLOT_SIZE = 512;
+    /**
+     * 每个段文件的记录槽数量, 段文件大小为32MB
+     */
+    public static final int SEGMENT_SLOTS = 64*1024;
+
+    /**
+     * 记录已提交标记
+     */
+    public static final int COMMIT_MARKER = 0X4A524E4C;
+
+    /**
+     * Producer记录, 每个段文件中每个producer写入一次, instrument字段保存producer类型
+     */
+    public static final byte RECORD_HEAD = 1;
+    /**
+     * 行情记录
+     */
+    public static final byte RECORD_ROW = 2;
+
+    /**
+     * 记录的最大行情深度
+     */
+    public static final int MAX_DEPTH = 10;
+
+    /**
+     * 记录格式, 全部为固定偏移:
+     * <BR>int commitMarker, byte recordType, byte producerIdLen, byte instrumentLen, byte depth
+     * <BR>long updateTimestamp, lastPrice, volume, turnover, openInterest, averagePrice, highestPrice, lowestPrice, openPrice, preClosePrice, upperLimitPrice, lowerLimitPrice
+     * <BR>MAX_DEPTH档: long bidPrice, int bidVolume, long askPrice, int askVolume
+     * <BR>producerId, instrument的UTF-8字节
+     */
+    public static final int OFFSET_RECORD_TYPE = 4;
+    public static final int OFFSET_PRODUCER_ID_LEN = 5;
+    public static final int OFFSET_INSTRUMENT_LEN = 6;
+    public static final int OFFSET_DEPTH = 7;
+    public static final int OFFSET_TIMESTAMP = 8;
+    public static final int OFFSET_LAST_PRICE = 16;
+    public static final int OFFSET_VOLUME = 24;
+    public static final int OFFSET_TURNOVER = 32;
+    public static final int OFFSET_OPEN_INTEREST = 40;
+    public static final int OFFSET_AVERAGE_PRICE = 48;
+    public static final int OFFSET_HIGHEST_PRICE = 56;
+    public static final int OFFSET_LOWEST_PRICE = 64;
+    public static final int OFFSET_OPEN_PRICE = 72;
+    public static final int OFFSET_PRECLOSE_PRICE = 80;
+    public static final int OFFSET_UPPERLIMIT_PRICE = 88;
+    public static final int OFFSET_LOWERLIMIT_PRICE = 96;
+    public static final int OFFSET_DEPTH_LEVELS = 104;
+    public static final int DEPTH_LEVEL_SIZE = 24;
+    public static final int OFFSET_STRINGS = OFFSET_DEPTH_LEVELS+DEPTH_LEVEL_SIZE*MAX_DEPTH;
+
+    static class JournalEvent {
+        MarketData md;
+    }
+
+    private MarketDataService marketDataService;
+    private Disruptor<JournalEvent> disruptor;
+    private RingBuffer<JournalEvent> ringBuffer;
+    private File dataDir;
+    private AtomicLong droppedCount = new AtomicLong();
+
+    private String tradingDay;
+    private File journalDir;
+    private int segmentIndex;
+    private FileChannel segmentChannel;
+    private MappedByteBuffer segment;
+    private int slotIndex;
+    private Set<String> segmentProducers = new HashSet<>();
+
+    public MarketDataJournal(BeansContainer beansContainer, int ringBufferSize) {
+        this.marketDataService = beansContainer.getBean(MarketDataService.class);
+        ExecutorService executorService = beansContainer.getBean(ExecutorService.class);
+        dataDir = TraderHomeUtil.getDirectory(TraderHomeUtil.DIR_MARKETDATA);
+        dataDir.mkdirs();
+        disruptor = new Disruptor<JournalEvent>(()->new JournalEvent()
+            , ringBufferSize
+            , executorService
+            , ProducerType.MULTI
+            , new SleepingWaitStrategy()
+            );
+        disruptor.handleEventsWith(this);
+        ringBuffer = disruptor.start();
+    }
+
+    /**
+     * 不阻塞行情线程, 缓冲区满时丢弃并计数
+     */
+    public void asyncSave(MarketData md) {
+        long seq = 0;
+        try {
+            seq = ringBuffer.tryNext();
+        }catch(InsufficientCapacityException e) {
+            if ( (droppedCount.incrementAndGet()%1000)==1 ) {
+                logger.warn("Market data journal buffer is full, dropped "+droppedCount.get()+" ticks");
+            }
+            return;
+        }
+        try {
+            ringBuffer.get(seq).md = md;
+        }finally {
+            ringBuffer.publish(seq);
+        }
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * 将内存映射数据刷新到磁盘, 需要被定时调用
+     */
+    public synchronized void flush() {
+        MappedByteBuffer segment = this.segment;
+        if ( segment!=null ) {
+            try{
+                segment.force();
+            }catch(Throwable t) {
+                logger.error("Market data journal flush failed", t);
+            }
+        }
+    }
+
+    public void close() {
+        disruptor.shutdown();
+        closeSegment();
+    }
+
+    @Override
+    public void onEvent(JournalEvent event, long sequence, boolean endOfBatch) throws Exception {
+        MarketData md = event.md;
+        event.md = null;
+        try {
+            append(md);
+        }catch(Throwable t) {
+            logger.error("Write market data journal failed", t);
+        }
+    }
+
+    private void append(MarketData md) throws IOException
+    {
+        if ( !md.tradingDay.equals(tradingDay) ) {
+            openJournal(md.tradingDay);
+        }
+        if ( slotIndex+2>SEGMENT_SLOTS ) {
+            //当前段已满, 切换新的段文件, Producer记录需要重新写入
+            openSegment(segmentIndex+1);
+            segmentProducers.clear();
+        }
+        if ( !segmentProducers.contains(md.producerId) ) {
+            String producerType = MarketDataProducer.PROVIDER_CTP;
+            MarketDataProducer mdProducer = marketDataService.getProducer(md.producerId);
+            if ( mdProducer!=null ) {
+                producerType = mdProducer.getProvider();
+            }
+            if ( writeHead(md.producerId, producerType) ) {
+                segmentProducers.add(md.producerId);
+            }
+        }
+        writeRow(md);
+    }
+
+    private boolean writeHead(String producerId, String producerType)
+    {
+        int pos = slotIndex*SLOT_SIZE;
+        if ( !writeStrings(pos, producerId, producerType) ) {
+            return false;
+        }
+        segment.put(pos+OFFSET_RECORD_TYPE, RECORD_HEAD);
+        segment.putInt(pos, COMMIT_MARKER);
+        slotIndex++;
+        return true;
+    }
+
+    /**
+     * 按固定偏移逐字段写入行情, 最后写入提交标记
+     */
+    private boolean writeRow(MarketData md)
+    {
+        int pos = slotIndex*SLOT_SIZE;
+        if ( !writeStrings(pos, md.producerId, md.instrument.toString()) ) {
+            return false;
+        }
+        MappedByteBuffer segment = this.segment;
+        int depth = Math.min(md.depth, MAX_DEPTH);
+        if ( md.bidPrices==null || md.askPrices==null ) {
+            depth = 0;
+        } else {
+            depth = Math.min(depth, Math.min(md.bidPrices.length, md.askPrices.length));
+        }
+        segment.put(pos+OFFSET_RECORD_TYPE, RECORD_ROW);
+        segment.put(pos+OFFSET_DEPTH, (byte)depth);
+        segment.putLong(pos+OFFSET_TIMESTAMP, md.updateTimestamp);
+        segment.putLong(pos+OFFSET_LAST_PRICE, md.lastPrice);
+        segment.putLong(pos+OFFSET_VOLUME, md.volume);
+        segment.putLong(pos+OFFSET_TURNOVER, md.turnover);
+        segment.putLong(pos+OFFSET_OPEN_INTEREST, md.openInterest);
+        segment.putLong(pos+OFFSET_AVERAGE_PRICE, md.averagePrice);
+        segment.putLong(pos+OFFSET_HIGHEST_PRICE, md.highestPrice);
+        segment.putLong(pos+OFFSET_LOWEST_PRICE, md.lowestPrice);
+        segment.putLong(pos+OFFSET_OPEN_PRICE, md.openPrice);
+        segment.putLong(pos+OFFSET_PRECLOSE_PRICE, md.preClosePrice);
+        segment.putLong(pos+OFFSET_UPPERLIMIT_PRICE, md.upperLimitPrice);
+        segment.putLong(pos+OFFSET_LOWERLIMIT_PRICE, md.lowerLimitPrice);
+        int levelPos = pos+OFFSET_DEPTH_LEVELS;
+        for(int i=0;i<depth;i++) {
+            segment.putLong(levelPos, md.bidPrices[i]);
+            segment.putInt(levelPos+8, md.bidVolumes[i]);
+            segment.putLong(levelPos+12, md.askPrices[i]);
+            segment.putInt(levelPos+20, md.askVolumes[i]);
+            levelPos += DEPTH_LEVEL_SIZE;
+        }
+        segment.putInt(pos, COMMIT_MARKER);
+        slotIndex++;
+        return true;
+    }
+
+    private boolean writeStrings(int pos, String producerId, String instrument)
+    {
+        byte[] producerIdBytes = producerId.getBytes(StandardCharsets.UTF_8);
+        byte[] instrumentBytes = instrument.getBytes(StandardCharsets.UTF_8);
+        if ( producerIdBytes.length>0XFF || instrumentBytes.length>0XFF || OFFSET_STRINGS+producerIdBytes.length+instrumentBytes.length>SLOT_SIZE ) {
+            logger.error("Market data journal record is too large: "+producerId+" "+instrument);
+            return false;
+        }
+        segment.put(pos+OFFSET_PRODUCER_ID_LEN, (byte)producerIdBytes.length);
+        segment.put(pos+OFFSET_INSTRUMENT_LEN, (byte)instrumentBytes.length);
+        int dataPos = pos+OFFSET_STRINGS;
+        for(byte b:producerIdBytes) {
+            segment.put(dataPos++, b);
+        }
+        for(byte b:instrumentBytes) {
+            segment.put(dataPos++, b);
+        }
+        return true;
+    }
+
+    /**
+     * 打开交易日的日志目录, 从最后一个段文件的第一个未提交记录继续写入
+     */
+    private void openJournal(String tradingDay) throws IOException
+    {
+        this.tradingDay = tradingDay;
+        journalDir = new File(dataDir, tradingDay+"/"+JOURNAL_DIR);
+        journalDir.mkdirs();
+        int lastIndex = 0;
+        File[] files = journalDir.listFiles();
+        if ( files!=null ) {
+            for(File f:files) {
+                String fname = f.getName();
+                if ( fname.startsWith(SEGMENT_PREFIX) && fname.endsWith(SEGMENT_SUFFIX) ) {
+                    lastIndex = Math.max(lastIndex, Integer.parseInt(fname.substring(SEGMENT_PREFIX.length(), fname.length()-SEGMENT_SUFFIX.length())));
+                }
+            }
+        }
+        openSegment(lastIndex);
+        segmentProducers.clear();
+    }
+
+    /**
+     * 打开段文件前关闭之前的段文件并释放内存映射
+     */
+    private void openSegment(int index) throws IOException
+    {
+        closeSegment();
+        segmentIndex = index;
+        File segmentFile = new File(journalDir, segmentFileName(index));
+        segmentChannel = FileChannel.open(segmentFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = segmentChannel.map(MapMode.READ_WRITE, 0, ((long)SLOT_SIZE)*SEGMENT_SLOTS);
+        slotIndex = 0;
+        while(slotIndex<SEGMENT_SLOTS && segment.getInt(slotIndex*SLOT_SIZE)==COMMIT_MARKER) {
+            slotIndex++;
+        }
+        if ( slotIndex>0 ) {
+            logger.info("Market data journal "+segmentFile+" continues from record "+slotIndex);
+        }
+    }
+
+    /**
+     * 与定时flush互斥, 避免访问已经释放的内存映射
+     */
+    private synchronized void closeSegment()
+    {
+        MappedByteBuffer segment = this.segment;
+        FileChannel segmentChannel = this.segmentChannel;
+        this.segment = null;
+        this.segmentChannel = null;
+        if ( segment!=null ) {
+            try{
+                segment.force();
+            }catch(Throwable t) {
+                logger.error("Market data journal flush failed", t);
+            }
+            unmap(segment);
+        }
+        if ( segmentChannel!=null ) {
+            try{
+                segmentChannel.close();
+            }catch(Throwable t) {
+                logger.error("Market data journal close failed", t);
+            }
+        }
+    }
+
+    /**
+     * 立即释放内存映射, 不等待GC回收. 释放后不能再访问这个buffer
+     */
+    static void unmap(ByteBuffer buffer) {
+        if ( buffer==null || !buffer.isDirect() ) {
+            return;
+        }
+        try{
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        }catch(Throwable t) {
+            logger.warn("Unmap market data journal segment failed: "+t);
+        }
+    }
+
+    public static String segmentFileName(int index) {
+        return SEGMENT_PREFIX+String.format("%05d", index)+SEGMENT_SUFFIX;
+    }
+
+}
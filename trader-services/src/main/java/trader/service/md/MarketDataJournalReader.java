@@ -0,0 +1,272 @@
+package trader.service.md;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.JsonObject;
+
+import net.jctp.CThostFtdcDepthMarketDataField;
+import trader.common.exchangeable.Exchange;
+import trader.common.exchangeable.Exchangeable;
+import trader.common.util.DateUtil;
+import trader.common.util.FileUtil;
+import trader.common.util.IOUtil;
+import trader.common.util.PriceUtil;
+import trader.common.util.StringUtil;
+import trader.common.util.csv.CtpCSVMarshallHelper;
+
+/**
+ * 读取MarketDataJournal日志文件, 恢复为MarketDataSaver相同格式的CSV文件:
+ * marketData/TRADING_DAY/PRODUCER_ID/INSTRUMENT.csv
+ * <BR>日志只保存MarketData的通用字段, 恢复的CSV中结算价, 昨持仓量等字段为空
+ */
+public class MarketDataJournalReader implements AutoCloseable {
+    private static final ZoneId CFFEX_ZONE_ID = Exchange.CFFEX.getZoneId();
+
+    private File tradingDayDir;
+    private String tradingDay;
+    private CtpCSVMarshallHelper csvMarshallHelper = new CtpCSVMarshallHelper();
+    private Map<String, String> producerTypes = new HashMap<>();
+    private Map<String, Writer> writers = new HashMap<>();
+    private StringBuilder rowBuf = new StringBuilder(1024);
+    private int rowCount;
+
+    public MarketDataJournalReader(File tradingDayDir) {
+        this.tradingDayDir = tradingDayDir;
+        this.tradingDay = tradingDayDir.getName();
+    }
+
+    /**
+     * 重放交易日目录下的所有日志段文件, 返回恢复的行情数量
+     */
+    public int replay() throws IOException
+    {
+        File journalDir = new File(tradingDayDir, MarketDataJournal.JOURNAL_DIR);
+        List<File> segmentFiles = new ArrayList<>();
+        File[] files = journalDir.listFiles();
+        if ( files!=null ) {
+            for(File f:files) {
+                if ( f.getName().startsWith(MarketDataJournal.SEGMENT_PREFIX) && f.getName().endsWith(MarketDataJournal.SEGMENT_SUFFIX) ) {
+                    segmentFiles.add(f);
+                }
+            }
+        }
+        Collections.sort(segmentFiles);
+        for(File segmentFile:segmentFiles) {
+            replaySegment(segmentFile);
+        }
+        return rowCount;
+    }
+
+    private void replaySegment(File segmentFile) throws IOException
+    {
+        MappedByteBuffer segment = null;
+        try(FileChannel channel = FileChannel.open(segmentFile.toPath(), StandardOpenOption.READ);){
+            segment = channel.map(MapMode.READ_ONLY, 0, channel.size());
+        }
+        try{
+            int slotCount = segment.capacity()/MarketDataJournal.SLOT_SIZE;
+            for(int slot=0; slot<slotCount; slot++) {
+                int pos = slot*MarketDataJournal.SLOT_SIZE;
+                if ( segment.getInt(pos)!=MarketDataJournal.COMMIT_MARKER ) {
+                    break;
+                }
+                byte recordType = segment.get(pos+MarketDataJournal.OFFSET_RECORD_TYPE);
+                int producerIdLen = segment.get(pos+MarketDataJournal.OFFSET_PRODUCER_ID_LEN)&0XFF;
+                int instrumentLen = segment.get(pos+MarketDataJournal.OFFSET_INSTRUMENT_LEN)&0XFF;
+                int dataPos = pos+MarketDataJournal.OFFSET_STRINGS;
+                String producerId = readString(segment, dataPos, producerIdLen);
+                String instrument = readString(segment, dataPos+producerIdLen, instrumentLen);
+                switch(recordType) {
+                case MarketDataJournal.RECORD_HEAD:
+                    if ( !producerTypes.containsKey(producerId) ) {
+                        saveProviderProps(producerId, instrument);
+                    }
+                    producerTypes.put(producerId, instrument);
+                    break;
+                case MarketDataJournal.RECORD_ROW:
+                    Writer writer = getOrCreateWriter(producerId, instrument);
+                    if ( writer!=null ) {
+                        MarketData md = readMarketData(segment, pos, producerId, Exchangeable.fromString(instrument));
+                        rowBuf.setLength(0);
+                        toCsvRow(md, rowBuf);
+                        rowBuf.append("\n");
+                        writer.write(rowBuf.toString());
+                        rowCount++;
+                    }
+                    break;
+                }
+            }
+        }finally {
+            MarketDataJournal.unmap(segment);
+        }
+    }
+
+    /**
+     * 按固定偏移读取行情字段
+     */
+    MarketData readMarketData(MappedByteBuffer segment, int pos, String producerId, Exchangeable instrument)
+    {
+        SimpleMarketData md = new SimpleMarketData();
+        md.producerId = producerId;
+        md.instrument = instrument;
+        md.tradingDay = tradingDay;
+        md.setUpdateTimestamp(segment.getLong(pos+MarketDataJournal.OFFSET_TIMESTAMP));
+        md.lastPrice = segment.getLong(pos+MarketDataJournal.OFFSET_LAST_PRICE);
+        md.volume = segment.getLong(pos+MarketDataJournal.OFFSET_VOLUME);
+        md.turnover = segment.getLong(pos+MarketDataJournal.OFFSET_TURNOVER);
+        md.openInterest = segment.getLong(pos+MarketDataJournal.OFFSET_OPEN_INTEREST);
+        md.averagePrice = segment.getLong(pos+MarketDataJournal.OFFSET_AVERAGE_PRICE);
+        md.highestPrice = segment.getLong(pos+MarketDataJournal.OFFSET_HIGHEST_PRICE);
+        md.lowestPrice = segment.getLong(pos+MarketDataJournal.OFFSET_LOWEST_PRICE);
+        md.openPrice = segment.getLong(pos+MarketDataJournal.OFFSET_OPEN_PRICE);
+        md.preClosePrice = segment.getLong(pos+MarketDataJournal.OFFSET_PRECLOSE_PRICE);
+        md.upperLimitPrice = segment.getLong(pos+MarketDataJournal.OFFSET_UPPERLIMIT_PRICE);
+        md.lowerLimitPrice = segment.getLong(pos+MarketDataJournal.OFFSET_LOWERLIMIT_PRICE);
+        int depth = segment.get(pos+MarketDataJournal.OFFSET_DEPTH);
+        md.depth = depth;
+        md.bidPrices = new long[depth];
+        md.bidVolumes = new int[depth];
+        md.askPrices = new long[depth];
+        md.askVolumes = new int[depth];
+        int levelPos = pos+MarketDataJournal.OFFSET_DEPTH_LEVELS;
+        for(int i=0;i<depth;i++) {
+            md.bidPrices[i] = segment.getLong(levelPos);
+            md.bidVolumes[i] = segment.getInt(levelPos+8);
+            md.askPrices[i] = segment.getLong(levelPos+12);
+            md.askVolumes[i] = segment.getInt(levelPos+20);
+            levelPos += MarketDataJournal.DEPTH_LEVEL_SIZE;
+        }
+        return md;
+    }
+
+    /**
+     * 转换为CTP格式的CSV行, 与CtpMarketData的价格转换相反
+     */
+    void toCsvRow(MarketData md, StringBuilder rowBuf)
+    {
+        CThostFtdcDepthMarketDataField field = new CThostFtdcDepthMarketDataField();
+        Exchangeable instrument = md.instrument;
+        LocalDateTime updateTime = DateUtil.long2datetime(CFFEX_ZONE_ID, md.updateTimestamp);
+        field.TradingDay = md.tradingDay;
+        field.InstrumentID = instrument.id();
+        field.ExchangeID = instrument.exchange().name();
+        field.ExchangeInstID = "";
+        field.LastPrice = PriceUtil.long2price(md.lastPrice);
+        field.PreClosePrice = PriceUtil.long2price(md.preClosePrice);
+        field.OpenPrice = PriceUtil.long2price(md.openPrice);
+        field.HighestPrice = PriceUtil.long2price(md.highestPrice);
+        field.LowestPrice = PriceUtil.long2price(md.lowestPrice);
+        field.Volume = (int)md.volume;
+        field.OpenInterest = md.openInterest;
+        int volumeMultiplier = instrument.getVolumeMutiplier();
+        if ( instrument.exchange()==Exchange.CZCE ) {
+            field.AveragePrice = PriceUtil.long2price(md.averagePrice);
+            field.Turnover = PriceUtil.long2price(md.turnover/volumeMultiplier);
+        } else {
+            field.AveragePrice = PriceUtil.long2price(md.averagePrice*volumeMultiplier);
+            field.Turnover = PriceUtil.long2price(md.turnover);
+        }
+        field.UpperLimitPrice = PriceUtil.long2price(md.upperLimitPrice);
+        field.LowerLimitPrice = PriceUtil.long2price(md.lowerLimitPrice);
+        field.UpdateTime = String.format("%02d:%02d:%02d", updateTime.getHour(), updateTime.getMinute(), updateTime.getSecond());
+        field.UpdateMillisec = updateTime.getNano()/1000000;
+        field.ActionDay = DateUtil.date2str(updateTime.toLocalDate());
+        int depth = md.depth;
+        if ( depth>0 ) {
+            field.BidPrice1 = PriceUtil.long2price(md.bidPrices[0]);
+            field.BidVolume1 = md.bidVolumes[0];
+            field.AskPrice1 = PriceUtil.long2price(md.askPrices[0]);
+            field.AskVolume1 = md.askVolumes[0];
+        }
+        if ( depth>1 ) {
+            field.BidPrice2 = PriceUtil.long2price(md.bidPrices[1]);
+            field.BidVolume2 = md.bidVolumes[1];
+            field.AskPrice2 = PriceUtil.long2price(md.askPrices[1]);
+            field.AskVolume2 = md.askVolumes[1];
+        }
+        if ( depth>2 ) {
+            field.BidPrice3 = PriceUtil.long2price(md.bidPrices[2]);
+            field.BidVolume3 = md.bidVolumes[2];
+            field.AskPrice3 = PriceUtil.long2price(md.askPrices[2]);
+            field.AskVolume3 = md.askVolumes[2];
+        }
+        if ( depth>3 ) {
+            field.BidPrice4 = PriceUtil.long2price(md.bidPrices[3]);
+            field.BidVolume4 = md.bidVolumes[3];
+            field.AskPrice4 = PriceUtil.long2price(md.askPrices[3]);
+            field.AskVolume4 = md.askVolumes[3];
+        }
+        if ( depth>4 ) {
+            field.BidPrice5 = PriceUtil.long2price(md.bidPrices[4]);
+            field.BidVolume5 = md.bidVolumes[4];
+            field.AskPrice5 = PriceUtil.long2price(md.askPrices[4]);
+            field.AskVolume5 = md.askVolumes[4];
+        }
+        String[] fields = csvMarshallHelper.marshall(field);
+        for(int i=0;i<fields.length;i++) {
+            if ( i>0){
+                rowBuf.append(",");
+            }
+            rowBuf.append(fields[i]);
+        }
+    }
+
+    private Writer getOrCreateWriter(String producerId, String instrument) throws IOException
+    {
+        String writerKey = producerId+"-"+instrument;
+        Writer writer = writers.get(writerKey);
+        if ( writer==null ) {
+            if ( !producerTypes.containsKey(producerId) ) {
+                return null;
+            }
+            File file = new File(tradingDayDir, producerId+"/"+instrument+".csv");
+            file.getParentFile().mkdirs();
+            writer = IOUtil.createBufferedWriter(file, StringUtil.UTF8, false);
+            writer.write(String.join(",", csvMarshallHelper.getHeader()));
+            writer.write("\n");
+            writers.put(writerKey, writer);
+        }
+        return writer;
+    }
+
+    private void saveProviderProps(String producerId, String producerType) throws IOException
+    {
+        File producerDir = new File(tradingDayDir, producerId);
+        producerDir.mkdirs();
+        JsonObject json =new JsonObject();
+        json.addProperty("id", producerId);
+        json.addProperty("provider", producerType);
+        FileUtil.save(new File(producerDir,"producer.json"), json.toString());
+    }
+
+    private static String readString(MappedByteBuffer buf, int pos, int len) {
+        byte[] bytes = new byte[len];
+        for(int i=0;i<len;i++) {
+            bytes[i] = buf.get(pos+i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for(Writer writer:writers.values()) {
+            writer.close();
+        }
+        writers.clear();
+    }
+
+}
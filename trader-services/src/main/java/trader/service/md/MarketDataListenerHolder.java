@@ -1,8 +1,6 @@
 package trader.service.md;
 
-import java.time.Instant;
 import java.time.LocalDate;
-import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -52,8 +50,7 @@ public class MarketDataListenerHolder {
             lastVolume = volume;
             //如果 timestamp 相同, 每次累加200ms
             if ( tick.updateTimestamp<=lastTimestamp ) {
-                tick.updateTimestamp = lastTimestamp+200;
-                tick.updateTime = ZonedDateTime.ofInstant(Instant.ofEpochMilli(tick.updateTimestamp), tick.instrument.exchange().getZoneId()).toLocalDateTime();
+                tick.setUpdateTimestamp(lastTimestamp+200);
             }
             lastTimestamp = tick.updateTimestamp;
         }
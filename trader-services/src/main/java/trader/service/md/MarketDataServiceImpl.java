@@ -57,6 +57,7 @@ import trader.service.md.web.WebMarketDataProducerFactory;
 import trader.service.plugin.Plugin;
 import trader.service.plugin.PluginService;
 import trader.service.stats.StatsCollector;
+import trader.service.stats.StatsItem;
 import trader.service.trade.MarketTimeService;
 
 /**
@@ -69,6 +70,17 @@ public class MarketDataServiceImpl implements MarketDataService, ServiceErrorCod
      * 是否保存行情数据
      */
     public static final String ITEM_SAVE_DATA = "/MarketDataService/saveData";
+    /**
+     * 行情数据保存方式: csv/journal
+     */
+    public static final String ITEM_SAVE_MODE = "/MarketDataService/saveMode";
+    /**
+     * journal保存方式的缓冲区大小
+     */
+    public static final String ITEM_JOURNAL_BUFFER_SIZE = "/MarketDataService/journalBufferSize";
+
+    public static final String SAVE_MODE_CSV = "csv";
+    public static final String SAVE_MODE_JOURNAL = "journal";
     /**
      * 行情数据源定义
      */
@@ -111,6 +123,8 @@ public class MarketDataServiceImpl implements MarketDataService, ServiceErrorCod
 
     private MarketDataSaver dataSaver;
 
+    private MarketDataJournal dataJournal;
+
     private boolean saveData;
 
     private Map<String, MarketDataProducerFactory> producerFactories;
@@ -151,6 +165,9 @@ public class MarketDataServiceImpl implements MarketDataService, ServiceErrorCod
             if ( dataSaver!=null ) {
                 dataSaver.flushAllWriters();
             }
+            if ( dataJournal!=null ) {
+                dataJournal.flush();
+            }
             if ( reloadInProgress ) {
                 return;
             }
@@ -165,7 +182,17 @@ public class MarketDataServiceImpl implements MarketDataService, ServiceErrorCod
 
         saveData = ConfigUtil.getBoolean(ITEM_SAVE_DATA, true);
         if ( saveData ) {
-            dataSaver = new MarketDataSaver(beansContainer);
+            String saveMode = ConfigUtil.getString(ITEM_SAVE_MODE);
+            if ( SAVE_MODE_JOURNAL.equalsIgnoreCase(saveMode) ) {
+                int journalBufferSize = ConfigUtil.getInt(ITEM_JOURNAL_BUFFER_SIZE, 65536);
+                dataJournal = new MarketDataJournal(beansContainer, journalBufferSize);
+                statsCollector.registerStatsItem(new StatsItem(MarketDataService.class.getSimpleName(), "journal", "droppedTicks"), (StatsItem itemInfo) -> {
+                    return dataJournal.getDroppedCount();
+                });
+                logger.info("MarketDataService save data in journal mode, buffer size: "+journalBufferSize);
+            } else {
+                dataSaver = new MarketDataSaver(beansContainer);
+            }
         }else {
             logger.info("MarketDataServie save data is disabled.");
         }
@@ -176,6 +203,9 @@ public class MarketDataServiceImpl implements MarketDataService, ServiceErrorCod
     @PreDestroy
     public void destroy() {
         state = ServiceState.Stopped;
+        if ( dataJournal!=null ) {
+            dataJournal.close();
+        }
         for(AbsMarketDataProducer producer:producers.values()) {
             logger.info(producer.getId()+" state="+producer.getState()+", connectCount="+producer.getConnectCount()+", tickCount="+producer.getTickCount());
         }
@@ -378,7 +408,9 @@ public class MarketDataServiceImpl implements MarketDataService, ServiceErrorCod
     @Override
     public void onMarketData(MarketData md) {
         asyncEventService.publishMarketData(md);
-        if ( saveData ) {
+        if ( dataJournal!=null ) {
+            dataJournal.asyncSave(md);
+        } else if ( saveData ) {
             dataSaver.asyncSave(md);
         }
     }
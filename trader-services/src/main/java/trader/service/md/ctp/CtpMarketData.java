@@ -1,7 +1,6 @@
 package trader.service.md.ctp;
 
 import java.time.LocalDate;
-import java.time.ZoneId;
 
 import net.jctp.CThostFtdcDepthMarketDataField;
 import trader.common.exchangeable.Exchange;
@@ -15,7 +14,6 @@ import trader.service.md.MarketData;
 
 public class CtpMarketData extends MarketData {
     private static final CtpCSVMarshallHelper csvMarshallHelper = new CtpCSVMarshallHelper();
-    private static final ZoneId CFFEX_ZONE_ID = Exchange.CFFEX.getZoneId();
 
     CThostFtdcDepthMarketDataField field;
 
@@ -23,9 +21,6 @@ public class CtpMarketData extends MarketData {
         this.producerId = producerId;
         this.field = data;
         this.instrument = instrument;
-        this.volume = data.Volume;
-        this.openInterest = (long)data.OpenInterest;
-        this.lastPrice = PriceUtil.price2long(data.LastPrice);
         String actionDayStr = data.ActionDay;
         String tradingDayStr = data.TradingDay;
         //周五夜市DCE的ActionDay提前3天, CZCE的TradingDay晚了3天, SHFE正常
@@ -59,8 +54,26 @@ public class CtpMarketData extends MarketData {
             tradingDayStr = DateUtil.date2str(tradingDay);
         }
 
-        this.updateTime = DateUtil.str2localdatetime(actionDayStr, data.UpdateTime, data.UpdateMillisec);
-        this.updateTimestamp = DateUtil.localdatetime2long(CFFEX_ZONE_ID, updateTime);
+        setUpdateTime(DateUtil.str2localdatetime(actionDayStr, data.UpdateTime, data.UpdateMillisec));
+        this.tradingDay = tradingDayStr;
+        decodePrices(data);
+    }
+
+    /**
+     * 使用缓存的日期推算结果快速解析时间字段
+     */
+    public CtpMarketData(String producerId, Exchangeable instrument, CThostFtdcDepthMarketDataField data, CtpMarketDataDecoder decoder) {
+        this.producerId = producerId;
+        this.field = data;
+        this.instrument = instrument;
+        decoder.decodeTime(this, instrument, data);
+        decodePrices(data);
+    }
+
+    private void decodePrices(CThostFtdcDepthMarketDataField data) {
+        this.volume = data.Volume;
+        this.openInterest = (long)data.OpenInterest;
+        this.lastPrice = PriceUtil.price2long(data.LastPrice);
         this.preClosePrice = PriceUtil.price2long(data.PreClosePrice);
         this.openPrice = PriceUtil.price2long(data.OpenPrice);
         this.highestPrice = PriceUtil.price2long(data.HighestPrice);
@@ -74,7 +87,6 @@ public class CtpMarketData extends MarketData {
             this.turnover = PriceUtil.price2long(data.Turnover);
             this.averagePrice = PriceUtil.price2long(data.AveragePrice)/volumeMultiplier;
         }
-        this.tradingDay = tradingDayStr;
         this.upperLimitPrice = PriceUtil.price2long(data.UpperLimitPrice);
         this.lowerLimitPrice = PriceUtil.price2long(data.LowerLimitPrice);
         long bidPrice2 = PriceUtil.price2long(data.BidPrice2);
@@ -0,0 +1,163 @@
+package trader.service.md.ctp;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+
+import net.jctp.CThostFtdcDepthMarketDataField;
+import trader.common.exchangeable.Exchange;
+import trader.common.exchangeable.Exchangeable;
+import trader.common.exchangeable.MarketDayUtil;
+import trader.common.util.DateUtil;
+import trader.common.util.PriceUtil;
+import trader.common.util.StringUtil;
+
+/**
+ * CTP行情的日期时间快速解析.
+ * <BR>按日期缓存ActionDay/TradingDay的推算结果(DCE/CZCE夜市), 时间字段直接按字符计算为EpochMillis,
+ * 不再经过DateTimeFormatter解析.
+ * <BR>非线程安全, 每个行情回调线程使用一个实例.
+ */
+public class CtpMarketDataDecoder {
+    private static final ZoneId CFFEX_ZONE_ID = Exchange.CFFEX.getZoneId();
+
+    /**
+     * 缓存的日期数量上限, 超过后清空重建
+     */
+    private static final int MAX_CACHED_DAYS = 64;
+
+    /**
+     * 一个自然日的缓存信息
+     */
+    private static class DayInfo {
+        final LocalDate day;
+        final String dayStr;
+        /**
+         * 当日零点的EpochMillis
+         */
+        final long beginMillis;
+        /**
+         * DCE夜市前半场的ActionDay
+         */
+        DayInfo dceNightDay;
+        /**
+         * DCE夜市后半场(00:00-02:30)的ActionDay
+         */
+        DayInfo dceMidnightDay;
+        /**
+         * CZCE上一交易日
+         */
+        DayInfo czcePrevDay;
+
+        DayInfo(LocalDate day){
+            this.day = day;
+            this.dayStr = DateUtil.date2str(day);
+            this.beginMillis = day.atStartOfDay(CFFEX_ZONE_ID).toInstant().toEpochMilli();
+        }
+    }
+
+    private final LocalDate tradingDay;
+    private final DayInfo tradingDayInfo;
+    private final Map<String, DayInfo> dayInfos = new HashMap<>();
+
+    public CtpMarketDataDecoder(LocalDate tradingDay) {
+        this.tradingDay = tradingDay;
+        tradingDayInfo = getDayInfo(DateUtil.date2str(tradingDay));
+    }
+
+    public LocalDate getTradingDay() {
+        return tradingDay;
+    }
+
+    /**
+     * 计算并设置tradingDay, updateTime, updateTimestamp, 结果与CtpMarketData原有构造函数一致
+     */
+    void decodeTime(CtpMarketData md, Exchangeable instrument, CThostFtdcDepthMarketDataField data) {
+        String updateTimeStr = data.UpdateTime;
+        int secondOfDay = time2seconds(updateTimeStr);
+        DayInfo actionDay = null;
+        DayInfo tradingDay = null;
+        Exchange exchange = instrument.exchange();
+        //周五夜市DCE的ActionDay提前3天, CZCE的TradingDay晚了3天, SHFE正常
+        if ( exchange==Exchange.DCE ) {
+            int timeInt = seconds2timeInt(secondOfDay);
+            if (timeInt >= 80000 && timeInt <= 185000) {
+                actionDay = getDayInfo(data.ActionDay);
+            } else {
+                DayInfo dceTradingDay = getDayInfo(data.TradingDay);
+                if ( dceTradingDay.dceNightDay==null ) {
+                    LocalDate nightDay = MarketDayUtil.prevMarketDay(Exchange.DCE, dceTradingDay.day);
+                    dceTradingDay.dceNightDay = getDayInfo(DateUtil.date2str(nightDay));
+                    dceTradingDay.dceMidnightDay = getDayInfo(DateUtil.date2str(nightDay.plusDays(1)));
+                }
+                if ( timeInt<30000 ) {
+                    actionDay = dceTradingDay.dceMidnightDay;
+                } else {
+                    actionDay = dceTradingDay.dceNightDay;
+                }
+            }
+        } else if ( exchange==Exchange.CZCE ) {
+            tradingDay = tradingDayInfo;
+            actionDay = getDayInfo(data.ActionDay);
+            if ( PriceUtil.isValidPrice(data.ClosePrice) && updateTimeStr.compareTo("15")>0 ) {
+                if ( tradingDayInfo.czcePrevDay==null ) {
+                    tradingDayInfo.czcePrevDay = getDayInfo(DateUtil.date2str(MarketDayUtil.prevMarketDay(Exchange.CZCE, this.tradingDay)));
+                }
+                actionDay = tradingDayInfo.czcePrevDay;
+            }
+        } else {
+            actionDay = getDayInfo(data.ActionDay);
+        }
+        String tradingDayStr = tradingDay!=null?tradingDay.dayStr:data.TradingDay;
+        if ( StringUtil.isEmpty(tradingDayStr) ) {
+            tradingDayStr = tradingDayInfo.dayStr;
+        }
+        int millisec = data.UpdateMillisec;
+        md.tradingDay = tradingDayStr;
+        //updateTime在第一次访问时从updateTimestamp转换
+        md.setUpdateTimestamp(actionDay.beginMillis + secondOfDay*1000L + millisec);
+    }
+
+    private DayInfo getDayInfo(String dayStr) {
+        DayInfo result = dayInfos.get(dayStr);
+        if ( result==null ) {
+            if ( dayInfos.size()>=MAX_CACHED_DAYS ) {
+                dayInfos.clear();
+            }
+            result = new DayInfo(DateUtil.str2localdate(dayStr));
+            dayInfos.put(dayStr, result);
+        }
+        return result;
+    }
+
+    /**
+     * 按字符计算HH:MM:SS或H:MM:SS的秒数, 空字符串为0
+     */
+    static int time2seconds(String timeHHCMMCSS) {
+        int len = timeHHCMMCSS.length();
+        if ( len<7 ) {
+            return 0;
+        }
+        int hour, idx;
+        if ( len==7 ) {
+            hour = digit(timeHHCMMCSS, 0);
+            idx = 2;
+        } else {
+            hour = digit(timeHHCMMCSS, 0)*10+digit(timeHHCMMCSS, 1);
+            idx = 3;
+        }
+        int minute = digit(timeHHCMMCSS, idx)*10+digit(timeHHCMMCSS, idx+1);
+        int second = digit(timeHHCMMCSS, idx+3)*10+digit(timeHHCMMCSS, idx+4);
+        return hour*3600+minute*60+second;
+    }
+
+    private static int seconds2timeInt(int secondOfDay) {
+        return (secondOfDay/3600)*10000+((secondOfDay/60)%60)*100+(secondOfDay%60);
+    }
+
+    private static int digit(String str, int idx) {
+        return str.charAt(idx)-'0';
+    }
+
+}
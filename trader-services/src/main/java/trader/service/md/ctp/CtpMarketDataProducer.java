@@ -28,6 +28,7 @@ import trader.common.exchangeable.Exchange;
 import trader.common.exchangeable.Exchangeable;
 import trader.common.exchangeable.ExchangeableType;
 import trader.common.exchangeable.MarketDayUtil;
+import trader.common.util.ConversionUtil;
 import trader.common.util.DateUtil;
 import trader.common.util.StringUtil;
 import trader.service.ServiceConstants.ConnState;
@@ -61,8 +62,21 @@ public class CtpMarketDataProducer extends AbsMarketDataProducer<CThostFtdcDepth
 
     private List<String> subInstrumentIds;
 
+    /**
+     * 是否使用缓存日期的快速解析方式
+     */
+    private boolean fastDecode;
+
+    /**
+     * 快速解析使用的Decoder, 只在CTP行情回调线程访问
+     */
+    private volatile CtpMarketDataDecoder decoder;
+
     public CtpMarketDataProducer(BeansContainer beansContainer, Map producerElemMap) {
         super(beansContainer, producerElemMap);
+        if ( producerElemMap!=null ) {
+            fastDecode = ConversionUtil.toBoolean(producerElemMap.get("fastDecode"));
+        }
     }
 
     @Override
@@ -85,6 +99,7 @@ public class CtpMarketDataProducer extends AbsMarketDataProducer<CThostFtdcDepth
 
         tradingDay = mtService.getTradingDay();
         tradingDayStr = DateUtil.date2str(tradingDay);
+        updateDecoder();
         changeStatus(ConnState.Connecting);
         String url = connectionProps.getProperty("frontUrl");
         String brokerId = connectionProps.getProperty("brokerId");
@@ -189,6 +204,7 @@ public class CtpMarketDataProducer extends AbsMarketDataProducer<CThostFtdcDepth
         if ( pRspInfo.ErrorID==0 ) {
             changeStatus(ConnState.Connected);
             tradingDay = DateUtil.str2localdate(pRspUserLogin.TradingDay);
+            updateDecoder();
         }else {
             changeStatus(ConnState.ConnectFailed);
         }
@@ -252,10 +268,29 @@ public class CtpMarketDataProducer extends AbsMarketDataProducer<CThostFtdcDepth
     public void OnRtnDepthMarketData(CThostFtdcDepthMarketDataField pDepthMarketData) {
         Exchangeable instrument = ctp2instrument(pDepthMarketData.ExchangeID, pDepthMarketData.InstrumentID);
         adjustMarketData(pDepthMarketData, instrument);
-        MarketData md = createMarketData(pDepthMarketData, instrument, tradingDay);
+        MarketData md = null;
+        CtpMarketDataDecoder decoder = this.decoder;
+        if ( decoder!=null ) {
+            md = new CtpMarketData(getId(), instrument, pDepthMarketData, decoder);
+        } else {
+            md = createMarketData(pDepthMarketData, instrument, tradingDay);
+        }
         notifyData(md);
     }
 
+    /**
+     * 交易日改变后重建快速解析的Decoder
+     */
+    private void updateDecoder() {
+        if ( !fastDecode || tradingDay==null ) {
+            return;
+        }
+        CtpMarketDataDecoder decoder = this.decoder;
+        if ( decoder==null || !decoder.getTradingDay().equals(tradingDay) ) {
+            this.decoder = new CtpMarketDataDecoder(tradingDay);
+        }
+    }
+
     private Map<String, Exchangeable> instrumentMap = new HashMap<>();
 
     /**
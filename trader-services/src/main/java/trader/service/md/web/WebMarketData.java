@@ -1,9 +1,6 @@
 package trader.service.md.web;
 
-import java.time.ZoneId;
-
 import net.jctp.CThostFtdcDepthMarketDataField;
-import trader.common.exchangeable.Exchange;
 import trader.common.exchangeable.Exchangeable;
 import trader.common.util.DateUtil;
 import trader.common.util.PriceUtil;
@@ -12,7 +9,6 @@ import trader.service.md.MarketData;
 
 public class WebMarketData extends MarketData {
     private static final CtpCSVMarshallHelper csvMarshallHelper = new CtpCSVMarshallHelper();
-    private static final ZoneId CFFEX_ZONE_ID = Exchange.CFFEX.getZoneId();
 
     private CThostFtdcDepthMarketDataField field;
 
@@ -26,8 +22,7 @@ public class WebMarketData extends MarketData {
         String actionDayStr = data.ActionDay;
         String tradingDayStr = data.TradingDay;
 
-        this.updateTime = DateUtil.str2localdatetime(actionDayStr, data.UpdateTime, data.UpdateMillisec);
-        this.updateTimestamp = DateUtil.localdatetime2long(CFFEX_ZONE_ID, updateTime);
+        setUpdateTime(DateUtil.str2localdatetime(actionDayStr, data.UpdateTime, data.UpdateMillisec));
         this.preClosePrice = PriceUtil.price2long(data.PreClosePrice);
         this.openPrice = PriceUtil.price2long(data.OpenPrice);
         this.highestPrice = PriceUtil.price2long(data.HighestPrice);
@@ -151,8 +151,8 @@ public class WebMarketDataProducer extends AbsMarketDataProducer<CThostFtdcDepth
         if ( !ticks.isEmpty() ) {
             WebMarketData f0 = ticks.get(0);
             //如果这次TICK与上次的更新时间戳相同, 不发送
-            if ( lastUpdateTime==null || !lastUpdateTime.isEqual(f0.updateTime)) {
-                lastUpdateTime = f0.updateTime;
+            if ( lastUpdateTime==null || !lastUpdateTime.isEqual(f0.getUpdateTime())) {
+                lastUpdateTime = f0.getUpdateTime();
                 for(int i=0;i<ticks.size();i++) {
                     listener.onMarketData(ticks.get(i));
                 }
@@ -0,0 +1,105 @@
+package trader.service.ta;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import trader.common.exchangeable.Exchangeable;
+import trader.common.exchangeable.ExchangeableData;
+import trader.common.tick.PriceLevel;
+
+/**
+ * KBar历史数据快照的文件缓存, 每个品种每个级别一个文件.
+ * <BR>启动时使用内存映射读取快照, 只需要从原始数据加载快照之后的交易日.
+ * <BR>品种配置或快照交易日的原始数据改变后, 快照失效.
+ */
+public class BarSeriesSnapshotCache {
+    private final static Logger logger = LoggerFactory.getLogger(BarSeriesSnapshotCache.class);
+
+    private static final String FILE_EXT_NAME = ".bars";
+
+    private File dir;
+    private ExchangeableData data;
+
+    public BarSeriesSnapshotCache(File dir, ExchangeableData data) {
+        this.dir = dir;
+        this.data = data;
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    /**
+     * 加载快照, 快照需要覆盖起始交易日, 并且不包含结束交易日.
+     *
+     * @return 快照不存在或失效返回null
+     */
+    public BarSeriesSnapshot load(Exchangeable instrument, PriceLevel level, long configHash, LocalDate startTradingDay, LocalDate endTradingDay) {
+        File file = getSnapshotFile(instrument, level);
+        if ( !file.exists() ) {
+            return null;
+        }
+        BarSeriesSnapshot result = null;
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);){
+            MappedByteBuffer buf = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            BarSeriesSnapshot snapshot = BarSeriesSnapshot.decode(instrument, buf);
+            if ( snapshot.getConfigHash()!=configHash || !snapshot.getLevel().equals(level) ) {
+                logger.info("Bar series snapshot "+file+" is invalidated by config change");
+            } else if ( snapshot.getFirstTradingDay().isAfter(startTradingDay) || snapshot.getLastTradingDay().compareTo(endTradingDay)>=0 ) {
+                logger.info("Bar series snapshot "+file+" doesn't cover trading days "+startTradingDay+" - "+endTradingDay);
+            } else if ( snapshot.getDataFingerprint()!=getDataFingerprint(instrument, snapshot.getTradingDays()) ) {
+                logger.info("Bar series snapshot "+file+" is invalidated by data change");
+            } else {
+                result = snapshot;
+            }
+        }catch(Throwable t) {
+            logger.error("Load bar series snapshot "+file+" failed", t);
+        }
+        return result;
+    }
+
+    /**
+     * 保存已经完成的交易日的KBar快照
+     */
+    public void save(Exchangeable instrument, PriceLevel level, long configHash, List<LocalDate> tradingDays, List<FutureBar> bars) throws IOException
+    {
+        File file = getSnapshotFile(instrument, level);
+        BarSeriesSnapshot snapshot = new BarSeriesSnapshot(instrument, level, configHash, getDataFingerprint(instrument, tradingDays), tradingDays, bars);
+        ByteBuffer content = snapshot.encode();
+
+        file.getParentFile().mkdirs();
+        File tmpFile = new File(file.getParentFile(), file.getName()+".tmp");
+        try(FileChannel channel = FileChannel.open(tmpFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);){
+            while(content.hasRemaining()) {
+                channel.write(content);
+            }
+            channel.force(false);
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private long getDataFingerprint(Exchangeable instrument, List<LocalDate> tradingDays) throws IOException {
+        long result = data.getDataFingerprint(instrument, ExchangeableData.MIN1, tradingDays);
+        result = result*31+data.getDataFingerprint(instrument, ExchangeableData.TICK_BIN, tradingDays);
+        result = result*31+data.getDataFingerprint(instrument, ExchangeableData.TICK_CTP, tradingDays);
+        return result;
+    }
+
+    private File getSnapshotFile(Exchangeable instrument, PriceLevel level) {
+        File exchangeDir = new File(dir, instrument.exchange().name());
+        return new File(exchangeDir, instrument.id()+"-"+level.name()+FILE_EXT_NAME);
+    }
+
+}
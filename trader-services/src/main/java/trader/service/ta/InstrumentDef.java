@@ -1,5 +1,6 @@
 package trader.service.ta;
 
+import java.util.Arrays;
 import java.util.Map;
 
 import trader.common.exchangeable.Exchange;
@@ -31,6 +32,17 @@ public class InstrumentDef {
         this.levels = StringUtil.split(levels, ",|;");
     }
 
+    /**
+     * 配置内容的HASH, 配置改变后KBar快照失效
+     */
+    public long getConfigHash() {
+        long result = key.hashCode();
+        result = result*31+Arrays.hashCode(levels);
+        result = result*31+strokeThreshold;
+        result = result*31+lineWidth;
+        return result;
+    }
+
     public static String instrument2key(Exchangeable instrument) {
         String commodity = instrument.commodity();
         Exchange exchange = instrument.exchange();
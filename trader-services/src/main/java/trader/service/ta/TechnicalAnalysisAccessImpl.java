@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.TreeSet;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,10 +53,17 @@ public class TechnicalAnalysisAccessImpl implements TechnicalAnalysisAccess, Jso
     private BarSeriesLoader seriesLoader;
     private StackedTrendBarBuilder tickTrendBarBuilder;
     private long[] options = new long[Option.values().length];
+    private long historyLoadTime;
+    private BarSeriesSnapshotCache snapshotCache;
     List<TechnicalAnalysisListener> listeners = new ArrayList<>();
 
     public TechnicalAnalysisAccessImpl(BeansContainer beansContainer, ExchangeableData data, Exchangeable instrument, InstrumentDef instrumentDef) {
+        this(beansContainer, data, instrument, instrumentDef, null);
+    }
+
+    public TechnicalAnalysisAccessImpl(BeansContainer beansContainer, ExchangeableData data, Exchangeable instrument, InstrumentDef instrumentDef, BarSeriesSnapshotCache snapshotCache) {
         this.beansContainer = beansContainer;
+        this.snapshotCache = snapshotCache;
         this.instrument = instrument;
         this.instrumentDef = instrumentDef;
         options[Option.LineWidth.ordinal()] = instrumentDef.lineWidth;
@@ -64,7 +72,9 @@ public class TechnicalAnalysisAccessImpl implements TechnicalAnalysisAccess, Jso
         MarketTimeService mtService = beansContainer.getBean(MarketTimeService.class);
         tradingTimes = instrument.exchange().getTradingTimes(instrument, mtService.getTradingDay());
 
+        long t0 = System.currentTimeMillis();
         initBarBuilders(data);
+        historyLoadTime = System.currentTimeMillis()-t0;
     }
 
     @Override
@@ -113,6 +123,13 @@ public class TechnicalAnalysisAccessImpl implements TechnicalAnalysisAccess, Jso
         return seriesLoader;
     }
 
+    /**
+     * 加载历史数据的耗时(毫秒)
+     */
+    public long getHistoryLoadTime() {
+        return historyLoadTime;
+    }
+
     @Override
     public JsonElement toJson() {
         JsonObject json = new JsonObject();
@@ -137,6 +154,40 @@ public class TechnicalAnalysisAccessImpl implements TechnicalAnalysisAccess, Jso
         return json;
     }
 
+    /**
+     * 保存已经完成的交易日的分钟级别KBar快照
+     */
+    public void saveSnapshots() {
+        if ( snapshotCache==null ) {
+            return;
+        }
+        LocalDate tradingDay = tradingTimes.getTradingDay();
+        for(LeveledBarBuilderInfo leveledBarBuilder:levelBuilders) {
+            if ( !leveledBarBuilder.level.prefix().equals(PriceLevel.LEVEL_MIN) ) {
+                continue;
+            }
+            LeveledBarSeries series = leveledBarBuilder.barBuilder.getTimeSeries(leveledBarBuilder.level);
+            List<FutureBar> bars = new ArrayList<>();
+            TreeSet<LocalDate> days = new TreeSet<>();
+            for(int i=0;i<series.getBarCount();i++) {
+                FutureBar bar = (FutureBar)series.getBar(i);
+                LocalDate barTradingDay = bar.getTradingTimes().getTradingDay();
+                if ( barTradingDay.compareTo(tradingDay)<0 ) {
+                    bars.add(bar);
+                    days.add(barTradingDay);
+                }
+            }
+            if ( bars.isEmpty() ) {
+                continue;
+            }
+            try{
+                snapshotCache.save(instrument, leveledBarBuilder.level, instrumentDef.getConfigHash(), new ArrayList<>(days), bars);
+            }catch(Throwable t) {
+                logger.error("Save "+instrument+" level "+leveledBarBuilder.level+" bar series snapshot failed", t);
+            }
+        }
+    }
+
     public void registerListener(TechnicalAnalysisListener listener)
     {
         if ( !listeners.contains(listener)) {
@@ -145,7 +196,11 @@ public class TechnicalAnalysisAccessImpl implements TechnicalAnalysisAccess, Jso
     }
 
     private void initBarBuilders(ExchangeableData data) {
-        seriesLoader = new BarSeriesLoader(beansContainer, data).setInstrument(instrument);
+        //所有级别使用相同的结束时间, 这样已解析的MIN1/TICK数据可以在级别之间共享
+        MarketTimeService mtService = beansContainer.getBean(MarketTimeService.class);
+        seriesLoader = new BarSeriesLoader(beansContainer, data)
+                .setInstrument(instrument)
+                .setEndTime(mtService.getMarketTime());
         List<PriceLevel> levels = new ArrayList<>();
         for(String level:instrumentDef.levels) {
                 LeveledBarBuilderInfo leveledBarBuilder = new LeveledBarBuilderInfo();
@@ -167,6 +222,8 @@ public class TechnicalAnalysisAccessImpl implements TechnicalAnalysisAccess, Jso
                 levelBuilders.add(leveledBarBuilder);
                 levels.add(leveledBarBuilder.level);
         }
+        //各级别已经加载完毕, 释放共享的MIN1/TICK数据
+        seriesLoader.clearCache();
         logger.info("Instrument "+instrument+" bar builders were created for levels: "+levels);
         WaveBarOption option = new WaveBarOption(LongNum.fromRawValue(instrumentDef.strokeThreshold));
         tickTrendBarBuilder = new StackedTrendBarBuilder(option, tradingTimes);
@@ -180,7 +237,6 @@ public class TechnicalAnalysisAccessImpl implements TechnicalAnalysisAccess, Jso
     private void loadHistoryData(BarSeriesLoader seriesLoader, FutureBarBuilder barBuilder) throws IOException
     {
         PriceLevel level = barBuilder.getLevel();
-        MarketTimeService mtService = beansContainer.getBean(MarketTimeService.class);
         int dayBefore = 2;
         if ( PriceLevel.DAY.equals(level)) {
             dayBefore = 30;
@@ -192,12 +248,20 @@ public class TechnicalAnalysisAccessImpl implements TechnicalAnalysisAccess, Jso
             }
         }
 
+        LocalDate startTradingDay = MarketDayUtil.nextMarketDays(instrument.exchange(), tradingTimes.getTradingDay(), -1*dayBefore);
         seriesLoader
             .setEndTradingDay(tradingTimes.getTradingDay())
-            .setStartTradingDay(MarketDayUtil.nextMarketDays(instrument.exchange(), tradingTimes.getTradingDay(), -1*dayBefore))
-            .setEndTime(mtService.getMarketTime());
+            .setStartTradingDay(startTradingDay);
 
-        barBuilder.loadHistoryData(seriesLoader);
+        BarSeriesSnapshot snapshot = null;
+        if ( snapshotCache!=null && level.prefix().equals(PriceLevel.LEVEL_MIN) ) {
+            snapshot = snapshotCache.load(instrument, level, instrumentDef.getConfigHash(), startTradingDay, tradingTimes.getTradingDay());
+        }
+        if ( snapshot!=null ) {
+            barBuilder.loadHistoryData(seriesLoader, snapshot);
+        } else {
+            barBuilder.loadHistoryData(seriesLoader);
+        }
     }
 
     /**
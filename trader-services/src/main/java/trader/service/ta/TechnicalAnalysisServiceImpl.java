@@ -1,5 +1,6 @@
 package trader.service.ta;
 
+import java.io.File;
 import java.sql.Connection;
 import java.sql.Statement;
 import java.util.ArrayList;
@@ -7,6 +8,11 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.PreDestroy;
 
@@ -25,10 +31,15 @@ import trader.common.util.TraderHomeUtil;
 import trader.service.md.MarketData;
 import trader.service.md.MarketDataListener;
 import trader.service.md.MarketDataService;
+import trader.service.stats.StatsCollector;
+import trader.service.stats.StatsItem;
+import trader.service.stats.StatsItemType;
 
 /**
  * 技术分析/KBar实现类.
- * <BR>单线程调用, 不支持多线程
+ * <BR>行情分区启用时onMarketData会被多个分区线程并发调用, 同一品种的TICK固定在一个线程内顺序处理;
+ * accessors使用ConcurrentHashMap, 运行期新注册品种对分区线程可见
+ * <BR>启动时多个品种的历史数据并行加载, 加载期间收到的TICK缓存, 加载完毕后按顺序重放
  */
 @Service
 public class TechnicalAnalysisServiceImpl implements TechnicalAnalysisService, MarketDataListener {
@@ -41,6 +52,14 @@ public class TechnicalAnalysisServiceImpl implements TechnicalAnalysisService, M
      * 关注的品种定义
      */
     public static final String ITEM_INSTRUMENTS = "/TechnicalAnalysisService/instrument[]";
+    /**
+     * 并行加载历史数据的线程数, 缺省为CPU数量, 1为顺序加载
+     */
+    public static final String ITEM_PRELOAD_THREADS = "/TechnicalAnalysisService/preloadThreads";
+    /**
+     * 是否使用KBar历史数据快照
+     */
+    public static final String ITEM_SNAPSHOT = "/TechnicalAnalysisService/snapshot";
 
     private BeansContainer beansContainer;
 
@@ -48,11 +67,25 @@ public class TechnicalAnalysisServiceImpl implements TechnicalAnalysisService, M
 
     private ExchangeableData data;
 
-    private ServiceState state = ServiceState.Unknown;
+    private StatsCollector statsCollector;
+
+    private BarSeriesSnapshotCache snapshotCache;
+
+    private volatile ServiceState state = ServiceState.Unknown;
 
     private Map<String, InstrumentDef> instrumentDefs = new HashMap<>();
 
-    private Map<Exchangeable, TechnicalAnalysisAccessImpl> accessors = new HashMap<>();
+    /**
+     * 并行加载的线程数, <=0代表使用配置值
+     */
+    private int preloadThreads;
+
+    private Map<Exchangeable, TechnicalAnalysisAccessImpl> accessors = new ConcurrentHashMap<>();
+
+    /**
+     * 历史数据加载期间收到的TICK
+     */
+    private List<MarketData> pendingTicks = new ArrayList<>();
 
     @Override
     public void init(BeansContainer beansContainer) {
@@ -60,16 +93,28 @@ public class TechnicalAnalysisServiceImpl implements TechnicalAnalysisService, M
         this.beansContainer = beansContainer;
         data = TraderHomeUtil.getExchangeableData();
         mdService = beansContainer.getBean(MarketDataService.class);
+        statsCollector = beansContainer.getBean(StatsCollector.class);
+        registerMemoryStats();
+        if ( ConfigUtil.getBoolean(ITEM_SNAPSHOT, false) ) {
+            snapshotCache = new BarSeriesSnapshotCache(new File(TraderHomeUtil.getDirectory(TraderHomeUtil.DIR_WORK), "barSnapshot"), data);
+            logger.info("Bar series snapshot dir: "+snapshotCache.getDir());
+        }
         mdService.addListener(this);
         instrumentDefs.putAll( loadInstrumentDefs());
         buildAccessors();
         logger.info("Start with data dir "+data.getDataDir());
-        state = ServiceState.Ready;
+        replayPendingTicks();
     }
 
     @Override
     @PreDestroy
     public void destroy() {
+        //保存已完成交易日的KBar快照, 下次启动时只需要加载之后的交易日
+        if ( snapshotCache!=null ) {
+            for(TechnicalAnalysisAccessImpl accessor:accessors.values()) {
+                accessor.saveSnapshots();
+            }
+        }
     }
 
     @Override
@@ -90,7 +135,7 @@ public class TechnicalAnalysisServiceImpl implements TechnicalAnalysisService, M
                 String key = instrument.commodity()+"."+instrument.exchange().name();
                 InstrumentDef instrumentDef = instrumentDefs.get(key);
                 if ( instrumentDef!=null ) {
-                    accessImpl = new TechnicalAnalysisAccessImpl(beansContainer, data, instrument, instrumentDef);
+                    accessImpl = new TechnicalAnalysisAccessImpl(beansContainer, data, instrument, instrumentDef, snapshotCache);
                     accessors.put(instrument, accessImpl);
                     mdService.addListener(this, instrument);
                     logger.info("Register new instrument "+instrument);
@@ -109,9 +154,24 @@ public class TechnicalAnalysisServiceImpl implements TechnicalAnalysisService, M
             if ( accessor!=null ) {
                 accessor.onMarketData(tick);
             }
+            return;
+        }
+        synchronized(pendingTicks) {
+            if ( state==ServiceState.Starting ) {
+                pendingTicks.add(tick);
+            } else if ( state==ServiceState.Ready ) {
+                TechnicalAnalysisAccessImpl accessor = accessors.get(tick.instrument);
+                if ( accessor!=null ) {
+                    accessor.onMarketData(tick);
+                }
+            }
         }
     }
 
+    public void setPreloadThreads(int preloadThreads) {
+        this.preloadThreads = preloadThreads;
+    }
+
     public void addInstrumentDef(InstrumentDef instrumentDef) {
         instrumentDefs.put(instrumentDef.key, instrumentDef);
     }
@@ -128,14 +188,109 @@ public class TechnicalAnalysisServiceImpl implements TechnicalAnalysisService, M
     }
 
     private void buildAccessors() {
+        List<Exchangeable> instruments = new ArrayList<>();
         for(Exchangeable e: mdService.getSubscriptions()) {
             String key = InstrumentDef.instrument2key(e);
-            InstrumentDef def = instrumentDefs.get(key);
-            if ( def==null ) {
-                continue;
+            if ( instrumentDefs.containsKey(key) ) {
+                instruments.add(e);
+            }
+        }
+        if ( instruments.isEmpty() ) {
+            return;
+        }
+        long t0 = System.currentTimeMillis();
+        int preloadThreads = this.preloadThreads;
+        if ( preloadThreads<=0 ) {
+            preloadThreads = ConfigUtil.getInt(ITEM_PRELOAD_THREADS, Runtime.getRuntime().availableProcessors());
+        }
+        preloadThreads = Math.min(instruments.size(), preloadThreads);
+        if ( preloadThreads<=1 ) {
+            for(Exchangeable e:instruments) {
+                TechnicalAnalysisAccessImpl accessor = new TechnicalAnalysisAccessImpl(beansContainer, data, e, instrumentDefs.get(InstrumentDef.instrument2key(e)), snapshotCache);
+                accessors.put(e, accessor);
+                registerPreloadStats(accessor);
+            }
+        } else {
+            AtomicInteger threadIndex = new AtomicInteger();
+            ExecutorService preloadExecutor = Executors.newFixedThreadPool(preloadThreads, (Runnable r)->{
+                Thread thread = new Thread(r, "TAPreload-"+threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                List<Future<TechnicalAnalysisAccessImpl>> futures = new ArrayList<>();
+                for(Exchangeable e:instruments) {
+                    InstrumentDef def = instrumentDefs.get(InstrumentDef.instrument2key(e));
+                    futures.add(preloadExecutor.submit(()->{
+                        return new TechnicalAnalysisAccessImpl(beansContainer, data, e, def, snapshotCache);
+                    }));
+                }
+                for(int i=0;i<instruments.size();i++) {
+                    Exchangeable e = instruments.get(i);
+                    try{
+                        TechnicalAnalysisAccessImpl accessor = futures.get(i).get();
+                        accessors.put(e, accessor);
+                        registerPreloadStats(accessor);
+                    }catch(Throwable t) {
+                        logger.error("Preload instrument "+e+" failed", t);
+                    }
+                }
+            }finally {
+                preloadExecutor.shutdownNow();
+            }
+        }
+        logger.info("Preload "+accessors.size()+" instruments with "+preloadThreads+" threads in "+(System.currentTimeMillis()-t0)+" ms");
+    }
+
+    /**
+     * 每个品种加载历史数据的耗时
+     */
+    private void registerPreloadStats(TechnicalAnalysisAccessImpl accessor) {
+        if ( statsCollector==null ) {
+            return;
+        }
+        StatsItem loadTimeItem = new StatsItem(TechnicalAnalysisService.class.getSimpleName(), "preload", accessor.getInstrument().uniqueId());
+        loadTimeItem.setType(StatsItemType.Instant);
+        statsCollector.registerStatsItem(loadTimeItem, (StatsItem itemInfo) -> {
+            return accessor.getHistoryLoadTime();
+        });
+    }
+
+    /**
+     * 按列存储的KBAR序列占用的内存字节数
+     */
+    private void registerMemoryStats() {
+        if ( statsCollector==null ) {
+            return;
+        }
+        StatsItem memoryItem = new StatsItem(TechnicalAnalysisService.class.getSimpleName(), "columnBarSeries", "memoryBytes");
+        memoryItem.setType(StatsItemType.Instant);
+        statsCollector.registerStatsItem(memoryItem, (StatsItem itemInfo) -> {
+            long result = 0;
+            for(long bytes:ColumnLeveledBarSeries.getMemoryUsages().values()) {
+                result += bytes;
+            }
+            return result;
+        });
+    }
+
+    /**
+     * 按顺序重放历史数据加载期间收到的TICK, 然后切换为Ready状态
+     */
+    private void replayPendingTicks() {
+        synchronized(pendingTicks) {
+            for(int i=0;i<pendingTicks.size();i++) {
+                MarketData tick = pendingTicks.get(i);
+                TechnicalAnalysisAccessImpl accessor = accessors.get(tick.instrument);
+                if ( accessor!=null ) {
+                    accessor.onMarketData(tick);
+                }
+            }
+            if ( pendingTicks.size()>0 ) {
+                logger.info("Replay "+pendingTicks.size()+" ticks received during preload");
             }
-            TechnicalAnalysisAccessImpl accessor = new TechnicalAnalysisAccessImpl(beansContainer, data, e, def);
-            accessors.put(e, accessor);
+            pendingTicks.clear();
+            state = ServiceState.Ready;
         }
     }
 
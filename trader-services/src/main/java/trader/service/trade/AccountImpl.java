@@ -6,15 +6,17 @@ import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -55,6 +57,7 @@ import trader.service.trade.spi.TxnSessionListener;
  * 一个交易账户和通道实例对象.
  * <BR>每个Account对象实例有自己的RingBuffer, 有独立的Log文件, 有独立的多线程处理策略.
  * <BR>每个交易策略实例是运行在独立的线程中, 使用disruptor作为独立的调度
+ * <BR>资金和持仓按持仓分段加锁: 报单/成交/行情只锁定相关的持仓, 账户资金按持仓资金的变化增量更新
  */
 public class AccountImpl implements Account, TxnSessionListener, TradeConstants, ServiceErrorConstants, MarketDataListener {
 
@@ -68,7 +71,15 @@ public class AccountImpl implements Account, TxnSessionListener, TradeConstants,
     private Logger logger;
     private File tradingWorkDir;
     private KVStore kvStore;
-    private long[] money = new long[AccMoney.values().length];
+    private volatile AtomicLongArray money = new AtomicLongArray(AccMoney.values().length);
+    /**
+     * 账户资金的多个字段作为一个整体更新和读取, 需要在持仓锁之后获取
+     */
+    private Lock moneyLock = new ReentrantLock();
+    /**
+     * 同时只允许一个全量重新计算, 避免同时锁定多个持仓时死锁
+     */
+    private Lock reconcileLock = new ReentrantLock();
     private AccountState state;
     private MarketTimeService mtService;
     private TradeService tradeService;
@@ -80,17 +91,26 @@ public class AccountImpl implements Account, TxnSessionListener, TradeConstants,
      */
     private Properties brokerMarginRatio = new Properties();
     private List<AccountListener> listeners = new ArrayList<>();
-    private Map<Exchangeable, PositionImpl> positions = new HashMap<>();
+    private volatile Map<Exchangeable, PositionImpl> positions = new ConcurrentHashMap<>();
     private Map<String, OrderImpl> ordersByRef = new ConcurrentHashMap<>();
     private LinkedList<OrderImpl> orders = new LinkedList<>();
     private Map<Exchangeable, AtomicInteger> cancelCounts = new ConcurrentHashMap<>();
     private Lock orderLock = new ReentrantLock();
-    private Lock positionLock = new ReentrantLock();
+    private OrderRiskChecker riskChecker;
+    /**
+     * 持仓盈亏的批量计算间隔(毫秒), 0为严格模式: 每个行情切片立即计算
+     */
+    private volatile long markToMarketInterval;
+    /**
+     * 批量模式下价格有变化, 等待计算持仓盈亏的持仓
+     */
+    private Set<PositionImpl> dirtyPositions = ConcurrentHashMap.newKeySet();
 
     public AccountImpl(TradeService tradeService, BeansContainer beansContainer, Map configElem) {
         this.tradeService = tradeService;
         this.beansContainer = beansContainer;
         id = ConversionUtil.toString(configElem.get("id"));
+        riskChecker = new OrderRiskChecker(beansContainer, this);
         state = AccountState.Created;
         String provider = ConversionUtil.toString(configElem.get("provider"));
         simMode = StringUtil.equals(provider, TxnSession.PROVIDER_SIM);
@@ -125,31 +145,32 @@ public class AccountImpl implements Account, TxnSessionListener, TradeConstants,
 
     @Override
     public long getMoney(AccMoney mny) {
-        return this.money[mny.ordinal()];
+        return money.get(mny.ordinal());
     }
 
     public long addMoney(AccMoney mny, long toAdd) {
-        money[mny.ordinal()] += toAdd;
-        return money[mny.ordinal()];
+        return money.addAndGet(mny.ordinal(), toAdd);
     }
 
     public long setMoney(AccMoney mny, long value) {
-        long result = money[mny.ordinal()];
-        money[mny.ordinal()] = value;
-        return result;
+        return money.getAndSet(mny.ordinal(), value);
     }
 
     /**
-     * 将资金从mny转移到mny2下, 在扣除保证金时有用.
-     * 如果mny的资金小于amount, 失败.
+     * 返回账户资金的一致快照
      */
-    boolean transferMoney(AccMoney mny, AccMoney mny2, long amount) {
-        if ( money[mny.ordinal()]<amount ) {
-            return false;
+    public long[] getMoney() {
+        AtomicLongArray money = this.money;
+        long[] result = new long[money.length()];
+        moneyLock.lock();
+        try {
+            for(int i=0;i<result.length;i++) {
+                result[i] = money.get(i);
+            }
+        }finally {
+            moneyLock.unlock();
         }
-        money[mny.ordinal()] -= amount;
-        money[mny2.ordinal()] += amount;
-        return true;
+        return result;
     }
 
     @Override
@@ -157,6 +178,18 @@ public class AccountImpl implements Account, TxnSessionListener, TradeConstants,
         return state;
     }
 
+    public long getMarkToMarketInterval() {
+        return markToMarketInterval;
+    }
+
+    public void setMarkToMarketInterval(long markToMarketInterval) {
+        this.markToMarketInterval = markToMarketInterval;
+    }
+
+    public OrderRiskChecker getRiskChecker() {
+        return riskChecker;
+    }
+
     public Properties getConnectionProps() {
         return connectionProps;
     }
@@ -223,7 +256,11 @@ public class AccountImpl implements Account, TxnSessionListener, TradeConstants,
         if ( txnSession==null || txnSession.getState()!=ConnState.Connected ) {
             throw new AppException(ERRCODE_TRADE_SESSION_NOT_READY, "Account "+getId()+" txn session is not ready");
         }
+        //使用最新的持仓盈亏校验可用资金
+        markToMarket();
         long[] localOrderMoney = (new OrderValidator(beansContainer, this, builder)).validate();
+        //风控检查, 通过后计入报单数和未成交开仓手数
+        riskChecker.check(builder);
         //创建Order
         Exchangeable e = builder.getInstrument();
         String orderId = "odr_"+tradeService.getOrderIdGen().nextSeq();
@@ -248,13 +285,16 @@ public class AccountImpl implements Account, TxnSessionListener, TradeConstants,
                 order.setMoney(OdrMoney.LocalFrozenMargin, localOrderMoney[OdrMoney.LocalFrozenMargin.ordinal()]);
                 order.setMoney(OdrMoney.LocalFrozenCommission, localOrderMoney[OdrMoney.LocalFrozenCommission.ordinal()]);
                 order.setMoney(OdrMoney.PriceCandidate, localOrderMoney[OdrMoney.PriceCandidate.ordinal()]);
-                positionLock.lock();
+                Lock posLock = pos.getLock();
+                posLock.lock();
                 try {
-                    localFreeze(order);
+                    long[] posMoney0 = pos.getMoney();
                     //仓位管理
                     pos.localFreeze(order);
+                    //冻结账户保证金和手续费
+                    updateAccountMoneyOnPosition(pos, posMoney0);
                 }finally {
-                    positionLock.unlock();
+                    posLock.unlock();
                 }
                 order.attachPosition(pos);
                 //异步发送
@@ -338,9 +378,11 @@ public class AccountImpl implements Account, TxnSessionListener, TradeConstants,
                 FileUtil.save(settlementFile, settlement);
             }
             //查询账户
-            money = txnSession.syncQryAccounts();
+            money = new AtomicLongArray(txnSession.syncQryAccounts());
             //查询持仓
             positions = loadPositions();
+            reconcileMoney();
+            riskChecker.resetPositions(positions.values());
             //加载品种的交易数据
             if ( null==feeEvaluator ) {
                 loadFeeEvaluator();
@@ -382,6 +424,13 @@ public class AccountImpl implements Account, TxnSessionListener, TradeConstants,
             result = true;
         }
 
+        IniFile.Section riskControlSection = configIni.getSection("riskControl");
+        Properties riskControl = new Properties();
+        if ( riskControlSection!=null ) {
+            riskControl = riskControlSection.getProperties();
+        }
+        riskChecker.update(riskControl);
+
         Properties connectionProps2 = configIni.getSection("connectionProps").getProperties();
         if ( !connectionProps2.equals(connectionProps) ) {
             this.connectionProps = connectionProps2;
@@ -405,7 +454,7 @@ public class AccountImpl implements Account, TxnSessionListener, TradeConstants,
         json.add("txnSession", txnSession.toJson());
         json.add("connectionProps", JsonUtil.object2json(connectionProps));
         json.add("brokerMarginRatio", JsonUtil.object2json(brokerMarginRatio));
-        json.add("money", TradeConstants.accMoney2json(money));
+        json.add("money", TradeConstants.accMoney2json(getMoney()));
         json.add("cancelCounts", JsonUtil.object2json(cancelCounts));
         return json;
     }
@@ -519,19 +568,22 @@ public class AccountImpl implements Account, TxnSessionListener, TradeConstants,
             case Failed: //报单失败, 本地回退冻结仓位和资金
             case Canceled: //报单取消, 本地回退冻结仓位和资金
             case PartiallyDeleted: //部分取消, 本地回退取消部分的冻结仓位和资金
-                positionLock.lock();
-                try {
-                    localUnfreeze(order);
-                    if ( pos!=null ) {
+                if ( pos!=null ) {
+                    Lock posLock = pos.getLock();
+                    posLock.lock();
+                    try {
+                        long[] posMoney0 = pos.getMoney();
                         pos.localUnfreeze(order);
-                    } else {
-                        logger.error("Order "+order.getRef()+" has no related pos");
+                        updateAccountMoneyOnPosition(pos, posMoney0);
+                    }finally {
+                        posLock.unlock();
                     }
-                    order.addMoney(OdrMoney.LocalUnfrozenMargin, order.getMoney(OdrMoney.LocalFrozenMargin) - order.getMoney(OdrMoney.LocalUnfrozenMargin)  );
-                    order.addMoney(OdrMoney.LocalUnfrozenCommission, order.getMoney(OdrMoney.LocalFrozenCommission) - order.getMoney(OdrMoney.LocalUnfrozenCommission) );
-                }finally {
-                    positionLock.unlock();
+                } else {
+                    logger.error("Order "+order.getRef()+" has no related pos");
                 }
+                order.addMoney(OdrMoney.LocalUnfrozenMargin, order.getMoney(OdrMoney.LocalFrozenMargin) - order.getMoney(OdrMoney.LocalUnfrozenMargin)  );
+                order.addMoney(OdrMoney.LocalUnfrozenCommission, order.getMoney(OdrMoney.LocalFrozenCommission) - order.getMoney(OdrMoney.LocalUnfrozenCommission) );
+                riskChecker.onOrderUnfrozen(order);
                 break;
             case Complete: //报单成交, 本地回退冻结仓位和资金的行为由成交回报函数处理
             default:
@@ -585,6 +637,7 @@ public class AccountImpl implements Account, TxnSessionListener, TradeConstants,
             }finally {
                 orderLock.unlock();
             }
+            riskChecker.onOrderLoaded(order);
             logger.info("Order "+orderId+" ref "+orderRef+" is created from response: "+order);
             publishOrderStateChanged(order, stateTuple);
         }
@@ -599,13 +652,53 @@ public class AccountImpl implements Account, TxnSessionListener, TradeConstants,
         if ( state!=AccountState.Ready ) {
             return;
         }
-        boolean priceChanged = false;
         PositionImpl pos = positions.get(marketData.instrument);
-        if( pos!=null ) {
-            priceChanged = pos.onMarketData(marketData);
+        if( pos==null ) {
+            return;
+        }
+        if ( markToMarketInterval>0 ) {
+            //批量模式: 只记录最新价, 由markToMarket()定时或在报单/成交时统一计算
+            if ( pos.updateLastPrice(marketData) ) {
+                dirtyPositions.add(pos);
+            }
+            return;
+        }
+        Lock posLock = pos.getLock();
+        posLock.lock();
+        try {
+            long posProfit0 = pos.getMoney(PosMoney.PositionProfit);
+            long margin0 = pos.getMoney(PosMoney.UseMargin);
+            if ( pos.onMarketData(marketData) ) {
+                //价格变化只影响持仓盈亏和保证金占用
+                updateAccountMoney(0, 0, 0, pos.getMoney(PosMoney.UseMargin)-margin0, pos.getMoney(PosMoney.PositionProfit)-posProfit0, 0);
+            }
+        }finally {
+            posLock.unlock();
+        }
+    }
+
+    /**
+     * 批量计算价格有变化的持仓盈亏, 并增量更新账户资金.
+     * <BR>批量模式下由TradeService定时调用, 报单和成交时也会调用, 保证资金数据是最新的
+     */
+    public void markToMarket() {
+        if ( dirtyPositions.isEmpty() ) {
+            return;
         }
-        if ( priceChanged ) {
-            updateAccountMoneyOnMarket();
+        Iterator<PositionImpl> it = dirtyPositions.iterator();
+        while(it.hasNext()) {
+            PositionImpl pos = it.next();
+            it.remove();
+            Lock posLock = pos.getLock();
+            posLock.lock();
+            try {
+                long posProfit0 = pos.getMoney(PosMoney.PositionProfit);
+                long margin0 = pos.getMoney(PosMoney.UseMargin);
+                pos.markToMarket();
+                updateAccountMoney(0, 0, 0, pos.getMoney(PosMoney.UseMargin)-margin0, pos.getMoney(PosMoney.PositionProfit)-posProfit0, 0);
+            }finally {
+                posLock.unlock();
+            }
         }
     }
 
@@ -614,8 +707,6 @@ public class AccountImpl implements Account, TxnSessionListener, TradeConstants,
      */
     void onTransaction(OrderImpl order, TransactionImpl txn, long timestamp) {
         long[] lastOrderMoney = order.getMoney();
-        long odrUnfrozenCommision0 = order.getMoney(OdrMoney.LocalUnfrozenCommission);
-        long odrUsedCommission0 = order.getMoney(OdrMoney.LocalUsedCommission);
         long[] txnFees = feeEvaluator.compute(txn);
         OrderStateTuple orderOldState = order.getStateTuple();
         if ( !order.attachTransaction(txn, txnFees, timestamp) ) {
@@ -624,47 +715,23 @@ public class AccountImpl implements Account, TxnSessionListener, TradeConstants,
             }
             return;
         }
-        long odrUsedCommission2 = order.getMoney(OdrMoney.LocalUsedCommission)-odrUsedCommission0;
-        long odrUnfrozenCommission2 = order.getMoney(OdrMoney.LocalUnfrozenCommission);
-
-        positionLock.lock();
-        try {
-            //解冻保证金
-            if ( order.getOffsetFlags()==OrderOffsetFlag.OPEN) {
-                long txnUnfrozenMargin = Math.abs( order.getMoney(OdrMoney.LocalUnfrozenMargin) - lastOrderMoney[OdrMoney.LocalUnfrozenMargin.ordinal()] );
-                if ( txnUnfrozenMargin!=0 ) {
-                    transferMoney(AccMoney.FrozenMargin, AccMoney.Available, txnUnfrozenMargin);
-                }
-            }
-            //解冻手续费
-            if( odrUnfrozenCommission2!=odrUnfrozenCommision0 ) {
-                long txnUnfrozenCommission = Math.abs(odrUnfrozenCommission2-odrUnfrozenCommision0);
-                transferMoney(AccMoney.FrozenCommission, AccMoney.Available, txnUnfrozenCommission );
-            }
-            //更新实际手续费
-            if( odrUsedCommission2!=odrUsedCommission0) {
-                long txnUsedCommission = Math.abs(odrUsedCommission2-odrUsedCommission0);
-                transferMoney(AccMoney.Available, AccMoney.Commission, txnUsedCommission);
-                addMoney(AccMoney.Balance, -1*txnUsedCommission);
-            }
-            //更新账户保证金占用等等
-            PositionImpl position = ((PositionImpl)order.getPosition());
-            if ( position!=null ) {
-                long closeProfit0 = position.getMoney(PosMoney.CloseProfit);
-                //更新持仓和资金
+        //更新持仓, 按持仓的变化更新账户的保证金/手续费的冻结和占用, 以及平仓盈亏
+        PositionImpl position = ((PositionImpl)order.getPosition());
+        if ( position!=null ) {
+            Lock posLock = position.getLock();
+            posLock.lock();
+            try {
+                long[] posMoney0 = position.getMoney();
                 position.onTransaction(order, txn, txnFees, lastOrderMoney);
-                long txnProfit2 = position.getMoney(PosMoney.CloseProfit)-closeProfit0;
-                //更新平仓利润
-                if ( txnProfit2!=0 ) {
-                    addMoney(AccMoney.CloseProfit, txnProfit2);
-                }
-            }else {
-                logger.error("Order "+order.getRef()+" has no corresponding position");
+                updateAccountMoneyOnPosition(position, posMoney0);
+                riskChecker.onTransaction(order, txn, position);
+            }finally {
+                posLock.unlock();
             }
-            updateAccountMoneyOnMarket();
-        }finally {
-            positionLock.unlock();
+        }else {
+            logger.error("Order "+order.getRef()+" has no corresponding position");
         }
+        markToMarket();
         //更新
         publishTransaction(txn);
         if ( order.getStateTuple().getState()!=orderOldState.getState()) {
@@ -703,7 +770,7 @@ public class AccountImpl implements Account, TxnSessionListener, TradeConstants,
 
     private Map<Exchangeable, PositionImpl> loadPositions() throws Exception
     {
-        Map<Exchangeable, PositionImpl> positions = new HashMap<>();
+        Map<Exchangeable, PositionImpl> positions = new ConcurrentHashMap<>();
         JsonObject posInfos = (JsonObject)(new JsonParser()).parse(new StringReader(txnSession.syncQryPositions()));
         for(String posKey:posInfos.keySet()) {
             JsonObject posInfo = (JsonObject)posInfos.get(posKey);
@@ -782,8 +849,9 @@ public class AccountImpl implements Account, TxnSessionListener, TradeConstants,
     PositionImpl getOrCreatePosition(Exchangeable e, boolean create) {
         PositionImpl pos = positions.get(e);
         if ( pos==null && create ) {
-            pos = new PositionImpl(this, e);
-            positions.put(e, pos);
+            pos = positions.computeIfAbsent(e, (Exchangeable e0)->{
+                return new PositionImpl(this, e0);
+            });
         }
         return pos;
     }
@@ -854,70 +922,125 @@ public class AccountImpl implements Account, TxnSessionListener, TradeConstants,
     }
 
     /**
-     * 更新账户资金的持仓盈亏
+     * 根据持仓资金的变化, 增量更新账户资金. 调用时需要持有持仓锁
      */
-    private void updateAccountMoneyOnMarket() {
-        long frozenCommission=0;
-        long commission=0;
-        long frozenMargin=0;
-        long margin=0;
-        long posProfit =0;
-        for(Position pos:positions.values()) {
-            frozenCommission += pos.getMoney(PosMoney.FrozenCommission);
-            commission += pos.getMoney(PosMoney.Commission);
-            frozenMargin += pos.getMoney(PosMoney.FrozenMargin);
-            margin += pos.getMoney(PosMoney.UseMargin);
-            posProfit += pos.getMoney(PosMoney.PositionProfit);
-        }
-        long balanceBefore = getMoney(AccMoney.BalanceBefore);
-        long balance = balanceBefore+getMoney(AccMoney.CloseProfit)-commission+posProfit;
-        long reserve = getMoney(AccMoney.Reserve);
-        long avail = balance-margin-frozenMargin-frozenCommission-reserve;
-
-        setMoney(AccMoney.Balance, balance);
-        setMoney(AccMoney.PositionProfit, posProfit);
-        setMoney(AccMoney.Available, avail);
-        setMoney(AccMoney.FrozenMargin, frozenMargin);
-        setMoney(AccMoney.CurrMargin, margin);
-        setMoney(AccMoney.FrozenCommission, frozenCommission);
-        setMoney(AccMoney.Commission, commission);
+    private void updateAccountMoneyOnPosition(PositionImpl pos, long[] posMoney0) {
+        updateAccountMoney(
+                pos.getMoney(PosMoney.FrozenCommission)-posMoney0[PosMoney.FrozenCommission.ordinal()],
+                pos.getMoney(PosMoney.Commission)-posMoney0[PosMoney.Commission.ordinal()],
+                pos.getMoney(PosMoney.FrozenMargin)-posMoney0[PosMoney.FrozenMargin.ordinal()],
+                pos.getMoney(PosMoney.UseMargin)-posMoney0[PosMoney.UseMargin.ordinal()],
+                pos.getMoney(PosMoney.PositionProfit)-posMoney0[PosMoney.PositionProfit.ordinal()],
+                pos.getMoney(PosMoney.CloseProfit)-posMoney0[PosMoney.CloseProfit.ordinal()]
+                );
     }
 
     /**
-     * 本地冻结订单的保证金和手续费, 调整account/position的相关字段, 并保存数据到OrderImpl
+     * 按持仓资金的增量更新账户资金, 不需要遍历全部持仓. 多个字段在资金锁内作为一个整体更新:
+     * <BR>balance = balanceBefore+closeProfit-commission+posProfit
+     * <BR>avail = balance-margin-frozenMargin-frozenCommission-reserve
      */
-    private void localFreeze(OrderImpl order) throws AppException {
-        localFreeze0(order, 1);
+    private void updateAccountMoney(long frozenCommission, long commission, long frozenMargin, long margin, long posProfit, long closeProfit) {
+        long balance = closeProfit-commission+posProfit;
+        long avail = balance-margin-frozenMargin-frozenCommission;
+        moneyLock.lock();
+        try {
+            if ( frozenCommission!=0 ) {
+                addMoney(AccMoney.FrozenCommission, frozenCommission);
+            }
+            if ( commission!=0 ) {
+                addMoney(AccMoney.Commission, commission);
+            }
+            if ( frozenMargin!=0 ) {
+                addMoney(AccMoney.FrozenMargin, frozenMargin);
+            }
+            if ( margin!=0 ) {
+                addMoney(AccMoney.CurrMargin, margin);
+            }
+            if ( posProfit!=0 ) {
+                addMoney(AccMoney.PositionProfit, posProfit);
+            }
+            if ( closeProfit!=0 ) {
+                addMoney(AccMoney.CloseProfit, closeProfit);
+            }
+            if ( balance!=0 ) {
+                addMoney(AccMoney.Balance, balance);
+            }
+            if ( avail!=0 ) {
+                addMoney(AccMoney.Available, avail);
+            }
+        }finally {
+            moneyLock.unlock();
+        }
     }
 
     /**
-     * 本地订单解冻, 如果报单失败或取消
+     * 按全部持仓重新计算账户的冻结/占用保证金, 手续费和持仓盈亏, 修正增量更新累积的误差:
+     * <BR>balance = balanceBefore+closeProfit-commission+posProfit
+     * <BR>avail = balance-margin-frozenMargin-frozenCommission-reserve
+     * <BR>重新加载持仓后和TradeService定时调用. 计算时锁定全部持仓, 保证没有正在进行的增量更新
      */
-    private void localUnfreeze(OrderImpl order) {
-        assert(order.getMoney(OdrMoney.LocalFrozenMargin)!=0);
-        assert(order.getMoney(OdrMoney.LocalFrozenCommission)!=0);
-        localFreeze0(order, -1);
+    public void reconcileMoney() {
+        reconcileLock.lock();
+        try {
+            while(!reconcileMoney0()) {
+                //计算期间新建了持仓, 重新计算
+            }
+        }finally {
+            reconcileLock.unlock();
+        }
     }
 
     /**
-     * 本地冻结或解冻订单相关资金
+     * @return false 如果锁定持仓期间有新的持仓
      */
-    private void localFreeze0(OrderImpl order, int unit) {
-        long orderFrozenMargin = order.getMoney(OdrMoney.LocalFrozenMargin) - order.getMoney(OdrMoney.LocalUnfrozenMargin);
-        long orderFrozenCommission = order.getMoney(OdrMoney.LocalFrozenCommission) - order.getMoney(OdrMoney.LocalUnfrozenCommission);
-        long frozenMargin0 = getMoney(AccMoney.FrozenMargin);
-        long frozenCommission0 = getMoney(AccMoney.FrozenCommission);
-        long avail0 = getMoney(AccMoney.Available);
-        addMoney(AccMoney.FrozenMargin, unit*orderFrozenMargin);
-        addMoney(AccMoney.FrozenCommission, unit*orderFrozenCommission);
-        addMoney(AccMoney.Available, -1*unit*(orderFrozenMargin+orderFrozenCommission));
-
-        long frozenMargin2 = getMoney(AccMoney.FrozenMargin);
-        long frozenCommission2 = getMoney(AccMoney.FrozenCommission);
-        long avail2 = getMoney(AccMoney.Available);
-
-        //验证资金冻结前后, (冻结+可用) 总额不变
-        assert(frozenMargin0+frozenCommission0+avail0 == frozenMargin2+frozenCommission2+avail2);
+    private boolean reconcileMoney0() {
+        Map<Exchangeable, PositionImpl> positions = this.positions;
+        List<PositionImpl> lockedPositions = new ArrayList<>(positions.values());
+        int lockedCount = 0;
+        try {
+            for(PositionImpl pos:lockedPositions) {
+                pos.getLock().lock();
+                lockedCount++;
+            }
+            moneyLock.lock();
+            try {
+                if ( positions!=this.positions || positions.size()!=lockedPositions.size() ) {
+                    return false;
+                }
+                long frozenCommission=0;
+                long commission=0;
+                long frozenMargin=0;
+                long margin=0;
+                long posProfit =0;
+                for(PositionImpl pos:lockedPositions) {
+                    frozenCommission += pos.getMoney(PosMoney.FrozenCommission);
+                    commission += pos.getMoney(PosMoney.Commission);
+                    frozenMargin += pos.getMoney(PosMoney.FrozenMargin);
+                    margin += pos.getMoney(PosMoney.UseMargin);
+                    posProfit += pos.getMoney(PosMoney.PositionProfit);
+                }
+                long balanceBefore = getMoney(AccMoney.BalanceBefore);
+                long balance = balanceBefore+getMoney(AccMoney.CloseProfit)-commission+posProfit;
+                long reserve = getMoney(AccMoney.Reserve);
+                long avail = balance-margin-frozenMargin-frozenCommission-reserve;
+
+                setMoney(AccMoney.Balance, balance);
+                setMoney(AccMoney.PositionProfit, posProfit);
+                setMoney(AccMoney.Available, avail);
+                setMoney(AccMoney.FrozenMargin, frozenMargin);
+                setMoney(AccMoney.CurrMargin, margin);
+                setMoney(AccMoney.FrozenCommission, frozenCommission);
+                setMoney(AccMoney.Commission, commission);
+            }finally {
+                moneyLock.unlock();
+            }
+        }finally {
+            for(int i=lockedCount-1;i>=0;i--) {
+                lockedPositions.get(i).getLock().unlock();
+            }
+        }
+        return true;
     }
 
     /**
@@ -928,9 +1051,11 @@ public class AccountImpl implements Account, TxnSessionListener, TradeConstants,
         executorService.execute(()->{
             try{
                 //查询账户
-                money = txnSession.syncQryAccounts();
+                money = new AtomicLongArray(txnSession.syncQryAccounts());
                 //查询持仓
                 positions = loadPositions();
+                reconcileMoney();
+                riskChecker.resetPositions(positions.values());
             }catch(Throwable t) {
                 logger.error("Reload asset info failed", t);
             }
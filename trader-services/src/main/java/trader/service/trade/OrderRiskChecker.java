@@ -0,0 +1,314 @@
+package trader.service.trade;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import trader.common.beans.BeansContainer;
+import trader.common.exception.AppException;
+import trader.common.exchangeable.Exchangeable;
+import trader.common.util.ConversionUtil;
+import trader.common.util.PriceUtil;
+import trader.service.ServiceErrorConstants;
+import trader.service.md.MarketData;
+import trader.service.md.MarketDataService;
+
+/**
+ * 报单前的风控检查: 合约/账户持仓限制, 报单频率限制, 撤单比例限制, 价格偏离限制.
+ * <BR>所有检查只读取预先维护的计数器, 不遍历持仓和报单, 由AccountImpl在报单/撤单/成交时更新计数器.
+ * <BR>配置来自账户配置的[riskControl]段, 缺省或0表示不限制:
+ * <pre>
+ * maxPosition=10             每个合约的最大持仓+未成交开仓手数
+ * maxPosition.au1906=5       特定合约的最大持仓
+ * maxAccountPosition=50      账户全部合约的最大持仓+未成交开仓手数
+ * maxOrdersPerSecond=20      每秒最大报单数
+ * maxCancelRatio=0.5         每个合约的撤单数/报单数的最大比例
+ * cancelRatioMinOrders=20    报单数达到这个数量后才检查撤单比例
+ * priceBand=0.03             限价单价格与最新价的最大偏离比例
+ * </pre>
+ */
+public class OrderRiskChecker implements TradeConstants, ServiceErrorConstants {
+
+    /**
+     * 每个合约的风控计数器
+     */
+    private static class InstrumentRisk {
+        /**
+         * 持仓限制, 0为使用缺省值
+         */
+        volatile int maxPosition;
+        /**
+         * 多空持仓手数
+         */
+        final AtomicInteger positionVolume = new AtomicInteger();
+        /**
+         * 未成交的开仓手数
+         */
+        final AtomicInteger pendingOpenVolume = new AtomicInteger();
+        /**
+         * 报单数量
+         */
+        final AtomicInteger orderCount = new AtomicInteger();
+    }
+
+    private BeansContainer beansContainer;
+    private AccountImpl account;
+    private MarketTimeService mtService;
+    private MarketDataService mdService;
+    private Map<Exchangeable, InstrumentRisk> instrumentRisks = new ConcurrentHashMap<>();
+
+    private volatile int maxPosition;
+    private volatile int maxAccountPosition;
+    private volatile int maxOrdersPerSecond;
+    private volatile double maxCancelRatio;
+    private volatile int cancelRatioMinOrders;
+    private volatile double priceBand;
+
+    private AtomicInteger accountPositionVolume = new AtomicInteger();
+    private AtomicInteger accountPendingOpenVolume = new AtomicInteger();
+    /**
+     * 报单频率计数: 高32位为当前秒, 低32位为这一秒已通过的报单数
+     */
+    private AtomicLong rateWindow = new AtomicLong();
+
+    public OrderRiskChecker(BeansContainer beansContainer, AccountImpl account) {
+        this.beansContainer = beansContainer;
+        this.account = account;
+        mtService = beansContainer.getBean(MarketTimeService.class);
+    }
+
+    /**
+     * 更新风控配置
+     */
+    public void update(Properties props) {
+        maxPosition = ConversionUtil.toInt(props.getProperty("maxPosition"));
+        maxAccountPosition = ConversionUtil.toInt(props.getProperty("maxAccountPosition"));
+        maxOrdersPerSecond = ConversionUtil.toInt(props.getProperty("maxOrdersPerSecond"));
+        maxCancelRatio = ConversionUtil.toDouble(props.getProperty("maxCancelRatio"));
+        cancelRatioMinOrders = ConversionUtil.toInt(props.getProperty("cancelRatioMinOrders"));
+        priceBand = ConversionUtil.toDouble(props.getProperty("priceBand"));
+        for(InstrumentRisk risk:instrumentRisks.values()) {
+            risk.maxPosition = 0;
+        }
+        for(String key:props.stringPropertyNames()) {
+            if ( key.startsWith("maxPosition.") ) {
+                Exchangeable e = Exchangeable.fromString(key.substring("maxPosition.".length()));
+                getInstrumentRisk(e).maxPosition = ConversionUtil.toInt(props.getProperty(key));
+            }
+        }
+    }
+
+    /**
+     * 检查报单请求, 通过后计入报单数量和未成交开仓手数.
+     * <BR>持仓限制和报单频率的检查与计数通过CAS一起完成, 多个线程同时报单也不会超出限制
+     */
+    public void check(OrderBuilder builder) throws AppException
+    {
+        Exchangeable e = builder.getInstrument();
+        InstrumentRisk risk = getInstrumentRisk(e);
+        int volume = builder.getVolume();
+        boolean open = builder.getOffsetFlag()==OrderOffsetFlag.OPEN;
+        //撤单比例限制
+        if ( maxCancelRatio>0 ) {
+            int orderCount = risk.orderCount.get();
+            if ( orderCount>=cancelRatioMinOrders && orderCount>0 ) {
+                int cancelCount = account.getCancelCount(e);
+                if ( cancelCount>orderCount*maxCancelRatio ) {
+                    throw new AppException(ERRCODE_TRADE_CANCEL_RATIO_EXCEEDS_LIMIT, "Account "+account.getId()+" "+e+" cancel count "+cancelCount+" / order count "+orderCount+" exceeds limit "+maxCancelRatio);
+                }
+            }
+        }
+        //价格偏离限制
+        if ( priceBand>0 && builder.getPriceType()==OrderPriceType.LimitPrice ) {
+            MarketData md = getMarketDataService().getLastData(e);
+            if ( md!=null && md.lastPrice>0 ) {
+                long limitPrice = builder.getLimitPrice();
+                if ( Math.abs(limitPrice-md.lastPrice)>md.lastPrice*priceBand ) {
+                    throw new AppException(ERRCODE_TRADE_PRICE_OUT_OF_BAND, "Account "+account.getId()+" "+e+" limit price "+PriceUtil.long2str(limitPrice)+" is out of band "+priceBand+" of last price "+PriceUtil.long2str(md.lastPrice));
+                }
+            }
+        }
+        //持仓限制, 检查同时预留开仓手数
+        if ( open ) {
+            int instrumentMax = risk.maxPosition;
+            if ( instrumentMax==0 ) {
+                instrumentMax = maxPosition;
+            }
+            if ( !reserve(risk.pendingOpenVolume, risk.positionVolume, volume, instrumentMax) ) {
+                throw new AppException(ERRCODE_TRADE_POS_EXCEEDS_LIMIT, "Account "+account.getId()+" "+e+" position "+(risk.positionVolume.get()+risk.pendingOpenVolume.get())+" + "+volume+" exceeds limit "+instrumentMax+" : "+builder);
+            }
+            int accountMax = maxAccountPosition;
+            if ( !reserve(accountPendingOpenVolume, accountPositionVolume, volume, accountMax) ) {
+                risk.pendingOpenVolume.addAndGet(-volume);
+                throw new AppException(ERRCODE_TRADE_POS_EXCEEDS_LIMIT, "Account "+account.getId()+" position "+(accountPositionVolume.get()+accountPendingOpenVolume.get())+" + "+volume+" exceeds limit "+accountMax+" : "+builder);
+            }
+        }
+        //报单频率限制, 最后检查, 只有通过全部检查的报单计数
+        int maxRate = maxOrdersPerSecond;
+        if ( maxRate>0 && !acquireRate(maxRate) ) {
+            if ( open ) {
+                risk.pendingOpenVolume.addAndGet(-volume);
+                accountPendingOpenVolume.addAndGet(-volume);
+            }
+            throw new AppException(ERRCODE_TRADE_ORDER_RATE_EXCEEDS_LIMIT, "Account "+account.getId()+" order rate exceeds limit "+maxRate+"/s : "+builder);
+        }
+        risk.orderCount.incrementAndGet();
+    }
+
+    /**
+     * 查询回报创建的未完成报单, 计入未成交开仓手数
+     */
+    public void onOrderLoaded(Order order) {
+        if ( order.getOffsetFlags()==OrderOffsetFlag.OPEN && order.getStateTuple().getState().isRevocable() ) {
+            addPendingOpenVolume(order.getInstrument(), order.getVolume(OdrVolume.ReqVolume)-order.getVolume(OdrVolume.TradeVolume));
+        }
+    }
+
+    /**
+     * 报单失败或撤单时, 释放未成交的开仓手数
+     */
+    public void onOrderUnfrozen(Order order) {
+        if ( order.getOffsetFlags()==OrderOffsetFlag.OPEN ) {
+            addPendingOpenVolume(order.getInstrument(), -(order.getVolume(OdrVolume.ReqVolume)-order.getVolume(OdrVolume.TradeVolume)));
+        }
+    }
+
+    /**
+     * 成交后更新未成交开仓手数和持仓手数, 调用时需要持有持仓锁
+     */
+    public void onTransaction(Order order, Transaction txn, Position pos) {
+        //先增加持仓再释放未成交手数, 期间的检查只会偏保守
+        onPositionChanged(pos);
+        if ( order.getOffsetFlags()==OrderOffsetFlag.OPEN ) {
+            addPendingOpenVolume(order.getInstrument(), -txn.getVolume());
+        }
+    }
+
+    /**
+     * 持仓手数变化, 按变化量更新账户持仓手数
+     */
+    public void onPositionChanged(Position pos) {
+        InstrumentRisk risk = getInstrumentRisk(pos.getInstrument());
+        int volume = pos.getVolume(PosVolume.LongPosition)+pos.getVolume(PosVolume.ShortPosition);
+        int volume0 = risk.positionVolume.getAndSet(volume);
+        if ( volume!=volume0 ) {
+            accountPositionVolume.addAndGet(volume-volume0);
+        }
+    }
+
+    /**
+     * 重新加载持仓后, 重建持仓手数
+     */
+    public void resetPositions(Collection<? extends Position> positions) {
+        for(InstrumentRisk risk:instrumentRisks.values()) {
+            accountPositionVolume.addAndGet(-risk.positionVolume.getAndSet(0));
+        }
+        for(Position pos:positions) {
+            onPositionChanged(pos);
+        }
+    }
+
+    public int getPositionVolume(Exchangeable e) {
+        InstrumentRisk risk = instrumentRisks.get(e);
+        if ( risk==null ) {
+            return 0;
+        }
+        return risk.positionVolume.get();
+    }
+
+    public int getPendingOpenVolume(Exchangeable e) {
+        InstrumentRisk risk = instrumentRisks.get(e);
+        if ( risk==null ) {
+            return 0;
+        }
+        return risk.pendingOpenVolume.get();
+    }
+
+    public int getAccountPositionVolume() {
+        return accountPositionVolume.get();
+    }
+
+    public int getAccountPendingOpenVolume() {
+        return accountPendingOpenVolume.get();
+    }
+
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append("maxPosition ").append(maxPosition)
+            .append(", maxAccountPosition ").append(maxAccountPosition)
+            .append(", maxOrdersPerSecond ").append(maxOrdersPerSecond)
+            .append(", maxCancelRatio ").append(maxCancelRatio)
+            .append(", cancelRatioMinOrders ").append(cancelRatioMinOrders)
+            .append(", priceBand ").append(priceBand);
+        return result.toString();
+    }
+
+    /**
+     * 持仓+未成交手数不超过限制时, 通过CAS增加未成交手数
+     *
+     * @param max 0为不限制
+     * @return false 如果超出限制
+     */
+    private static boolean reserve(AtomicInteger pendingVolume, AtomicInteger positionVolume, int volume, int max) {
+        while(true) {
+            int pending = pendingVolume.get();
+            if ( max>0 && positionVolume.get()+pending+volume>max ) {
+                return false;
+            }
+            if ( pendingVolume.compareAndSet(pending, pending+volume) ) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 当前秒的报单数没有超出限制时计数
+     *
+     * @return false 如果超出限制
+     */
+    private boolean acquireRate(int maxRate) {
+        long second = mtService.currentTimeMillis()/1000;
+        while(true) {
+            long window = rateWindow.get();
+            int count = 0;
+            if ( (window>>>32)==second ) {
+                count = (int)window;
+            }
+            if ( count>=maxRate ) {
+                return false;
+            }
+            if ( rateWindow.compareAndSet(window, (second<<32)|(count+1)) ) {
+                return true;
+            }
+        }
+    }
+
+    private void addPendingOpenVolume(Exchangeable e, int volume) {
+        if ( volume==0 ) {
+            return;
+        }
+        getInstrumentRisk(e).pendingOpenVolume.addAndGet(volume);
+        accountPendingOpenVolume.addAndGet(volume);
+    }
+
+    private InstrumentRisk getInstrumentRisk(Exchangeable e) {
+        InstrumentRisk risk = instrumentRisks.get(e);
+        if ( risk==null ) {
+            risk = instrumentRisks.computeIfAbsent(e, (Exchangeable key)->{
+                return new InstrumentRisk();
+            });
+        }
+        return risk;
+    }
+
+    private MarketDataService getMarketDataService() {
+        if ( mdService==null ) {
+            mdService = beansContainer.getBean(MarketDataService.class);
+        }
+        return mdService;
+    }
+
+}
@@ -76,11 +76,6 @@ public class OrderValidator implements TradeConstants, ServiceErrorConstants {
             if( avail <= odrMarginReq+odrCommissionReq ) {
                 throw new AppException(ERRCODE_TRADE_MARGIN_NOT_ENOUGH, "Account "+account.getId()+" avail "+PriceUtil.long2price(avail)+" is NOT enough: "+odrMarginReq);
             }
-            //计算持仓+新增保证金是否超出账户视图限制
-            long posMargin = 0;
-            for(Position pos:account.getPositions()) {
-                posMargin += pos.getMoney(PosMoney.UseMargin);
-            }
             orderMoney[OdrMoney.LocalFrozenMargin.ordinal()] = odrMarginReq;
         }else {
             //平仓, 解冻保证金这里没法计算
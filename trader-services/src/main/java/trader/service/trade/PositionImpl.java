@@ -8,6 +8,8 @@ import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,7 +39,8 @@ public class PositionImpl implements Position, TradeConstants {
      */
     private LinkedHashMap<String, OrderImpl> activeOrders = new LinkedHashMap<>();
 
-    private long lastPrice;
+    private volatile long lastPrice;
+    private Lock lock = new ReentrantLock();
 
     public PositionImpl(AccountImpl account, Exchangeable e, PosDirection direction, long[] money, int[] volumes, List<PositionDetailImpl> details) {
         this(account, e);
@@ -105,6 +108,22 @@ public class PositionImpl implements Position, TradeConstants {
         return toJson().toString();
     }
 
+    /**
+     * 持仓锁: 同一持仓的报单冻结/解冻, 成交和行情更新互斥, 不同持仓之间互不影响
+     */
+    Lock getLock() {
+        return lock;
+    }
+
+    /**
+     * 返回持仓资金的副本
+     */
+    long[] getMoney() {
+        long[] result = new long[money.length];
+        System.arraycopy(money, 0, result, 0, money.length);
+        return result;
+    }
+
     long addMoney(PosMoney mny, long toadd) {
         money[mny.ordinal()] += toadd;
         return money[mny.ordinal()];
@@ -141,7 +160,7 @@ public class PositionImpl implements Position, TradeConstants {
     }
 
     /**
-     * 本地计算和冻结仓位. 非线程安全
+     * 本地计算和冻结仓位. 调用时需要持有持仓锁
      */
     public void localFreeze(OrderImpl order) {
         activeOrders.put(order.getRef(), order);
@@ -149,7 +168,7 @@ public class PositionImpl implements Position, TradeConstants {
     }
 
     /**
-     * 报单取消时, 本地计算和解冻仓位, 非线程安全
+     * 报单取消时, 本地计算和解冻仓位, 调用时需要持有持仓锁
      */
     public void localUnfreeze(OrderImpl order) {
         activeOrders.remove(order.getRef());
@@ -182,17 +201,37 @@ public class PositionImpl implements Position, TradeConstants {
     }
 
     boolean onMarketData(MarketData marketData) {
+        boolean result = false;
+        if ( updateLastPrice(marketData) ) {
+            computePositionProfit(false);
+            result = true;
+        }
+        return result;
+    }
+
+    /**
+     * 只更新最新价, 不计算持仓盈亏, 可以不持有持仓锁
+     *
+     * @return true 如果价格变化并且有持仓明细
+     */
+    boolean updateLastPrice(MarketData marketData) {
         boolean result = false;
         if ( marketData.lastPrice!=lastPrice ) {
             lastPrice = marketData.lastPrice;
-            if ( details.size()>0 ) {
-                computePositionProfit(false);
-                result = true;
-            }
+            result = details.size()>0;
         }
         return result;
     }
 
+    /**
+     * 按最新价计算持仓盈亏, 调用时需要持有持仓锁
+     */
+    void markToMarket() {
+        if ( details.size()>0 ) {
+            computePositionProfit(false);
+        }
+    }
+
     /**
      * 报单成交
      */
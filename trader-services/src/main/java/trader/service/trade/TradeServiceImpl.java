@@ -25,6 +25,7 @@ import trader.common.beans.ServiceState;
 import trader.common.config.ConfigUtil;
 import trader.common.util.ConversionUtil;
 import trader.common.util.TimestampSeqGen;
+import trader.service.ServiceConstants.AccountState;
 import trader.service.event.AsyncEvent;
 import trader.service.event.AsyncEventFilter;
 import trader.service.event.AsyncEventService;
@@ -45,6 +46,7 @@ public class TradeServiceImpl implements TradeService, AsyncEventFilter {
 
     static final String ITEM_ACCOUNT = "/TradeService/account";
     static final String ITEM_ACCOUNTS = ITEM_ACCOUNT+"[]";
+    static final String ITEM_MARK_TO_MARKET_INTERVAL = "/TradeService/markToMarketInterval";
 
     @Autowired
     private ScheduledExecutorService scheduledExecutorService;
@@ -76,6 +78,11 @@ public class TradeServiceImpl implements TradeService, AsyncEventFilter {
 
     private AccountImpl primaryAccount = null;
 
+    /**
+     * 持仓盈亏的批量计算间隔(毫秒), 0为严格模式
+     */
+    private long markToMarketInterval;
+
     @Override
     public void init(BeansContainer beansContainer) {
         state = ServiceState.Starting;
@@ -90,11 +97,19 @@ public class TradeServiceImpl implements TradeService, AsyncEventFilter {
 
         //自动发现交易接口API
         txnSessionFactories = discoverTxnSessionProviders(beansContainer);
+        markToMarketInterval = ConfigUtil.getInt(ITEM_MARK_TO_MARKET_INTERVAL, 0);
         reloadAccounts();
+        if ( markToMarketInterval>0 ) {
+            scheduledExecutorService.scheduleAtFixedRate(()->{
+                accountMarkToMarket();
+            }, markToMarketInterval, markToMarketInterval, TimeUnit.MILLISECONDS);
+            logger.info("Mark to market interval: "+markToMarketInterval+" ms");
+        }
 
         scheduledExecutorService.scheduleAtFixedRate(()->{
             List<AccountImpl> newOrUpdatedAccounts = reloadAccounts();
             connectTxnSessions(newOrUpdatedAccounts);
+            accountReconcileMoney();
         }, 15, 15, TimeUnit.SECONDS);
     }
 
@@ -218,6 +233,7 @@ public class TradeServiceImpl implements TradeService, AsyncEventFilter {
     private AccountImpl createAccount(Map accountElem)
     {
         AccountImpl account = new AccountImpl(this, beansContainer, accountElem);
+        account.setMarkToMarketInterval(markToMarketInterval);
         return account;
     }
 
@@ -251,6 +267,38 @@ public class TradeServiceImpl implements TradeService, AsyncEventFilter {
         }
     }
 
+    /**
+     * 批量模式下定时计算持仓利润
+     */
+    private void accountMarkToMarket() {
+        List<AccountImpl> accounts = this.accounts;
+        for(int i=0; i<accounts.size();i++) {
+            try{
+                accounts.get(i).markToMarket();
+            }catch(Throwable t) {
+                logger.error("Account "+accounts.get(i).getId()+" mark to market failed", t);
+            }
+        }
+    }
+
+    /**
+     * 按持仓全量重新计算账户资金, 修正增量更新的误差
+     */
+    private void accountReconcileMoney() {
+        List<AccountImpl> accounts = this.accounts;
+        for(int i=0; i<accounts.size();i++) {
+            AccountImpl account = accounts.get(i);
+            if ( account.getState()!=AccountState.Ready ) {
+                continue;
+            }
+            try{
+                account.reconcileMoney();
+            }catch(Throwable t) {
+                logger.error("Account "+account.getId()+" reconcile money failed", t);
+            }
+        }
+    }
+
     public static Map<String, TxnSessionFactory> discoverTxnSessionProviders(BeansContainer beansContainer ){
         Map<String, TxnSessionFactory> result = new TreeMap<>();
         result.put(TxnSession.PROVIDER_CTP, new CtpTxnSessionFactory());
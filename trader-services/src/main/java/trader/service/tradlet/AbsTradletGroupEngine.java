@@ -122,6 +122,10 @@ public abstract class AbsTradletGroupEngine implements TradletConstants, Lifecyc
         default:
             logger.error("Unsupported event type "+Integer.toHexString(eventType)+", data: "+data);
         }
+        //Tradlet在事件处理中可能通过TradletContext.addInstrument()增加合约
+        if ( group.hasUpdatedInstruments() ) {
+            processUpdatedInstruments();
+        }
     }
 
     protected void processTick(MarketData tick) {
@@ -191,19 +195,34 @@ public abstract class AbsTradletGroupEngine implements TradletConstants, Lifecyc
     private void processReloadGroup(TradletGroupTemplate template) {
         try{
             group.reload(template);
-            List<Exchangeable> updatedInstruments = group.getUpdatedInstruments();
-            if ( !updatedInstruments.isEmpty()) {
-                TechnicalAnalysisService taService = beansContainer.getBean(TechnicalAnalysisService.class);
-                taService.registerListener(updatedInstruments, new TechnicalAnalysisListener() {
-                    @Override
-                    public void onNewBar(Exchangeable e, LeveledBarSeries series) {
-                        queueEvent(TradletEvent.EVENT_TYPE_MD_BAR, series);
-                    }
-                });
-            }
+            //配置更新可能删除合约, 总是需要更新行情路由
+            processUpdatedInstruments();
         }catch(Throwable t) {
             logger.error("策略组 "+group.getId()+" 更新配置失败: "+t.toString(), t);
         }
     }
 
+    /**
+     * 策略组关注的合约有变化, 为新增合约关注KBar事件, 并更新行情路由
+     */
+    private void processUpdatedInstruments() {
+        List<Exchangeable> updatedInstruments = group.getUpdatedInstruments();
+        if ( !updatedInstruments.isEmpty()) {
+            TechnicalAnalysisService taService = beansContainer.getBean(TechnicalAnalysisService.class);
+            taService.registerListener(updatedInstruments, new TechnicalAnalysisListener() {
+                @Override
+                public void onNewBar(Exchangeable e, LeveledBarSeries series) {
+                    queueEvent(TradletEvent.EVENT_TYPE_MD_BAR, series);
+                }
+            });
+        }
+        onInstrumentsUpdated();
+    }
+
+    /**
+     * 策略组关注的合约有变化后回调, 在策略组线程中调用
+     */
+    protected void onInstrumentsUpdated() {
+    }
+
 }
@@ -1,5 +1,11 @@
 package trader.service.tradlet;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -11,6 +17,7 @@ import org.slf4j.LoggerFactory;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 
 import trader.common.beans.BeansContainer;
 import trader.common.exception.AppException;
@@ -43,6 +50,21 @@ import trader.service.trade.Transaction;
 public class PlaybookImpl implements Playbook, JsonEnabled {
     private static final Logger logger = LoggerFactory.getLogger(PlaybookImpl.class);
 
+    /**
+     * 二进制编码的版本
+     */
+    private static final byte ENCODING_VERSION = 2;
+
+    /**
+     * 属性值的类型标记
+     */
+    private static final byte ATTR_STRING = 1;
+    private static final byte ATTR_INT = 2;
+    private static final byte ATTR_LONG = 3;
+    private static final byte ATTR_DOUBLE = 4;
+    private static final byte ATTR_BOOLEAN = 5;
+    private static final byte ATTR_JSON = 6;
+
     private TradletGroupImpl group;
     private Exchangeable instrument;
     private PlaybookBuilder builder;
@@ -80,6 +102,19 @@ public class PlaybookImpl implements Playbook, JsonEnabled {
         }
     }
 
+    /**
+     * 从持久化数据恢复, 状态和属性由decode填充
+     */
+    private PlaybookImpl(TradletGroupImpl group, String id, PlaybookBuilder builder, PosDirection direction) {
+        this.group = group;
+        this.id = id;
+        this.builder = builder;
+        this.instrument = builder.getInstrument();
+        this.direction = direction;
+        volumes = new int[PBVol.values().length];
+        money = new long[PBMoney.values().length];
+    }
+
     @Override
     public String getId() {
         return id;
@@ -658,6 +693,235 @@ public class PlaybookImpl implements Playbook, JsonEnabled {
         return toJson().toString();
     }
 
+    /**
+     * 紧凑的二进制编码, 用于持久化. 保存创建参数, 当前状态和全部属性, 属性值不是基本类型时以JSON保存
+     */
+    public byte[] encode() {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+        try(DataOutputStream dos = new DataOutputStream(bos);){
+            dos.writeByte(ENCODING_VERSION);
+            dos.writeUTF(id);
+            dos.writeUTF(instrument.toString());
+            dos.writeByte(direction.ordinal());
+            writeString(dos, builder.getOpenDirection()!=null?builder.getOpenDirection().name():null);
+            dos.writeInt(builder.getVolume());
+            dos.writeLong(builder.getOpenPrice());
+            writeString(dos, builder.getPriceType()!=null?builder.getPriceType().name():null);
+            writeString(dos, builder.getActionId());
+            writeString(dos, builder.getTemplateId());
+            writeAttrs(dos, builder.getAttrs());
+            dos.writeByte(volumes.length);
+            for(int i=0;i<volumes.length;i++) {
+                dos.writeInt(volumes[i]);
+            }
+            dos.writeByte(money.length);
+            for(int i=0;i<money.length;i++) {
+                dos.writeLong(money[i]);
+            }
+            PlaybookStateTuple stateTuple = this.stateTuple;
+            dos.writeByte(stateTuple.getState().ordinal());
+            dos.writeLong(stateTuple.getTimestamp());
+            writeString(dos, stateTuple.getTradingDay()!=null?stateTuple.getTradingDay().toString():null);
+            writeString(dos, stateTuple.getOrder()!=null?stateTuple.getOrder().getRef():null);
+            writeString(dos, stateTuple.getOrderAction()!=null?stateTuple.getOrderAction().name():null);
+            writeString(dos, stateTuple.getActionId());
+            dos.writeShort(orders.size());
+            for(Order order:orders) {
+                dos.writeUTF(order.getRef());
+            }
+            writeString(dos, pendingOrder!=null?pendingOrder.getRef():null);
+            writeAttrs(dos, attrs);
+            dos.writeInt(attrVersion);
+        }catch(IOException e) {
+            throw new RuntimeException(e);
+        }
+        return bos.toByteArray();
+    }
+
+    /**
+     * 从二进制编码恢复, 报单按报单编号从账户中查找, 找不到的报单忽略.
+     *
+     * @return 编码版本不匹配返回null
+     */
+    public static PlaybookImpl decode(TradletGroupImpl group, byte[] data) throws IOException
+    {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        if ( dis.readByte()!=ENCODING_VERSION ) {
+            return null;
+        }
+        Account account = group.getAccount();
+        String id = dis.readUTF();
+        Exchangeable instrument = Exchangeable.fromString(dis.readUTF());
+        PosDirection direction = PosDirection.values()[dis.readByte()];
+        PlaybookBuilder builder = new PlaybookBuilder().setInstrument(instrument);
+        String openDirection = readString(dis);
+        if ( openDirection!=null ) {
+            builder.setOpenDirection(PosDirection.valueOf(openDirection));
+        }
+        builder.setVolume(dis.readInt());
+        builder.setOpenPrice(dis.readLong());
+        String priceType = readString(dis);
+        if ( priceType!=null ) {
+            builder.setPriceType(OrderPriceType.valueOf(priceType));
+        }
+        builder.setActionId(readString(dis));
+        builder.setTemplateId(readString(dis));
+        Map<String, Object> builderAttrs = new HashMap<>();
+        readAttrs(dis, builderAttrs);
+        for(Map.Entry<String, Object> entry:builderAttrs.entrySet()) {
+            builder.setAttr(entry.getKey(), entry.getValue());
+        }
+        PlaybookImpl playbook = new PlaybookImpl(group, id, builder, direction);
+        int volumeCount = dis.readByte();
+        for(int i=0;i<volumeCount;i++) {
+            int v = dis.readInt();
+            if ( i<playbook.volumes.length ) {
+                playbook.volumes[i] = v;
+            }
+        }
+        int moneyCount = dis.readByte();
+        for(int i=0;i<moneyCount;i++) {
+            long v = dis.readLong();
+            if ( i<playbook.money.length ) {
+                playbook.money[i] = v;
+            }
+        }
+        PlaybookState state = PlaybookState.values()[dis.readByte()];
+        long timestamp = dis.readLong();
+        String tradingDay = readString(dis);
+        Order stateOrder = findOrder(account, readString(dis));
+        String orderAction = readString(dis);
+        String actionId = readString(dis);
+        playbook.stateTuple = new PlaybookStateTupleImpl(state, timestamp, tradingDay!=null?LocalDate.parse(tradingDay):null, stateOrder, orderAction!=null?OrderAction.valueOf(orderAction):null, actionId);
+        playbook.stateTuples.add(playbook.stateTuple);
+        int orderCount = dis.readShort();
+        for(int i=0;i<orderCount;i++) {
+            Order order = findOrder(account, dis.readUTF());
+            if ( order!=null ) {
+                playbook.orders.add(order);
+            }
+        }
+        playbook.pendingOrder = findOrder(account, readString(dis));
+        readAttrs(dis, playbook.attrs);
+        playbook.attrVersion = dis.readInt();
+        return playbook;
+    }
+
+    private static void writeAttrs(DataOutputStream dos, Map<String, Object> attrs) throws IOException
+    {
+        int attrCount = 0;
+        for(Object val:attrs.values()) {
+            if ( val!=null ) {
+                attrCount++;
+            }
+        }
+        dos.writeShort(attrCount);
+        for(Map.Entry<String, Object> entry:attrs.entrySet()) {
+            Object val = entry.getValue();
+            if ( val==null ) {
+                continue;
+            }
+            dos.writeUTF(entry.getKey());
+            if ( val instanceof String ) {
+                dos.writeByte(ATTR_STRING);
+                writeLongString(dos, (String)val);
+            } else if ( val instanceof Integer || val instanceof Short || val instanceof Byte ) {
+                dos.writeByte(ATTR_INT);
+                dos.writeInt(((Number)val).intValue());
+            } else if ( val instanceof Long ) {
+                dos.writeByte(ATTR_LONG);
+                dos.writeLong((Long)val);
+            } else if ( val instanceof Double || val instanceof Float ) {
+                dos.writeByte(ATTR_DOUBLE);
+                dos.writeDouble(((Number)val).doubleValue());
+            } else if ( val instanceof Boolean ) {
+                dos.writeByte(ATTR_BOOLEAN);
+                dos.writeBoolean((Boolean)val);
+            } else {
+                dos.writeByte(ATTR_JSON);
+                writeLongString(dos, JsonUtil.object2json(val).toString());
+            }
+        }
+    }
+
+    /**
+     * JSON类型的属性恢复为Map/List/基本类型
+     */
+    private static void readAttrs(DataInputStream dis, Map<String, Object> attrs) throws IOException
+    {
+        int attrCount = dis.readShort();
+        for(int i=0;i<attrCount;i++) {
+            String key = dis.readUTF();
+            Object val = null;
+            byte type = dis.readByte();
+            switch(type) {
+            case ATTR_STRING:
+                val = readLongString(dis);
+                break;
+            case ATTR_INT:
+                val = dis.readInt();
+                break;
+            case ATTR_LONG:
+                val = dis.readLong();
+                break;
+            case ATTR_DOUBLE:
+                val = dis.readDouble();
+                break;
+            case ATTR_BOOLEAN:
+                val = dis.readBoolean();
+                break;
+            case ATTR_JSON:
+                val = JsonUtil.json2value((new JsonParser()).parse(readLongString(dis)));
+                break;
+            default:
+                throw new IOException("Unknown playbook attr type "+type+" of "+key);
+            }
+            if ( val!=null ) {
+                attrs.put(key, val);
+            }
+        }
+    }
+
+    private static Order findOrder(Account account, String orderRef) {
+        if ( account==null || StringUtil.isEmpty(orderRef) ) {
+            return null;
+        }
+        return account.getOrder(orderRef);
+    }
+
+    private static void writeString(DataOutputStream dos, String str) throws IOException
+    {
+        dos.writeBoolean(str!=null);
+        if ( str!=null ) {
+            dos.writeUTF(str);
+        }
+    }
+
+    private static String readString(DataInputStream dis) throws IOException
+    {
+        if ( dis.readBoolean() ) {
+            return dis.readUTF();
+        }
+        return null;
+    }
+
+    /**
+     * 属性值可能超过writeUTF的64K长度限制
+     */
+    private static void writeLongString(DataOutputStream dos, String str) throws IOException
+    {
+        byte[] bytes = str.getBytes(StringUtil.UTF8);
+        dos.writeInt(bytes.length);
+        dos.write(bytes);
+    }
+
+    private static String readLongString(DataInputStream dis) throws IOException
+    {
+        byte[] bytes = new byte[dis.readInt()];
+        dis.readFully(bytes);
+        return new String(bytes, StringUtil.UTF8);
+    }
+
     @Override
     public boolean equals(Object o) {
         if ( this==o ) {
@@ -2,22 +2,26 @@ package trader.service.tradlet;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.time.LocalDate;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 
 import trader.common.beans.BeansContainer;
 import trader.common.exception.AppException;
+import trader.common.exchangeable.Exchangeable;
 import trader.common.util.DateUtil;
 import trader.common.util.JsonEnabled;
 import trader.common.util.JsonUtil;
@@ -26,6 +30,7 @@ import trader.common.util.StringUtil;
 import trader.common.util.TimestampSeqGen;
 import trader.service.ServiceErrorConstants;
 import trader.service.data.KVStore;
+import trader.service.data.KVStoreIterator;
 import trader.service.data.KVStoreService;
 import trader.service.md.MarketData;
 import trader.service.md.MarketDataService;
@@ -38,10 +43,20 @@ import trader.service.trade.Transaction;
 
 /**
  * 管理某个交易分组的报单和成交计划
+ * <BR>每个Playbook和报单使用独立的KEY保存, 变化时只标记, 按时间间隔合并写入
  */
 public class PlaybookKeeperImpl implements PlaybookKeeper, TradeConstants, TradletConstants, ServiceErrorConstants, JsonEnabled {
     private static final Logger logger = LoggerFactory.getLogger(PlaybookKeeperImpl.class);
 
+    /**
+     * 合并写入的时间间隔
+     */
+    private static final long FLUSH_INTERVAL = 1000;
+    /**
+     * 报单记录的二进制编码版本
+     */
+    private static final byte ORDER_ENCODING_VERSION = 1;
+
     private String id;
     private TradletGroupImpl group;
     private Map<String, Map<String, String>> templates = new HashMap<>();
@@ -51,8 +66,20 @@ public class PlaybookKeeperImpl implements PlaybookKeeper, TradeConstants, Tradl
     private LinkedList<Order> pendingOrders = new LinkedList<>();
     private LinkedHashMap<String, PlaybookImpl> allPlaybooks = new LinkedHashMap<>();
     private LinkedList<PlaybookImpl> activePlaybooks = new LinkedList<>();
+    /**
+     * 按品种索引的活动Playbook
+     */
+    private Map<Exchangeable, List<PlaybookImpl>> instrumentActivePlaybooks = new HashMap<>();
     private TimestampSeqGen pbIdGen;
     private KVStore kvStore;
+    private String pbKeyPrefix;
+    private String orderKeyPrefix;
+    /**
+     * 需要保存的Playbook和报单
+     */
+    private Set<PlaybookImpl> dirtyPlaybooks = new LinkedHashSet<>();
+    private Set<Order> dirtyOrders = new LinkedHashSet<>();
+    private long lastFlushTime;
 
     public PlaybookKeeperImpl(TradletGroupImpl group) {
         this.group = group;
@@ -62,8 +89,8 @@ public class PlaybookKeeperImpl implements PlaybookKeeper, TradeConstants, Tradl
         mdService = beansContainer.getBean(MarketDataService.class);
         mtService = beansContainer.getBean(MarketTimeService.class);
         pbIdGen = beansContainer.getBean(TradeService.class).getOrderIdGen();
-
-        restorePlaybooks();
+        pbKeyPrefix = id+".pb.";
+        orderKeyPrefix = id+".odr.";
     }
 
     public void update(String configText) {
@@ -138,6 +165,15 @@ public class PlaybookKeeperImpl implements PlaybookKeeper, TradeConstants, Tradl
         return result;
     }
 
+    @Override
+    public List<Playbook> getInstrumentActivePlaybooks(Exchangeable instrument) {
+        List<PlaybookImpl> result = instrumentActivePlaybooks.get(instrument);
+        if ( result==null ) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(result);
+    }
+
     @Override
     public Playbook getPlaybook(String playbookId) {
         return allPlaybooks.get(playbookId);
@@ -170,12 +206,12 @@ public class PlaybookKeeperImpl implements PlaybookKeeper, TradeConstants, Tradl
             playbook.setAttr(PBATTR_TRADLET_ID.name(), group.getTradletId(tradlet));
         }
         allPlaybooks.put(playbookId, playbook);
-        activePlaybooks.add(playbook);
+        addActivePlaybook(playbook);
         if ( logger.isInfoEnabled()) {
             logger.info("Tradlet group "+group.getId()+" playbook "+playbookId+" is created with attrs: "+builder.getAttrs());
         }
         group.onPlaybookStateChanged(playbook, null);
-        kvStore.aput(id, toJson().toString());
+        dirtyPlaybooks.add(playbook);
         return playbook;
     }
 
@@ -205,8 +241,8 @@ public class PlaybookKeeperImpl implements PlaybookKeeper, TradeConstants, Tradl
                     logger.info("Tradlet group "+group.getId()+" close playbook "+playbook.getId()+" action id "+closeReq.getActionId()+" at "+DateUtil.date2str(mtService.getMarketTime()));
                 }
             }
+            dirtyPlaybooks.add(playbook);
         }
-        kvStore.aput(id, toJson().toString());
         return result;
     }
 
@@ -219,8 +255,8 @@ public class PlaybookKeeperImpl implements PlaybookKeeper, TradeConstants, Tradl
         }
         if ( playbook!=null ) {
             playbook.updateOnTxn(txn);
+            dirtyPlaybooks.add(playbook);
         }
-        kvStore.aput(id, toJson().toString());
     }
 
     /**
@@ -233,13 +269,14 @@ public class PlaybookKeeperImpl implements PlaybookKeeper, TradeConstants, Tradl
             return;
         }
         if ( order.getStateTuple().getState().isDone() ) {
-            pendingOrders.remove(order);
+            if ( pendingOrders.remove(order) ) {
+                dirtyOrders.add(order);
+            }
         }
         PlaybookStateTuple oldStateTuple = playbook.updateStateOnOrder(order);
         if ( oldStateTuple!=null ) {
             playbookChangeStateTuple(playbook, oldStateTuple,"Order "+order.getRef()+" "+order.getInstrument()+" D:"+order.getDirection()+" P:"+PriceUtil.long2str(order.getLimitPrice())+" V:"+order.getVolume(OdrVolume.ReqVolume)+" F:"+order.getOffsetFlags()+" at "+DateUtil.date2str(mtService.getMarketTime()));
         }
-        kvStore.aput(id, toJson().toString());
     }
 
     public void updateOnTick(MarketData tick) {
@@ -249,6 +286,7 @@ public class PlaybookKeeperImpl implements PlaybookKeeper, TradeConstants, Tradl
                 playbookChangeStateTuple(playbook, oldStateTuple, "noop");
             }
         }
+        flushIfNeeded();
     }
 
     /**
@@ -261,6 +299,99 @@ public class PlaybookKeeperImpl implements PlaybookKeeper, TradeConstants, Tradl
                 playbookChangeStateTuple(playbook, oldStateTuple, "noop");
             }
         }
+        flushIfNeeded();
+    }
+
+    /**
+     * 异步保存所有变化的Playbook和报单
+     */
+    public void flush() {
+        flush(false);
+    }
+
+    /**
+     * 同步保存所有变化的Playbook和报单, 需要在事件处理线程停止后调用
+     */
+    public void destroy() {
+        flush(true);
+    }
+
+    private void flush(boolean sync) {
+        for(PlaybookImpl playbook:dirtyPlaybooks) {
+            if ( sync ) {
+                kvStore.put(pbKeyPrefix+playbook.getId(), playbook.encode());
+            } else {
+                kvStore.aput(pbKeyPrefix+playbook.getId(), playbook.encode());
+            }
+        }
+        dirtyPlaybooks.clear();
+        for(Order order:dirtyOrders) {
+            if ( sync ) {
+                kvStore.put(orderKeyPrefix+order.getRef(), encodeOrder(order));
+            } else {
+                kvStore.aput(orderKeyPrefix+order.getRef(), encodeOrder(order));
+            }
+        }
+        dirtyOrders.clear();
+    }
+
+    /**
+     * 从数据库加载Playbook和报单, 需要在TradletGroup的账户确定之后调用.
+     * <BR>前一交易日已结束的Playbook和账户中不存在的报单被清除
+     */
+    public void restore() {
+        Account account = group.getAccount();
+        LocalDate tradingDay = mtService.getTradingDay();
+        List<String> staleKeys = new ArrayList<>();
+        KVStoreIterator it = kvStore.iterator(id+".");
+        while(it.hasNext()) {
+            String key = it.next();
+            byte[] data = it.getValue();
+            try{
+                if ( key.startsWith(pbKeyPrefix) ) {
+                    PlaybookImpl playbook = PlaybookImpl.decode(group, data);
+                    if ( playbook==null ) {
+                        staleKeys.add(key);
+                        continue;
+                    }
+                    PlaybookStateTuple stateTuple = playbook.getStateTuple();
+                    if ( stateTuple.getState().isDone() && !tradingDay.equals(stateTuple.getTradingDay()) ) {
+                        staleKeys.add(key);
+                        continue;
+                    }
+                    allPlaybooks.put(playbook.getId(), playbook);
+                    if ( !stateTuple.getState().isDone() ) {
+                        addActivePlaybook(playbook);
+                    }
+                } else if ( key.startsWith(orderKeyPrefix) ) {
+                    Order order = null;
+                    if ( account!=null ) {
+                        order = account.getOrder(key.substring(orderKeyPrefix.length()));
+                    }
+                    if ( order==null || data==null || data.length<2 || data[0]!=ORDER_ENCODING_VERSION ) {
+                        staleKeys.add(key);
+                        continue;
+                    }
+                    allOrders.add(order);
+                    boolean pending = data[1]!=0;
+                    if ( pending && !order.getStateTuple().getState().isDone() ) {
+                        pendingOrders.add(order);
+                    }
+                }
+            }catch(Throwable t) {
+                logger.error("Tradlet group "+group.getId()+" restore "+key+" failed", t);
+            }
+        }
+        for(String key:staleKeys) {
+            kvStore.delete(key);
+        }
+        //旧版本整体保存的数据
+        if ( kvStore.get(id)!=null ) {
+            kvStore.delete(id);
+        }
+        if ( !allPlaybooks.isEmpty() ) {
+            logger.info("Tradlet group "+group.getId()+" restore "+allPlaybooks.size()+" playbooks, "+activePlaybooks.size()+" active, "+allOrders.size()+" orders");
+        }
     }
 
     @Override
@@ -284,9 +415,17 @@ public class PlaybookKeeperImpl implements PlaybookKeeper, TradeConstants, Tradl
                 Order newOrder = playbookOrders.get(lastOrderCount);
                 addOrder(newOrder);
             }
+            dirtyPlaybooks.add(playbook);
             //检查Playbook状态
             if ( newState.isDone() ) {
                 activePlaybooks.remove(playbook);
+                List<PlaybookImpl> playbooks = instrumentActivePlaybooks.get(playbook.getInstrument());
+                if ( playbooks!=null ) {
+                    playbooks.remove(playbook);
+                    if ( playbooks.isEmpty() ) {
+                        instrumentActivePlaybooks.remove(playbook.getInstrument());
+                    }
+                }
             }
             group.onPlaybookStateChanged(playbook, oldStateTuple);
         }
@@ -295,25 +434,38 @@ public class PlaybookKeeperImpl implements PlaybookKeeper, TradeConstants, Tradl
     private void addOrder(Order order) {
         allOrders.add(order);
         pendingOrders.add(order);
+        dirtyOrders.add(order);
+    }
+
+    private void addActivePlaybook(PlaybookImpl playbook) {
+        activePlaybooks.add(playbook);
+        List<PlaybookImpl> playbooks = instrumentActivePlaybooks.get(playbook.getInstrument());
+        if ( playbooks==null ) {
+            playbooks = new ArrayList<>();
+            instrumentActivePlaybooks.put(playbook.getInstrument(), playbooks);
+        }
+        playbooks.add(playbook);
     }
 
     /**
-     * 从数据库加载隔夜Playbook
+     * 距离上次保存超过时间间隔, 合并保存
      */
-    private void restorePlaybooks() {
-        JsonObject json = null;
-        String jsonStr = null;
-        try{
-            jsonStr = kvStore.getAsString(id);
-            if ( !StringUtil.isEmpty(jsonStr)) {
-                json = (JsonObject)(new JsonParser()).parse(jsonStr);
-            }
-        }catch(Throwable t) {
-            logger.error("Tradlet group "+group.getId()+" restore playbooks failed from "+jsonStr, t);
+    private void flushIfNeeded() {
+        if ( dirtyPlaybooks.isEmpty() && dirtyOrders.isEmpty() ) {
+            return;
         }
-        if ( json!=null ) {
-            Account account = group.getAccount();
+        long curr = mtService.currentTimeMillis();
+        if ( (curr-lastFlushTime)>=FLUSH_INTERVAL ) {
+            lastFlushTime = curr;
+            flush();
         }
     }
 
+    /**
+     * 报单只保存是否待成交, 报单本身从账户恢复
+     */
+    private byte[] encodeOrder(Order order) {
+        return new byte[] {ORDER_ENCODING_VERSION, (byte)(pendingOrders.contains(order)?1:0)};
+    }
+
 }
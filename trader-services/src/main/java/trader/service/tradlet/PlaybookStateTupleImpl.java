@@ -33,6 +33,18 @@ public class PlaybookStateTupleImpl implements PlaybookStateTuple, JsonEnabled {
         tradingDay = mtService.getTradingDay();
     }
 
+    /**
+     * 从持久化数据恢复
+     */
+    PlaybookStateTupleImpl(PlaybookState state, long timestamp, LocalDate tradingDay, Order order, OrderAction orderAction, String tradletActionId){
+        this.state = state;
+        this.timestamp = timestamp;
+        this.tradingDay = tradingDay;
+        this.order = order;
+        this.orderAction = orderAction;
+        this.actionId = tradletActionId;
+    }
+
     @Override
     public PlaybookState getState() {
         return state;
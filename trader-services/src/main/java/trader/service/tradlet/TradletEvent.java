@@ -51,6 +51,11 @@ public class TradletEvent {
 
     public Object data;
 
+    /**
+     * 排队时间, 用于统计处理延时
+     */
+    public long publishNanos;
+
     public TradletEvent() {
     }
 
@@ -62,5 +67,6 @@ public class TradletEvent {
     public void clear() {
         eventType=0;
         data = null;
+        publishNanos = 0;
     }
 }
@@ -1,25 +1,35 @@
 package trader.service.tradlet;
 
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.lmax.disruptor.EventHandler;
 import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.TimeoutException;
 import com.lmax.disruptor.dsl.Disruptor;
 import com.lmax.disruptor.dsl.ProducerType;
 
 import trader.common.beans.BeansContainer;
 import trader.common.beans.Lifecycle;
 import trader.common.config.ConfigUtil;
+import trader.common.exchangeable.Exchangeable;
 import trader.common.util.ConversionUtil;
 import trader.common.util.StringUtil;
+import trader.service.md.MarketData;
+import trader.service.stats.StatsCollector;
+import trader.service.stats.StatsItem;
+import trader.service.stats.StatsItemType;
 import trader.service.trade.AccountListener;
 import trader.service.util.ConcurrentUtil;
 
 /**
  * 交易策略分组的单线程引擎, 每个对象必须独占一个线程
+ * <BR>队列满时行情切片按TickOverflowPolicy处理, 避免某个策略组处理过慢阻塞全部行情的派发
  */
 public class TradletGroupEngine extends AbsTradletGroupEngine implements Lifecycle, EventHandler<TradletEvent>, AccountListener {
     private static final Logger logger = LoggerFactory.getLogger(TradletGroupEngine.class);
@@ -29,6 +39,18 @@ public class TradletGroupEngine extends AbsTradletGroupEngine implements Lifecyc
     private Disruptor<TradletEvent> disruptor;
     private RingBuffer<TradletEvent> ringBuffer;
     private volatile long lastEventTime;
+    private TickOverflowPolicy overflowPolicy = TickOverflowPolicy.Block;
+    /**
+     * DropOldest: 队列积压超过这个数量时跳过排队的行情
+     */
+    private int dropThreshold;
+    /**
+     * Conflate: 每个合约最新的待处理行情, 每个合约最多只有一个行情事件在排队
+     */
+    private ConcurrentHashMap<Exchangeable, MarketData> conflatedTicks = new ConcurrentHashMap<>();
+    private AtomicLong conflatedCount = new AtomicLong();
+    private AtomicLong droppedCount = new AtomicLong();
+    private volatile long maxLagNanos;
 
     public TradletGroupEngine(TradletGroupImpl group) {
         this.group = group;
@@ -38,6 +60,10 @@ public class TradletGroupEngine extends AbsTradletGroupEngine implements Lifecyc
         return engineThread;
     }
 
+    public TickOverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
     @Override
     public void init(BeansContainer beansContainer) {
         super.init(beansContainer);
@@ -53,10 +79,32 @@ public class TradletGroupEngine extends AbsTradletGroupEngine implements Lifecyc
         if ( StringUtil.isEmpty(disruptorWaitStrategy)) {
             disruptorWaitStrategy = ConfigUtil.getString(TradletServiceImpl.ITEM_GLOBAL_DISRUPTOR_WAIT_STRATEGY);
         }
+        String overflowPolicyStr = ConfigUtil.getString(TradletServiceImpl.ITEM_TRADLETGROUP+"#"+group.getId()+TradletServiceImpl.ITEM_SUFFIX_DISRUPTOR_OVERFLOW_POLICY);
+        if ( StringUtil.isEmpty(overflowPolicyStr)) {
+            overflowPolicyStr = ConfigUtil.getString(TradletServiceImpl.ITEM_GLOBAL_DISRUPTOR_OVERFLOW_POLICY);
+        }
         int ringBufferSize = 4096;
         if ( !StringUtil.isEmpty(ringBufferSizeStr)) {
             ringBufferSize = ConversionUtil.toInt(ringBufferSizeStr);
         }
+        TickOverflowPolicy policy = TickOverflowPolicy.Block;
+        if ( !StringUtil.isEmpty(overflowPolicyStr) ) {
+            policy = ConversionUtil.toEnum(TickOverflowPolicy.class, overflowPolicyStr);
+            if ( policy==null ) {
+                logger.error("Tradlet group "+group.getId()+" unknown overflow policy: "+overflowPolicyStr);
+                policy = TickOverflowPolicy.Block;
+            }
+        }
+        initEventQueue(executorService, ringBufferSize, disruptorWaitStrategy, policy);
+        registerStats(beansContainer);
+    }
+
+    /**
+     * 创建并启动事件队列
+     */
+    void initEventQueue(ExecutorService executorService, int ringBufferSize, String disruptorWaitStrategy, TickOverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+        dropThreshold = ringBufferSize/2;
         disruptor = new Disruptor<TradletEvent>( new TradletEventFactory()
             , ringBufferSize
             , executorService
@@ -65,26 +113,48 @@ public class TradletGroupEngine extends AbsTradletGroupEngine implements Lifecyc
             );
         disruptor.handleEventsWith(this);
         ringBuffer = disruptor.start();
-
     }
 
     @Override
     public void destroy() {
-        group.destroy();
         group.getAccount().removeAccountListener(this);
+        //先处理完排队的事件并停止事件线程, 再保存数据
         if ( ringBuffer!=null ) {
-            disruptor.halt();
-            disruptor.shutdown();
+            try{
+                disruptor.shutdown(5, TimeUnit.SECONDS);
+            }catch(TimeoutException e) {
+                logger.warn("Tradlet group "+group.getId()+" event queue is not drained in time");
+                disruptor.halt();
+            }
             ringBuffer = null;
         }
+        group.destroy();
     }
 
     @Override
     public void queueEvent(int eventType, Object data) {
+        if ( eventType==TradletEvent.EVENT_TYPE_MD_TICK ) {
+            switch(overflowPolicy) {
+            case Conflate:
+                //已经有同一合约的行情在排队, 处理时直接使用最新行情
+                MarketData tick = (MarketData)data;
+                if ( conflatedTicks.put(tick.instrument, tick)!=null ) {
+                    conflatedCount.incrementAndGet();
+                    return;
+                }
+                break;
+            case DropOldest:
+                //队列满时同样阻塞排队: 消费端会跳过积压的旧行情, 很快腾出空间, 最新的行情总是能被处理
+                break;
+            default:
+                break;
+            }
+        }
         long seq = ringBuffer.next();
         try {
             TradletEvent event = ringBuffer.get(seq);
             event.setEvent(eventType, data);
+            event.publishNanos = System.nanoTime();
         }finally {
             ringBuffer.publish(seq);
         }
@@ -92,7 +162,94 @@ public class TradletGroupEngine extends AbsTradletGroupEngine implements Lifecyc
 
     @Override
     public void onEvent(TradletEvent event, long sequence, boolean endOfBatch) throws Exception {
-        processEvent(event.eventType, event.data);
+        int eventType = event.eventType;
+        Object data = event.data;
+        if ( eventType==TradletEvent.EVENT_TYPE_MD_TICK ) {
+            long lag = System.nanoTime()-event.publishNanos;
+            if ( lag>maxLagNanos ) {
+                maxLagNanos = lag;
+            }
+            if ( overflowPolicy==TickOverflowPolicy.Conflate ) {
+                MarketData tick = conflatedTicks.remove(((MarketData)data).instrument);
+                if ( tick!=null ) {
+                    data = tick;
+                }
+            } else if ( overflowPolicy==TickOverflowPolicy.DropOldest && (ringBuffer.getCursor()-sequence)>dropThreshold ) {
+                droppedCount.incrementAndGet();
+                event.clear();
+                return;
+            }
+        }
+        event.clear();
+        processEvent(eventType, data);
+    }
+
+    /**
+     * 更新TradletService的行情路由表
+     */
+    @Override
+    protected void onInstrumentsUpdated() {
+        if ( tradletService instanceof TradletServiceImpl ) {
+            ((TradletServiceImpl)tradletService).rebuildGroupRoutes();
+        }
+    }
+
+    /**
+     * 队列中待处理的事件数量
+     */
+    public long getBacklog() {
+        RingBuffer<TradletEvent> ringBuffer = this.ringBuffer;
+        if ( ringBuffer==null ) {
+            return 0;
+        }
+        return ringBuffer.getBufferSize()-ringBuffer.remainingCapacity();
+    }
+
+    /**
+     * 合并的行情数量
+     */
+    public long getConflatedCount() {
+        return conflatedCount.get();
+    }
+
+    /**
+     * 丢弃的行情数量
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * 返回上次统计以来行情的最大排队延时(微秒), 并重新开始统计
+     */
+    public double getAndResetMaxLag() {
+        long max = maxLagNanos;
+        maxLagNanos = 0;
+        return max/1000.0;
+    }
+
+    private void registerStats(BeansContainer beansContainer) {
+        StatsCollector statsCollector = beansContainer.getBean(StatsCollector.class);
+        if ( statsCollector==null ) {
+            return;
+        }
+        String component = "group."+group.getId();
+        StatsItem backlogItem = new StatsItem(TradletService.class.getSimpleName(), component, "backlog");
+        backlogItem.setType(StatsItemType.Instant);
+        statsCollector.registerStatsItem(backlogItem, (StatsItem itemInfo) -> {
+            return getBacklog();
+        });
+        statsCollector.registerStatsItem(new StatsItem(TradletService.class.getSimpleName(), component, "conflatedTicks"), (StatsItem itemInfo) -> {
+            return getConflatedCount();
+        });
+        statsCollector.registerStatsItem(new StatsItem(TradletService.class.getSimpleName(), component, "droppedTicks"), (StatsItem itemInfo) -> {
+            return getDroppedCount();
+        });
+        StatsItem maxLagItem = new StatsItem(TradletService.class.getSimpleName(), component, "maxLagMicros");
+        maxLagItem.setType(StatsItemType.Instant);
+        statsCollector.registerStatsItem(maxLagItem, (StatsItem itemInfo) -> {
+            return getAndResetMaxLag();
+        });
     }
 
 }
@@ -48,6 +48,10 @@ public class TradletGroupImpl implements TradletGroup, ServiceErrorCodes {
     private TradletGroupState state = TradletGroupState.Suspended;
     private List<Exchangeable> instruments;
     private List<Exchangeable> instruments2 = new ArrayList<>();
+    /**
+     * 合约列表的不可修改快照, 合约变化时在策略组线程中整体替换, 供行情路由在其它线程中读取
+     */
+    private volatile List<Exchangeable> instrumentsSnapshot = Collections.emptyList();
     private Account account;
     private KVStore kvStore;
     private List<TradletHolder> tradletHolders = new ArrayList<>();
@@ -81,16 +85,39 @@ public class TradletGroupImpl implements TradletGroup, ServiceErrorCodes {
         return instruments;
     }
 
+    /**
+     * 返回合约列表的不可修改快照, 可以在策略组线程之外安全读取
+     */
+    public List<Exchangeable> getInstrumentsSnapshot() {
+        return instrumentsSnapshot;
+    }
+
     public boolean addInstrument(Exchangeable e) {
         boolean result = false;
         if ( !instruments.contains(e)) {
             instruments.add(e);
             instruments2.add(e);
+            updateInstrumentsSnapshot();
             result = true;
         }
         return result;
     }
 
+    private void updateInstrumentsSnapshot() {
+        if ( instruments==null ) {
+            instrumentsSnapshot = Collections.emptyList();
+        } else {
+            instrumentsSnapshot = Collections.unmodifiableList(new ArrayList<>(instruments));
+        }
+    }
+
+    /**
+     * 是否有新添加的合约品种
+     */
+    public boolean hasUpdatedInstruments() {
+        return !instruments2.isEmpty();
+    }
+
     /**
      * 返回添加的合约品种
      */
@@ -199,11 +226,12 @@ public class TradletGroupImpl implements TradletGroup, ServiceErrorCodes {
         this.config = groupTemplate.config;
         this.configState = groupTemplate.state;
         this.instruments = groupTemplate.instruments;
+        updateInstrumentsSnapshot();
         this.account = groupTemplate.account;
         this.playbookKeeper.update(groupTemplate.playbookTemplate);
         this.tradletHolders = groupTemplate.tradletHolders;
         this.enabledTradletHolders = new ArrayList<>();
-        //TODO playbook keeper load from data store
+        playbookKeeper.restore();
         updateTime = System.currentTimeMillis();
         changeState();
     }
@@ -212,8 +240,7 @@ public class TradletGroupImpl implements TradletGroup, ServiceErrorCodes {
      * 保存数据
      */
     public void destroy() {
-        //TODO playbook keeper save data to store
-        //playbookKeeper.save();
+        playbookKeeper.destroy();
     }
 
     public void initTradlets()
@@ -237,7 +264,13 @@ public class TradletGroupImpl implements TradletGroup, ServiceErrorCodes {
         if ( configChanged ) {
             this.config = template.config;
             this.configState = template.state;
+            for(Exchangeable e:template.instruments) {
+                if ( !instruments.contains(e) ) {
+                    instruments2.add(e);
+                }
+            }
             this.instruments = template.instruments;
+            updateInstrumentsSnapshot();
             this.account = template.account;
             this.playbookKeeper.update(template.playbookTemplate);
         }
@@ -361,7 +394,6 @@ public class TradletGroupImpl implements TradletGroup, ServiceErrorCodes {
                 }
             }
         }
-        kvStore.aput(playbook.getId(), JsonUtil.object2json(playbook).toString());
     }
 
 }
@@ -0,0 +1,78 @@
+package trader.service.tradlet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import trader.common.exchangeable.Exchangeable;
+
+/**
+ * 合约到策略组引擎的行情路由表, 派发行情时只需要一次查找.
+ * <BR>写时复制: 策略组或策略组关注的合约变化时整体重建, 行情线程无锁读取
+ */
+public class TradletGroupRouter<T> {
+
+    private final IntFunction<T[]> arrayCreator;
+    private final T[] emptyEngines;
+    private volatile Map<Exchangeable, T[]> routes = Collections.emptyMap();
+
+    public TradletGroupRouter(IntFunction<T[]> arrayCreator) {
+        this.arrayCreator = arrayCreator;
+        this.emptyEngines = arrayCreator.apply(0);
+    }
+
+    /**
+     * 返回关注该合约的策略组引擎, 不存在返回空数组.
+     * <BR>返回的数组不允许修改
+     */
+    public T[] route(Exchangeable instrument) {
+        T[] result = routes.get(instrument);
+        if ( result==null ) {
+            result = emptyEngines;
+        }
+        return result;
+    }
+
+    /**
+     * 按策略组引擎当前关注的合约重建路由表, 每个合约的引擎顺序与engines一致
+     */
+    public synchronized void rebuild(List<T> engines, Function<T, Collection<Exchangeable>> instrumentsGetter) {
+        Map<Exchangeable, List<T>> enginesByInstrument = new HashMap<>();
+        for(int i=0;i<engines.size();i++) {
+            T engine = engines.get(i);
+            Collection<Exchangeable> instruments = instrumentsGetter.apply(engine);
+            if ( instruments==null ) {
+                continue;
+            }
+            for(Exchangeable instrument:instruments.toArray(new Exchangeable[instruments.size()])) {
+                List<T> instrumentEngines = enginesByInstrument.get(instrument);
+                if ( instrumentEngines==null ) {
+                    instrumentEngines = new ArrayList<>();
+                    enginesByInstrument.put(instrument, instrumentEngines);
+                }
+                if ( !instrumentEngines.contains(engine) ) {
+                    instrumentEngines.add(engine);
+                }
+            }
+        }
+        Map<Exchangeable, T[]> routes = new HashMap<>();
+        for(Map.Entry<Exchangeable, List<T>> entry:enginesByInstrument.entrySet()) {
+            List<T> instrumentEngines = entry.getValue();
+            routes.put(entry.getKey(), instrumentEngines.toArray(arrayCreator.apply(instrumentEngines.size())));
+        }
+        this.routes = routes;
+    }
+
+    /**
+     * 路由表中的合约数量
+     */
+    public int size() {
+        return routes.size();
+    }
+
+}
@@ -105,7 +105,7 @@ public class MACD135Tradlet implements Tradlet {
 
     @Override
     public void onTick(MarketData marketData) {
-        int hhmmss = DateUtil.time2int(marketData.updateTime.toLocalTime());
+        int hhmmss = DateUtil.time2int(marketData.getUpdateTime().toLocalTime());
         //09:00:00-09:00:00不开仓
         if ( hhmmss>=90000 && hhmmss<= 91000 ) {
             return;
@@ -1,5 +1,10 @@
 package trader.service.tradlet.impl.stop;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,6 +50,10 @@ public class StopTradlet implements Tradlet, TradletConstants {
     private static class StopTradletRuntime{
         int version;
         AbsStopPolicy[] policies;
+        /**
+         * 预先整理的有效止损策略, 检查时不需要跳过空位
+         */
+        AbsStopPolicy[] activePolicies;
     }
 
     private BeansContainer beansContainer;
@@ -52,6 +61,10 @@ public class StopTradlet implements Tradlet, TradletConstants {
     private MarketTimeService mtService;
     private TradletGroup group;
     private PlaybookKeeper playbookKeeper;
+    /**
+     * Playbook ID -> 止损运行时数据, Playbook属性版本变化时重建
+     */
+    private Map<String, StopTradletRuntime> runtimes = new HashMap<>();
 
     @Override
     public void init(TradletContext context) throws Exception
@@ -84,6 +97,8 @@ public class StopTradlet implements Tradlet, TradletConstants {
         if ( oldStateTuple==null ) {
             //从Playbook 属性构建运行时数据.
             buildRuntime(playbook, null);
+        } else if ( playbook.getStateTuple().getState().isDone() ) {
+            runtimes.remove(playbook.getId());
         }
     }
 
@@ -105,10 +120,10 @@ public class StopTradlet implements Tradlet, TradletConstants {
         if ( tick==null ) {
             return;
         }
-        for(Playbook playbook:playbookKeeper.getActivePlaybooks(null)) {
-            if ( !playbook.getInstrument().equals(tick.instrument)) {
-                continue;
-            }
+        //关闭失败的Playbook会立刻从活跃列表删除, 需要遍历副本
+        Playbook[] playbooks = playbookKeeper.getInstrumentActivePlaybooks(tick.instrument).toArray(new Playbook[0]);
+        for(int i=0;i<playbooks.length;i++) {
+            Playbook playbook = playbooks[i];
             String closeReason = needStop(playbook, tick);
             if ( closeReason!=null ) {
                 logger.info("Playbook "+playbook.getId()+" stop "+closeReason);
@@ -125,29 +140,21 @@ public class StopTradlet implements Tradlet, TradletConstants {
     private String needStop(Playbook playbook, MarketData tick) {
         String result = null;
         StopTradletRuntime runtime = rebuildRuntime(playbook);
-        AbsStopPolicy[] policies = null;
-        if ( runtime!=null ) {
-            policies = runtime.policies;
-        }
-        if ( policies!=null ) {
-            for(int i=0;i<policies.length;i++) {
-                if ( policies[i]==null ) {
-                    continue;
-                }
-                result = policies[i].needStop(playbook, tick);
-                if ( result!=null) {
-                    break;
-                }
+        AbsStopPolicy[] policies = runtime.activePolicies;
+        for(int i=0;i<policies.length;i++) {
+            result = policies[i].needStop(playbook, tick);
+            if ( result!=null) {
+                break;
             }
         }
         return result;
     }
 
     /**
-     * 如果版本发生变化, 重新构建StopTradlet Runtime
+     * 如果Playbook属性版本发生变化, 重新构建StopTradlet Runtime
      */
     private StopTradletRuntime rebuildRuntime(Playbook playbook) {
-        StopTradletRuntime runtime = (StopTradletRuntime)playbook.getAttr(PBATTR_STOP_RUNTIME);
+        StopTradletRuntime runtime = runtimes.get(playbook.getId());
         if ( runtime==null ) {
             runtime = buildRuntime(playbook, runtime);
         } else if ( runtime.version!=playbook.getAttrVersion() ) {
@@ -206,8 +213,15 @@ public class StopTradlet implements Tradlet, TradletConstants {
             runtimeBuilt = true;
         }
 
-        playbook.setAttr(PBATTR_STOP_RUNTIME, runtime);
+        List<AbsStopPolicy> activePolicies = new ArrayList<>(policies.length);
+        for(int i=0;i<policies.length;i++) {
+            if ( policies[i]!=null ) {
+                activePolicies.add(policies[i]);
+            }
+        }
+        runtime.activePolicies = activePolicies.toArray(new AbsStopPolicy[activePolicies.size()]);
         runtime.version = playbook.getAttrVersion();
+        runtimes.put(playbook.getId(), runtime);
 
         if ( runtimeBuilt ) {
             logger.info("Playbook "+playbook.getId()+" stop runtime is built");
@@ -0,0 +1,114 @@
+package trader.service.tradlet.script;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.ta4j.core.Bar;
+
+import trader.service.ta.Bar2;
+import trader.service.ta.BaseLeveledBarSeries;
+import trader.service.ta.LeveledBarSeries;
+import trader.service.ta.indicators.BarValueIndicator;
+
+/**
+ * 一个KBAR序列的OHLC标准变量.
+ * <BR>维护只包含已完成KBAR的序列, 每次新KBAR只追加新完成的KBAR, 变量直接访问该序列, 不需要每次重建
+ * <BR>已完成序列最多保留maxBarCount个KBAR, 更早的KBAR被丢弃, 避免长时间运行时无限增长
+ */
+public class GroovyBarVars {
+
+    public static final String[] VAR_NAMES = {"OPEN", "CLOSE", "HIGH", "LOW", "VOLUME", "AMOUNT", "AVERAGE"};
+
+    /**
+     * 缺省最多保留的已完成KBAR数量
+     */
+    public static final int DEFAULT_MAX_BAR_COUNT = 4096;
+
+    private int maxBarCount;
+
+    private LeveledBarSeries source;
+    /**
+     * 已追加的最后一个KBAR在原始序列的位置
+     */
+    private int sourceIndex;
+    private Bar lastBar;
+    private BaseLeveledBarSeries completedSeries;
+    private Map<String, GroovyIndicatorValue> variables = new LinkedHashMap<>();
+    private ScriptFunctionCache funcCache = new ScriptFunctionCache();
+
+    public GroovyBarVars() {
+        this(DEFAULT_MAX_BAR_COUNT);
+    }
+
+    public GroovyBarVars(int maxBarCount) {
+        this.maxBarCount = maxBarCount;
+    }
+
+    /**
+     * 追加新完成的KBAR, 原始序列只有一个KBAR(未完成)时返回false
+     */
+    public boolean update(LeveledBarSeries series) {
+        if ( series.getBarCount()<=1 ) {
+            return false;
+        }
+        if ( series!=source || lastBar==null || series.getBar(sourceIndex)!=lastBar ) {
+            //原始序列被替换或截断, 重新创建
+            reset(series);
+        }
+        int completedEndIndex = series.getEndIndex()-1;
+        for(int i=sourceIndex+1; i<=completedEndIndex; i++) {
+            Bar bar = series.getBar(i);
+            completedSeries.addBar(bar);
+            sourceIndex = i;
+            lastBar = bar;
+        }
+        return true;
+    }
+
+    public LeveledBarSeries getCompletedSeries() {
+        return completedSeries;
+    }
+
+    public Map<String, GroovyIndicatorValue> getVariables(){
+        return variables;
+    }
+
+    /**
+     * 基于该序列的函数调用缓存, 序列重建时清空
+     */
+    public ScriptFunctionCache getFuncCache() {
+        return funcCache;
+    }
+
+    private void reset(LeveledBarSeries series) {
+        source = series;
+        sourceIndex = series.getBeginIndex()-1;
+        lastBar = null;
+        completedSeries = new BaseLeveledBarSeries(series.getExchangeable(), series.getName(), series.getLevel(), series.function());
+        completedSeries.setMaximumBarCount(maxBarCount);
+        variables.clear();
+        funcCache.clear();
+        variables.put("OPEN", new GroovyIndicatorValue(new BarValueIndicator(completedSeries, (Bar2 bar)->{
+            return bar.getOpenPrice();
+        })));
+        variables.put("CLOSE", new GroovyIndicatorValue(new BarValueIndicator(completedSeries, (Bar2 bar)->{
+            return bar.getClosePrice();
+        })));
+        variables.put("HIGH", new GroovyIndicatorValue(new BarValueIndicator(completedSeries, (Bar2 bar)->{
+            return bar.getHighPrice();
+        })));
+        variables.put("LOW", new GroovyIndicatorValue(new BarValueIndicator(completedSeries, (Bar2 bar)->{
+            return bar.getLowPrice();
+        })));
+        variables.put("VOLUME", new GroovyIndicatorValue(new BarValueIndicator(completedSeries, (Bar2 bar)->{
+            return bar.getVolume();
+        })));
+        variables.put("AMOUNT", new GroovyIndicatorValue(new BarValueIndicator(completedSeries, (Bar2 bar)->{
+            return bar.getAmount();
+        })));
+        variables.put("AVERAGE", new GroovyIndicatorValue(new BarValueIndicator(completedSeries, (Bar2 bar)->{
+            return bar.getAvgPrice();
+        })));
+    }
+
+}
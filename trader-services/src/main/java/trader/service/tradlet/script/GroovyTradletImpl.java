@@ -9,7 +9,6 @@ import org.codehaus.groovy.control.CompilerConfiguration;
 import org.codehaus.groovy.runtime.InvokerInvocationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.ta4j.core.BarSeries;
 
 import groovy.lang.GroovyClassLoader;
 import trader.common.beans.BeansContainer;
@@ -21,9 +20,7 @@ import trader.service.beans.DiscoverableRegistry;
 import trader.service.md.MarketData;
 import trader.service.plugin.Plugin;
 import trader.service.plugin.PluginService;
-import trader.service.ta.Bar2;
 import trader.service.ta.LeveledBarSeries;
-import trader.service.ta.indicators.SimpleIndicator;
 import trader.service.tradlet.Playbook;
 import trader.service.tradlet.PlaybookStateTuple;
 import trader.service.tradlet.Tradlet;
@@ -53,6 +50,14 @@ public class GroovyTradletImpl implements Tradlet, ScriptContext {
     private Map<String, TradletScriptFunction> functions = new HashMap<>();
 
     private Map<String, Object> variables = new HashMap<>();
+    /**
+     * 每个KBAR序列的OHLC变量, key为 instrument-level
+     */
+    private Map<String, GroovyBarVars> barVars = new HashMap<>();
+    /**
+     * 当前KBAR序列的函数调用缓存
+     */
+    private ScriptFunctionCache funcCache;
 
     private GroovyClassLoader scriptLoader;
     private Class<GroovyScriptBase> scriptClass;
@@ -93,6 +98,8 @@ public class GroovyTradletImpl implements Tradlet, ScriptContext {
             methodOnTick = new GroovyScriptMethodInfo(script, "onTick");
             methodOnNewBar = new GroovyScriptMethodInfo(script, "onNewBar");
             methodOnNoopSecond = new GroovyScriptMethodInfo(script, "onNoopSecond");
+            barVars.clear();
+            funcCache = null;
         }catch(Exception e) {
             logger.error("Tradlet group compile script "+context.getConfigText()+" failed: "+e, e);
             scriptClass = null;
@@ -166,7 +173,11 @@ public class GroovyTradletImpl implements Tradlet, ScriptContext {
         TradletScriptFunction func = getOrCreateFuncton(funcName);
         Object result;
         try {
-            result = func.invoke(args);
+            if ( funcCache!=null ) {
+                result = funcCache.invoke(funcName, func, args);
+            } else {
+                result = func.invoke(args);
+            }
         } catch (Exception e) {
             throw new InvokerInvocationException(e);
         }
@@ -183,40 +194,24 @@ public class GroovyTradletImpl implements Tradlet, ScriptContext {
 
     /**
      * 准备OHLC标准变量. 这个方法忽略新创建的Bar, 只返回已完成的KBAR
+     * <BR>变量直接访问增量维护的已完成KBAR序列, 每个新KBAR只需要追加一次
      */
     private boolean prepareBarVars(LeveledBarSeries series) {
-        if ( series.getBarCount()<=1 ) {
-            variables.remove("OPEN");
-            variables.remove("CLOSE");
-            variables.remove("HIGH");
-            variables.remove("LOW");
-            variables.remove("VOLUME");
-            variables.remove("AMOUNT");
-            variables.remove("AVERAGE");
+        String key = series.getExchangeable()+"-"+series.getLevel();
+        GroovyBarVars vars = barVars.get(key);
+        if ( vars==null ) {
+            vars = new GroovyBarVars();
+            barVars.put(key, vars);
+        }
+        if ( !vars.update(series) ) {
+            for(String varName:GroovyBarVars.VAR_NAMES) {
+                variables.remove(varName);
+            }
             return false;
         }
-        BarSeries subSeries = series.getSubSeries(series.getBeginIndex(), series.getEndIndex());
-        variables.put("OPEN", new GroovyIndicatorValue(SimpleIndicator.createFromSeries(subSeries, (Bar2 bar)->{
-            return bar.getOpenPrice();
-        })));
-        variables.put("CLOSE", new GroovyIndicatorValue(SimpleIndicator.createFromSeries(subSeries, (Bar2 bar)->{
-            return bar.getClosePrice();
-        })));
-        variables.put("HIGH", new GroovyIndicatorValue(SimpleIndicator.createFromSeries(subSeries, (Bar2 bar)->{
-            return bar.getHighPrice();
-        })));
-        variables.put("LOW", new GroovyIndicatorValue(SimpleIndicator.createFromSeries(subSeries, (Bar2 bar)->{
-            return bar.getLowPrice();
-        })));
-        variables.put("VOLUME", new GroovyIndicatorValue(SimpleIndicator.createFromSeries(subSeries, (Bar2 bar)->{
-            return bar.getVolume();
-        })));
-        variables.put("AMOUNT", new GroovyIndicatorValue(SimpleIndicator.createFromSeries(subSeries, (Bar2 bar)->{
-            return bar.getAmount();
-        })));
-        variables.put("AVERAGE", new GroovyIndicatorValue(SimpleIndicator.createFromSeries(subSeries, (Bar2 bar)->{
-            return bar.getAvgPrice();
-        })));
+        variables.putAll(vars.getVariables());
+        funcCache = vars.getFuncCache();
+        funcCache.nextBar();
         return true;
     }
 
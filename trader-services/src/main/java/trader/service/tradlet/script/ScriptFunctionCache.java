@@ -0,0 +1,66 @@
+package trader.service.tradlet.script;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 脚本函数的调用结果缓存, 按函数名和参数缓存随KBAR序列增长的指标.
+ * <BR>相同的调用在每个KBAR返回同一个指标对象, ta4j指标内部的缓存得以保留, 每个新KBAR只需要计算一个新的值.
+ * <BR>缓存分两代保存, 一个KBAR周期内没有被访问的结果会在下一个KBAR周期被清除.
+ */
+public class ScriptFunctionCache {
+
+    private Map<ScriptArgsKey, Object> results = new HashMap<>();
+    private Map<ScriptArgsKey, Object> prevResults = new HashMap<>();
+    private long hitCount;
+    private long missCount;
+
+    public Object invoke(String funcName, TradletScriptFunction func, Object[] args) throws Exception
+    {
+        if ( !func.isCacheable(args) ) {
+            return func.invoke(args);
+        }
+        Object[] keyParts = new Object[args.length+1];
+        keyParts[0] = funcName;
+        System.arraycopy(args, 0, keyParts, 1, args.length);
+        ScriptArgsKey key = new ScriptArgsKey(keyParts);
+        Object result = results.get(key);
+        if ( result==null ) {
+            result = prevResults.remove(key);
+            if ( result==null ) {
+                result = func.invoke(args);
+                missCount++;
+            } else {
+                hitCount++;
+            }
+            results.put(key, result);
+        } else {
+            hitCount++;
+        }
+        return result;
+    }
+
+    /**
+     * 新KBAR开始, 清除上一个KBAR周期没有被访问的结果
+     */
+    public void nextBar() {
+        Map<ScriptArgsKey, Object> map = prevResults;
+        map.clear();
+        prevResults = results;
+        results = map;
+    }
+
+    public void clear() {
+        results.clear();
+        prevResults.clear();
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+}
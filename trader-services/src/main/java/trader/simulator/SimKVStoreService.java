@@ -1,6 +1,8 @@
 package trader.simulator;
 
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.TreeMap;
 
 import trader.common.util.StringUtil;
@@ -10,7 +12,7 @@ import trader.service.data.KVStoreService;
 
 public class SimKVStoreService implements KVStoreService {
 
-    private Map<String, String> data = new TreeMap<>();
+    private NavigableMap<String, byte[]> data = new TreeMap<>();
 
     private KVStore defaultStore = new MemoryKVStore("");
 
@@ -23,26 +25,26 @@ public class SimKVStoreService implements KVStoreService {
 
         @Override
         public byte[] get(String key) {
-            String value = getAsString(key);
-            if ( StringUtil.isEmpty(value)) {
-                return null;
-            }
-            return value.getBytes(StringUtil.UTF8);
+            return data.get(prefix+key);
         }
 
         @Override
         public String getAsString(String key) {
-            return data.get(prefix+key);
+            byte[] value = get(key);
+            if ( value==null ) {
+                return null;
+            }
+            return new String(value, StringUtil.UTF8);
         }
 
         @Override
-        public void put(String key, byte[] data) {
-            put(prefix+key, new String(data, StringUtil.UTF8));
+        public void put(String key, byte[] value) {
+            data.put(prefix+key, value);
         }
 
         @Override
         public void put(String key, String value) {
-            data.put(prefix+key, value);
+            put(key, value.getBytes(StringUtil.UTF8));
         }
 
         public void aput(String key, byte[] data) {
@@ -55,12 +57,50 @@ public class SimKVStoreService implements KVStoreService {
 
         @Override
         public KVStoreIterator iterator() {
-            return null;
+            return iterator("");
+        }
+
+        @Override
+        public KVStoreIterator iterator(String keyPrefix) {
+            String prefix0 = prefix+keyPrefix;
+            Iterator<Map.Entry<String, byte[]>> it = data.tailMap(prefix0, true).entrySet().iterator();
+            return new KVStoreIterator() {
+                Map.Entry<String, byte[]> nextEntry = advance();
+                byte[] value;
+
+                private Map.Entry<String, byte[]> advance() {
+                    if ( it.hasNext() ) {
+                        Map.Entry<String, byte[]> entry = it.next();
+                        if ( entry.getKey().startsWith(prefix0) ) {
+                            return entry;
+                        }
+                    }
+                    return null;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return nextEntry!=null;
+                }
+
+                @Override
+                public String next() {
+                    Map.Entry<String, byte[]> entry = nextEntry;
+                    value = entry.getValue();
+                    nextEntry = advance();
+                    return entry.getKey().substring(prefix.length());
+                }
+
+                @Override
+                public byte[] getValue() {
+                    return value;
+                }
+            };
         }
 
         @Override
         public void delete(String key) {
-            data.remove(key);
+            data.remove(prefix+key);
        }
 
     }
@@ -2,20 +2,19 @@ package trader.simulator;
 
 import java.io.IOException;
 import java.text.MessageFormat;
-import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,6 +38,7 @@ import trader.common.util.TraderHomeUtil;
 import trader.service.ServiceErrorConstants;
 import trader.service.log.LogServiceImpl;
 import trader.service.md.MarketData;
+import trader.service.md.MarketDataCursor;
 import trader.service.md.MarketDataListener;
 import trader.service.md.MarketDataProducer;
 import trader.service.md.MarketDataProducerFactory;
@@ -55,8 +55,25 @@ public class SimMarketDataService implements MarketDataService, SimMarketTimeAwa
     private static class SimMDInfo {
         ExchangeableTradingTimes tradingTimes;
         List<MarketData> ticks = new ArrayList<>();
+        /**
+         * 行情来自共享缓存, 已经预处理过
+         */
+        boolean shared;
         int nextDataIndex = 0;
+        /**
+         * 在事件队列中的排序时间, 不晚于下一个行情数据的时间
+         */
+        LocalDateTime queuedTime;
 
+        /**
+         * 下一个行情数据的时间, 没有返回null
+         */
+        public LocalDateTime nextTickTime() {
+            if ( nextDataIndex<ticks.size() ) {
+                return ticks.get(nextDataIndex).getUpdateTime();
+            }
+            return null;
+        }
 
         /**
          * 寻找下一个行情数据
@@ -66,7 +83,7 @@ public class SimMarketDataService implements MarketDataService, SimMarketTimeAwa
             if ( lastTime==null ) { //第一次, 寻找与市场时间相等或最后一个小于市场时间的行情切片
                 for(int i=0;i<ticks.size();i++) {
                     MarketData md = ticks.get(i);
-                    int actionTimeCompare= actionTime.compareTo(md.updateTime);
+                    int actionTimeCompare= actionTime.compareTo(md.getUpdateTime());
                     if ( actionTimeCompare>=0 ) { //actionTime >= marketDataTime
                         nextDataIndex = i+1;
                         result = md;
@@ -79,7 +96,7 @@ public class SimMarketDataService implements MarketDataService, SimMarketTimeAwa
             } else { //后续, 寻找lastTime<=updateTime&&updateTime<=actionTime
                 for(int i=nextDataIndex;i<ticks.size();i++) {
                     MarketData md = ticks.get(i);
-                    int actionTimeCompare= actionTime.compareTo(md.updateTime);
+                    int actionTimeCompare= actionTime.compareTo(md.getUpdateTime());
                     if ( actionTimeCompare>=0 ) { //actionTime >= marketDataTime
                         nextDataIndex = i+1;
                         result = md;
@@ -102,6 +119,12 @@ public class SimMarketDataService implements MarketDataService, SimMarketTimeAwa
     protected Map<Exchangeable, List<MarketDataListener>> listeners = new HashMap<>();
     protected Set<Exchangeable> subscriptions = new TreeSet<>();
     protected Map<Exchangeable, SimMDInfo> mdInfos = new HashMap<>();
+    /**
+     * 按下一个行情时间排序的品种队列, 用于事件驱动的时间推进
+     */
+    private PriorityQueue<SimMDInfo> eventQueue = new PriorityQueue<>((SimMDInfo m1, SimMDInfo m2)->{
+        return m1.queuedTime.compareTo(m2.queuedTime);
+    });
 
     protected LocalDateTime lastTime;
 
@@ -209,7 +232,9 @@ public class SimMarketDataService implements MarketDataService, SimMarketTimeAwa
             if ( md==null ) {
                 continue;
             }
-            md.postProcess(mdInfo.tradingTimes);
+            if ( !mdInfo.shared ) {
+                md.postProcess(mdInfo.tradingTimes);
+            }
             for(MarketDataListener listener:genericListeners) {
                 listener.onMarketData(md);
             }
@@ -223,31 +248,77 @@ public class SimMarketDataService implements MarketDataService, SimMarketTimeAwa
         lastTime = actionTime;
     }
 
+    /**
+     * 返回所有品种中最早的下一个行情时间. 队列中的排序时间只会早于实际时间, 取出时按需更新
+     */
+    @Override
+    public LocalDateTime nextEventTime(LocalDateTime actionTime) {
+        if ( lastTime==null ) {
+            return null;
+        }
+        while(!eventQueue.isEmpty()) {
+            SimMDInfo mdInfo = eventQueue.peek();
+            LocalDateTime nextTime = mdInfo.nextTickTime();
+            if ( nextTime!=null && nextTime.equals(mdInfo.queuedTime) ) {
+                return nextTime;
+            }
+            eventQueue.poll();
+            if ( nextTime!=null ) {
+                mdInfo.queuedTime = nextTime;
+                eventQueue.offer(mdInfo);
+            }
+        }
+        return LocalDateTime.MAX;
+    }
+
     private void loadMarketData(LocalDate tradingDay) {
-        ExchangeableData data = TraderHomeUtil.getExchangeableData();
+        SimTickCache tickCache = null;
+        if ( beansContainer!=null ) {
+            tickCache = beansContainer.getBean(SimTickCache.class);
+        }
         for(Exchangeable e:subscriptions) {
             SimMDInfo mdInfo  =new SimMDInfo();
             mdInfo.tradingTimes = e.exchange().getTradingTimes(e, tradingDay);
-            DataInfo tickInfo = ExchangeableData.TICK_CTP;
-            String tickCsv = null;
-            try{
-                tickCsv = data.load(e, tickInfo, tradingDay);
-            }catch(Throwable t) {
-                logger.error("加载 "+e+" 交易日 "+tradingDay+" TICK行情数据失败", t);
-                throw new RuntimeException(t);
+            if ( tickCache!=null ) {
+                //共享缓存的行情在加载时一次完成预处理
+                mdInfo.ticks = tickCache.getTicks(e, tradingDay, ()->{
+                    List<MarketData> ticks = loadTicks(e, tradingDay);
+                    for(MarketData md:ticks) {
+                        md.postProcess(mdInfo.tradingTimes);
+                    }
+                    return ticks;
+                });
+                mdInfo.shared = true;
+            } else {
+                mdInfo.ticks = loadTicks(e, tradingDay);
             }
+            mdInfos.put(e, mdInfo);
+            if ( !mdInfo.ticks.isEmpty() ) {
+                mdInfo.queuedTime = mdInfo.nextTickTime();
+                eventQueue.offer(mdInfo);
+            }
+        }
+    }
 
-            CSVMarshallHelper csvMarshallHelper = createCSVMarshallHelper(tickInfo);
-            MarketDataProducer mdProducer = createMarketDataProducer(tickInfo);
+    private List<MarketData> loadTicks(Exchangeable e, LocalDate tradingDay) {
+        ExchangeableData data = TraderHomeUtil.getExchangeableData();
+        DataInfo tickInfo = ExchangeableData.TICK_CTP;
+        CSVMarshallHelper csvMarshallHelper = createCSVMarshallHelper(tickInfo);
+        MarketDataProducer mdProducer = createMarketDataProducer(tickInfo);
 
-            CSVDataSet csvDataSet = CSVUtil.parse(tickCsv);
-            while(csvDataSet.next()) {
-                MarketData marketData = mdProducer.createMarketData(csvMarshallHelper.unmarshall(csvDataSet.getRow()), tradingDay);
-                mdInfo.ticks.add(marketData);
+        List<MarketData> ticks = new ArrayList<>();
+        //逐行解析, 不需要将整天的CSV读入内存
+        try(MarketDataCursor cursor = data.openTicks(e, tickInfo, tradingDay, mdProducer, csvMarshallHelper);){
+            MarketData marketData = null;
+            while( (marketData=cursor.next())!=null ) {
+                ticks.add(marketData);
             }
-            postprocessTicks(mdInfo.ticks);
-            mdInfos.put(e, mdInfo);
+        }catch(Throwable t) {
+            logger.error("加载 "+e+" 交易日 "+tradingDay+" TICK行情数据失败", t);
+            throw new RuntimeException(t);
         }
+        postprocessTicks(ticks);
+        return ticks;
     }
 
     private CSVMarshallHelper createCSVMarshallHelper(DataInfo tickInfo) {
@@ -295,7 +366,7 @@ public class SimMarketDataService implements MarketDataService, SimMarketTimeAwa
         return null;
     }
 
-    protected static final Map<String, String> cachedDayStats = new HashMap<>();
+    protected static final Map<String, String> cachedDayStats = new ConcurrentHashMap<>();
 
     public static Exchangeable getPrimaryInstrument(Exchange exchange, String commodity, LocalDate tradingDay) {
         int occurence=0;
@@ -359,13 +430,10 @@ public class SimMarketDataService implements MarketDataService, SimMarketTimeAwa
         if ( ticks.isEmpty() ) {
             return;
         }
-        ZoneId zoneId = ticks.get(0).instrument.exchange().getZoneId();
-
         for(int i=0;i<ticks.size();i++) {
             MarketData tick = ticks.get(i);
             if ( tick.updateTimestamp<=lastTimestamp ) {
-                tick.updateTimestamp=lastTimestamp+200;
-                tick.updateTime = ZonedDateTime.ofInstant(Instant.ofEpochMilli(tick.updateTimestamp), zoneId).toLocalDateTime();
+                tick.setUpdateTimestamp(lastTimestamp+200);
             }
             lastTimestamp = tick.updateTimestamp;
         }
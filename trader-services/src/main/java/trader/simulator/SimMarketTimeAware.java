@@ -10,4 +10,12 @@ public interface SimMarketTimeAware {
 
     public void onTimeChanged(LocalDate tradingDay, LocalDateTime actionTime);
 
+    /**
+     * 返回actionTime之后下一个需要被通知的时间, 用于事件驱动的时间推进.
+     * <BR>返回null代表每个时间片都需要被通知, 返回LocalDateTime.MAX代表没有待处理的事件
+     */
+    public default LocalDateTime nextEventTime(LocalDateTime actionTime) {
+        return null;
+    }
+
 }
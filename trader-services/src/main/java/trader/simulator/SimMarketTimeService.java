@@ -13,6 +13,7 @@ import trader.service.trade.MarketTimeService;
 
 /**
  * 模拟市场时间驱动
+ * <BR>缺省按最小时间间隔逐个时间片推进; 事件驱动模式下直接跳到下一个有行情或定时任务的时间片, 结果与逐个推进相同
  */
 public class SimMarketTimeService implements MarketTimeService {
 
@@ -29,6 +30,16 @@ public class SimMarketTimeService implements MarketTimeService {
      */
     private int minTimeInterval = 100;
 
+    /**
+     * 事件驱动模式
+     */
+    private boolean eventDriven;
+
+    /**
+     * 实际通知的时间片数量
+     */
+    private long stepCount;
+
     @Override
     public long currentTimeMillis() {
         Instant instant = time.atZone(timeZone).toInstant();
@@ -58,6 +69,30 @@ public class SimMarketTimeService implements MarketTimeService {
         this.time = timeRanges[0];
     }
 
+    public boolean isEventDriven() {
+        return eventDriven;
+    }
+
+    public void setEventDriven(boolean eventDriven) {
+        this.eventDriven = eventDriven;
+    }
+
+    /**
+     * 实际通知的时间片数量
+     */
+    public long getStepCount() {
+        return stepCount;
+    }
+
+    /**
+     * 逐个推进模式下的时间片总数量
+     */
+    public long getTotalSteps() {
+        LocalDateTime beginTime = timeRanges[0][0], endTime = timeRanges[timeRanges.length-1][1];
+        long millis = ChronoUnit.MILLIS.between(beginTime, endTime);
+        return (millis+minTimeInterval-1)/minTimeInterval;
+    }
+
     /**
      * 模拟走动一个时间片
      */
@@ -77,10 +112,39 @@ public class SimMarketTimeService implements MarketTimeService {
         LocalDateTime dt = time;
         for(SimMarketTimeAware c:timeListeners)
             c.onTimeChanged(tradingDay, dt);
+        stepCount++;
         time = time.plus(minTimeInterval, ChronoUnit.MILLIS);
+        if ( eventDriven ) {
+            time = nextEventStep(dt, time);
+        }
         return true;
     }
 
+    /**
+     * 找到所有监听者下一个事件所在的时间片, 中间的时间片没有任何事件, 可以直接跳过
+     */
+    private LocalDateTime nextEventStep(LocalDateTime actionTime, LocalDateTime nextStep) {
+        LocalDateTime eventTime = LocalDateTime.MAX;
+        for(SimMarketTimeAware c:timeListeners) {
+            LocalDateTime t = c.nextEventTime(actionTime);
+            if ( t==null ) {
+                return nextStep;
+            }
+            if ( t.isBefore(eventTime) ) {
+                eventTime = t;
+            }
+        }
+        if ( eventTime.compareTo(nextStep)<=0 ) {
+            return nextStep;
+        }
+        LocalDateTime lastEndTime = timeRanges[timeRanges.length-1][1];
+        if ( eventTime.compareTo(lastEndTime)>=0 ) {
+            return lastEndTime;
+        }
+        long steps = (ChronoUnit.MILLIS.between(nextStep, eventTime)+minTimeInterval-1)/minTimeInterval;
+        return nextStep.plus(steps*minTimeInterval, ChronoUnit.MILLIS);
+    }
+
     public String toString() {
         return DateUtil.date2str(time);
     }
@@ -20,6 +20,7 @@ import org.slf4j.LoggerFactory;
 
 import trader.common.beans.BeansContainer;
 import trader.common.beans.Lifecycle;
+import trader.common.util.DateUtil;
 
 public class SimScheduledExecutorService implements ScheduledExecutorService, Lifecycle, SimMarketTimeAware {
     private static final Logger logger = LoggerFactory.getLogger(SimScheduledExecutorService.class);
@@ -175,4 +176,23 @@ public class SimScheduledExecutorService implements ScheduledExecutorService, Li
         }
     }
 
+    /**
+     * 返回最早的下次触发时间, 尚未初始化触发时间的任务需要下一个时间片
+     */
+    @Override
+    public LocalDateTime nextEventTime(LocalDateTime actionTime) {
+        long nextTriggerMillis = Long.MAX_VALUE;
+        for(int i=0;i<schedulerEntries.size();i++) {
+            TimeScheduleEntry entry = schedulerEntries.get(i);
+            if ( entry.nextTriggerMillis==0 ) {
+                return null;
+            }
+            nextTriggerMillis = Math.min(nextTriggerMillis, entry.nextTriggerMillis);
+        }
+        if ( nextTriggerMillis==Long.MAX_VALUE ) {
+            return LocalDateTime.MAX;
+        }
+        return DateUtil.long2datetime(zoneId, nextTriggerMillis);
+    }
+
 }
@@ -0,0 +1,98 @@
+package trader.simulator;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import trader.common.exchangeable.Exchangeable;
+import trader.service.md.MarketData;
+
+/**
+ * 回测TICK行情的共享缓存.
+ * <BR>每个品种每个交易日的行情只加载和预处理一次, 之后作为只读数据在多个并发的回测中共享.
+ * <BR>缓存中的行情已经调用过postProcess, 使用方不可以修改
+ * <BR>按品种+交易日LRU淘汰, 最多保留maxEntries个交易日的行情, 被淘汰的行情再次访问时重新加载
+ */
+public class SimTickCache {
+
+    /**
+     * 缺省最多缓存的品种交易日数量, 一个活跃品种一个交易日的TICK大约几十MB
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 64;
+
+    private final int maxEntries;
+    private final LinkedHashMap<String, FutureTask<List<MarketData>>> ticks;
+
+    public SimTickCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public SimTickCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        ticks = new LinkedHashMap<String, FutureTask<List<MarketData>>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FutureTask<List<MarketData>>> eldest) {
+                return size()>SimTickCache.this.maxEntries;
+            }
+        };
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * 返回缓存的行情, 不存在时使用loader加载. 同一个品种和交易日并发访问时只加载一次
+     */
+    public List<MarketData> getTicks(Exchangeable e, LocalDate tradingDay, Callable<List<MarketData>> loader)
+    {
+        String key = e.toString()+"-"+tradingDay;
+        FutureTask<List<MarketData>> task = null;
+        boolean loadNeeded = false;
+        synchronized(ticks) {
+            task = ticks.get(key);
+            if ( task==null ) {
+                task = new FutureTask<>(()->{
+                    return Collections.unmodifiableList(loader.call());
+                });
+                ticks.put(key, task);
+                loadNeeded = true;
+            }
+        }
+        //在锁外加载, 不阻塞其它品种和交易日的访问
+        if ( loadNeeded ) {
+            task.run();
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ie);
+        } catch (ExecutionException ee) {
+            synchronized(ticks) {
+                ticks.remove(key, task);
+            }
+            throw new RuntimeException(ee.getCause());
+        }
+    }
+
+    public int size() {
+        synchronized(ticks) {
+            return ticks.size();
+        }
+    }
+
+    public void clear() {
+        synchronized(ticks) {
+            ticks.clear();
+        }
+    }
+
+}
@@ -14,6 +14,7 @@ public class SimTradletGroupEngine extends AbsTradletGroupEngine {
 
     @Override
     public void destroy() {
+        group.destroy();
     }
 
     @Override
@@ -48,6 +48,17 @@ public class SimTradletService implements TradletService, TradletConstants, Serv
 
     private Map<String, TradletInfo> tradletInfos = new HashMap<>();
     private List<SimTradletGroupEngine> groupEngines = new ArrayList<>();
+    /**
+     * 替代配置文件的交易组配置: ID->配置文本, 用于参数寻优
+     */
+    private Map<String, String> groupConfigs;
+
+    /**
+     * 使用指定的交易组配置, 而不是从配置文件加载. 需要在init之前调用
+     */
+    public void setGroupConfigs(Map<String, String> groupConfigs) {
+        this.groupConfigs = groupConfigs;
+    }
 
     @Override
     public void init(BeansContainer beansContainer) throws Exception
@@ -61,10 +72,13 @@ public class SimTradletService implements TradletService, TradletConstants, Serv
         if ( pluginService!=null ) {
             tradletPlugins = TradletServiceImpl.filterTradletPlugins(pluginService.getPlugins());
         }
-        if ( staticTradletInfos==null ) {
-            staticTradletInfos = TradletServiceImpl.reloadTradletInfos(TradletServiceImpl.loadStandardTradlets(), tradletPlugins, new TreeSet<>());
+        synchronized(SimTradletService.class) {
+            //并发回测时只加载一次
+            if ( staticTradletInfos==null ) {
+                staticTradletInfos = TradletServiceImpl.reloadTradletInfos(TradletServiceImpl.loadStandardTradlets(), tradletPlugins, new TreeSet<>());
+            }
+            tradletInfos = staticTradletInfos;
         }
-        tradletInfos = staticTradletInfos;
         //加载TradletGroup
         groupEngines = loadGroups();
         mdService.addListener((MarketData tick)->{
@@ -150,19 +164,30 @@ public class SimTradletService implements TradletService, TradletConstants, Serv
     private List<SimTradletGroupEngine> loadGroups()  throws AppException
     {
         List<SimTradletGroupEngine> result = new ArrayList<>();
+        if ( groupConfigs!=null ) {
+            for(Map.Entry<String, String> entry:groupConfigs.entrySet()) {
+                result.add(createGroupEngine(entry.getKey(), entry.getValue()));
+            }
+            return result;
+        }
         for(Map groupElem:(List<Map>)ConfigUtil.getObject(ITEM_TRADLETGROUPS)) {
-            TradletGroupImpl group = createGroup(groupElem);
-            SimTradletGroupEngine engine = new SimTradletGroupEngine(group);
-            engine.init(beansContainer);
-            result.add(engine);
+            String groupId = ConversionUtil.toString(groupElem.get("id"));
+            String groupConfig = ConversionUtil.toString( groupElem.get("text") );
+            result.add(createGroupEngine(groupId, groupConfig));
         }
         return result;
     }
 
-    private TradletGroupImpl createGroup(Map groupElem) throws AppException
+    private SimTradletGroupEngine createGroupEngine(String groupId, String groupConfig) throws AppException
+    {
+        TradletGroupImpl group = createGroup(groupId, groupConfig);
+        SimTradletGroupEngine engine = new SimTradletGroupEngine(group);
+        engine.init(beansContainer);
+        return engine;
+    }
+
+    private TradletGroupImpl createGroup(String groupId, String groupConfig) throws AppException
     {
-        String groupId = ConversionUtil.toString(groupElem.get("id"));
-        String groupConfig = ConversionUtil.toString( groupElem.get("text") );
         TradletGroupImpl group = new TradletGroupImpl(this, beansContainer, groupId);
         group.init(TradletGroupTemplate.parse(beansContainer, group, groupConfig));
         return group;
@@ -264,7 +264,7 @@ public class SimTxnSession extends AbsTxnSession implements JsonEnabled, TradeCo
             for(SimOrder order:orders) {
                 SimTxn txn = completeOrder(order, md);
                 if ( txn!=null ) {
-                    pos.updateOnTxn(txn, md.updateTime);
+                    pos.updateOnTxn(txn, md.getUpdateTime());
                     long currTime= md.updateTimestamp;
                     respondLater(order.getInstrument(), ResponseType.RtnOrder, order, new OrderStateTuple(OrderState.Complete, OrderSubmitState.Accepted, currTime, "全部成交"));
                     respondLater(order.getInstrument(), ResponseType.RtnTrade, txn);
@@ -281,6 +281,17 @@ public class SimTxnSession extends AbsTxnSession implements JsonEnabled, TradeCo
         sendResponses();
     }
 
+    /**
+     * 有待发送的回报时需要下一个时间片
+     */
+    @Override
+    public LocalDateTime nextEventTime(LocalDateTime actionTime) {
+        if ( !pendingResponses.isEmpty() ) {
+            return null;
+        }
+        return LocalDateTime.MAX;
+    }
+
     /**
      * 加载数据
      */
@@ -57,7 +57,8 @@ public class InstrumentIndicatorStatsAction implements CmdAction {
         loader.setInstrument(instrument)
             .setStartTradingDay(beginDate)
             .setEndTradingDay(endDate)
-            .setLevel(PriceLevel.valueOf(level));
+            .setLevel(PriceLevel.valueOf(level))
+            .setColumnar(true);
 
         LeveledBarSeries series = loader.setStartTradingDay(beginDate).setEndTradingDay(endDate).load();
         ClosePriceIndicator closePrices = new ClosePriceIndicator(series);
@@ -178,7 +178,8 @@ public class MarketDataExportBarAction implements CmdAction {
             loader.setInstrument(instrument)
                 .setStartTradingDay(beginDate)
                 .setEndTradingDay(endDate)
-                .setLevel(PriceLevel.valueOf(level));
+                .setLevel(PriceLevel.valueOf(level))
+                .setColumnar(true);
             //1 构造BAR
             buildBars(writer);
         }
@@ -450,7 +450,7 @@ public class MarketDataImportAction implements CmdAction {
             while(csvDataSet.next()) {
                 MarketData marketData = mdProducer.createMarketData(csvMarshallHelper.unmarshall(csvDataSet.getRow()), mdInfo.tradingDay);
                 ticks.add(marketData);
-                existsTimes.add(marketData.updateTime);
+                existsTimes.add(marketData.getUpdateTime());
                 csvWriter.next().setRow(csvDataSet.getRow());
             }
         }
@@ -458,12 +458,12 @@ public class MarketDataImportAction implements CmdAction {
         CSVDataSet csvDataSet = CSVUtil.parse(FileUtil.read(mdInfo.tickFile));
         while(csvDataSet.next()) {
             MarketData md = mdProducer.createMarketData(csvMarshallHelper.unmarshall(csvDataSet.getRow()), mdInfo.tradingDay);
-            if ( existsTimes.contains(md.updateTime)) {
+            if ( existsTimes.contains(md.getUpdateTime())) {
                 continue;
             }
             Exchangeable e = md.instrument;
             ExchangeableTradingTimes mdTradingTimes = e.exchange().getTradingTimes(e, DateUtil.str2localdate(md.tradingDay));
-            if ( mdTradingTimes==null || mdTradingTimes.getTimeStage(md.updateTime)!=MarketTimeStage.MarketOpen ) {
+            if ( mdTradingTimes==null || mdTradingTimes.getTimeStage(md.getUpdateTime())!=MarketTimeStage.MarketOpen ) {
                 continue;
             }
             ticks.add(md);
@@ -608,7 +608,7 @@ public class MarketDataImportAction implements CmdAction {
             if ( tradingTimes==null ) {
                 tradingTimes = e.exchange().getTradingTimes(e, tradingDay);
             }
-            if ( tradingTimes==null || tradingTimes.getTimeStage(md.updateTime)!=MarketTimeStage.MarketOpen ) {
+            if ( tradingTimes==null || tradingTimes.getTimeStage(md.getUpdateTime())!=MarketTimeStage.MarketOpen ) {
                 continue;
             }
             result.tickCount++; //只计算正式开市的数据
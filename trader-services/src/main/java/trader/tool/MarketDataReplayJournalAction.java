@@ -0,0 +1,70 @@
+package trader.tool;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import trader.common.beans.BeansContainer;
+import trader.common.util.StringUtil;
+import trader.common.util.StringUtil.KVPair;
+import trader.common.util.TraderHomeUtil;
+import trader.service.md.MarketDataJournal;
+import trader.service.md.MarketDataJournalReader;
+import trader.service.util.CmdAction;
+
+/**
+ * 将journal方式保存的行情日志恢复为CSV文件, 之后可以使用 marketData import 导入
+ */
+public class MarketDataReplayJournalAction implements CmdAction {
+
+    @Override
+    public String getCommand() {
+        return "marketData.replayJournal";
+    }
+
+    @Override
+    public void usage(PrintWriter writer) {
+        writer.println("marketData replayJournal [--tradingDay=<TRADING_DAY>]");
+        writer.println("\t恢复行情日志为CSV文件");
+    }
+
+    @Override
+    public int execute(BeansContainer beansContainer, PrintWriter writer, List<KVPair> options) throws Exception {
+        String tradingDay = null;
+        for(KVPair kv:options) {
+            if ( StringUtil.isEmpty(kv.v)) {
+                continue;
+            }
+            switch(kv.k.toLowerCase()) {
+            case "tradingday":
+                tradingDay = kv.v;
+                break;
+            }
+        }
+        File marketDataDir = TraderHomeUtil.getDirectory(TraderHomeUtil.DIR_MARKETDATA);
+        List<File> tradingDayDirs = new ArrayList<>();
+        if ( tradingDay!=null ) {
+            tradingDayDirs.add(new File(marketDataDir, tradingDay));
+        } else {
+            File[] files = marketDataDir.listFiles();
+            if ( files!=null ) {
+                for(File f:files) {
+                    if ( new File(f, MarketDataJournal.JOURNAL_DIR).isDirectory() ) {
+                        tradingDayDirs.add(f);
+                    }
+                }
+            }
+        }
+        for(File tradingDayDir:tradingDayDirs) {
+            writer.print("Replay market data journal "+tradingDayDir.getName()+" ... ");
+            writer.flush();
+            try(MarketDataJournalReader reader = new MarketDataJournalReader(tradingDayDir);){
+                int rowCount = reader.replay();
+                writer.println(rowCount+" ticks");
+            }
+        }
+        return 0;
+    }
+
+}
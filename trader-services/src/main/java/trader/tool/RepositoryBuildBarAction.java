@@ -12,14 +12,13 @@ import trader.common.beans.BeansContainer;
 import trader.common.exchangeable.Exchange;
 import trader.common.exchangeable.Exchangeable;
 import trader.common.exchangeable.ExchangeableData;
-import trader.common.util.CSVDataSet;
 import trader.common.util.CSVMarshallHelper;
-import trader.common.util.CSVUtil;
 import trader.common.util.DateUtil;
 import trader.common.util.StringUtil;
 import trader.common.util.StringUtil.KVPair;
 import trader.common.util.TraderHomeUtil;
 import trader.service.md.MarketData;
+import trader.service.md.MarketDataCursor;
 import trader.service.md.MarketDataProducer;
 import trader.service.md.MarketDataProducerFactory;
 import trader.service.util.CmdAction;
@@ -76,12 +75,10 @@ public class RepositoryBuildBarAction implements CmdAction {
             if ( beginDate!=null && tradingDay.isBefore(beginDate) ) {
                 continue;
             }
-            String tickCsv = data.load(instrument, ExchangeableData.TICK_CTP, tradingDay);
-            CSVDataSet csvDataSet = CSVUtil.parse(tickCsv);
             List<MarketData> ticks = new ArrayList<>();
-            while(csvDataSet.next()) {
-                MarketData md = mdProducer.createMarketData(csvMarshallHelper.unmarshall(csvDataSet.getRow()), tradingDay);
-                if ( md!=null ) {
+            try(MarketDataCursor cursor = data.openTicks(instrument, ExchangeableData.TICK_CTP, tradingDay, mdProducer, csvMarshallHelper);){
+                MarketData md = null;
+                while( (md=cursor.next())!=null ) {
                     ticks.add(md);
                 }
             }
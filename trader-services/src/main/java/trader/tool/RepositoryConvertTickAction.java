@@ -0,0 +1,158 @@
+package trader.tool;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import trader.common.beans.BeansContainer;
+import trader.common.exchangeable.Exchange;
+import trader.common.exchangeable.Exchangeable;
+import trader.common.exchangeable.ExchangeableData;
+import trader.common.util.CSVMarshallHelper;
+import trader.common.util.DateUtil;
+import trader.common.util.StringUtil;
+import trader.common.util.StringUtil.KVPair;
+import trader.common.util.TraderHomeUtil;
+import trader.service.md.MarketData;
+import trader.service.md.MarketDataCursor;
+import trader.service.md.MarketDataProducer;
+import trader.service.md.MarketDataProducerFactory;
+import trader.service.util.CmdAction;
+import trader.simulator.SimMarketDataService;
+
+/**
+ * 转换TICK_CTP的CSV数据为列式二进制格式, 并输出两种格式的加载时间对比
+ */
+public class RepositoryConvertTickAction implements CmdAction {
+
+    private List<String> instrumentFilters = new ArrayList<>();
+    private LocalDate beginDate;
+    private LocalDate endDate;
+    private PrintWriter writer;
+    private ExchangeableData data;
+    private Map<String, MarketDataProducerFactory> producerFactories;
+    private long totalCsvLoadTime;
+    private long totalBinLoadTime;
+
+    @Override
+    public String getCommand() {
+        return "repository.convertTicks";
+    }
+
+    @Override
+    public void usage(PrintWriter writer) {
+        writer.println("repository convertTicks [--instruments=e1,e2,e3] [--beginDate=beginDate] [--endDate=endDate]");
+        writer.println("\t转换TICK数据为列式二进制格式");
+    }
+
+    @Override
+    public int execute(BeansContainer beansContainer, PrintWriter writer, List<KVPair> options) throws Exception {
+        this.writer = writer;
+        parseOptions(options);
+        data = TraderHomeUtil.getExchangeableData();
+        producerFactories = SimMarketDataService.discoverProducerFactories();
+
+        for(Exchange exchange:Exchange.getInstances()) {
+            for(Exchangeable instrument: data.listHistoryExchangeableIds(exchange)) {
+                if ( acceptInstrument(instrument)) {
+                    convertTicks(instrument);
+                }
+            }
+        }
+        if ( totalBinLoadTime>0 ) {
+            writer.println("Total csv load time "+totalCsvLoadTime/1000000+" ms, binary load time "+totalBinLoadTime/1000000+" ms, ratio "+String.format("%.1f", ((double)totalCsvLoadTime)/totalBinLoadTime));
+        }
+        return 0;
+    }
+
+    private void convertTicks(Exchangeable instrument) throws IOException {
+        List<LocalDate> tradingDays = data.list(instrument, ExchangeableData.TICK_CTP);
+        MarketDataProducerFactory factory = producerFactories.get(MarketDataProducer.PROVIDER_CTP);
+        CSVMarshallHelper csvMarshallHelper = factory.createCSVMarshallHelper();
+        MarketDataProducer mdProducer = factory.create(null, Collections.emptyMap());
+        writer.print(instrument+" : ");
+        Collections.sort(tradingDays);
+        long csvLoadTime = 0, binLoadTime = 0;
+        for(LocalDate tradingDay:tradingDays) {
+            if ( beginDate!=null && tradingDay.isBefore(beginDate) ) {
+                continue;
+            }
+            if ( endDate!=null && tradingDay.isAfter(endDate) ) {
+                continue;
+            }
+            long t0 = System.nanoTime();
+            List<MarketData> ticks = new ArrayList<>();
+            try(MarketDataCursor cursor = data.openTicks(instrument, ExchangeableData.TICK_CTP, tradingDay, mdProducer, csvMarshallHelper);){
+                MarketData md = null;
+                while( (md=cursor.next())!=null ) {
+                    ticks.add(md);
+                }
+            }
+            long t1 = System.nanoTime();
+            if ( ticks.isEmpty() ) {
+                continue;
+            }
+            data.saveTicks(instrument, tradingDay, MarketDataProducer.PROVIDER_CTP, ticks);
+            long t2 = System.nanoTime();
+            List<MarketData> binTicks = data.loadTicks(instrument, tradingDay);
+            long t3 = System.nanoTime();
+            if ( binTicks.size()!=ticks.size() ) {
+                writer.println(instrument+" "+tradingDay+" tick count mismatch: "+ticks.size()+" / "+binTicks.size());
+            }
+            csvLoadTime += (t1-t0);
+            binLoadTime += (t3-t2);
+            writer.print("."); writer.flush();
+        }
+        totalCsvLoadTime += csvLoadTime;
+        totalBinLoadTime += binLoadTime;
+        if ( binLoadTime>0 ) {
+            writer.print(" csv "+csvLoadTime/1000000+" ms, binary "+binLoadTime/1000000+" ms, ratio "+String.format("%.1f", ((double)csvLoadTime)/binLoadTime));
+        }
+        writer.println();
+    }
+
+    private boolean acceptInstrument(Exchangeable instrument) {
+        if ( instrumentFilters.isEmpty() ) {
+            return true;
+        }
+        for(String f:instrumentFilters) {
+            if ( instrument.uniqueId().indexOf(f)>=0 ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected void parseOptions(List<KVPair> options) {
+        for(KVPair kv:options) {
+            if ( StringUtil.isEmpty(kv.v)) {
+                continue;
+            }
+            switch(kv.k.toLowerCase()) {
+            case "begindate":
+                beginDate = DateUtil.str2localdate(kv.v);
+                break;
+            case "enddate":
+                endDate = DateUtil.str2localdate(kv.v);
+                break;
+            case "instrument":
+                instrumentFilters.add(kv.v);
+                break;
+            case "instruments":
+                for(String p:StringUtil.split(kv.v, ",|;")) {
+                    instrumentFilters.add(p);
+                }
+                break;
+            }
+        }
+        if ( instrumentFilters.isEmpty() ) {
+            writer.println("需要指定过滤表达式");
+            System.exit(1);
+        }
+    }
+
+}
@@ -1,11 +1,15 @@
 package trader.tool;
 
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.ScheduledExecutorService;
 
 import trader.common.beans.BeansContainer;
@@ -14,6 +18,7 @@ import trader.common.exchangeable.Exchange;
 import trader.common.exchangeable.Exchangeable;
 import trader.common.exchangeable.ExchangeableTradingTimes;
 import trader.common.exchangeable.MarketDayUtil;
+import trader.common.util.ConversionUtil;
 import trader.common.util.DateUtil;
 import trader.common.util.PriceUtil;
 import trader.common.util.StringUtil;
@@ -43,13 +48,40 @@ import trader.simulator.trade.SimTradeService;
 
 /**
  * 回测
+ * <BR>并行模式下每个交易日使用独立的运行环境(包括KVStore), 持仓不跨交易日延续, 结果按交易日顺序输出
  */
 public class TraderEvalAction implements CmdAction {
+
+    /**
+     * 一个交易日的回测结果
+     */
+    static class DayResult {
+        LocalDate tradingDay;
+        String report;
+        long closeProfit;
+        long commission;
+        /**
+         * 有成交的报单数
+         */
+        int tradeCount;
+    }
+
     protected PrintWriter writer;
     protected LocalDate beginDate;
     protected LocalDate endDate;
     protected List<Exchangeable> instruments = new ArrayList<>();
-    protected Exchangeable mdInstrument = null;
+    /**
+     * 事件驱动的时间推进, 跳过没有行情和定时任务的时间片. 缺省逐个时间片推进
+     */
+    protected boolean eventDriven = false;
+    /**
+     * 事件驱动模式下, 每个交易日再逐个时间片推进运行一次, 报告两种方式的实际耗时
+     */
+    protected boolean compareStepping = false;
+    /**
+     * 并行回测的线程数, 0代表按顺序回测
+     */
+    protected int parallelism = 0;
 
     @Override
     public String getCommand() {
@@ -58,8 +90,10 @@ public class TraderEvalAction implements CmdAction {
 
     @Override
     public void usage(PrintWriter writer) {
-        writer.println("eval -Dtrader.configFile=TRADE_XML --beginDate=YYYYMMDD --endDate=YYYYMMDD [--instruments=INSTRUMENT1,INSTRUMENT2]");
+        writer.println("eval -Dtrader.configFile=TRADE_XML --beginDate=YYYYMMDD --endDate=YYYYMMDD [--instruments=INSTRUMENT1,INSTRUMENT2] [--eventDriven=true|false] [--compareStepping=true|false] [--parallel=THREADS]");
         writer.println("\t回测");
+        writer.println("\t--eventDriven 跳过没有行情和定时任务的时间片, 缺省false(逐个时间片推进)");
+        writer.println("\t--compareStepping 事件驱动模式下每个交易日再逐个时间片运行一次, 报告两种方式的耗时和加速比");
     }
 
     @Override
@@ -69,21 +103,117 @@ public class TraderEvalAction implements CmdAction {
         if ( !parseOptions(options)) {
             return 1;
         }
-        SimpleBeansContainer globalBeans = createGlobalBeans();
+        PluginService pluginService = createPluginService();
+        List<LocalDate> tradingDays = getTradingDays();
+        List<DayResult> results = new ArrayList<>();
+        if ( parallelism>0 ) {
+            results = executeParallel(pluginService, tradingDays);
+        } else {
+            SimpleBeansContainer globalBeans = createGlobalBeans(pluginService);
+            for(LocalDate tradingDay:tradingDays) {
+                DayResult result = evalTradingDay(globalBeans, tradingDay);
+                writer.print(result.report);
+                writer.flush();
+                results.add(result);
+            }
+        }
+        long closeProfit = 0, commission = 0;
+        for(DayResult result:results) {
+            closeProfit += result.closeProfit;
+            commission += result.commission;
+        }
+        writer.println("=== 交易日: "+results.size()+" 平仓盈亏: "+PriceUtil.long2str(closeProfit)+" 手续费: "+PriceUtil.long2str(commission)+" ===");
+        return 0;
+    }
+
+    /**
+     * 使用ForkJoinPool并行回测, 每个交易日一个独立的运行环境, 按交易日顺序输出结果
+     */
+    private List<DayResult> executeParallel(PluginService pluginService, List<LocalDate> tradingDays) throws Exception
+    {
+        writer.println("并行回测 "+tradingDays.size()+" 个交易日, 线程数: "+parallelism);
+        List<DayResult> results = new ArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<ForkJoinTask<DayResult>> tasks = new ArrayList<>();
+            for(LocalDate day:tradingDays) {
+                tasks.add(pool.submit(()->{
+                    return evalTradingDay(createGlobalBeans(pluginService), day);
+                }));
+            }
+            for(ForkJoinTask<DayResult> task:tasks) {
+                DayResult result = task.get();
+                writer.print(result.report);
+                writer.flush();
+                results.add(result);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return results;
+    }
+
+    /**
+     * 回测时间段内的全部交易日, 顺序和并行回测都使用第一个合约的交易所日历(缺省SHFE)
+     */
+    protected List<LocalDate> getTradingDays() {
+        Exchange exchange = Exchange.SHFE;
+        if ( !instruments.isEmpty() ) {
+            exchange = instruments.get(0).exchange();
+        }
+        List<LocalDate> tradingDays = new ArrayList<>();
         LocalDate tradingDay = beginDate;
-        if ( !MarketDayUtil.isMarketDay(Exchange.SHFE, tradingDay)) {
-            tradingDay = MarketDayUtil.nextMarketDay(Exchange.SHFE, tradingDay);
+        if ( !MarketDayUtil.isMarketDay(exchange, tradingDay)) {
+            tradingDay = MarketDayUtil.nextMarketDay(exchange, tradingDay);
         }
         while(!tradingDay.isAfter(endDate)) {
-            SimpleBeansContainer beans = getBeansFor(globalBeans, instruments, tradingDay);
-            doTrade(beans);
+            tradingDays.add(tradingDay);
+            tradingDay = MarketDayUtil.nextMarketDay(exchange, tradingDay);
+        }
+        return tradingDays;
+    }
+
+    private DayResult evalTradingDay(SimpleBeansContainer globalBeans, LocalDate tradingDay) throws Exception
+    {
+        return evalTradingDay(globalBeans, tradingDay, null);
+    }
+
+    /**
+     * 回测一个交易日
+     *
+     * @param groupConfigs 交易组配置, null代表使用配置文件
+     */
+    protected DayResult evalTradingDay(SimpleBeansContainer globalBeans, LocalDate tradingDay, Map<String, String> groupConfigs) throws Exception
+    {
+        long steppingMillis = -1;
+        if ( eventDriven && compareStepping ) {
+            //使用独立的KVStore逐个时间片运行同一个交易日, 不影响正式结果
+            SimpleBeansContainer steppingGlobalBeans = createGlobalBeans(globalBeans.getBean(PluginService.class));
+            SimpleBeansContainer steppingBeans = getBeansFor(steppingGlobalBeans, instruments, tradingDay, groupConfigs, false);
+            try {
+                steppingMillis = runTimePieces(steppingBeans.getBean(SimMarketTimeService.class));
+            } finally {
+                destroyBeans(steppingGlobalBeans, steppingBeans);
+            }
+        }
+        SimpleBeansContainer beans = getBeansFor(globalBeans, instruments, tradingDay, groupConfigs, eventDriven);
+        try {
+            return doTrade(beans, steppingMillis);
+        } finally {
             destroyBeans(globalBeans, beans);
-            tradingDay = MarketDayUtil.nextMarketDay(mdInstrument.exchange(), tradingDay);
         }
-        return 0;
     }
 
-    private boolean parseOptions(List<KVPair> options) {
+    /**
+     * 时间片段循环, 返回耗时(毫秒)
+     */
+    private static long runTimePieces(SimMarketTimeService mtService) {
+        long t0 = System.currentTimeMillis();
+        while(mtService.nextTimePiece());
+        return System.currentTimeMillis()-t0;
+    }
+
+    protected boolean parseOptions(List<KVPair> options) {
         beginDate = null;
         for(KVPair kv:options) {
             if ( StringUtil.isEmpty(kv.v)) {
@@ -104,6 +234,15 @@ public class TraderEvalAction implements CmdAction {
                     instruments.add(Exchangeable.fromString(instrument));
                 }
                 break;
+            case "eventdriven":
+                eventDriven = ConversionUtil.toBoolean(kv.v);
+                break;
+            case "comparestepping":
+                compareStepping = ConversionUtil.toBoolean(kv.v);
+                break;
+            case "parallel":
+                parallelism = ConversionUtil.toInt(kv.v);
+                break;
             }
         }
         if ( endDate==null && beginDate==null ) {
@@ -113,15 +252,31 @@ public class TraderEvalAction implements CmdAction {
         return true;
     }
 
-    private void doTrade(SimpleBeansContainer beansContainer) {
+    /**
+     * @param steppingMillis 同一交易日逐个时间片推进的耗时, -1代表没有对比运行
+     */
+    private DayResult doTrade(SimpleBeansContainer beansContainer, long steppingMillis) {
+        StringWriter reportWriter = new StringWriter();
+        PrintWriter writer = new PrintWriter(reportWriter);
         SimMarketTimeService mtService = beansContainer.getBean(SimMarketTimeService.class);
-        //时间片段循环
-        while(mtService.nextTimePiece());
+        long elapsedMillis = runTimePieces(mtService);
 
         TradeService tradeService = beansContainer.getBean(TradeService.class);
         Account account = tradeService.getPrimaryAccount();
         List<Order> orders = account.getOrders();
+        int tradeCount = 0;
         writer.println("--- 交易日 "+DateUtil.date2str(mtService.getTradingDay())+" ---");
+        long stepCount = mtService.getStepCount(), totalSteps = mtService.getTotalSteps();
+        String timeLine = "时间片: "+stepCount+"/"+totalSteps+" 耗时: "+elapsedMillis+" ms";
+        if ( !mtService.isEventDriven() ) {
+            timeLine += " 逐个推进";
+        } else if ( steppingMillis>=0 ) {
+            timeLine += String.format(" 事件驱动, 逐个推进耗时: %d ms, 加速比: %.1f", steppingMillis, ((double)steppingMillis)/Math.max(1, elapsedMillis));
+        } else {
+            //没有对比运行时, 以实际通知的时间片比例作为参考
+            timeLine += String.format(" 事件驱动, 时间片比例: %.1f%%", 100.0*stepCount/Math.max(1, totalSteps));
+        }
+        writer.println(timeLine);
         writer.println("报单:");
         for(Order order:orders) {
             LocalDateTime stateTime = DateUtil.long2datetime(order.getStateTuple().getTimestamp());
@@ -135,6 +290,9 @@ public class TraderEvalAction implements CmdAction {
                     DateUtil.date2str(stateTime)
                     );
             writer.println( orderLine );
+            if ( order.getVolume(OdrVolume.TradeVolume)>0 ) {
+                tradeCount++;
+            }
         }
         String accountLine = String.format("账户净值: %8s 保证金: %8s 手续费: %8s 平仓盈亏: %8s",
                 PriceUtil.long2str(account.getMoney(AccMoney.Balance)),
@@ -143,38 +301,56 @@ public class TraderEvalAction implements CmdAction {
                 PriceUtil.long2str(account.getMoney(AccMoney.CloseProfit))
                 );
         writer.println(accountLine);
+        writer.flush();
+
+        DayResult result = new DayResult();
+        result.tradingDay = mtService.getTradingDay();
+        result.report = reportWriter.toString();
+        result.closeProfit = account.getMoney(AccMoney.CloseProfit);
+        result.commission = account.getMoney(AccMoney.Commission);
+        result.tradeCount = tradeCount;
+        return result;
     }
 
     /**
      * 创建一些跨越交易日的服务
      */
-    private SimpleBeansContainer createGlobalBeans() throws Exception
+    protected SimpleBeansContainer createGlobalBeans(PluginService pluginService) throws Exception
     {
         SimpleBeansContainer globalBeans = new SimpleBeansContainer();
 
         SimKVStoreService kvStoreService = new SimKVStoreService();
         globalBeans.addBean(KVStoreService.class, kvStoreService);
 
-        PluginServiceImpl pluginService = new PluginServiceImpl();
-        pluginService.init();
         globalBeans.addBean(PluginService.class, pluginService);
         return globalBeans;
     }
 
+    protected PluginService createPluginService() throws Exception
+    {
+        PluginServiceImpl pluginService = new PluginServiceImpl();
+        pluginService.init();
+        return pluginService;
+    }
+
     /**
      * 为某个交易日创建运行环境
      */
-    private SimpleBeansContainer getBeansFor(SimpleBeansContainer globalBeans, List<Exchangeable> instruments, LocalDate tradingDay)
+    private SimpleBeansContainer getBeansFor(SimpleBeansContainer globalBeans, List<Exchangeable> instruments, LocalDate tradingDay, Map<String, String> groupConfigs, boolean eventDriven)
             throws Exception
     {
         SimpleBeansContainer beansContainer = new SimpleBeansContainer(globalBeans);
         SimMarketTimeService mtService = new SimMarketTimeService();
+        mtService.setEventDriven(eventDriven);
         SimOrderedExecutor orderedExecutor = new SimOrderedExecutor();
         SimScheduledExecutorService scheduledExecutorService = new SimScheduledExecutorService();
         SimMarketDataService mdService = new SimMarketDataService();
         SimTradeService tradeService = new SimTradeService();
         TechnicalAnalysisServiceImpl taService = new TechnicalAnalysisServiceImpl();
         SimTradletService tradletService = new SimTradletService();
+        if ( groupConfigs!=null ) {
+            tradletService.setGroupConfigs(groupConfigs);
+        }
 
         beansContainer.addBean(MarketTimeService.class, mtService);
         beansContainer.addBean(OrderedExecutor.class, orderedExecutor);
@@ -188,7 +364,7 @@ public class TraderEvalAction implements CmdAction {
         mdService.addSubscriptions(instruments);
         mdService.init(beansContainer);
         Collection<Exchangeable> mdInstruments = mdService.getSubscriptions();
-        mdInstrument = mdInstruments.iterator().next();
+        Exchangeable mdInstrument = mdInstruments.iterator().next();
         ExchangeableTradingTimes tradingTimes = mdInstrument.exchange().getTradingTimes(mdInstrument, tradingDay);
         mtService.setTimeRanges(tradingDay, tradingTimes.getMarketTimes() );
         taService.init(beansContainer);
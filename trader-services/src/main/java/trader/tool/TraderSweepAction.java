@@ -0,0 +1,365 @@
+package trader.tool;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import trader.common.beans.BeansContainer;
+import trader.common.config.ConfigUtil;
+import trader.common.util.ConversionUtil;
+import trader.common.util.FileUtil;
+import trader.common.util.IniFile;
+import trader.common.util.PriceUtil;
+import trader.common.util.StringUtil;
+import trader.common.util.StringUtil.KVPair;
+import trader.service.plugin.PluginService;
+import trader.service.tradlet.TradletConstants;
+import trader.service.util.SimpleBeansContainer;
+import trader.simulator.SimTickCache;
+
+/**
+ * 策略参数寻优
+ * <BR>对交易组配置中的参数做网格或随机搜索, 每个参数组合使用独立的运行环境并行回测, TICK行情只加载一次并在参数组合之间共享.
+ * <BR>参数使用 小节.参数名 的方式指定, 例如 MACD135.xxx 或 playbookTemplate.模板ID, 回测时替换所有交易组中该小节的参数值.
+ * <BR>多个取值使用 | 分隔, 可以包含JSON; 或者使用 @文件名 从文件读取, 每行一个取值.
+ * <BR>结果按净盈亏, 最大回撤, 成交数排序
+ */
+public class TraderSweepAction extends TraderEvalAction {
+
+    /**
+     * 一个参数组合的回测结果
+     */
+    static class SweepResult {
+        Map<String, String> params;
+        long closeProfit;
+        long commission;
+        long netProfit;
+        /**
+         * 按交易日净值计算的最大回撤
+         */
+        long maxDrawdown;
+        int tradeCount;
+    }
+
+    /**
+     * 参数->取值列表
+     */
+    private Map<String, List<String>> paramValues = new LinkedHashMap<>();
+    /**
+     * 随机搜索的参数组合数, 0代表网格搜索
+     */
+    private int randomCount = 0;
+    private long randomSeed = 0;
+    /**
+     * 输出排名前N的结果
+     */
+    private int topCount = 20;
+    /**
+     * 共享TICK缓存最多保留的品种交易日数量
+     */
+    private int tickCacheSize = SimTickCache.DEFAULT_MAX_ENTRIES;
+
+    @Override
+    public String getCommand() {
+        return "sweep";
+    }
+
+    @Override
+    public void usage(PrintWriter writer) {
+        writer.println("sweep -Dtrader.configFile=TRADE_XML --beginDate=YYYYMMDD --endDate=YYYYMMDD --param=SECTION.KEY:V1|V2|V3 [--param=SECTION.KEY:@VALUES_FILE] [--random=COUNT] [--seed=SEED] [--top=COUNT] [--tickCache=ENTRIES] [--instruments=INSTRUMENT1,INSTRUMENT2] [--parallel=THREADS]");
+        writer.println("\t策略参数寻优");
+    }
+
+    @Override
+    public int execute(BeansContainer beansContainer, PrintWriter writer, List<KVPair> options) throws Exception
+    {
+        this.writer = writer;
+        if ( !parseOptions(options)) {
+            return 1;
+        }
+        if ( paramValues.isEmpty() ) {
+            writer.println("需要提供寻优参数: --param=SECTION.KEY:V1|V2|V3");
+            return 1;
+        }
+        Map<String, String> groupConfigs = loadGroupConfigs();
+        for(String param:paramValues.keySet()) {
+            if ( !hasSection(groupConfigs, param.substring(0, param.lastIndexOf('.'))) ) {
+                writer.println("交易组配置中不存在参数 "+param+" 的小节");
+                return 1;
+            }
+        }
+        List<Map<String, String>> variants = createVariants();
+        List<LocalDate> tradingDays = getTradingDays();
+        int threads = parallelism;
+        if ( threads<=0 ) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        writer.println("参数寻优: 参数组合 "+variants.size()+" 个, 交易日 "+tradingDays.size()+" 个, 线程数: "+threads);
+        writer.flush();
+
+        PluginService pluginService = createPluginService();
+        SimTickCache tickCache = new SimTickCache(tickCacheSize);
+        List<SweepResult> results = new ArrayList<>();
+        long t0 = System.currentTimeMillis();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<ForkJoinTask<SweepResult>> tasks = new ArrayList<>();
+            for(Map<String, String> variant:variants) {
+                tasks.add(pool.submit(()->{
+                    return evalVariant(pluginService, tickCache, applyParams(groupConfigs, variant), variant, tradingDays);
+                }));
+            }
+            for(ForkJoinTask<SweepResult> task:tasks) {
+                results.add(task.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        long t1 = System.currentTimeMillis();
+
+        Collections.sort(results, (SweepResult r1, SweepResult r2)->{
+            int result = Long.compare(r2.netProfit, r1.netProfit);
+            if ( result==0 ) {
+                result = Long.compare(r1.maxDrawdown, r2.maxDrawdown);
+            }
+            if ( result==0 ) {
+                result = Integer.compare(r1.tradeCount, r2.tradeCount);
+            }
+            return result;
+        });
+        writer.println("--- 寻优结果, 耗时: "+(t1-t0)+" ms ---");
+        writer.println(String.format("%4s %12s %12s %12s %12s %6s  %s", "排名", "净盈亏", "最大回撤", "平仓盈亏", "手续费", "成交数", "参数"));
+        for(int i=0;i<results.size() && i<topCount;i++) {
+            SweepResult result = results.get(i);
+            writer.println(String.format("%4d %12s %12s %12s %12s %6d  %s",
+                    (i+1),
+                    PriceUtil.long2str(result.netProfit),
+                    PriceUtil.long2str(result.maxDrawdown),
+                    PriceUtil.long2str(result.closeProfit),
+                    PriceUtil.long2str(result.commission),
+                    result.tradeCount,
+                    result.params
+                    ));
+        }
+        writer.flush();
+        return 0;
+    }
+
+    @Override
+    protected boolean parseOptions(List<KVPair> options) {
+        for(KVPair kv:options) {
+            if ( StringUtil.isEmpty(kv.v)) {
+                continue;
+            }
+            switch(kv.k.toLowerCase()) {
+            case "param":
+                int colonIdx = kv.v.indexOf(':');
+                String param = colonIdx>0?kv.v.substring(0, colonIdx).trim():"";
+                if ( param.lastIndexOf('.')<=0 ) {
+                    writer.println("寻优参数格式错误: "+kv.v);
+                    return false;
+                }
+                List<String> values = new ArrayList<>();
+                String valuesText = kv.v.substring(colonIdx+1).trim();
+                if ( valuesText.startsWith("@") ) {
+                    //从文件读取, 每行一个取值
+                    File valuesFile = new File(valuesText.substring(1));
+                    try{
+                        for(String line:FileUtil.loadLines(valuesFile)) {
+                            if ( !StringUtil.isEmpty(line.trim()) ) {
+                                values.add(line.trim());
+                            }
+                        }
+                    }catch(IOException e) {
+                        writer.println("读取寻优参数文件 "+valuesFile+" 失败: "+e);
+                        return false;
+                    }
+                } else {
+                    for(String value:StringUtil.split(valuesText, "\\|")) {
+                        values.add(value);
+                    }
+                }
+                if ( values.isEmpty() ) {
+                    writer.println("寻优参数没有取值: "+kv.v);
+                    return false;
+                }
+                paramValues.put(param, values);
+                break;
+            case "random":
+                randomCount = ConversionUtil.toInt(kv.v);
+                break;
+            case "seed":
+                randomSeed = ConversionUtil.toLong(kv.v);
+                break;
+            case "top":
+                topCount = ConversionUtil.toInt(kv.v);
+                break;
+            case "tickcache":
+                tickCacheSize = ConversionUtil.toInt(kv.v);
+                break;
+            }
+        }
+        return super.parseOptions(options);
+    }
+
+    /**
+     * 顺序回测一个参数组合的全部交易日, 使用独立的KVStore
+     */
+    private SweepResult evalVariant(PluginService pluginService, SimTickCache tickCache, Map<String, String> groupConfigs, Map<String, String> variant, List<LocalDate> tradingDays) throws Exception
+    {
+        SimpleBeansContainer globalBeans = createGlobalBeans(pluginService);
+        globalBeans.addBean(SimTickCache.class, tickCache);
+
+        SweepResult result = new SweepResult();
+        result.params = variant;
+        long balance = 0, maxBalance = 0;
+        for(LocalDate tradingDay:tradingDays) {
+            DayResult dayResult = evalTradingDay(globalBeans, tradingDay, groupConfigs);
+            result.closeProfit += dayResult.closeProfit;
+            result.commission += dayResult.commission;
+            result.tradeCount += dayResult.tradeCount;
+            balance += (dayResult.closeProfit-dayResult.commission);
+            maxBalance = Math.max(maxBalance, balance);
+            result.maxDrawdown = Math.max(result.maxDrawdown, maxBalance-balance);
+        }
+        result.netProfit = result.closeProfit-result.commission;
+        return result;
+    }
+
+    /**
+     * 生成参数组合: 全部网格, 或者从网格中随机抽取
+     */
+    private List<Map<String, String>> createVariants() {
+        List<Map<String, String>> result = new ArrayList<>();
+        result.add(new LinkedHashMap<>());
+        for(Map.Entry<String, List<String>> entry:paramValues.entrySet()) {
+            List<Map<String, String>> result2 = new ArrayList<>(result.size()*entry.getValue().size());
+            for(Map<String, String> variant:result) {
+                for(String value:entry.getValue()) {
+                    Map<String, String> variant2 = new LinkedHashMap<>(variant);
+                    variant2.put(entry.getKey(), value);
+                    result2.add(variant2);
+                }
+            }
+            result = result2;
+        }
+        if ( randomCount>0 && randomCount<result.size() ) {
+            Random random = randomSeed!=0?new Random(randomSeed):new Random();
+            Collections.shuffle(result, random);
+            result = new ArrayList<>(result.subList(0, randomCount));
+        }
+        return result;
+    }
+
+    private static Map<String, String> loadGroupConfigs() {
+        Map<String, String> result = new LinkedHashMap<>();
+        for(Map groupElem:(List<Map>)ConfigUtil.getObject(TradletConstants.ITEM_TRADLETGROUPS)) {
+            String groupId = ConversionUtil.toString(groupElem.get("id"));
+            String groupConfig = ConversionUtil.toString( groupElem.get("text") );
+            result.put(groupId, groupConfig);
+        }
+        return result;
+    }
+
+    private static boolean hasSection(Map<String, String> groupConfigs, String sectionName) throws Exception
+    {
+        for(String groupConfig:groupConfigs.values()) {
+            IniFile iniFile = new IniFile(new StringReader(groupConfig));
+            if ( iniFile.getSection(sectionName)!=null ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 替换交易组配置中的参数值. 小节中已有的参数原地替换, 不存在的参数追加在小节末尾
+     */
+    static Map<String, String> applyParams(Map<String, String> groupConfigs, Map<String, String> params) throws Exception
+    {
+        Map<String, String> result = new LinkedHashMap<>();
+        for(Map.Entry<String, String> entry:groupConfigs.entrySet()) {
+            IniFile iniFile = new IniFile(new StringReader(entry.getValue()));
+            StringBuilder text = new StringBuilder();
+            for(IniFile.Section section:iniFile.getAllSections()) {
+                Map<String, String> sectionParams = new LinkedHashMap<>();
+                for(Map.Entry<String, String> param:params.entrySet()) {
+                    String key = param.getKey();
+                    int idx = key.lastIndexOf('.');
+                    if ( section.getName().equals(key.substring(0, idx)) ) {
+                        sectionParams.put(key.substring(idx+1), param.getValue());
+                    }
+                }
+                text.append("[").append(section.getName()).append("]\n");
+                text.append(replaceParams(section.getText(), sectionParams));
+                text.append("\n");
+            }
+            result.put(entry.getKey(), text.toString());
+        }
+        return result;
+    }
+
+    /**
+     * 替换小节文本中的参数行, 包括以\结尾的续行. 不存在的参数追加在末尾
+     */
+    static String replaceParams(String sectionText, Map<String, String> params) {
+        if ( params.isEmpty() ) {
+            return sectionText;
+        }
+        Set<String> replacedKeys = new HashSet<>();
+        StringBuilder result = new StringBuilder();
+        boolean continued = false;
+        boolean skipping = false;
+        for(String line:sectionText.split("\n", -1)) {
+            String tline = line.trim();
+            if ( continued ) {
+                //上一行的续行
+                continued = tline.endsWith("\\");
+                if ( !skipping ) {
+                    appendLine(result, line);
+                }
+                continue;
+            }
+            skipping = false;
+            int equalIndex = tline.indexOf('=');
+            if ( !tline.startsWith("#") && equalIndex>0 ) {
+                String key = tline.substring(0, equalIndex).trim();
+                if ( params.containsKey(key) ) {
+                    appendLine(result, key+"="+params.get(key));
+                    replacedKeys.add(key);
+                    skipping = true;
+                }
+            }
+            continued = !tline.startsWith("#") && tline.endsWith("\\");
+            if ( !skipping ) {
+                appendLine(result, line);
+            }
+        }
+        for(Map.Entry<String, String> param:params.entrySet()) {
+            if ( !replacedKeys.contains(param.getKey()) ) {
+                appendLine(result, param.getKey()+"="+param.getValue());
+            }
+        }
+        return result.toString();
+    }
+
+    private static void appendLine(StringBuilder text, String line) {
+        if ( text.length()>0 ) {
+            text.append("\n");
+        }
+        text.append(line);
+    }
+
+}
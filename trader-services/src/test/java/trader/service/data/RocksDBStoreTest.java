@@ -0,0 +1,108 @@
+package trader.service.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.Test;
+
+import trader.common.util.FileUtil;
+import trader.service.util.SimpleBeansContainer;
+
+public class RocksDBStoreTest {
+
+    /**
+     * 批量异步写: 提交之前可以读到, 同步put/delete不会被之后提交的旧值覆盖, iterator可以读到
+     */
+    @Test
+    public void testBatchOrdering() throws Exception
+    {
+        File dir = Files.createTempDirectory("rocksdbStoreTest").toFile();
+        ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
+        SimpleBeansContainer beansContainer = new SimpleBeansContainer();
+        beansContainer.addBean(ScheduledExecutorService.class, scheduledExecutorService);
+        RocksDBStore store = new RocksDBStore(new File(dir, "db").getAbsolutePath());
+        //时间窗口足够长, 测试中只手工提交
+        store.setBatchWindow(600000);
+        try {
+            store.init(beansContainer);
+
+            //read-your-writes
+            store.aput("k1", "v1");
+            assertEquals("v1", store.getAsString("k1"));
+
+            //aput之后的同步put
+            store.aput("k2", "old");
+            store.put("k2", "new");
+            assertEquals("new", store.getAsString("k2"));
+            store.commitBatch();
+            assertEquals("new", store.getAsString("k2"));
+
+            //aput之后的同步delete
+            store.aput("k3", "v3");
+            store.delete("k3".getBytes());
+            store.commitBatch();
+            assertNull(store.getAsString("k3"));
+
+            //同步put之后的aput是新值
+            store.put("k4", "old");
+            store.aput("k4", "new");
+            assertEquals("new", store.getAsString("k4"));
+            store.commitBatch();
+            assertEquals("new", store.getAsString("k4"));
+
+            //iterator读到尚未提交的异步写
+            store.aput("k5", "v5");
+            KVStoreIterator iterator = store.iterator("k5");
+            assertTrue(iterator.hasNext());
+            assertEquals("k5", iterator.next());
+            assertEquals("v5", new String(iterator.getValue()));
+            assertTrue(!iterator.hasNext());
+
+            assertEquals("v1", store.getAsString("k1"));
+        } finally {
+            store.destroy();
+            scheduledExecutorService.shutdownNow();
+            FileUtil.deleteDirectory(dir);
+        }
+    }
+
+    /**
+     * 已有数据的库打开columnFamilies后, 缺省Column Family中的命名空间数据迁移到独立的Column Family
+     */
+    @Test
+    public void testColumnFamilyMigration() throws Exception
+    {
+        File dir = Files.createTempDirectory("rocksdbStoreTest").toFile();
+        String path = new File(dir, "db").getAbsolutePath();
+        SimpleBeansContainer beansContainer = new SimpleBeansContainer();
+        RocksDBStore store = new RocksDBStore(path);
+        try {
+            store.init(beansContainer);
+            store.getNamespace("ns.").put("k1", "v1");
+            store.put("other", "v2");
+            assertEquals("v1", store.getAsString("ns.k1"));
+        } finally {
+            store.destroy();
+        }
+
+        store = new RocksDBStore(path);
+        store.setColumnFamilies(true);
+        try {
+            store.init(beansContainer);
+            KVStore ns = store.getNamespace("ns.");
+            assertEquals("v1", ns.getAsString("k1"));
+            assertNull(store.getAsString("ns.k1"));
+            assertEquals("v2", store.getAsString("other"));
+        } finally {
+            store.destroy();
+            FileUtil.deleteDirectory(dir);
+        }
+    }
+
+}
@@ -15,6 +15,7 @@ import trader.common.util.CSVUtil;
 import trader.common.util.DateUtil;
 import trader.common.util.csv.CtpCSVMarshallHelper;
 import trader.service.md.ctp.CtpMarketData;
+import trader.service.md.ctp.CtpMarketDataDecoder;
 
 public class CtpMarketDataTest {
 
@@ -38,9 +39,9 @@ public class CtpMarketDataTest {
         CThostFtdcDepthMarketDataField tick = helper.unmarshall(ds.getRow());
         System.out.println(tick);
         CtpMarketData ctpTick = new CtpMarketData("ctp", SR001, tick, tradingDay);
-        System.out.println(ctpTick.updateTime);
+        System.out.println(ctpTick.getUpdateTime());
         assertTrue(ctpTick.tradingDay.equals("20190902"));
-        assertTrue(ctpTick.updateTime.toLocalDate().equals(DateUtil.str2localdate("20190830")));
+        assertTrue(ctpTick.getUpdateTime().toLocalDate().equals(DateUtil.str2localdate("20190830")));
         System.out.println();
 
         //日市时推送夜市数据
@@ -48,9 +49,9 @@ public class CtpMarketDataTest {
         tick = helper.unmarshall(ds.getRow());
         System.out.println(tick);
         ctpTick = new CtpMarketData("ctp", SR001, tick, tradingDay);
-        System.out.println(ctpTick.updateTime);
+        System.out.println(ctpTick.getUpdateTime());
         assertTrue(ctpTick.tradingDay.equals("20190902"));
-        assertTrue(ctpTick.updateTime.toLocalDate().equals(DateUtil.str2localdate("20190830")));
+        assertTrue(ctpTick.getUpdateTime().toLocalDate().equals(DateUtil.str2localdate("20190830")));
         System.out.println();
 
         //正常日市数据
@@ -58,12 +59,29 @@ public class CtpMarketDataTest {
         tick = helper.unmarshall(ds.getRow());
         System.out.println(tick);
         ctpTick = new CtpMarketData("ctp", SR001, tick, tradingDay);
-        System.out.println(ctpTick.updateTime);
+        System.out.println(ctpTick.getUpdateTime());
         assertTrue(ctpTick.tradingDay.equals("20190902"));
-        assertTrue(ctpTick.updateTime.toLocalDate().equals(DateUtil.str2localdate("20190902")));
+        assertTrue(ctpTick.getUpdateTime().toLocalDate().equals(DateUtil.str2localdate("20190902")));
         System.out.println();
     }
 
+    @Test
+    public void testDecoder() {
+        CtpCSVMarshallHelper helper = new CtpCSVMarshallHelper();
+        CSVDataSet ds = CSVUtil.parse(csvText);
+        CtpMarketDataDecoder decoder = new CtpMarketDataDecoder(tradingDay);
+        while(ds.next()) {
+            CThostFtdcDepthMarketDataField tick = helper.unmarshall(ds.getRow());
+            CtpMarketData ctpTick = new CtpMarketData("ctp", SR001, tick, tradingDay);
+            CtpMarketData ctpTick2 = new CtpMarketData("ctp", SR001, tick, decoder);
+            assertTrue(ctpTick.tradingDay.equals(ctpTick2.tradingDay));
+            assertTrue(ctpTick.getUpdateTime().equals(ctpTick2.getUpdateTime()));
+            assertTrue(ctpTick.updateTimestamp==ctpTick2.updateTimestamp);
+            assertTrue(ctpTick.lastPrice==ctpTick2.lastPrice);
+            assertTrue(ctpTick.depth==ctpTick2.depth);
+        }
+    }
+
     @Test
     public void testFromJson() {
 
@@ -74,14 +92,14 @@ public class CtpMarketDataTest {
         ds.next();
         CThostFtdcDepthMarketDataField tick = helper.unmarshall(ds.getRow());
         CtpMarketData ctpTick = new CtpMarketData("ctp", SR001, tick, tradingDay);
-        System.out.println(ctpTick.updateTime);
+        System.out.println(ctpTick.getUpdateTime());
 
         JsonElement json = ctpTick.toJson();
         MarketData jsonTick = MarketData.fromJson(json);
 
         assertTrue(jsonTick.producerId.equals(ctpTick.producerId));
         assertTrue(jsonTick.instrument.equals(ctpTick.instrument));
-        assertTrue(jsonTick.updateTime.equals(ctpTick.updateTime));
+        assertTrue(jsonTick.getUpdateTime().equals(ctpTick.getUpdateTime()));
         assertTrue(jsonTick.updateTimestamp==(ctpTick.updateTimestamp));
         assertTrue(jsonTick.volume==ctpTick.volume);
         assertTrue(jsonTick.turnover==ctpTick.turnover);
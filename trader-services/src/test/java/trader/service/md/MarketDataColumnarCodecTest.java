@@ -0,0 +1,77 @@
+package trader.service.md;
+
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import trader.common.util.CSVDataSet;
+import trader.common.util.CSVUtil;
+import trader.common.util.csv.CtpCSVMarshallHelper;
+import trader.service.md.ctp.CtpMarketData;
+
+public class MarketDataColumnarCodecTest {
+
+    @Test
+    public void testEncodeDecode() throws Exception {
+        CtpCSVMarshallHelper helper = new CtpCSVMarshallHelper();
+        CSVDataSet ds = CSVUtil.parse(CtpMarketDataTest.csvText);
+        List<MarketData> ticks = new ArrayList<>();
+        while(ds.next()) {
+            ticks.add(new CtpMarketData("ctp", CtpMarketDataTest.SR001, helper.unmarshall(ds.getRow()), CtpMarketDataTest.tradingDay));
+        }
+        ByteBuffer buf = MarketDataColumnarCodec.encode("ctp", CtpMarketDataTest.tradingDay, ticks);
+        List<MarketData> ticks2 = MarketDataColumnarCodec.decode(CtpMarketDataTest.SR001, buf);
+        assertTrue(ticks2.size()==ticks.size());
+        for(int i=0;i<ticks.size();i++) {
+            MarketData tick = ticks.get(i), tick2 = ticks2.get(i);
+            assertTrue(tick2.producerId.equals(tick.producerId));
+            assertTrue(tick2.tradingDay.equals(tick.tradingDay));
+            assertTrue(tick2.updateTimestamp==tick.updateTimestamp);
+            assertTrue(tick2.getUpdateTime().equals(tick.getUpdateTime()));
+            assertTrue(tick2.lastPrice==tick.lastPrice);
+            assertTrue(tick2.volume==tick.volume);
+            assertTrue(tick2.turnover==tick.turnover);
+            assertTrue(tick2.openInterest==tick.openInterest);
+            assertTrue(tick2.averagePrice==tick.averagePrice);
+            assertTrue(tick2.upperLimitPrice==tick.upperLimitPrice);
+            assertTrue(tick2.depth==tick.depth);
+            assertTrue(Arrays.equals(tick2.bidPrices, tick.bidPrices));
+            assertTrue(Arrays.equals(tick2.askVolumes, tick.askVolumes));
+        }
+    }
+
+    @Test
+    public void testCursor() throws Exception {
+        CtpCSVMarshallHelper helper = new CtpCSVMarshallHelper();
+        CSVDataSet ds = CSVUtil.parse(CtpMarketDataTest.csvText);
+        List<MarketData> ticks = new ArrayList<>();
+        while(ds.next()) {
+            ticks.add(new CtpMarketData("ctp", CtpMarketDataTest.SR001, helper.unmarshall(ds.getRow()), CtpMarketDataTest.tradingDay));
+        }
+        ByteBuffer buf = MarketDataColumnarCodec.encode("ctp", CtpMarketDataTest.tradingDay, ticks);
+        //批量读取, batch重复使用
+        List<MarketData> batch = new ArrayList<>();
+        List<MarketData> ticks2 = new ArrayList<>();
+        try(MarketDataCursor cursor = MarketDataColumnarCodec.openCursor(CtpMarketDataTest.SR001, buf);){
+            while(cursor.next(batch, 3)>0) {
+                assertTrue(batch.size()<=3);
+                ticks2.addAll(batch);
+            }
+            assertTrue(cursor.next()==null);
+        }
+        assertTrue(ticks2.size()==ticks.size());
+        for(int i=0;i<ticks.size();i++) {
+            MarketData tick = ticks.get(i), tick2 = ticks2.get(i);
+            assertTrue(tick2.updateTimestamp==tick.updateTimestamp);
+            assertTrue(tick2.lastPrice==tick.lastPrice);
+            assertTrue(tick2.volume==tick.volume);
+            assertTrue(Arrays.equals(tick2.bidPrices, tick.bidPrices));
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+package trader.service.md;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.Test;
+
+import trader.common.exchangeable.Exchangeable;
+import trader.common.exchangeable.ExchangeableData;
+import trader.common.exchangeable.ExchangeableTradingTimes;
+import trader.common.exchangeable.MarketTimeStage;
+import trader.common.tick.PriceLevel;
+import trader.common.util.DateUtil;
+import trader.common.util.TraderHomeUtil;
+import trader.service.TraderHomeHelper;
+import trader.service.ta.BarSeriesLoader;
+import trader.service.util.SimpleBeansContainer;
+import trader.simulator.SimMarketDataService;
+
+public class MarketDataPostProcessTest {
+    private static final int ROUNDS = 10;
+
+    static {
+        TraderHomeHelper.init(null);
+    }
+
+    /**
+     * ru1901 20181203: 夜市 2018-11-30 21:00-23:00, 日市 09:00-10:15, 10:30-11:30, 13:30-15:00.
+     * <BR>时间戳按+08:00手工换算, 交易时间按交易小节手工累加
+     */
+    @Test
+    public void testKnownTimestamps()
+    {
+        Exchangeable ru1901 = Exchangeable.fromString("ru1901");
+        ExchangeableTradingTimes tradingTimes = ru1901.exchange().getTradingTimes(ru1901, LocalDate.of(2018, 12, 3));
+
+        //2018-11-30 20:59:00, 夜市集合竞价
+        assertPostProcess(tradingTimes, 1543582740000L, LocalDateTime.of(2018, 11, 30, 20, 59, 0), MarketTimeStage.AggregateAuction, -1);
+        //2018-11-30 21:00:01.500
+        assertPostProcess(tradingTimes, 1543582801500L, LocalDateTime.of(2018, 11, 30, 21, 0, 1, 500_000_000), MarketTimeStage.MarketOpen, 1500);
+        //2018-12-03 08:30:00, 夜市2小时
+        assertPostProcess(tradingTimes, 1543797000000L, LocalDateTime.of(2018, 12, 3, 8, 30, 0), MarketTimeStage.BeforeMarketOpen, 7200000);
+        //2018-12-03 09:00:00
+        assertPostProcess(tradingTimes, 1543798800000L, LocalDateTime.of(2018, 12, 3, 9, 0, 0), MarketTimeStage.MarketOpen, 7200000);
+        //2018-12-03 10:20:00, 2小时+75分钟
+        assertPostProcess(tradingTimes, 1543803600000L, LocalDateTime.of(2018, 12, 3, 10, 20, 0), MarketTimeStage.MarketBreak, 11700000);
+        //2018-12-03 11:00:00, 2小时+75分钟+30分钟
+        assertPostProcess(tradingTimes, 1543806000000L, LocalDateTime.of(2018, 12, 3, 11, 0, 0), MarketTimeStage.MarketOpen, 13500000);
+        //2018-12-03 15:00:00, 全天345分钟
+        assertPostProcess(tradingTimes, 1543820400000L, LocalDateTime.of(2018, 12, 3, 15, 0, 0), MarketTimeStage.MarketOpen, 20700000);
+        assertEquals(20700000, tradingTimes.getTotalTradingMillis());
+        //2018-12-03 15:30:00
+        assertPostProcess(tradingTimes, 1543822200000L, LocalDateTime.of(2018, 12, 3, 15, 30, 0), MarketTimeStage.MarketClose, -1);
+    }
+
+    private static void assertPostProcess(ExchangeableTradingTimes tradingTimes, long timestamp, LocalDateTime updateTime, MarketTimeStage stage, int mktTime) {
+        SimpleMarketData tick = new SimpleMarketData();
+        tick.instrument = tradingTimes.getInstrument();
+        tick.setUpdateTimestamp(timestamp);
+        tick.postProcess(tradingTimes);
+        assertEquals(updateTime.toString(), stage, tick.mktStage);
+        assertEquals(updateTime.toString(), mktTime, tick.mktTime);
+        assertEquals(updateTime, tick.getUpdateTime());
+
+        //从LocalDateTime设置时间戳
+        SimpleMarketData tick2 = new SimpleMarketData();
+        tick2.instrument = tradingTimes.getInstrument();
+        tick2.setUpdateTime(updateTime);
+        assertEquals(timestamp, tick2.updateTimestamp);
+    }
+
+    /**
+     * 一天的TICK: 市场时间不会倒退, 不超出全天交易时长, 并统计postProcess的耗时
+     */
+    @Test
+    public void testPostProcess() throws Exception
+    {
+        Exchangeable ru1901 = Exchangeable.fromString("ru1901");
+        LocalDate tradingDay = DateUtil.str2localdate("20181203");
+        SimpleBeansContainer beansContainer = new SimpleBeansContainer();
+        SimMarketDataService mdService = new SimMarketDataService();
+        mdService.init(beansContainer);
+        beansContainer.addBean(MarketDataService.class, mdService);
+        BarSeriesLoader loader= new BarSeriesLoader(beansContainer, TraderHomeUtil.getExchangeableData());
+        loader
+            .setInstrument(ru1901)
+            .setStartTradingDay(tradingDay)
+            .setEndTradingDay(tradingDay)
+            .setLevel(PriceLevel.MIN1);
+        List<MarketData> ticks = loader.loadMarketDataTicks(tradingDay, ExchangeableData.TICK_CTP);
+        assertTrue(ticks.size()>0);
+        ExchangeableTradingTimes tradingTimes = ru1901.exchange().getTradingTimes(ru1901, tradingDay);
+
+        long t0 = System.nanoTime();
+        int openCount = 0;
+        for(int round=0;round<ROUNDS;round++) {
+            int lastMktTime = -1;
+            for(MarketData tick:ticks) {
+                tick.postProcess(tradingTimes);
+                if ( tick.mktStage==MarketTimeStage.MarketOpen ) {
+                    assertTrue(tick.mktTime>=lastMktTime);
+                    assertTrue(tick.mktTime<=tradingTimes.getTotalTradingMillis());
+                    lastMktTime = tick.mktTime;
+                    openCount++;
+                }
+            }
+        }
+        long t1 = System.nanoTime();
+        assertTrue(openCount>0);
+        System.out.println("Post process "+ticks.size()+" ticks x "+ROUNDS+", "+(t1-t0)/1000+" us");
+    }
+
+}
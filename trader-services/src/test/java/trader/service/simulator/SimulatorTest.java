@@ -1,10 +1,14 @@
 package trader.service.simulator;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.time.LocalDate;
 import java.time.Month;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
@@ -14,6 +18,7 @@ import trader.common.exchangeable.ExchangeableTradingTimes;
 import trader.service.TraderHomeHelper;
 import trader.service.data.KVStoreService;
 import trader.service.log.LogServiceImpl;
+import trader.service.md.MarketData;
 import trader.service.md.MarketDataService;
 import trader.service.ta.TechnicalAnalysisServiceImpl;
 import trader.service.trade.Account;
@@ -57,10 +62,69 @@ public class SimulatorTest {
 
     }
 
+    private static class EventsRun {
+        SimMarketTimeService mtService;
+        List<String> events = new ArrayList<>();
+        /**
+         * 时间推进循环的实际耗时, 不包含加载数据
+         */
+        long elapsedNanos;
+    }
+
+    /**
+     * 事件驱动的时间推进与逐个时间片推进的结果相同, 并对比两种方式处理同一天数据的实际耗时
+     */
+    @Test
+    public void test_eventDriven() throws Exception
+    {
+        Exchangeable au1906 = Exchangeable.fromString("au1906");
+        LocalDate tradingDay = LocalDate.of(2018, Month.DECEMBER, 28);
+
+        //先各运行一次预热, 耗时取第二次运行
+        runEvents(au1906, tradingDay, false);
+        runEvents(au1906, tradingDay, true);
+        EventsRun stepRun = runEvents(au1906, tradingDay, false);
+        EventsRun eventDrivenRun = runEvents(au1906, tradingDay, true);
+
+        assertTrue(stepRun.events.size()>0);
+        assertEquals(stepRun.events, eventDrivenRun.events);
+        assertEquals(stepRun.mtService.getTotalSteps(), stepRun.mtService.getStepCount());
+        assertTrue(eventDrivenRun.mtService.getStepCount()<stepRun.mtService.getStepCount());
+        System.out.println(String.format("Steps %d, %d ms / event driven steps %d, %d ms, speedup %.1f",
+                stepRun.mtService.getStepCount(), stepRun.elapsedNanos/1000000,
+                eventDrivenRun.mtService.getStepCount(), eventDrivenRun.elapsedNanos/1000000,
+                ((double)stepRun.elapsedNanos)/Math.max(1, eventDrivenRun.elapsedNanos)));
+    }
+
+    private static EventsRun runEvents(Exchangeable e, LocalDate tradingDay, boolean eventDriven) throws Exception
+    {
+        EventsRun result = new EventsRun();
+        BeansContainer beansContainer = initBeans(e, tradingDay, eventDriven);
+        SimMarketTimeService mtService = beansContainer.getBean(SimMarketTimeService.class);
+        MarketDataService mdService = beansContainer.getBean(MarketDataService.class);
+        mdService.addListener((MarketData md)->{
+            result.events.add("tick "+mtService.getMarketTime()+" "+md.getUpdateTime()+" "+md.lastPrice);
+        }, e);
+        beansContainer.getBean(ScheduledExecutorService.class).scheduleAtFixedRate(()->{
+            result.events.add("timer "+mtService.getMarketTime());
+        }, 0, 5, TimeUnit.SECONDS);
+        long t0 = System.nanoTime();
+        while(mtService.nextTimePiece());
+        result.elapsedNanos = System.nanoTime()-t0;
+        result.mtService = mtService;
+        return result;
+    }
+
     private static BeansContainer initBeans(Exchangeable e, LocalDate tradingDay) throws Exception
+    {
+        return initBeans(e, tradingDay, false);
+    }
+
+    private static BeansContainer initBeans(Exchangeable e, LocalDate tradingDay, boolean eventDriven) throws Exception
     {
         SimpleBeansContainer beansContainer = new SimpleBeansContainer();
         SimMarketTimeService mtService = new SimMarketTimeService();
+        mtService.setEventDriven(eventDriven);
         SimScheduledExecutorService scheduledExecutorService = new SimScheduledExecutorService();
         SimMarketDataService mdService = new SimMarketDataService();
         SimKVStoreService kvStoreService = new SimKVStoreService();
@@ -0,0 +1,101 @@
+package trader.service.ta;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import trader.common.exchangeable.Exchangeable;
+import trader.common.exchangeable.ExchangeableData;
+import trader.common.tick.PriceLevel;
+import trader.common.util.FileUtil;
+import trader.common.util.TraderHomeUtil;
+import trader.service.TraderHomeHelper;
+import trader.service.md.MarketDataService;
+import trader.service.util.SimpleBeansContainer;
+import trader.simulator.SimMarketDataService;
+
+public class BarSeriesSnapshotTest {
+
+    static {
+        TraderHomeHelper.init(null);
+    }
+
+    @Test
+    public void testSnapshot() throws Exception
+    {
+        Exchangeable ru1901 = Exchangeable.fromString("ru1901");
+        LocalDate tradingDay = LocalDate.of(2018, 12, 3);
+        SimpleBeansContainer beansContainer = new SimpleBeansContainer();
+        final SimMarketDataService mdService = new SimMarketDataService();
+        mdService.init(beansContainer);
+        beansContainer.addBean(MarketDataService.class, mdService);
+
+        ExchangeableData data = TraderHomeUtil.getExchangeableData();
+        BarSeriesLoader loader= new BarSeriesLoader(beansContainer, data);
+        loader
+            .setInstrument(ru1901)
+            .setStartTradingDay(tradingDay)
+            .setEndTradingDay(tradingDay)
+            .setLevel(PriceLevel.MIN5);
+        LeveledBarSeries min5Series = loader.load();
+        assertTrue(min5Series.getBarCount()>0);
+        List<FutureBar> bars = new ArrayList<>();
+        for(int i=0;i<min5Series.getBarCount();i++) {
+            bars.add((FutureBar)min5Series.getBar(i));
+        }
+
+        //编码/解码
+        BarSeriesSnapshot snapshot = new BarSeriesSnapshot(ru1901, PriceLevel.MIN5, 1, 2, Arrays.asList(tradingDay), bars);
+        ByteBuffer buf = snapshot.encode();
+        BarSeriesSnapshot snapshot2 = BarSeriesSnapshot.decode(ru1901, buf);
+        assertEquals(PriceLevel.MIN5, snapshot2.getLevel());
+        assertEquals(1, snapshot2.getConfigHash());
+        assertEquals(2, snapshot2.getDataFingerprint());
+        assertEquals(tradingDay, snapshot2.getLastTradingDay());
+        assertEquals(bars.size(), snapshot2.getBarCount());
+        List<FutureBar> bars2 = snapshot2.getBars();
+        for(int i=0;i<bars.size();i++) {
+            FutureBar bar = bars.get(i), bar2 = bars2.get(i);
+            assertEquals(bar.getIndex(), bar2.getIndex());
+            assertEquals(bar.getBeginTime(), bar2.getBeginTime());
+            assertEquals(bar.getEndTime(), bar2.getEndTime());
+            assertEquals(bar.getOpenPrice(), bar2.getOpenPrice());
+            assertEquals(bar.getHighPrice(), bar2.getHighPrice());
+            assertEquals(bar.getLowPrice(), bar2.getLowPrice());
+            assertEquals(bar.getClosePrice(), bar2.getClosePrice());
+            assertEquals(bar.getVolume(), bar2.getVolume());
+            assertEquals(bar.getAmount(), bar2.getAmount());
+            assertEquals(bar.getOpenInterest(), bar2.getOpenInterest());
+            assertEquals(bar.getTimePeriod(), bar2.getTimePeriod());
+        }
+
+        //文件缓存
+        File dir = Files.createTempDirectory("barSnapshot").toFile();
+        try {
+            BarSeriesSnapshotCache cache = new BarSeriesSnapshotCache(dir, data);
+            cache.save(ru1901, PriceLevel.MIN5, 1, Arrays.asList(tradingDay), bars);
+            LocalDate nextDay = LocalDate.of(2018, 12, 4);
+            BarSeriesSnapshot snapshot3 = cache.load(ru1901, PriceLevel.MIN5, 1, tradingDay, nextDay);
+            assertTrue(snapshot3!=null);
+            assertEquals(bars.size(), snapshot3.getBars().size());
+            //配置改变
+            assertTrue(cache.load(ru1901, PriceLevel.MIN5, 3, tradingDay, nextDay)==null);
+            //不包含起始交易日
+            assertTrue(cache.load(ru1901, PriceLevel.MIN5, 1, LocalDate.of(2018, 11, 30), nextDay)==null);
+            //包含结束交易日
+            assertTrue(cache.load(ru1901, PriceLevel.MIN5, 1, tradingDay, tradingDay)==null);
+        }finally {
+            FileUtil.deleteDirectory(dir);
+        }
+    }
+
+}
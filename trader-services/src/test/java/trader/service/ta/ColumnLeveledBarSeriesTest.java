@@ -0,0 +1,140 @@
+package trader.service.ta;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import org.junit.Test;
+
+import trader.common.exchangeable.Exchangeable;
+import trader.common.exchangeable.ExchangeableData;
+import trader.common.tick.PriceLevel;
+import trader.common.util.TraderHomeUtil;
+import trader.service.TraderHomeHelper;
+import trader.service.md.MarketDataService;
+import trader.service.util.SimpleBeansContainer;
+import trader.simulator.SimMarketDataService;
+
+public class ColumnLeveledBarSeriesTest {
+
+    static {
+        TraderHomeHelper.init(null);
+    }
+
+    @Test
+    public void testFromSeries() throws Exception
+    {
+        Exchangeable ru1901 = Exchangeable.fromString("ru1901");
+        SimpleBeansContainer beansContainer = new SimpleBeansContainer();
+        final SimMarketDataService mdService = new SimMarketDataService();
+        mdService.init(beansContainer);
+        beansContainer.addBean(MarketDataService.class, mdService);
+
+        ExchangeableData data = TraderHomeUtil.getExchangeableData();
+        BarSeriesLoader loader= new BarSeriesLoader(beansContainer, data);
+        loader
+            .setInstrument(ru1901)
+            .setStartTradingDay(LocalDate.of(2018, 12, 3))
+            .setEndTradingDay(LocalDate.of(2018, 12, 3))
+            .setLevel(PriceLevel.MIN1);
+        LeveledBarSeries min1Series = loader.load();
+        assertTrue(min1Series.getBarCount()>0);
+
+        ColumnLeveledBarSeries series = ColumnLeveledBarSeries.fromSeries(min1Series);
+        assertEquals(min1Series.getBarCount(), series.getBarCount());
+        for(int i=0;i<series.getBarCount();i++) {
+            Bar2 bar = min1Series.getBar2(i);
+            Bar2 bar2 = series.getBar2(i);
+            assertEquals(bar.getOpenPrice(), bar2.getOpenPrice());
+            assertEquals(bar.getHighPrice(), bar2.getHighPrice());
+            assertEquals(bar.getLowPrice(), bar2.getLowPrice());
+            assertEquals(bar.getClosePrice(), bar2.getClosePrice());
+            assertEquals(bar.getVolume(), bar2.getVolume());
+            assertEquals(bar.getOpenInterest(), bar2.getOpenInterest());
+            assertEquals(bar.getBeginTime(), bar2.getBeginTime());
+            assertEquals(bar.getEndTime(), bar2.getEndTime());
+            assertEquals(bar.getIndex(), bar2.getIndex());
+        }
+
+        //子序列共享数据
+        LeveledBarSeries subSeries = (LeveledBarSeries)series.getSubSeries(10, 20);
+        assertEquals(10, subSeries.getBarCount());
+        assertEquals(series.getBar(10).getEndTime(), subSeries.getBar(0).getEndTime());
+        assertEquals(series.getBar(19).getClosePrice(), subSeries.getBar(9).getClosePrice());
+        assertEquals(series.getMemoryUsage(), ((ColumnLeveledBarSeries)subSeries).getMemoryUsage());
+
+        //删除和替换最后一个KBAR
+        int barCount = series.getBarCount();
+        series.removeLastBar();
+        assertEquals(barCount-1, series.getBarCount());
+        series.addBar(min1Series.getLastBar());
+        series.addBar(min1Series.getBar(0), true);
+        assertEquals(barCount, series.getBarCount());
+        assertEquals(min1Series.getBar(0).getEndTime(), series.getLastBar().getEndTime());
+
+        long memoryUsage = ColumnLeveledBarSeries.getMemoryUsages().get(ru1901.uniqueId()+"-"+PriceLevel.MIN1);
+        assertTrue(memoryUsage>=series.getMemoryUsage());
+        assertTrue(series.getMemoryUsage()>=((long)barCount)*ColumnLeveledBarSeries.BYTES_PER_BAR);
+    }
+
+    @Test
+    public void testMutators() throws Exception
+    {
+        Exchangeable ru1901 = Exchangeable.fromString("ru1901");
+        ColumnLeveledBarSeries series = new ColumnLeveledBarSeries(ru1901, "ru1901-test", PriceLevel.MIN1, LongNum::valueOf);
+        ZonedDateTime endTime = ZonedDateTime.of(2018, 12, 3, 9, 1, 0, 0, ZoneId.of("Asia/Shanghai"));
+        for(int i=0;i<5;i++) {
+            series.addBar(Duration.ofMinutes(1), endTime.plusMinutes(i));
+            series.addPrice(LongNum.valueOf(12000+i));
+            series.addTrade(LongNum.valueOf(2), LongNum.valueOf(12010+i));
+        }
+        assertEquals(5, series.getBarCount());
+        Bar bar = series.getBar(4);
+        assertEquals(LongNum.valueOf(12004), bar.getOpenPrice());
+        assertEquals(LongNum.valueOf(12014), bar.getHighPrice());
+        assertEquals(LongNum.valueOf(12004), bar.getLowPrice());
+        assertEquals(LongNum.valueOf(12014), bar.getClosePrice());
+        assertEquals(LongNum.valueOf(2), bar.getVolume());
+        //空KBAR没有价格
+        series.addBar(Duration.ofMinutes(1), endTime.plusMinutes(5));
+        assertNull(series.getLastBar().getOpenPrice());
+
+        //超出最大数量的KBAR从头部删除, 序号保持不变
+        series.setMaximumBarCount(3);
+        assertEquals(3, series.getBarCount());
+        assertEquals(3, series.getRemovedBarsCount());
+        assertEquals(3, series.getBeginIndex());
+        assertEquals(5, series.getEndIndex());
+        assertEquals(endTime.plusMinutes(3), series.getBar(3).getEndTime());
+
+        //序列化后数据不变
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try(ObjectOutputStream oos = new ObjectOutputStream(bos);){
+            oos.writeObject(series);
+        }
+        ColumnLeveledBarSeries series2 = null;
+        try(ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));){
+            series2 = (ColumnLeveledBarSeries)ois.readObject();
+        }
+        assertEquals(series.getBarCount(), series2.getBarCount());
+        assertEquals(series.getBeginIndex(), series2.getBeginIndex());
+        assertEquals(series.getMaximumBarCount(), series2.getMaximumBarCount());
+        assertEquals(ru1901, series2.getExchangeable());
+        assertEquals(PriceLevel.MIN1, series2.getLevel());
+        for(int i=series.getBeginIndex();i<=series.getEndIndex();i++) {
+            assertEquals(series.getBar(i).getEndTime(), series2.getBar(i).getEndTime());
+            assertEquals(series.getBar(i).getClosePrice(), series2.getBar(i).getClosePrice());
+            assertEquals(series.getBar(i).getVolume(), series2.getBar(i).getVolume());
+        }
+    }
+
+}
@@ -1,11 +1,14 @@
 package trader.service.ta;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.time.LocalDate;
 import java.time.Month;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.Test;
@@ -81,13 +84,61 @@ public class TAServiceTest {
         BarSeries min1Series = item.getSeries(PriceLevel.MIN1);
         Bar lastMin1Bar= min1Series.getLastBar();
         assertTrue(lastMin1Bar.getBeginTime().toLocalDateTime().getMinute()==59);
-        assertTrue(lastMin1Bar.getEndTime().toLocalDateTime().equals(lastTick.updateTime));
+        assertTrue(lastMin1Bar.getEndTime().toLocalDateTime().equals(lastTick.getUpdateTime()));
 
         BarSeries min5Series = item.getSeries(PriceLevel.MIN5);
         Bar lastMin5Bar = min5Series.getLastBar();
         //assertTrue(lastMin3Bar.getEndTime().toLocalDateTime().getMinute()==0);
     }
 
+    /**
+     * 多个品种并行预加载, 同时创建动态级别
+     */
+    @Test
+    public void testParallelPreload() throws Exception
+    {
+        LocalDate tradingDay = LocalDate.of(2018,  Month.DECEMBER, 3);
+        Exchangeable ru1901 = Exchangeable.fromString("ru1901");
+        List<Exchangeable> instruments = Arrays.asList(new Exchangeable[] {ru1901, Exchangeable.fromString("ru1905"), Exchangeable.fromString("cu1901"), Exchangeable.fromString("ag1906")});
+        final SimpleBeansContainer beansContainer = new SimpleBeansContainer();
+        final SimMarketTimeService marketTime = new SimMarketTimeService();
+        final SimMarketDataService mdService = new SimMarketDataService();
+        ExchangeableTradingTimes tradingTimes = ru1901.exchange().getTradingTimes(ru1901, tradingDay);
+        marketTime.setTimeRanges(tradingDay, tradingTimes.getMarketTimes() );
+        beansContainer.addBean(MarketTimeService.class, marketTime);
+        beansContainer.addBean(MarketDataService.class, mdService);
+        mdService.addSubscriptions(instruments);
+        mdService.init(beansContainer);
+
+        String levels = "min1, min3, min7, vol1k, vol2k, amt5k, amt7k, day";
+        TechnicalAnalysisServiceImpl taService = new TechnicalAnalysisServiceImpl();
+        taService.setPreloadThreads(instruments.size());
+        for(String commodity:new String[] {"ru.shfe", "cu.shfe", "ag.shfe"}) {
+            Map<String, String> config = new HashMap<>();
+            config.put("strokeThreshold", "10");
+            config.put("lineWidth", "10");
+            config.put("levels", levels);
+            taService.addInstrumentDef(new InstrumentDef(Exchangeable.fromString(commodity), config));
+        }
+        taService.init(beansContainer);
+
+        List<PriceLevel> expectedLevels = new ArrayList<>();
+        for(String level:StringUtil.split(levels, ",")) {
+            expectedLevels.add(PriceLevel.valueOf(level));
+        }
+        for(Exchangeable e:instruments) {
+            TechnicalAnalysisAccess access = taService.forInstrument(e);
+            assertTrue(access!=null);
+            List<PriceLevel> accessLevels = access.getLevels();
+            assertEquals(expectedLevels, accessLevels);
+            //动态级别只创建一次
+            for(int i=0;i<accessLevels.size();i++) {
+                assertTrue(accessLevels.get(i)==expectedLevels.get(i));
+            }
+        }
+        assertTrue(taService.forInstrument(ru1901).getSeries(PriceLevel.MIN1).getBarCount()>0);
+    }
+
 }
 
 
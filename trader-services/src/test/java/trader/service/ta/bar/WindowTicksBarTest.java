@@ -1,8 +1,11 @@
 package trader.service.ta.bar;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
 
 import org.junit.Test;
@@ -17,6 +20,7 @@ import trader.common.util.TraderHomeUtil;
 import trader.service.md.MarketData;
 import trader.service.md.MarketDataService;
 import trader.service.ta.BarSeriesLoader;
+import trader.service.ta.LongNum;
 import trader.service.util.SimpleBeansContainer;
 import trader.simulator.SimMarketDataService;
 
@@ -59,6 +63,69 @@ public class WindowTicksBarTest {
         assertTrue(ticks.size()>0);
     }
 
+    /**
+     * 5分钟时间窗口, 单调队列的最高/最低价与每次重新遍历窗口的结果一致, 并对比耗时
+     */
+    @Test
+    public void testTimedWindowMinMax() throws Exception
+    {
+        final int maxLifeTime = 5*60*1000;
+        List<MarketData> openTicks = new ArrayList<>();
+        for(MarketData tick:ticks) {
+            if ( tick.mktStage==MarketTimeStage.MarketOpen ) {
+                openTicks.add(tick);
+            }
+        }
+        //每个TICK的最高/最低价
+        long[] highs = new long[openTicks.size()], lows = new long[openTicks.size()];
+        for(int i=0;i<openTicks.size();i++) {
+            MarketData tick = openTicks.get(i);
+            highs[i] = tick.lastPrice;
+            lows[i] = tick.lastPrice;
+            if ( i>0 ) {
+                MarketData lastTick = openTicks.get(i-1);
+                if ( lastTick.highestPrice!=tick.highestPrice && PriceUtil.isValidPrice(tick.highestPrice)) {
+                    highs[i] = tick.highestPrice;
+                }
+                if ( lastTick.lowestPrice!=tick.lowestPrice && PriceUtil.isValidPrice(tick.lowestPrice)) {
+                    lows[i] = tick.lowestPrice;
+                }
+            }
+        }
+
+        TimedWindowTicksBar timedBar = new TimedWindowTicksBar(maxLifeTime);
+        long[] barHighs = new long[openTicks.size()], barLows = new long[openTicks.size()];
+        long t0 = System.nanoTime();
+        for(int i=0;i<openTicks.size();i++) {
+            timedBar.update(openTicks.get(i));
+            barHighs[i] = ((LongNum)timedBar.getHighPrice()).rawValue();
+            barLows[i] = ((LongNum)timedBar.getLowPrice()).rawValue();
+        }
+        long t1 = System.nanoTime();
+        LinkedList<Integer> window = new LinkedList<>();
+        long[] scanHighs = new long[openTicks.size()], scanLows = new long[openTicks.size()];
+        for(int i=0;i<openTicks.size();i++) {
+            window.add(i);
+            while( openTicks.get(window.peek()).mktTime+maxLifeTime<openTicks.get(i).mktTime ) {
+                window.poll();
+            }
+            long high = Long.MIN_VALUE, low = Long.MAX_VALUE;
+            for(int j:window) {
+                high = Math.max(high, highs[j]);
+                low = Math.min(low, lows[j]);
+            }
+            scanHighs[i] = high;
+            scanLows[i] = low;
+        }
+        long t2 = System.nanoTime();
+        for(int i=0;i<openTicks.size();i++) {
+            assertEquals(scanHighs[i], barHighs[i]);
+            assertEquals(scanLows[i], barLows[i]);
+        }
+        assertTrue(openTicks.size()>0);
+        System.out.println("Timed window "+maxLifeTime/1000+"s ticks "+openTicks.size()+", bar "+(t1-t0)/1000+" us, scan "+(t2-t1)/1000+" us");
+    }
+
     private static List<MarketData> loadTicks(Exchangeable ru1901, LocalDate tradingDay)
     {
         try {
@@ -1,5 +1,6 @@
 package trader.service.trade;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.time.LocalDate;
@@ -9,8 +10,11 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
 import java.util.TreeMap;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -21,6 +25,7 @@ import trader.common.exchangeable.Exchangeable;
 import trader.common.util.PriceUtil;
 import trader.common.util.TimestampSeqGen;
 import trader.common.util.TraderHomeUtil;
+import trader.service.ServiceErrorConstants;
 import trader.service.TraderHomeHelper;
 import trader.service.data.KVStoreService;
 import trader.service.md.MarketData;
@@ -34,7 +39,7 @@ import trader.simulator.trade.SimTxnSession;
 import trader.simulator.trade.SimTxnSessionFactory;
 
 @SuppressWarnings({"unchecked", "unused", "rawtypes"})
-public class AccountTest implements TradeConstants {
+public class AccountTest implements TradeConstants, ServiceErrorConstants {
     static {
         TraderHomeHelper.init(null);
     }
@@ -510,6 +515,298 @@ public class AccountTest implements TradeConstants {
             assertTrue(account.getMoney(AccMoney.FrozenCommission)==0);
         }
     }
+
+    /**
+     * 行情线程持续更新持仓盈亏的同时报单/撤单, 统计报单耗时, 并检查增量更新的账户资金与持仓一致
+     */
+    @Test
+    public void testOrderWhileMarketData() throws Exception
+    {
+        final int ORDER_COUNT = 2000;
+        //到9:01:00
+        while(mtService.nextTimePiece()) {
+            LocalDateTime time = mtService.getMarketTime();
+            if ( time.getHour()==9 && time.getMinute()==1 ) {
+                break;
+            }
+        }
+        //开仓, 之后每个行情都需要计算持仓盈亏
+        MarketData md = mdService.getLastData(au1906);
+        Order openOrder = account.createOrder(new OrderBuilder()
+                .setDirection(OrderDirection.Buy)
+                .setExchagneable(au1906)
+                .setLimitPrice(md.lastPrice+10000)
+                .setPriceType(OrderPriceType.LimitPrice)
+                .setOffsetFlag(OrderOffsetFlag.OPEN));
+        for(int i=0;i<100 && openOrder.getStateTuple().getState()!=OrderState.Complete;i++) {
+            mtService.nextTimePiece();
+        }
+        assertTrue(openOrder.getStateTuple().getState()==OrderState.Complete);
+        Position pos = account.getPosition(au1906);
+        assertTrue(pos.getVolume(PosVolume.LongPosition)>0);
+
+        final MarketData tick0 = mdService.getLastData(au1906);
+        final AtomicBoolean stopped = new AtomicBoolean();
+        final long[] tickCount = new long[1];
+        Thread mdThread = new Thread(()->{
+            MarketData tick = tick0.clone();
+            long i=0;
+            while(!stopped.get()) {
+                tick.lastPrice = tick0.lastPrice+PriceUtil.price2long(i%20-10);
+                account.onMarketData(tick);
+                i++;
+            }
+            tickCount[0] = i;
+        });
+        mdThread.start();
+
+        long totalNanos = 0, maxNanos = 0;
+        for(int i=0;i<ORDER_COUNT;i++) {
+            long t0 = System.nanoTime();
+            Order order = account.createOrder(new OrderBuilder()
+                    .setDirection(OrderDirection.Buy)
+                    .setExchagneable(au1906)
+                    .setLimitPrice(tick0.lastPrice-PriceUtil.price2long(20))
+                    .setPriceType(OrderPriceType.LimitPrice)
+                    .setOffsetFlag(OrderOffsetFlag.OPEN));
+            long t1 = System.nanoTime();
+            totalNanos += (t1-t0);
+            maxNanos = Math.max(maxNanos, t1-t0);
+            //直接回报撤单, 解冻资金
+            account.onOrderStateChanged(order, new OrderStateTuple(OrderState.Canceled, OrderSubmitState.Accepted, System.currentTimeMillis()), null);
+        }
+        stopped.set(true);
+        mdThread.join();
+        System.out.println("Orders "+ORDER_COUNT+" while ticks "+tickCount[0]+", avg create order "+(totalNanos/ORDER_COUNT/1000)+" us, max "+(maxNanos/1000)+" us");
+
+        //增量更新的账户资金与持仓一致
+        assertTrue(account.getMoney(AccMoney.FrozenMargin)==0);
+        assertTrue(account.getMoney(AccMoney.FrozenCommission)==0);
+        assertTrue(account.getMoney(AccMoney.PositionProfit)==pos.getMoney(PosMoney.PositionProfit));
+        assertTrue(account.getMoney(AccMoney.CurrMargin)==pos.getMoney(PosMoney.UseMargin));
+        assertTrue(account.getMoney(AccMoney.Commission)==pos.getMoney(PosMoney.Commission));
+        long balance = account.getMoney(AccMoney.BalanceBefore)+account.getMoney(AccMoney.CloseProfit)-account.getMoney(AccMoney.Commission)+account.getMoney(AccMoney.PositionProfit);
+        assertTrue(account.getMoney(AccMoney.Balance)==balance);
+        assertTrue(account.getMoney(AccMoney.Available)==balance-account.getMoney(AccMoney.CurrMargin)-account.getMoney(AccMoney.Reserve));
+
+        //按持仓全量重新计算, 修正账户资金的误差
+        long[] money0 = account.getMoney();
+        account.addMoney(AccMoney.CurrMargin, 12345);
+        account.addMoney(AccMoney.PositionProfit, -6789);
+        account.reconcileMoney();
+        assertTrue(Arrays.equals(money0, account.getMoney()));
+    }
+
+    /**
+     * 批量模式下行情只标记持仓, markToMarket()时才计算持仓盈亏
+     */
+    @Test
+    public void testBatchedMarkToMarket() throws Exception
+    {
+        account.setMarkToMarketInterval(100);
+        //到9:01:00
+        while(mtService.nextTimePiece()) {
+            LocalDateTime time = mtService.getMarketTime();
+            if ( time.getHour()==9 && time.getMinute()==1 ) {
+                break;
+            }
+        }
+        MarketData md = mdService.getLastData(au1906);
+        Order openOrder = account.createOrder(new OrderBuilder()
+                .setDirection(OrderDirection.Buy)
+                .setExchagneable(au1906)
+                .setLimitPrice(md.lastPrice+10000)
+                .setPriceType(OrderPriceType.LimitPrice)
+                .setOffsetFlag(OrderOffsetFlag.OPEN));
+        for(int i=0;i<100 && openOrder.getStateTuple().getState()!=OrderState.Complete;i++) {
+            mtService.nextTimePiece();
+        }
+        assertTrue(openOrder.getStateTuple().getState()==OrderState.Complete);
+        account.markToMarket();
+        Position pos = account.getPosition(au1906);
+        long posProfit0 = pos.getMoney(PosMoney.PositionProfit);
+        assertTrue(account.getMoney(AccMoney.PositionProfit)==posProfit0);
+
+        MarketData tick = mdService.getLastData(au1906).clone();
+        tick.lastPrice += PriceUtil.price2long(10);
+        account.onMarketData(tick);
+        //只标记, 不计算
+        assertTrue(pos.getMoney(PosMoney.PositionProfit)==posProfit0);
+        assertTrue(account.getMoney(AccMoney.PositionProfit)==posProfit0);
+
+        account.markToMarket();
+        assertTrue(pos.getMoney(PosMoney.PositionProfit)!=posProfit0);
+        assertTrue(account.getMoney(AccMoney.PositionProfit)==pos.getMoney(PosMoney.PositionProfit));
+        assertTrue(account.getMoney(AccMoney.CurrMargin)==pos.getMoney(PosMoney.UseMargin));
+    }
+
+    /**
+     * 持仓限制, 价格偏离限制, 报单频率限制, 以及风控检查的耗时
+     */
+    @Test
+    public void testRiskControl() throws Exception
+    {
+        //到9:01:00
+        while(mtService.nextTimePiece()) {
+            LocalDateTime time = mtService.getMarketTime();
+            if ( time.getHour()==9 && time.getMinute()==1 ) {
+                break;
+            }
+        }
+        OrderRiskChecker riskChecker = account.getRiskChecker();
+        Properties props = new Properties();
+        props.setProperty("maxPosition", "2");
+        props.setProperty("priceBand", "0.03");
+        riskChecker.update(props);
+
+        MarketData md = mdService.getLastData(au1906);
+        OrderBuilder builder = new OrderBuilder()
+                .setDirection(OrderDirection.Buy)
+                .setExchagneable(au1906)
+                .setLimitPrice(md.lastPrice)
+                .setPriceType(OrderPriceType.LimitPrice)
+                .setOffsetFlag(OrderOffsetFlag.OPEN);
+        account.createOrder(builder);
+        assertTrue(riskChecker.getPendingOpenVolume(au1906)==1);
+        //价格偏离
+        assertEquals(ERRCODE_TRADE_PRICE_OUT_OF_BAND, createOrderErrCode(builder.setLimitPrice(md.lastPrice*11/10)));
+        account.createOrder(builder.setLimitPrice(md.lastPrice));
+        //持仓+未成交开仓超出限制
+        assertEquals(ERRCODE_TRADE_POS_EXCEEDS_LIMIT, createOrderErrCode(builder));
+        for(int i=0;i<100 && riskChecker.getPendingOpenVolume(au1906)>0;i++) {
+            mtService.nextTimePiece();
+        }
+        assertTrue(riskChecker.getPositionVolume(au1906)+riskChecker.getPendingOpenVolume(au1906)==2);
+        assertTrue(riskChecker.getAccountPositionVolume()==riskChecker.getPositionVolume(au1906));
+
+        //账户持仓+未成交开仓超出限制
+        props = new Properties();
+        props.setProperty("maxAccountPosition", ""+(riskChecker.getAccountPositionVolume()+riskChecker.getAccountPendingOpenVolume()));
+        riskChecker.update(props);
+        assertEquals(ERRCODE_TRADE_POS_EXCEEDS_LIMIT, createOrderErrCode(builder));
+
+        //报单频率, 同一秒内只允许一个报单, 被拒绝的报单不计数
+        props = new Properties();
+        props.setProperty("maxOrdersPerSecond", "1");
+        props.setProperty("priceBand", "0.03");
+        riskChecker.update(props);
+        md = mdService.getLastData(au1906);
+        assertEquals(ERRCODE_TRADE_PRICE_OUT_OF_BAND, createOrderErrCode(builder.setLimitPrice(md.lastPrice*11/10)));
+        account.createOrder(builder.setLimitPrice(md.lastPrice));
+        assertEquals(ERRCODE_TRADE_ORDER_RATE_EXCEEDS_LIMIT, createOrderErrCode(builder));
+
+        //撤单比例
+        props = new Properties();
+        props.setProperty("maxCancelRatio", "0.5");
+        props.setProperty("cancelRatioMinOrders", "1");
+        riskChecker.update(props);
+        builder.setLimitPrice(md.lastPrice-PriceUtil.price2long(20));
+        int errCode = 0;
+        for(int i=0;i<20 && errCode==0;i++) {
+            try{
+                Order order = account.createOrder(builder);
+                account.onOrderStateChanged(order, new OrderStateTuple(OrderState.Canceled, OrderSubmitState.Accepted, System.currentTimeMillis()), null);
+            }catch(AppException e) {
+                errCode = e.getCode();
+            }
+        }
+        assertEquals(ERRCODE_TRADE_CANCEL_RATIO_EXCEEDS_LIMIT, errCode);
+        assertTrue(account.getCancelCount(au1906)>0);
+    }
+
+    /**
+     * 多个线程同时报单, 持仓限制不会被突破
+     */
+    @Test
+    public void testRiskControlConcurrent() throws Exception
+    {
+        final OrderRiskChecker riskChecker = new OrderRiskChecker(beansContainer, account);
+        Properties props = new Properties();
+        props.setProperty("maxPosition", "100");
+        props.setProperty("maxAccountPosition", "150");
+        riskChecker.update(props);
+        final Exchangeable ru1905 = Exchangeable.fromString("ru1905");
+        final AtomicInteger accepted = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for(int i=0;i<threads.length;i++) {
+            final Exchangeable e = (i%2==0)?au1906:ru1905;
+            threads[i] = new Thread(()->{
+                OrderBuilder builder = new OrderBuilder()
+                        .setDirection(OrderDirection.Buy)
+                        .setExchagneable(e)
+                        .setPriceType(OrderPriceType.AnyPrice)
+                        .setOffsetFlag(OrderOffsetFlag.OPEN);
+                for(int j=0;j<1000;j++) {
+                    try{
+                        riskChecker.check(builder);
+                        accepted.incrementAndGet();
+                    }catch(AppException ex) {}
+                }
+            });
+        }
+        for(Thread thread:threads) {
+            thread.start();
+        }
+        for(Thread thread:threads) {
+            thread.join();
+        }
+        assertEquals(150, accepted.get());
+        assertEquals(150, riskChecker.getAccountPendingOpenVolume());
+        assertTrue(riskChecker.getPendingOpenVolume(au1906)<=100);
+        assertTrue(riskChecker.getPendingOpenVolume(ru1905)<=100);
+        assertEquals(150, riskChecker.getPendingOpenVolume(au1906)+riskChecker.getPendingOpenVolume(ru1905));
+    }
+
+    /**
+     * 全部检查开启时的耗时, 使用独立的OrderRiskChecker, 不影响账户的计数器.
+     * <BR>检查只是计数器比较, 正常在1微秒以内; 上限放宽到20微秒, 避免CI机器抖动误报, 只发现数量级的退化
+     */
+    @Test
+    public void testRiskControlLatency() throws Exception
+    {
+        OrderRiskChecker riskChecker = new OrderRiskChecker(beansContainer, account);
+        Properties props = new Properties();
+        props.setProperty("maxPosition", ""+Integer.MAX_VALUE/2);
+        props.setProperty("maxAccountPosition", ""+Integer.MAX_VALUE/2);
+        props.setProperty("maxOrdersPerSecond", ""+Integer.MAX_VALUE/2);
+        props.setProperty("maxCancelRatio", "0.9");
+        props.setProperty("priceBand", "0.03");
+        riskChecker.update(props);
+        while(mdService.getLastData(au1906)==null) {
+            if ( !mtService.nextTimePiece() ) {
+                break;
+            }
+        }
+        OrderBuilder builder = new OrderBuilder()
+                .setDirection(OrderDirection.Buy)
+                .setExchagneable(au1906)
+                .setLimitPrice(mdService.getLastData(au1906).lastPrice)
+                .setPriceType(OrderPriceType.LimitPrice)
+                .setOffsetFlag(OrderOffsetFlag.OPEN);
+        final int CHECK_COUNT = 1000000;
+        for(int i=0;i<CHECK_COUNT;i++) {
+            riskChecker.check(builder);
+        }
+        long t0 = System.nanoTime();
+        for(int i=0;i<CHECK_COUNT;i++) {
+            riskChecker.check(builder);
+        }
+        long t1 = System.nanoTime();
+        long nanosPerCheck = (t1-t0)/CHECK_COUNT;
+        System.out.println("Risk check "+CHECK_COUNT+" times in "+(t1-t0)/1000000+" ms, "+nanosPerCheck+" ns per check");
+        assertTrue("Risk check "+nanosPerCheck+" ns per check", nanosPerCheck<20000);
+        assertEquals(CHECK_COUNT*2, riskChecker.getPendingOpenVolume(au1906));
+        assertEquals(0, account.getRiskChecker().getPendingOpenVolume(au1906));
+    }
+
+    private int createOrderErrCode(OrderBuilder builder) {
+        try{
+            account.createOrder(builder);
+        }catch(AppException e) {
+            return e.getCode();
+        }
+        return 0;
+    }
 }
 
 
@@ -1,12 +1,228 @@
 package trader.service.tradlet;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+
 import org.junit.Test;
 
+import trader.common.exchangeable.Exchangeable;
+import trader.common.exchangeable.ExchangeableTradingTimes;
+import trader.common.util.PriceUtil;
+import trader.service.TraderHomeHelper;
+import trader.service.data.KVStoreService;
+import trader.service.log.LogServiceImpl;
+import trader.service.md.MarketData;
+import trader.service.md.MarketDataService;
+import trader.service.ta.TechnicalAnalysisServiceImpl;
+import trader.service.trade.MarketTimeService;
+import trader.service.trade.TradeConstants.PosDirection;
+import trader.service.trade.TradeService;
+import trader.service.tradlet.TradletConstants.PBMoney;
+import trader.service.tradlet.TradletConstants.PBVol;
+import trader.service.tradlet.impl.stop.StopTradlet;
+import trader.service.util.SimpleBeansContainer;
+import trader.simulator.SimKVStoreService;
+import trader.simulator.SimMarketDataService;
+import trader.simulator.SimMarketTimeService;
+import trader.simulator.SimScheduledExecutorService;
+import trader.simulator.SimTradletService;
+import trader.simulator.trade.SimTradeService;
+
 public class PlaybookKeeperTest {
 
+    private static class TestMarketData extends MarketData {
+
+        @Override
+        public String getCsvHead() {
+            return null;
+        }
+
+        @Override
+        public void toCsvRow(StringBuilder rowBuf) {
+        }
+
+        @Override
+        public MarketData clone() {
+            return cloneImpl(new TestMarketData());
+        }
+    }
+
+    static {
+        LogServiceImpl.setLogLevel("org.reflections", "ERROR");
+        LogServiceImpl.setLogLevel("trader", "WARN");
+        TraderHomeHelper.init(null);
+    }
+
+    private static final int PLAYBOOK_COUNT = 500;
+    private static final int INSTRUMENT_COUNT = 50;
+    private static final int TICK_COUNT = 20000;
+
     @Test
     public void testNextPbId() throws Exception
     {
     }
 
+    /**
+     * 500个活动Playbook分布在50个品种, 按品种索引与遍历全部活动Playbook的结果一致, 并对比止损检查的耗时
+     */
+    @Test
+    public void testInstrumentActivePlaybooks() throws Exception
+    {
+        Exchangeable au1906 = Exchangeable.fromString("au1906");
+        SimpleBeansContainer beansContainer = initBeans(au1906, LocalDate.of(2018, Month.DECEMBER, 28));
+        SimTradletService tradletService = (SimTradletService)beansContainer.getBean(TradletService.class);
+        TradletGroupImpl group = (TradletGroupImpl)tradletService.getGroup("group_au");
+        PlaybookKeeper playbookKeeper = group.getPlaybookKeeper();
+        StopTradlet stopTradlet = null;
+        for(Tradlet tradlet:group.getTradlets()) {
+            if ( tradlet instanceof StopTradlet ) {
+                stopTradlet = (StopTradlet)tradlet;
+            }
+        }
+        assertTrue(stopTradlet!=null);
+
+        List<Exchangeable> instruments = new ArrayList<>();
+        for(String commodity:new String[] {"au", "ag", "cu", "ru", "rb"}) {
+            for(int month=1;month<=INSTRUMENT_COUNT/5;month++) {
+                instruments.add(Exchangeable.fromString(String.format("%s19%02d", commodity, month)));
+            }
+        }
+        for(int i=0;i<PLAYBOOK_COUNT;i++) {
+            PlaybookBuilder builder = new PlaybookBuilder()
+                    .setInstrument(instruments.get(i%instruments.size()))
+                    .setOpenDirection(PosDirection.Long)
+                    .setVolume(1)
+                    .setAttr(TradletConstants.PBATTR_SIMPLE_PRICE_ABOVE.name(), "100000");
+            playbookKeeper.createPlaybook(null, builder);
+        }
+        assertEquals(PLAYBOOK_COUNT, playbookKeeper.getActivePlaybooks(null).size());
+
+        List<MarketData> ticks = new ArrayList<>();
+        for(int i=0;i<TICK_COUNT;i++) {
+            TestMarketData tick = new TestMarketData();
+            tick.instrument = instruments.get(i%instruments.size());
+            tick.lastPrice = PriceUtil.price2long(300+(i%10));
+            ticks.add(tick);
+        }
+        //按品种索引与遍历过滤的结果一致
+        for(Exchangeable instrument:instruments) {
+            List<Playbook> scanned = new ArrayList<>();
+            for(Playbook playbook:playbookKeeper.getActivePlaybooks(null)) {
+                if ( playbook.getInstrument().equals(instrument)) {
+                    scanned.add(playbook);
+                }
+            }
+            assertEquals(PLAYBOOK_COUNT/INSTRUMENT_COUNT, scanned.size());
+            assertEquals(scanned, playbookKeeper.getInstrumentActivePlaybooks(instrument));
+        }
+
+        long t0 = System.nanoTime();
+        int scannedCount = 0;
+        for(MarketData tick:ticks) {
+            for(Playbook playbook:playbookKeeper.getActivePlaybooks(null)) {
+                if ( playbook.getInstrument().equals(tick.instrument)) {
+                    scannedCount++;
+                }
+            }
+        }
+        long t1 = System.nanoTime();
+        int indexedCount = 0;
+        for(MarketData tick:ticks) {
+            indexedCount += playbookKeeper.getInstrumentActivePlaybooks(tick.instrument).size();
+        }
+        long t2 = System.nanoTime();
+        for(MarketData tick:ticks) {
+            stopTradlet.onTick(tick);
+        }
+        long t3 = System.nanoTime();
+        assertEquals(scannedCount, indexedCount);
+        assertEquals(PLAYBOOK_COUNT, playbookKeeper.getActivePlaybooks(null).size());
+        System.out.println("Playbooks "+PLAYBOOK_COUNT+" ticks "+TICK_COUNT+", scan "+(t1-t0)/1000+" us, indexed "+(t2-t1)/1000+" us, stop check "+(t3-t2)/1000+" us");
+    }
+
+    /**
+     * Playbook按独立的KEY保存, 新的PlaybookKeeper可以通过前缀遍历恢复
+     */
+    @Test
+    public void testRestore() throws Exception
+    {
+        Exchangeable au1906 = Exchangeable.fromString("au1906");
+        SimpleBeansContainer beansContainer = initBeans(au1906, LocalDate.of(2018, Month.DECEMBER, 28));
+        SimTradletService tradletService = (SimTradletService)beansContainer.getBean(TradletService.class);
+        TradletGroupImpl group = (TradletGroupImpl)tradletService.getGroup("group_au");
+        PlaybookKeeperImpl playbookKeeper = (PlaybookKeeperImpl)group.getPlaybookKeeper();
+
+        List<String> playbookIds = new ArrayList<>();
+        for(int i=0;i<10;i++) {
+            PlaybookBuilder builder = new PlaybookBuilder()
+                    .setInstrument(au1906)
+                    .setOpenDirection(i%2==0?PosDirection.Long:PosDirection.Short)
+                    .setVolume(1+i)
+                    .setOpenPrice(PriceUtil.price2long(300+i))
+                    .setAttr(TradletConstants.PBATTR_SIMPLE_PRICE_ABOVE.name(), ""+(400+i))
+                    .setAttr("lots", i)
+                    .setAttr("ratio", 0.5)
+                    .setAttr("levels", Arrays.asList("a", "b"));
+            playbookIds.add(playbookKeeper.createPlaybook(null, builder).getId());
+        }
+        playbookKeeper.flush();
+
+        PlaybookKeeperImpl playbookKeeper2 = new PlaybookKeeperImpl(group);
+        playbookKeeper2.restore();
+        assertEquals(playbookIds.size(), playbookKeeper2.getActivePlaybooks(null).size());
+        assertEquals(playbookIds.size(), playbookKeeper2.getInstrumentActivePlaybooks(au1906).size());
+        for(int i=0;i<playbookIds.size();i++) {
+            Playbook playbook = playbookKeeper.getPlaybook(playbookIds.get(i));
+            Playbook playbook2 = playbookKeeper2.getPlaybook(playbookIds.get(i));
+            assertTrue(playbook2!=null);
+            assertEquals(playbook.getDirection(), playbook2.getDirection());
+            assertEquals(playbook.getVolume(PBVol.Opening), playbook2.getVolume(PBVol.Opening));
+            assertEquals(playbook.getStateTuple().getState(), playbook2.getStateTuple().getState());
+            assertEquals(""+(400+i), TradletConstants.PBATTR_SIMPLE_PRICE_ABOVE.getString(playbook2));
+            assertEquals(playbook.getMoney(PBMoney.Opening), playbook2.getMoney(PBMoney.Opening));
+            assertEquals(playbook.getAttrVersion(), playbook2.getAttrVersion());
+            //非字符串属性保持类型, 其它类型以JSON恢复
+            assertEquals(i, playbook2.getAttr("lots"));
+            assertEquals(0.5, playbook2.getAttr("ratio"));
+            assertEquals(Arrays.asList("a", "b"), playbook2.getAttr("levels"));
+        }
+    }
+
+    private static SimpleBeansContainer initBeans(Exchangeable e, LocalDate tradingDay) throws Exception
+    {
+        SimpleBeansContainer beansContainer = new SimpleBeansContainer();
+        SimMarketTimeService mtService = new SimMarketTimeService();
+        SimScheduledExecutorService scheduledExecutorService = new SimScheduledExecutorService();
+        SimMarketDataService mdService = new SimMarketDataService();
+        SimKVStoreService kvStoreService = new SimKVStoreService();
+        SimTradeService tradeService = new SimTradeService();
+        TechnicalAnalysisServiceImpl taService = new TechnicalAnalysisServiceImpl();
+        SimTradletService tradletService = new SimTradletService();
+
+        beansContainer.addBean(MarketTimeService.class, mtService);
+        beansContainer.addBean(ScheduledExecutorService.class, scheduledExecutorService);
+        beansContainer.addBean(MarketDataService.class, mdService);
+        beansContainer.addBean(KVStoreService.class, kvStoreService);
+        beansContainer.addBean(TradeService.class, tradeService);
+        beansContainer.addBean(TechnicalAnalysisServiceImpl.class, taService);
+        beansContainer.addBean(TradletService.class, tradletService);
+
+        scheduledExecutorService.init(beansContainer);
+        ExchangeableTradingTimes tradingTimes = e.exchange().getTradingTimes(e, tradingDay);
+        mtService.setTimeRanges(tradingDay, tradingTimes.getMarketTimes() );
+        mdService.init(beansContainer);
+        taService.init(beansContainer);
+        tradeService.init(beansContainer);
+        tradletService.init(beansContainer);
+        mtService.nextTimePiece();
+        return beansContainer;
+    }
+
 }
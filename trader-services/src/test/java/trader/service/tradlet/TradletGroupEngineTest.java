@@ -0,0 +1,110 @@
+package trader.service.tradlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import trader.common.exchangeable.Exchangeable;
+import trader.service.md.MarketData;
+import trader.service.tradlet.TradletConstants.TickOverflowPolicy;
+
+public class TradletGroupEngineTest {
+
+    private static final int RING_BUFFER_SIZE = 16;
+    private static final int TICK_COUNT = RING_BUFFER_SIZE*8;
+
+    private static class TestMarketData extends MarketData {
+
+        @Override
+        public String getCsvHead() {
+            return null;
+        }
+
+        @Override
+        public void toCsvRow(StringBuilder rowBuf) {
+        }
+
+        @Override
+        public MarketData clone() {
+            return cloneImpl(new TestMarketData());
+        }
+    }
+
+    /**
+     * 第一个行情处理时阻塞, 模拟策略组处理过慢
+     */
+    private static class TestGroupEngine extends TradletGroupEngine {
+        CountDownLatch blockLatch = new CountDownLatch(1);
+        volatile MarketData lastTick;
+        volatile int tickCount;
+
+        TestGroupEngine() {
+            super(null);
+        }
+
+        @Override
+        protected void processEvent(int eventType, Object data) throws Exception {
+            blockLatch.await();
+            lastTick = (MarketData)data;
+            tickCount++;
+        }
+    }
+
+    /**
+     * DropOldest: 队列填满后继续推送行情, 最后送达的必须是最新的行情
+     */
+    @Test
+    public void testDropOldestDeliversLatest() throws Exception
+    {
+        ExecutorService executorService = Executors.newCachedThreadPool((Runnable r)->{
+            Thread thread = new Thread(r);
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            TestGroupEngine engine = new TestGroupEngine();
+            engine.initEventQueue(executorService, RING_BUFFER_SIZE, "blockingWait", TickOverflowPolicy.DropOldest);
+
+            Exchangeable instrument = Exchangeable.fromString("ru1901");
+            MarketData[] ticks = new MarketData[TICK_COUNT];
+            for(int i=0;i<ticks.length;i++) {
+                ticks[i] = new TestMarketData();
+                ticks[i].instrument = instrument;
+                ticks[i].volume = i;
+            }
+            Thread producer = new Thread(()->{
+                for(int i=0;i<ticks.length;i++) {
+                    engine.queueEvent(TradletEvent.EVENT_TYPE_MD_TICK, ticks[i]);
+                }
+            });
+            producer.setDaemon(true);
+            producer.start();
+            //等待队列填满
+            long deadline = System.currentTimeMillis()+5000;
+            while( engine.getBacklog()<RING_BUFFER_SIZE && System.currentTimeMillis()<deadline ) {
+                Thread.sleep(1);
+            }
+            assertEquals(RING_BUFFER_SIZE, engine.getBacklog());
+
+            engine.blockLatch.countDown();
+            producer.join(5000);
+            deadline = System.currentTimeMillis()+5000;
+            while( engine.lastTick!=ticks[TICK_COUNT-1] && System.currentTimeMillis()<deadline ) {
+                Thread.sleep(1);
+            }
+            assertTrue(engine.lastTick==ticks[TICK_COUNT-1]);
+            assertTrue(engine.getDroppedCount()>0);
+            assertEquals(TICK_COUNT, engine.tickCount+engine.getDroppedCount());
+        } finally {
+            executorService.shutdownNow();
+            executorService.awaitTermination(1, TimeUnit.SECONDS);
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+package trader.service.tradlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import trader.common.exchangeable.Exchangeable;
+import trader.service.TraderHomeHelper;
+
+public class TradletGroupRouterTest {
+
+    static {
+        TraderHomeHelper.init(null);
+    }
+
+    private static final int GROUP_COUNT = 50;
+    private static final int INSTRUMENT_COUNT = 200;
+    private static final int GROUP_INSTRUMENT_COUNT = 10;
+    private static final int TICK_COUNT = 200000;
+
+    private static class TestGroupEngine {
+        List<Exchangeable> instruments = new ArrayList<>();
+        int tickCount;
+
+        boolean interestOn(Exchangeable e) {
+            return instruments.contains(e);
+        }
+    }
+
+    /**
+     * 50个策略组分布在200个合约, 路由表查找与遍历全部策略组的派发结果一致, 并对比派发耗时
+     */
+    @Test
+    public void testDispatch() {
+        List<Exchangeable> instruments = new ArrayList<>();
+        for(String commodity:new String[] {"au", "ag", "cu", "ru", "rb", "al", "zn", "ni"}) {
+            for(int month=1;month<=INSTRUMENT_COUNT/8;month++) {
+                instruments.add(Exchangeable.fromString(String.format("%s%02d%02d", commodity, 19+month/12, 1+month%12)));
+            }
+        }
+        List<TestGroupEngine> engines = new ArrayList<>();
+        for(int i=0;i<GROUP_COUNT;i++) {
+            TestGroupEngine engine = new TestGroupEngine();
+            for(int j=0;j<GROUP_INSTRUMENT_COUNT;j++) {
+                engine.instruments.add(instruments.get((i*7+j*13)%instruments.size()));
+            }
+            engines.add(engine);
+        }
+        TradletGroupRouter<TestGroupEngine> router = new TradletGroupRouter<>(TestGroupEngine[]::new);
+        router.rebuild(engines, (TestGroupEngine engine)->{
+            return engine.instruments;
+        });
+        assertTrue(router.size()<=instruments.size());
+        assertEquals(0, router.route(Exchangeable.fromString("sc1901")).length);
+
+        //路由表与遍历过滤的结果一致
+        for(Exchangeable instrument:instruments) {
+            List<TestGroupEngine> scanned = new ArrayList<>();
+            for(TestGroupEngine engine:engines) {
+                if ( engine.interestOn(instrument) ) {
+                    scanned.add(engine);
+                }
+            }
+            assertEquals(scanned, Arrays.asList(router.route(instrument)));
+        }
+
+        long t0 = System.nanoTime();
+        int scannedCount = 0;
+        for(int i=0;i<TICK_COUNT;i++) {
+            Exchangeable instrument = instruments.get(i%instruments.size());
+            for(int j=0;j<engines.size();j++) {
+                TestGroupEngine engine = engines.get(j);
+                if ( engine.interestOn(instrument) ) {
+                    engine.tickCount++;
+                    scannedCount++;
+                }
+            }
+        }
+        long t1 = System.nanoTime();
+        int routedCount = 0;
+        for(int i=0;i<TICK_COUNT;i++) {
+            TestGroupEngine[] routed = router.route(instruments.get(i%instruments.size()));
+            for(int j=0;j<routed.length;j++) {
+                routed[j].tickCount++;
+                routedCount++;
+            }
+        }
+        long t2 = System.nanoTime();
+        assertEquals(scannedCount, routedCount);
+        System.out.println("Groups "+GROUP_COUNT+" instruments "+instruments.size()+" ticks "+TICK_COUNT+", scan "+(t1-t0)/1000+" us, routed "+(t2-t1)/1000+" us");
+
+        //合约变化后重建
+        Exchangeable sc1901 = Exchangeable.fromString("sc1901");
+        engines.get(0).instruments.add(sc1901);
+        router.rebuild(engines, (TestGroupEngine engine)->{
+            return engine.instruments;
+        });
+        assertEquals(Arrays.asList(engines.get(0)), Arrays.asList(router.route(sc1901)));
+    }
+
+}
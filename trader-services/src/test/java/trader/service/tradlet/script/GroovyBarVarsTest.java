@@ -0,0 +1,123 @@
+package trader.service.tradlet.script;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+
+import org.junit.Test;
+import org.ta4j.core.BarSeries;
+
+import trader.common.exchangeable.Exchangeable;
+import trader.common.exchangeable.ExchangeableData;
+import trader.common.tick.PriceLevel;
+import trader.common.util.TraderHomeUtil;
+import trader.service.TraderHomeHelper;
+import trader.service.md.MarketDataService;
+import trader.service.ta.Bar2;
+import trader.service.ta.BarSeriesLoader;
+import trader.service.ta.BaseLeveledBarSeries;
+import trader.service.ta.LeveledBarSeries;
+import trader.service.ta.indicators.SimpleIndicator;
+import trader.service.util.SimpleBeansContainer;
+import trader.simulator.SimMarketDataService;
+
+public class GroovyBarVarsTest {
+
+    static {
+        TraderHomeHelper.init(null);
+    }
+
+    /**
+     * 逐个增加KBAR, 增量变量与原有全量重建的结果一致, 并对比两种方式的耗时
+     */
+    @Test
+    public void test() throws Exception
+    {
+        Exchangeable e = Exchangeable.fromString("ru1901");
+        SimpleBeansContainer beansContainer = new SimpleBeansContainer();
+        final SimMarketDataService mdService = new SimMarketDataService();
+        mdService.init(beansContainer);
+        beansContainer.addBean(MarketDataService.class, mdService);
+
+        ExchangeableData data = TraderHomeUtil.getExchangeableData();
+        BarSeriesLoader loader= new BarSeriesLoader(beansContainer, data);
+        loader
+            .setInstrument(e)
+            .setStartTradingDay(LocalDate.of(2018, 12, 3))
+            .setEndTradingDay(LocalDate.of(2018, 12, 03))
+            .setLevel(PriceLevel.MIN1);
+
+        LeveledBarSeries min1Series = loader.load();
+        int barCount = min1Series.getBarCount();
+        assertTrue(barCount>10);
+
+        BaseLeveledBarSeries liveSeries = new BaseLeveledBarSeries(e, min1Series.getName(), min1Series.getLevel(), min1Series.function());
+        GroovyBarVars vars = new GroovyBarVars();
+        long incrementalTime = 0, rebuildTime = 0;
+        for(int i=0;i<barCount;i++) {
+            liveSeries.addBar(min1Series.getBar(i));
+            long t0 = System.nanoTime();
+            boolean updated = vars.update(liveSeries);
+            long t1 = System.nanoTime();
+            if ( i==0 ) {
+                assertFalse(updated);
+                continue;
+            }
+            assertTrue(updated);
+            BarSeries subSeries = liveSeries.getSubSeries(liveSeries.getBeginIndex(), liveSeries.getEndIndex());
+            SimpleIndicator close = SimpleIndicator.createFromSeries(subSeries, (Bar2 bar)->{
+                return bar.getClosePrice();
+            });
+            long t2 = System.nanoTime();
+            incrementalTime += (t1-t0);
+            rebuildTime += (t2-t1);
+
+            GroovyIndicatorValue closeVar = vars.getVariables().get("CLOSE");
+            assertEquals(subSeries.getEndIndex(), closeVar.getIndicator().getBarSeries().getEndIndex());
+            assertEquals(close.getValue().getDelegate(), closeVar.getValue());
+            assertEquals(((Bar2)min1Series.getBar(i-1)).getOpenPrice().getDelegate(), vars.getVariables().get("OPEN").getValue());
+        }
+        System.out.println("Bars "+barCount+", incremental "+incrementalTime/1000+" us, rebuild "+rebuildTime/1000+" us");
+    }
+
+    /**
+     * 已完成序列超过上限后丢弃最早的KBAR, 变量仍然指向最新完成的KBAR
+     */
+    @Test
+    public void testMaxBarCount() throws Exception
+    {
+        Exchangeable e = Exchangeable.fromString("ru1901");
+        SimpleBeansContainer beansContainer = new SimpleBeansContainer();
+        final SimMarketDataService mdService = new SimMarketDataService();
+        mdService.init(beansContainer);
+        beansContainer.addBean(MarketDataService.class, mdService);
+
+        ExchangeableData data = TraderHomeUtil.getExchangeableData();
+        BarSeriesLoader loader= new BarSeriesLoader(beansContainer, data);
+        loader
+            .setInstrument(e)
+            .setStartTradingDay(LocalDate.of(2018, 12, 3))
+            .setEndTradingDay(LocalDate.of(2018, 12, 03))
+            .setLevel(PriceLevel.MIN1);
+
+        LeveledBarSeries min1Series = loader.load();
+        int barCount = min1Series.getBarCount();
+        int maxBarCount = 10;
+        assertTrue(barCount>maxBarCount*2);
+
+        BaseLeveledBarSeries liveSeries = new BaseLeveledBarSeries(e, min1Series.getName(), min1Series.getLevel(), min1Series.function());
+        GroovyBarVars vars = new GroovyBarVars(maxBarCount);
+        for(int i=0;i<barCount;i++) {
+            liveSeries.addBar(min1Series.getBar(i));
+            if ( !vars.update(liveSeries) ) {
+                continue;
+            }
+            assertTrue(vars.getCompletedSeries().getBarCount()<=maxBarCount);
+            assertEquals(((Bar2)min1Series.getBar(i-1)).getClosePrice().getDelegate(), vars.getVariables().get("CLOSE").getValue());
+        }
+        assertEquals(maxBarCount, vars.getCompletedSeries().getBarCount());
+    }
+
+}
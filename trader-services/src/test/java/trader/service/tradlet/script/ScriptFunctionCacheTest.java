@@ -0,0 +1,68 @@
+package trader.service.tradlet.script;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+import org.junit.Test;
+import org.ta4j.core.BarSeries;
+import org.ta4j.core.BaseBarSeries;
+import org.ta4j.core.indicators.helpers.ClosePriceIndicator;
+
+import trader.service.ta.LongNum;
+import trader.service.tradlet.script.func.EMAFunc;
+
+public class ScriptFunctionCacheTest {
+
+    private static final int BAR_COUNT = 10000;
+    private static final int UNCACHED_BAR_COUNT = 1000;
+
+    /**
+     * MACD: DIF=EMA(CLOSE,12)-EMA(CLOSE,26), DEA=EMA(DIF,9), MACD=(DIF-DEA)*2
+     */
+    @Test
+    public void testMACD() throws Exception
+    {
+        EMAFunc ema = new EMAFunc();
+        BarSeries series = new BaseBarSeries("test", LongNum::valueOf);
+        BarSeries series2 = new BaseBarSeries("test2", LongNum::valueOf);
+        GroovyIndicatorValue close = new GroovyIndicatorValue(new ClosePriceIndicator(series));
+        GroovyIndicatorValue close2 = new GroovyIndicatorValue(new ClosePriceIndicator(series2));
+        ScriptFunctionCache cache = new ScriptFunctionCache();
+
+        ZonedDateTime time = ZonedDateTime.of(2020, 1, 2, 9, 0, 0, 0, ZoneId.systemDefault());
+        long cachedTime = 0, uncachedTime = 0;
+        Number cachedMacd = null, uncachedMacd = null;
+        for(int i=0;i<BAR_COUNT;i++) {
+            time = time.plusMinutes(1);
+            double price = 4000+100*Math.sin(i/50.0)+(i%7);
+            series.addBar(time, price, price+2, price-2, price+1, 10);
+
+            long t0 = System.nanoTime();
+            cache.nextBar();
+            GroovyIndicatorValue dif = ((GroovyIndicatorValue)cache.invoke("EMA", ema, new Object[] {close, 12})).minus(cache.invoke("EMA", ema, new Object[] {close, 26}));
+            GroovyIndicatorValue dea = (GroovyIndicatorValue)cache.invoke("EMA", ema, new Object[] {dif, 9});
+            cachedMacd = dif.minus(dea).multiply(2).getValue();
+            cachedTime += System.nanoTime()-t0;
+
+            if ( i<UNCACHED_BAR_COUNT ) {
+                series2.addBar(time, price, price+2, price-2, price+1, 10);
+                long t1 = System.nanoTime();
+                GroovyIndicatorValue dif2 = ((GroovyIndicatorValue)ema.invoke(new Object[] {close2, 12})).minus(ema.invoke(new Object[] {close2, 26}));
+                GroovyIndicatorValue dea2 = (GroovyIndicatorValue)ema.invoke(new Object[] {dif2, 9});
+                uncachedMacd = dif2.minus(dea2).multiply(2).getValue();
+                uncachedTime += System.nanoTime()-t1;
+                assertEquals(uncachedMacd, cachedMacd);
+            }
+            if ( i==UNCACHED_BAR_COUNT-1 ) {
+                System.out.println("MACD "+UNCACHED_BAR_COUNT+" bars, cached "+cachedTime/1000+" us, uncached "+uncachedTime/1000+" us");
+            }
+        }
+        System.out.println("MACD "+BAR_COUNT+" bars, cached "+cachedTime/1000+" us, hit "+cache.getHitCount()+", miss "+cache.getMissCount());
+        assertEquals(3, cache.getMissCount());
+        assertTrue(cachedMacd!=null);
+    }
+
+}
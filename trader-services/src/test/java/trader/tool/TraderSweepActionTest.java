@@ -0,0 +1,59 @@
+package trader.tool;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringReader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import trader.common.util.IniFile;
+
+public class TraderSweepActionTest {
+
+    @Test
+    public void testApplyParams() throws Exception
+    {
+        String groupConfig =
+                "[MACD135]\n"+
+                "fast=12\n"+
+                "slow=26\n"+
+                "[playbookTemplate]\n"+
+                "t1={\"stopLoss\":\"10t\", \\\n"+
+                "  \"maxTime\":\"30m\"}\n"+
+                "t2={\"stopLoss\":\"5t\"}\n";
+        Map<String, String> groupConfigs = new LinkedHashMap<>();
+        groupConfigs.put("group1", groupConfig);
+
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("MACD135.fast", "8");
+        params.put("MACD135.signal", "9");
+        params.put("playbookTemplate.t1", "{\"stopLoss\":\"20t\",\"maxTime\":\"1h\"}");
+        Map<String, String> result = TraderSweepAction.applyParams(groupConfigs, params);
+
+        IniFile iniFile = new IniFile(new StringReader(result.get("group1")));
+        IniFile.Section macd = iniFile.getSection("MACD135");
+        //已有的参数原地替换, 没有重复的键
+        assertEquals("8", macd.get("fast"));
+        assertEquals("26", macd.get("slow"));
+        assertEquals("9", macd.get("signal"));
+        assertEquals(1, countLines(macd.getText(), "fast="));
+        //JSON值和续行被整体替换
+        IniFile.Section template = iniFile.getSection("playbookTemplate");
+        assertEquals("{\"stopLoss\":\"20t\",\"maxTime\":\"1h\"}", template.get("t1"));
+        assertEquals("{\"stopLoss\":\"5t\"}", template.get("t2"));
+        assertEquals(0, countLines(template.getText(), "\"maxTime\":\"30m\""));
+    }
+
+    private static int countLines(String text, String content) {
+        int result = 0;
+        for(String line:text.split("\n")) {
+            if ( line.contains(content) ) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+}